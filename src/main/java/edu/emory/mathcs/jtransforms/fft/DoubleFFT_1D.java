@@ -51,13 +51,23 @@ import edu.emory.mathcs.utils.ConcurrencyUtils;
  * @author Piotr Wendykier (piotr.wendykier@gmail.com)
  * 
  */
-public class DoubleFFT_1D {
+// Laurent BOURGES: remove strictfp keyword
+public final class DoubleFFT_1D {
 
     private static enum Plans {
         SPLIT_RADIX, MIXED_RADIX, BLUESTEIN
     }
 
-    private int n;
+    private static final int[] factors = { 4, 2, 3, 5 };
+
+    private static final double PI = 3.14159265358979311599796346854418516;
+
+    private static final double TWO_PI = 6.28318530717958623199592693708837032;
+
+    /* members */
+    private final boolean useThreads;
+    
+    private final int n;
 
     private int nBluestein;
 
@@ -77,13 +87,8 @@ public class DoubleFFT_1D {
 
     private double[] bk2;
 
-    private Plans plan;
-
-    private static final int[] factors = { 4, 2, 3, 5 };
-
-    private static final double PI = 3.14159265358979311599796346854418516;
+    private final Plans plan;
 
-    private static final double TWO_PI = 6.28318530717958623199592693708837032;
 
     /**
      * Creates new instance of DoubleFFT_1D.
@@ -91,11 +96,22 @@ public class DoubleFFT_1D {
      * @param n
      *            size of data
      */
-    public DoubleFFT_1D(int n) {
+    public DoubleFFT_1D(final int n) {
+        this(n, true);
+    }
+    
+    /**
+     * Creates new instance of DoubleFFT_1D.
+     * 
+     * @param n size of data
+     * @param useThreads true to enable threads during computation
+     */
+    public DoubleFFT_1D(final int n, final boolean useThreads) {
         if (n < 1) {
             throw new IllegalArgumentException("n must be greater than 0");
         }
         this.n = n;
+        this.useThreads = useThreads;
 
         if (!ConcurrencyUtils.isPowerOf2(n)) {
             if (getReminder(n, factors) >= 211) {
@@ -384,9 +400,9 @@ public class DoubleFFT_1D {
         switch (plan) {
         case SPLIT_RADIX:
             realForward(a, offa);
-            int nthreads = ConcurrencyUtils.getNumberOfThreads();
-            if ((nthreads > 1) && (n / 2 > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
-                Future<?>[] futures = new Future[nthreads];
+            final int nthreads = ConcurrencyUtils.getNumberOfThreads();
+            if ((this.useThreads) && (nthreads > 1) && (n / 2 > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+                Future<?>[] futures = new Future<?>[nthreads];
                 int k = n / 2 / nthreads;
                 for (int i = 0; i < nthreads; i++) {
                     final int firstIdx = i * k;
@@ -587,9 +603,9 @@ public class DoubleFFT_1D {
         switch (plan) {
         case SPLIT_RADIX:
             realInverse2(a, offa, scale);
-            int nthreads = ConcurrencyUtils.getNumberOfThreads();
-            if ((nthreads > 1) && (n / 2 > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
-                Future<?>[] futures = new Future[nthreads];
+            final int nthreads = ConcurrencyUtils.getNumberOfThreads();
+            if ((this.useThreads) && (nthreads > 1) && (n / 2 > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+                Future<?>[] futures = new Future<?>[nthreads];
                 int k = n / 2 / nthreads;
                 for (int i = 0; i < nthreads; i++) {
                     final int firstIdx = i * k;
@@ -1096,7 +1112,7 @@ public class DoubleFFT_1D {
             c[startc + nch] = 0.5 * c[startc];
             for (j = 1; j < nch; j++) {
                 deltaj = delta * j;
-                c[startc + j] = 0.5 * Math.cos(deltaj);
+                c[startc + j] =  0.5 * Math.cos(deltaj);
                 c[startc + nc - j] = 0.5 * Math.sin(deltaj);
             }
         }
@@ -1105,13 +1121,13 @@ public class DoubleFFT_1D {
     private void bluestein_complex(final double[] a, final int offa, final int isign) {
         final double[] ak = new double[2 * nBluestein];
         int nthreads = 1;
-        int threads = ConcurrencyUtils.getNumberOfThreads();
-        if ((threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+        final int threads = ConcurrencyUtils.getNumberOfThreads();
+        if ((this.useThreads) && (threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
             nthreads = 2;
             if ((threads >= 4) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_4Threads())) {
                 nthreads = 4;
             }
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int k = n / nthreads;
             for (int i = 0; i < nthreads; i++) {
                 final int firstIdx = i * k;
@@ -1270,13 +1286,13 @@ public class DoubleFFT_1D {
     private void bluestein_real_full(final double[] a, final int offa, final int isign) {
         final double[] ak = new double[2 * nBluestein];
         int nthreads = 1;
-        int threads = ConcurrencyUtils.getNumberOfThreads();
-        if ((threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+        final int threads = ConcurrencyUtils.getNumberOfThreads();
+        if ((this.useThreads) && (threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
             nthreads = 2;
             if ((threads >= 4) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_4Threads())) {
                 nthreads = 4;
             }
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int k = n / nthreads;
             for (int i = 0; i < nthreads; i++) {
                 final int firstIdx = i * k;
@@ -1424,13 +1440,13 @@ public class DoubleFFT_1D {
     private void bluestein_real_forward(final double[] a, final int offa) {
         final double[] ak = new double[2 * nBluestein];
         int nthreads = 1;
-        int threads = ConcurrencyUtils.getNumberOfThreads();
-        if ((threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+        final int threads = ConcurrencyUtils.getNumberOfThreads();
+        if ((this.useThreads) && (threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
             nthreads = 2;
             if ((threads >= 4) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_4Threads())) {
                 nthreads = 4;
             }
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int k = n / nthreads;
             for (int i = 0; i < nthreads; i++) {
                 final int firstIdx = i * k;
@@ -1574,13 +1590,13 @@ public class DoubleFFT_1D {
         cftbsub(2 * nBluestein, ak, 0, ip, nw, w);
 
         int nthreads = 1;
-        int threads = ConcurrencyUtils.getNumberOfThreads();
-        if ((threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+        final int threads = ConcurrencyUtils.getNumberOfThreads();
+        if ((this.useThreads) && (threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
             nthreads = 2;
             if ((threads >= 4) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_4Threads())) {
                 nthreads = 4;
             }
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int k = nBluestein / nthreads;
             for (int i = 0; i < nthreads; i++) {
                 final int firstIdx = i * k;
@@ -1640,13 +1656,13 @@ public class DoubleFFT_1D {
     private void bluestein_real_inverse2(final double[] a, final int offa) {
         final double[] ak = new double[2 * nBluestein];
         int nthreads = 1;
-        int threads = ConcurrencyUtils.getNumberOfThreads();
-        if ((threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+        final int threads = ConcurrencyUtils.getNumberOfThreads();
+        if ((this.useThreads) && (threads > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
             nthreads = 2;
             if ((threads >= 4) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_4Threads())) {
                 nthreads = 4;
             }
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int k = n / nthreads;
             for (int i = 0; i < nthreads; i++) {
                 final int firstIdx = i * k;
@@ -4015,7 +4031,7 @@ public class DoubleFFT_1D {
         if (n > 8) {
             if (n > 32) {
                 cftf1st(n, a, offa, w, nw - (n >> 2));
-                if ((ConcurrencyUtils.getNumberOfThreads() > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+                if ((this.useThreads) && (ConcurrencyUtils.getNumberOfThreads() > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
                     cftrec4_th(n, a, offa, nw, w);
                 } else if (n > 512) {
                     cftrec4(n, a, offa, nw, w);
@@ -4043,7 +4059,7 @@ public class DoubleFFT_1D {
         if (n > 8) {
             if (n > 32) {
                 cftb1st(n, a, offa, w, nw - (n >> 2));
-                if ((ConcurrencyUtils.getNumberOfThreads() > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+                if ((this.useThreads) && (ConcurrencyUtils.getNumberOfThreads() > 1) && (n > ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
                     cftrec4_th(n, a, offa, nw, w);
                 } else if (n > 512) {
                     cftrec4(n, a, offa, nw, w);
@@ -5520,7 +5536,7 @@ public class DoubleFFT_1D {
             idiv4 = 1;
             m >>= 1;
         }
-        Future<?>[] futures = new Future[nthreads];
+        Future<?>[] futures = new Future<?>[nthreads];
         final int mf = m;
         for (i = 0; i < nthreads; i++) {
             final int firstIdx = offa + i * m;
@@ -5571,18 +5587,18 @@ public class DoubleFFT_1D {
         ConcurrencyUtils.waitForCompletion(futures);
     }
 
-    private void cftrec4(int n, double[] a, int offa, int nw, double[] w) {
+    private void cftrec4(final int n, final double[] a, final int offa, final int nw, final double[] w) {
         int isplt, j, k, m;
 
         m = n;
-        int idx1 = offa + n;
+        final int idx1 = offa + n;
         while (m > 512) {
             m >>= 2;
             cftmdl1(m, a, idx1 - m, w, nw - (m >> 1));
         }
         cftleaf(m, 1, a, idx1 - m, nw, w);
         k = 0;
-        int idx2 = offa - m;
+        final int idx2 = offa - m;
         for (j = n - m; j > 0; j -= m) {
             k++;
             isplt = cfttree(m, j, k, a, offa, nw, w);
@@ -5590,10 +5606,10 @@ public class DoubleFFT_1D {
         }
     }
 
-    private int cfttree(int n, int j, int k, double[] a, int offa, int nw, double[] w) {
+    private int cfttree(final int n, final int j, final int k, final double[] a, final int offa, final int nw, final double[] w) {
         int i, isplt, m;
-        int idx1 = offa - n;
         if ((k & 3) != 0) {
+            final int idx1 = offa - n;
             isplt = k & 1;
             if (isplt != 0) {
                 cftmdl1(n, a, idx1 + j, w, nw - (n >> 1));
@@ -5606,7 +5622,7 @@ public class DoubleFFT_1D {
                 m <<= 2;
             }
             isplt = i & 1;
-            int idx2 = offa + j;
+            final int idx2 = offa + j;
             if (isplt != 0) {
                 while (m > 128) {
                     cftmdl1(m, a, idx2 - m, w, nw - (m >> 1));
@@ -5622,7 +5638,7 @@ public class DoubleFFT_1D {
         return isplt;
     }
 
-    private void cftleaf(int n, int isplt, double[] a, int offa, int nw, double[] w) {
+    private void cftleaf(final int n, final int isplt, final double[] a, final int offa, final int nw, final double[] w) {
         if (n == 512) {
             cftmdl1(128, a, offa, w, nw - 64);
             cftf161(a, offa, w, nw - 8);
@@ -5678,9 +5694,11 @@ public class DoubleFFT_1D {
         }
     }
 
-    private void cftmdl1(int n, double[] a, int offa, double[] w, int startw) {
-        int j0, j1, j2, j3, k, m, mh;
-        double wn4r, wk1r, wk1i, wk3r, wk3i;
+    private void cftmdl1(final int n, final double[] a, final int offa, final double[] w, final int startw) {
+        int j0, j1, j2, j3, k;
+        final int m, mh;
+        final double wn4r;
+        double wk1r, wk1i, wk3r, wk3i;
         double x0r, x0i, x1r, x1i, x2r, x2i, x3r, x3i;
         int idx0, idx1, idx2, idx3, idx4, idx5;
 
@@ -5803,9 +5821,11 @@ public class DoubleFFT_1D {
         a[idx3 + 1] = -wn4r * (x0i - x0r);
     }
 
-    private void cftmdl2(int n, double[] a, int offa, double[] w, int startw) {
-        int j0, j1, j2, j3, k, kr, m, mh;
-        double wn4r, wk1r, wk1i, wk3r, wk3i, wd1r, wd1i, wd3r, wd3i;
+    private void cftmdl2(final int n, final double[] a, final int offa, final double[] w, final int startw) {
+        int j0, j1, j2, j3, k, kr;
+        final int m, mh;
+        final double wn4r;
+        double wk1r, wk1i, wk3r, wk3i, wd1r, wd1i, wd3r, wd3i;
         double x0r, x0i, x1r, x1i, x2r, x2i, x3r, x3i, y0r, y0i, y2r, y2i;
         int idx0, idx1, idx2, idx3, idx4, idx5, idx6;
 
@@ -5967,8 +5987,10 @@ public class DoubleFFT_1D {
         }
     }
 
-    private void cftf161(double[] a, int offa, double[] w, int startw) {
-        double wn4r, wk1r, wk1i, x0r, x0i, x1r, x1i, x2r, x2i, x3r, x3i, y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i, y8r, y8i, y9r, y9i, y10r, y10i, y11r, y11i, y12r, y12i, y13r, y13i, y14r, y14i, y15r, y15i;
+    private void cftf161(final double[] a, final int offa, final double[] w, final int startw) {
+        final double wn4r, wk1r, wk1i;
+        double x0r, x0i, x1r, x1i, x2r, x2i, x3r, x3i;
+        final double y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i, y8r, y8i, y9r, y9i, y10r, y10i, y11r, y11i, y12r, y12i, y13r, y13i, y14r, y14i, y15r, y15i;
 
         wn4r = w[startw + 1];
         wk1r = w[startw + 2];
@@ -6120,8 +6142,10 @@ public class DoubleFFT_1D {
         a[offa + 7] = x1i - x3r;
     }
 
-    private void cftf162(double[] a, int offa, double[] w, int startw) {
-        double wn4r, wk1r, wk1i, wk2r, wk2i, wk3r, wk3i, x0r, x0i, x1r, x1i, x2r, x2i, y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i, y8r, y8i, y9r, y9i, y10r, y10i, y11r, y11i, y12r, y12i, y13r, y13i, y14r, y14i, y15r, y15i;
+    private void cftf162(final double[] a, final int offa, final double[] w, final int startw) {
+        final double wn4r, wk1r, wk1i, wk2r, wk2i, wk3r, wk3i;
+        double x0r, x0i, x1r, x1i, x2r, x2i;
+        final double y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i, y8r, y8i, y9r, y9i, y10r, y10i, y11r, y11i, y12r, y12i, y13r, y13i, y14r, y14i, y15r, y15i;
 
         wn4r = w[startw + 1];
         wk1r = w[startw + 4];
@@ -6296,9 +6320,10 @@ public class DoubleFFT_1D {
         a[offa + 31] = x1i - x2r;
     }
 
-    private void cftf081(double[] a, int offa, double[] w, int startw) {
-        double wn4r, x0r, x0i, x1r, x1i, x2r, x2i, x3r, x3i, y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i;
-
+    private void cftf081(final double[] a, final int offa, final double[] w, final int startw) {
+        double x0r, x0i, x1r, x1i, x2r, x2i, x3r, x3i;
+        final double wn4r, y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i;
+        
         wn4r = w[startw + 1];
         x0r = a[offa] + a[offa + 8];
         x0i = a[offa + 1] + a[offa + 9];
@@ -6354,8 +6379,9 @@ public class DoubleFFT_1D {
         a[offa + 7] = y2i - y6r;
     }
 
-    private void cftf082(double[] a, int offa, double[] w, int startw) {
-        double wn4r, wk1r, wk1i, x0r, x0i, x1r, x1i, y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i;
+    private void cftf082(final double[] a, final int offa, final double[] w, final int startw) {
+        double x0r, x0i, x1r, x1i;
+        final double wn4r, wk1r, wk1i, y0r, y0i, y1r, y1i, y2r, y2i, y3r, y3i, y4r, y4i, y5r, y5i, y6r, y6i, y7r, y7i;
 
         wn4r = w[startw + 1];
         wk1r = w[startw + 2];
@@ -6549,17 +6575,17 @@ public class DoubleFFT_1D {
     }
 
     private void scale(final double m, final double[] a, int offa, boolean complex) {
-        final double norm = (1.0 / m);
+        final double norm = 1.0 / m;
         int n2;
         if (complex) {
             n2 = 2 * n;
         } else {
             n2 = n;
         }
-        int nthreads = ConcurrencyUtils.getNumberOfThreads();
-        if ((nthreads > 1) && (n2 >= ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
+        final int nthreads = ConcurrencyUtils.getNumberOfThreads();
+        if ((this.useThreads) && (nthreads > 1) && (n2 >= ConcurrencyUtils.getThreadsBeginN_1D_FFT_2Threads())) {
             final int k = n2 / nthreads;
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             for (int i = 0; i < nthreads; i++) {
                 final int firstIdx = offa + i * k;
                 final int lastIdx = (i == (nthreads - 1)) ? offa + n2 : firstIdx + k;
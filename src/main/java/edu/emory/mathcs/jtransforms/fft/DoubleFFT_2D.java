@@ -8,7 +8,7 @@
  *
  * Software distributed under the License is distributed on an "AS IS" basis,
  * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
- * for the specific language governing rights and limitations under the
+ * for the specific lanSguage governing rights and limitations under the
  * License.
  *
  * The Original Code is JTransforms.
@@ -31,7 +31,6 @@
  * the terms of any one of the MPL, the GPL or the LGPL.
  *
  * ***** END LICENSE BLOCK ***** */
-
 package edu.emory.mathcs.jtransforms.fft;
 
 import java.util.concurrent.Future;
@@ -50,23 +49,32 @@ import edu.emory.mathcs.utils.ConcurrencyUtils;
  * @author Piotr Wendykier (piotr.wendykier@gmail.com)
  * 
  */
-public class DoubleFFT_2D {
-
-    private int rows;
-
+// Laurent BOURGES: remove strictfp keyword
+public final class DoubleFFT_2D {
+
+    private final DoubleFFT_1D fftColumns;
+    private final DoubleFFT_1D fftRows;
+    private final boolean isPowerOfTwo;
+    private final boolean useThreads;
+    private final int rows;
     private int columns;
-
     private double[] t;
-
-    private DoubleFFT_1D fftColumns, fftRows;
-
     private int oldNthreads;
-
     private int nt;
+    // LBO: empty array to quickly clear temporary arrays in realForwardSubset()
+    private double[] emptyArray = null;
 
-    private boolean isPowerOfTwo = false;
-
-    private boolean useThreads = false;
+    /**
+     * Creates new instance of DoubleFFT_2D.
+     * 
+     * @param rows
+     *            number of rows
+     * @param columns
+     *            number of columns
+     */
+    public DoubleFFT_2D(final int rows, final int columns) {
+        this(rows, columns, false);
+    }
 
     /**
      * Creates new instance of DoubleFFT_2D.
@@ -75,35 +83,62 @@ public class DoubleFFT_2D {
      *            number of rows
      * @param columns
      *            number of columns
+     * @param useSubSet true to allocate only memory for realForwardSubset
      */
-    public DoubleFFT_2D(int rows, int columns) {
+    public DoubleFFT_2D(final int rows, final int columns, final boolean useSubSet) {
         if (rows <= 1 || columns <= 1) {
             throw new IllegalArgumentException("rows and columns must be greater than 1");
         }
         this.rows = rows;
         this.columns = columns;
-        if (rows * columns >= ConcurrencyUtils.getThreadsBeginN_2D()) {
-            this.useThreads = true;
-        }
+
+        // fix integer capacity for rows = columns = 65536 !
+        this.useThreads = (((long) rows * columns) >= ConcurrencyUtils.getThreadsBeginN_2D());
+
         if (ConcurrencyUtils.isPowerOf2(rows) && ConcurrencyUtils.isPowerOf2(columns)) {
             isPowerOfTwo = true;
-            oldNthreads = ConcurrencyUtils.getNumberOfThreads();
-            nt = 8 * oldNthreads * rows;
-            if (2 * columns == 4 * oldNthreads) {
-                nt >>= 1;
-            } else if (2 * columns < 4 * oldNthreads) {
-                nt >>= 2;
+
+            // subset allocation:
+            if (useSubSet) {
+                oldNthreads = -1;
+                nt = ConcurrencyUtils.getNumberOfThreads() * 2 * rows;
+                t = new double[nt];
+            } else {
+                oldNthreads = ConcurrencyUtils.getNumberOfThreads();
+                nt = 8 * oldNthreads * rows;
+                if (2 * columns == 4 * oldNthreads) {
+                    nt >>= 1;
+                } else if (2 * columns < 4 * oldNthreads) {
+                    nt >>= 2;
+                }
+                t = new double[nt];
+            }
+        } else {
+            isPowerOfTwo = false;
+
+            // LBO: realForwardSubset also supports even sizes (mixed radix or bluestein 1D plans):
+            if (useSubSet && (rows % 2 == 0) && (columns % 2 == 0)) {
+                oldNthreads = -1;
+                nt = ConcurrencyUtils.getNumberOfThreads() * 2 * rows;
+                t = new double[nt];
             }
-            t = new double[nt];
         }
-        fftRows = new DoubleFFT_1D(rows);
+        fftRows = new DoubleFFT_1D(rows, false);
         if (rows == columns) {
             fftColumns = fftRows;
         } else {
-            fftColumns = new DoubleFFT_1D(columns);
+            fftColumns = new DoubleFFT_1D(columns, false);
         }
     }
 
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
     /**
      * Computes 2D forward DFT of complex data leaving the result in
      * <code>a</code>. The data is stored in 1D array in row-major order.
@@ -147,12 +182,13 @@ public class DoubleFFT_2D {
         } else {
             final int rowStride = 2 * columns;
             if ((nthreads > 1) && useThreads && (rows >= nthreads) && (columns >= nthreads)) {
-                Future<?>[] futures = new Future[nthreads];
+                Future<?>[] futures = new Future<?>[nthreads];
                 int p = rows / nthreads;
                 for (int l = 0; l < nthreads; l++) {
                     final int firstRow = l * p;
                     final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             for (int r = firstRow; r < lastRow; r++) {
                                 fftColumns.complexForward(a, r * rowStride);
@@ -166,6 +202,7 @@ public class DoubleFFT_2D {
                     final int firstColumn = l * p;
                     final int lastColumn = (l == (nthreads - 1)) ? columns : firstColumn + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             double[] temp = new double[2 * rows];
                             for (int c = firstColumn; c < lastColumn; c++) {
@@ -255,12 +292,13 @@ public class DoubleFFT_2D {
             columns = oldn2;
         } else {
             if ((nthreads > 1) && useThreads && (rows >= nthreads) && (columns >= nthreads)) {
-                Future<?>[] futures = new Future[nthreads];
+                Future<?>[] futures = new Future<?>[nthreads];
                 int p = rows / nthreads;
                 for (int l = 0; l < nthreads; l++) {
                     final int firstRow = l * p;
                     final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             for (int r = firstRow; r < lastRow; r++) {
                                 fftColumns.complexForward(a[r]);
@@ -274,6 +312,7 @@ public class DoubleFFT_2D {
                     final int firstColumn = l * p;
                     final int lastColumn = (l == (nthreads - 1)) ? columns : firstColumn + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             double[] temp = new double[2 * rows];
                             for (int c = firstColumn; c < lastColumn; c++) {
@@ -364,12 +403,13 @@ public class DoubleFFT_2D {
         } else {
             final int rowspan = 2 * columns;
             if ((nthreads > 1) && useThreads && (rows >= nthreads) && (columns >= nthreads)) {
-                Future<?>[] futures = new Future[nthreads];
+                Future<?>[] futures = new Future<?>[nthreads];
                 int p = rows / nthreads;
                 for (int l = 0; l < nthreads; l++) {
                     final int firstRow = l * p;
                     final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             for (int r = firstRow; r < lastRow; r++) {
                                 fftColumns.complexInverse(a, r * rowspan, scale);
@@ -383,6 +423,7 @@ public class DoubleFFT_2D {
                     final int firstColumn = l * p;
                     final int lastColumn = (l == (nthreads - 1)) ? columns : firstColumn + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             double[] temp = new double[2 * rows];
                             for (int c = firstColumn; c < lastColumn; c++) {
@@ -477,12 +518,13 @@ public class DoubleFFT_2D {
             columns = oldn2;
         } else {
             if ((nthreads > 1) && useThreads && (rows >= nthreads) && (columns >= nthreads)) {
-                Future<?>[] futures = new Future[nthreads];
+                Future<?>[] futures = new Future<?>[nthreads];
                 int p = rows / nthreads;
                 for (int l = 0; l < nthreads; l++) {
                     final int firstRow = l * p;
                     final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             for (int r = firstRow; r < lastRow; r++) {
                                 fftColumns.complexInverse(a[r], scale);
@@ -496,6 +538,7 @@ public class DoubleFFT_2D {
                     final int firstColumn = l * p;
                     final int lastColumn = (l == (nthreads - 1)) ? columns : firstColumn + p;
                     futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                         public void run() {
                             double[] temp = new double[2 * rows];
                             for (int c = firstColumn; c < lastColumn; c++) {
@@ -665,6 +708,664 @@ public class DoubleFFT_2D {
         }
     }
 
+    /**
+     * Computes only a subset of the 2D forward DFT of real data (without leaving
+     * the result in <code>a</code>).
+     * This method only works when the sizes of both dimensions are
+     * even numbers (power-of-two numbers or products of 2, 3, 5 and 7 are the fastest).
+     * The physical layout of the output data is as follows:
+     * 
+     * <pre>
+     * a[k1][2*k2] = Re[k1][k2] = Re[rows-k1][columns-k2], 
+     * a[k1][2*k2+1] = Im[k1][k2] = -Im[rows-k1][columns-k2], 
+     *       0&lt;k1&lt;rows, 0&lt;k2&lt;columns/2, 
+     * a[0][2*k2] = Re[0][k2] = Re[0][columns-k2], 
+     * a[0][2*k2+1] = Im[0][k2] = -Im[0][columns-k2], 
+     *       0&lt;k2&lt;columns/2, 
+     * a[k1][0] = Re[k1][0] = Re[rows-k1][0], 
+     * a[k1][1] = Im[k1][0] = -Im[rows-k1][0], 
+     * a[rows-k1][1] = Re[k1][columns/2] = Re[rows-k1][columns/2], 
+     * a[rows-k1][0] = -Im[k1][columns/2] = Im[rows-k1][columns/2], 
+     *       0&lt;k1&lt;rows/2, 
+     * a[0][0] = Re[0][0], 
+     * a[0][1] = Re[0][columns/2], 
+     * a[rows/2][0] = Re[rows/2][0], 
+     * a[rows/2][1] = Re[rows/2][columns/2]
+     * </pre>
+     * 
+     * This method computes only half of the elements of the real transform. The
+     * other half satisfies the symmetry condition. If you want the full real
+     * forward transform, use <code>realForwardFull</code>. To get back the
+     * original data, use <code>realInverse</code> on the output of this method.
+     * 
+     * @param subSize size = rows = columns of the output array containing the subset of the 2D forward DFT (must be an even number)
+     * @param inputSize size = rows = columns of the input array a (must be an even number)
+     * @param data data to transform
+     * @return subset of the 2D forward DFT of the given size subSize = rows = columns
+     */
+    public double[][] realForwardSubset(final int subSize, final int inputSize,
+                                       final double[][] data) {
+        return realForwardSubset(subSize, inputSize, data, null);
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of real data (without leaving
+     * the result in <code>a</code>).
+     * This method only works when the sizes of both dimensions are
+     * even numbers (power-of-two numbers or products of 2, 3, 5 and 7 are the fastest).
+     * The physical layout of the output data is as follows:
+     * 
+     * <pre>
+     * a[k1][2*k2] = Re[k1][k2] = Re[rows-k1][columns-k2], 
+     * a[k1][2*k2+1] = Im[k1][k2] = -Im[rows-k1][columns-k2], 
+     *       0&lt;k1&lt;rows, 0&lt;k2&lt;columns/2, 
+     * a[0][2*k2] = Re[0][k2] = Re[0][columns-k2], 
+     * a[0][2*k2+1] = Im[0][k2] = -Im[0][columns-k2], 
+     *       0&lt;k2&lt;columns/2, 
+     * a[k1][0] = Re[k1][0] = Re[rows-k1][0], 
+     * a[k1][1] = Im[k1][0] = -Im[rows-k1][0], 
+     * a[rows-k1][1] = Re[k1][columns/2] = Re[rows-k1][columns/2], 
+     * a[rows-k1][0] = -Im[k1][columns/2] = Im[rows-k1][columns/2], 
+     *       0&lt;k1&lt;rows/2, 
+     * a[0][0] = Re[0][0], 
+     * a[0][1] = Re[0][columns/2], 
+     * a[rows/2][0] = Re[rows/2][0], 
+     * a[rows/2][1] = Re[rows/2][columns/2]
+     * </pre>
+     * 
+     * This method computes only half of the elements of the real transform. The
+     * other half satisfies the symmetry condition. If you want the full real
+     * forward transform, use <code>realForwardFull</code>. To get back the
+     * original data, use <code>realInverse</code> on the output of this method.
+     * 
+     * @param subSize size = rows = columns of the output array containing the subset of the 2D forward DFT (must be an even number)
+     * @param inputSize size = rows = columns of the input array a (must be an even number)
+     * @param data data to transform
+     * @param outputData optional output data[N][M] (N >= subSize & M >= subSize + 2)
+     * @return subset of the 2D forward DFT of the given size subSize = rows = columns
+     */
+    public double[][] realForwardSubset(final int subSize, final int inputSize,
+                                       final double[][] data,
+                                       final double[][] outputData) {
+
+        // LBO: any even size works as DoubleFFT_1D gives the same packed layout for even n (split radix, mixed radix or bluestein):
+        if ((rows % 2 != 0) || (columns % 2 != 0)) {
+            throw new IllegalArgumentException("rows and columns must be even numbers.");
+        }
+        if (subSize % 2 != 0) {
+            throw new IllegalArgumentException("sub size must be an even number because subSize = number of rows = 2 * (columns / 2).");
+        }
+        if (inputSize % 2 != 0) {
+            throw new IllegalArgumentException("input size must be an even number because input size / 2 = center of image.");
+        }
+        if (inputSize > subSize) {
+            throw new IllegalArgumentException("output size must be larger than input size.");
+        }
+        if (subSize > rows) {
+            throw new IllegalArgumentException("sub size must be larger than fft size.");
+        }
+
+        // Test useThreads flag to use then only 1 thread:
+        final int nthreads = (!useThreads) ? 1 : ConcurrencyUtils.getNumberOfThreads();
+
+        // fix t array capacity:
+        if (oldNthreads != -1) {
+            nt = nthreads * 2 * rows;
+            t = new double[nt];
+            oldNthreads = -1; // to ensure correct allocation next time
+        }
+
+        // add 1 column more to compute and store columns/2 values:
+        final int subSizeColumns = (subSize < columns) ? subSize + 2 : subSize;
+
+        // Check the given output data:
+        final boolean isOutputDataValid = ((outputData != null)
+                && (outputData.length >= subSize)
+                && (outputData[0] != null)
+                && (outputData[0].length >= subSizeColumns));
+
+        // Create new output array (could be given):
+        final double[][] output;
+        if (isOutputDataValid) {
+            output = outputData;
+        } else {
+            output = new double[subSize][subSizeColumns];
+        }
+
+        final int rmul2 = 2 * rows;
+        final int idiv2 = inputSize / 2;
+        final int rowInOffset = (columns - idiv2);
+        final int sdiv2 = subSize / 2;
+        final int scdiv2 = subSizeColumns / 2;
+        final int rowOutOffset = (columns - sdiv2);
+
+        // emptyData contain 2 * rows or columns used by both rows and columns:
+        final double[] emptyData;
+        if (emptyArray == null) {
+            emptyArray = emptyData = new double[Math.max(rmul2, columns)]; // fixed
+        } else {
+            emptyData = emptyArray;
+        }
+
+        // computation tasks:
+        final Runnable[] tasks = new Runnable[nthreads];
+
+
+        // 1 - Process rows:
+        /*
+         * xdft2d0_subth1(1, 1, a, true);
+         */
+
+        // create tasks:
+        for (int i = 0; i < nthreads; i++) {
+            final int n0 = i;
+            final int startt = columns * i;
+
+            tasks[i] = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /** Get the current thread to check if the computation is interrupted */
+                    final Thread currentThread = Thread.currentThread();
+
+                    for (int r = n0; r < inputSize; r += nthreads) {
+
+                        // A - clear complete row:
+                        System.arraycopy(emptyData, 0, t, startt, columns);
+
+                        // B - copy input data in t:
+                        // NOTE: the fft reference is not the center of the image but (0,0):
+                        // it implies to split input image in quadrants and shift them 
+                        // to have image at each corners and compute a correct phase i.e. atan2(imaginary/real)
+                        
+                        if (r < idiv2) {
+                            // quadrants 3 and 4 from input image:
+                            System.arraycopy(data[r + idiv2], idiv2, t, startt, idiv2);
+                            System.arraycopy(data[r + idiv2], 0, t, startt + rowInOffset, idiv2);
+                        } else {
+                            // quadrants 2 and 1 from input image (inverted):
+                            System.arraycopy(data[r - idiv2], idiv2, t, startt, idiv2);
+                            System.arraycopy(data[r - idiv2], 0, t, startt + rowInOffset, idiv2);
+                        }
+
+                        // C - compute real forward as t contains real data:
+                        /*
+                         * <pre>
+                         * a[2*k] = Re[k], 0&lt;=k&lt;n/2
+                         * a[2*k+1] = Im[k], 0&lt;k&lt;n/2
+                         * a[1] = Re[n/2]
+                         * </pre>
+                         */
+                        fftColumns.realForward(t, startt);
+
+                        // fast interrupt:
+                        if (currentThread.isInterrupted()) {
+                            return;
+                        }
+
+                        // D - copy data from t to the beginning of output (complex data ie 2*columns):
+                        // NOTE: output data contains:
+                        // - fft data for quadrants 3 and 4 for 0 < r < idiv2
+                        // - fft data for quadrants 2 and 1 for idiv2 < r < inputSize
+                        System.arraycopy(t, startt, output[r], 0, subSizeColumns);
+                    }
+                }
+            };
+        }
+
+        if (nthreads > 1) {
+            // fork and join tasks:
+            ConcurrencyUtils.forkAndJoin(tasks);
+
+        } else {
+            // execute the single task using the current thread:
+            tasks[0].run();
+        }
+
+        
+
+        // 2 - Process columns (complex data):
+        /*
+         * cdft2d_subth(-1, a, true);
+         */
+
+        for (int i = 0; i < nthreads; i++) {
+            final int n0 = i;
+            final int startt = rmul2 * i;
+
+            tasks[i] = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /** Get the current thread to check if the computation is interrupted */
+                    final Thread currentThread = Thread.currentThread();
+
+                    int idx2, reIdx, imIdx;
+                    double[] oRow;
+                    double re, im;
+
+                    // include column/2:
+                    for (int c = n0; c < scdiv2; c += nthreads) {
+                        reIdx = 2 * c;
+                        imIdx = reIdx + 1;
+                        /*
+                         * <pre>
+                         * a[2*k] = Re[k], 0&lt;=k&lt;n/2
+                         * a[2*k+1] = Im[k], 0&lt;k&lt;n/2
+                         * a[1] = Re[n/2]
+                         * </pre>
+                         */
+
+                        // A - clear complete column:
+                        System.arraycopy(emptyData, 0, t, startt, rmul2);
+
+                        
+                        
+                        // B - copy input data in t:
+                        // NOTE: output data contains:
+                        // - fft data for quadrants 3 and 4 for 0 < r < idiv2
+                        // - fft data for quadrants 2 and 1 for idiv2 < r < inputSize
+                        // copy these data at the beginning and end of each column:
+                        
+                        // B - copy row data and center rows in t (complex data ie 2*columns):
+                        for (int r = 0; r < idiv2; r++) {
+                            // copy fft data for quadrants 3 and 4:
+                            oRow = output[r];
+
+                            // process array one by one (cache efficiency):
+                            re = oRow[reIdx];
+                            im = oRow[imIdx];
+
+                            // put fft data at the beginning of the t array:
+                            idx2 = startt + 2 * r;
+
+                            t[idx2] = re;
+                            t[idx2 + 1] = im;
+
+                            // copy fft data for quadrants 2 and 1:
+                            oRow = output[r + idiv2];
+
+                            // process array one by one (cache efficiency):
+                            re = oRow[reIdx];
+                            im = oRow[imIdx];
+
+                            // put fft data at the end of the t array:
+                            idx2 = startt + 2 * (r + rowInOffset);
+
+                            t[idx2] = re;
+                            t[idx2 + 1] = im;
+                        }
+
+                        // C - compute complex forward as t contains complex data:
+                        fftRows.complexForward(t, startt);
+
+                        // fast interrupt:
+                        if (currentThread.isInterrupted()) {
+                            return;
+                        }
+
+                        // D - Fix column 0 directly on t:
+                        if (c == 0) {
+                            /*
+                             * rdft2d_sub(1, a);
+                             */
+
+                            // process only subSize / 2 rows:
+
+                            for (int i = 1, idxI, idxJ; i < sdiv2; i++) {
+                                idxI = startt + 2 * i;
+                                idxJ = startt + rmul2 - 2 * i;
+
+                                t[idxJ] = 0.5 * (t[idxI] - t[idxJ]);
+                                t[idxI] -= t[idxJ]; // ie : 0.5 * (t[idxI] + t[idxJ])
+
+                                t[idxJ + 1] = 0.5 * (t[idxI + 1] + t[idxJ + 1]);
+                                t[idxI + 1] -= t[idxJ + 1];
+                            }
+                        }
+
+                        // E - copy data from t(start and end) to output (complex data ie 2*columns):
+                        for (int r = 0; r < sdiv2; r++) {
+                            idx2 = startt + 2 * r;
+
+                            // process array one by one (cache efficiency):
+                            re = t[idx2];
+                            im = t[idx2 + 1];
+
+                            oRow = output[r];
+                            oRow[reIdx] = re;
+                            oRow[imIdx] = im;
+
+                            idx2 = startt + 2 * (r + rowOutOffset);
+
+                            // process array one by one (cache efficiency):
+                            re = t[idx2];
+                            im = t[idx2 + 1];
+
+                            oRow = output[r + sdiv2];
+                            oRow[reIdx] = re;
+                            oRow[imIdx] = im;
+                        }
+                    }
+                }
+            };
+        }
+
+        if (nthreads > 1) {
+            // fork and join tasks:
+            ConcurrencyUtils.forkAndJoin(tasks);
+
+        } else {
+            // execute the single task using the current thread:
+            tasks[0].run();
+        }
+
+
+        if (subSize < columns) {
+            // fix column zero:
+            // Known problem on values at row=rows/2 and col=columns/2 (data symetry on boundaries and missing imaginary part) = acceptable.
+            // Solution: fix output[rows][0/1] when rows > 1
+            /*
+             * a[rows-k1][1] = Re[k1][columns/2] = Re[rows-k1][columns/2], 
+             * a[rows-k1][0] = -Im[k1][columns/2] = Im[rows-k1][columns/2], 
+             *       0&lt;k1&lt;rows/2, 
+             */
+            for (int r = 1, j; r < sdiv2; r++) {
+                j = subSize - r;
+
+                output[j][1] = output[r][subSize];
+                output[j][0] = -output[r][subSize + 1];
+            }
+
+            /*
+             * a[0][1] = Re[0][columns/2], 
+             */
+            output[0][1] = output[0][subSize];
+
+            /*
+             * a[rows/2][1] = Re[rows/2][columns/2]
+             */
+            output[sdiv2][1] = output[sdiv2][subSize]; // quadrant 3
+
+
+            // Clear column/2 values:
+            for (int r = 0; r < subSize; r++) {
+                output[r][subSize] = 0;
+                output[r][subSize + 1] = 0;
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Return the number of columns of the output of realForwardSubset for the given sub size
+     * (1 column pair more to store columns/2 values if subSize &lt; columns)
+     * 
+     * @param subSize size = rows of the output array containing the subset of the 2D forward DFT
+     * @return number of columns of the output array
+     */
+    public int getSubsetColumns(final int subSize) {
+        return (subSize < columns) ? subSize + 2 : subSize;
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of real data for a batch of planes (cube)
+     * in a single pass: rows and columns of all planes are processed by the same tasks (plane, row)
+     * so small planes still use all threads and the t array is shared by all planes.
+     * This method only works when the sizes of both dimensions are even numbers.
+     * The physical layout of each output plane is the one of realForwardSubset(subSize, inputSize, data, outputData)
+     * stored in a flat array: plane p, row r starts at index (p * subSize + r) * getSubsetColumns(subSize).
+     * 
+     * @param subSize size = rows = columns of the output planes containing the subset of the 2D forward DFT (must be an even number)
+     * @param inputSize size = rows = columns of the input planes (must be an even number)
+     * @param planes number of planes
+     * @param data flat data to transform
+     * @param offset index of the first value (plane = 0, row = 0, col = 0) in data
+     * @param rowStride distance between two input rows in data
+     * @param planeStride distance between two input planes in data
+     * @param outputData optional flat output data (length &gt;= planes * subSize * getSubsetColumns(subSize))
+     * @return flat output data containing the subsets of the 2D forward DFT of all planes
+     */
+    public double[] realForwardSubset(final int subSize, final int inputSize, final int planes,
+                                     final double[] data, final int offset, final int rowStride, final int planeStride,
+                                     final double[] outputData) {
+        if ((rows % 2 != 0) || (columns % 2 != 0)) {
+            throw new IllegalArgumentException("rows and columns must be even numbers.");
+        }
+        if (subSize % 2 != 0) {
+            throw new IllegalArgumentException("sub size must be an even number because subSize = number of rows = 2 * (columns / 2).");
+        }
+        if (inputSize % 2 != 0) {
+            throw new IllegalArgumentException("input size must be an even number because input size / 2 = center of image.");
+        }
+        if (inputSize > subSize) {
+            throw new IllegalArgumentException("output size must be larger than input size.");
+        }
+        if (subSize > rows) {
+            throw new IllegalArgumentException("sub size must be larger than fft size.");
+        }
+        if (planes <= 0) {
+            throw new IllegalArgumentException("planes must be greater than 0.");
+        }
+
+        // use threads if the complete cube is large enough:
+        final int nthreads = (!useThreads && ((long) planes * rows * columns) < ConcurrencyUtils.getThreadsBeginN_2D())
+                ? 1 : ConcurrencyUtils.getNumberOfThreads();
+
+        // fix t array capacity:
+        if (oldNthreads != -1) {
+            nt = nthreads * 2 * rows;
+            t = new double[nt];
+            oldNthreads = -1; // to ensure correct allocation next time
+        }
+
+        // add 1 column more to compute and store columns/2 values:
+        final int subSizeColumns = getSubsetColumns(subSize);
+        final int outPlaneStride = subSize * subSizeColumns;
+
+        // Create new output array (could be given):
+        final double[] output;
+        if ((outputData != null) && (outputData.length >= planes * outPlaneStride)) {
+            output = outputData;
+        } else {
+            output = new double[planes * outPlaneStride];
+        }
+
+        final int rmul2 = 2 * rows;
+        final int idiv2 = inputSize / 2;
+        final int rowInOffset = (columns - idiv2);
+        final int sdiv2 = subSize / 2;
+        final int scdiv2 = subSizeColumns / 2;
+        final int rowOutOffset = (columns - sdiv2);
+
+        // emptyData contain 2 * rows or columns used by both rows and columns:
+        final double[] emptyData;
+        if (emptyArray == null) {
+            emptyArray = emptyData = new double[Math.max(rmul2, columns)]; // fixed
+        } else {
+            emptyData = emptyArray;
+        }
+
+        // computation tasks:
+        final Runnable[] tasks = new Runnable[nthreads];
+
+        // 1 - Process rows of all planes (plane, row):
+        final int nRows = planes * inputSize;
+
+        for (int i = 0; i < nthreads; i++) {
+            final int n0 = i;
+            final int startt = columns * i;
+
+            tasks[i] = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /** Get the current thread to check if the computation is interrupted */
+                    final Thread currentThread = Thread.currentThread();
+
+                    for (int k = n0, p, r, inRow; k < nRows; k += nthreads) {
+                        p = k / inputSize;
+                        r = k - p * inputSize;
+
+                        // A - clear complete row:
+                        System.arraycopy(emptyData, 0, t, startt, columns);
+
+                        // B - copy input data in t (quadrants 3 and 4 then quadrants 2 and 1, see realForwardSubset):
+                        inRow = offset + p * planeStride + ((r < idiv2) ? r + idiv2 : r - idiv2) * rowStride;
+
+                        System.arraycopy(data, inRow + idiv2, t, startt, idiv2);
+                        System.arraycopy(data, inRow, t, startt + rowInOffset, idiv2);
+
+                        // C - compute real forward as t contains real data:
+                        fftColumns.realForward(t, startt);
+
+                        // fast interrupt:
+                        if (currentThread.isInterrupted()) {
+                            return;
+                        }
+
+                        // D - copy data from t to the beginning of the output plane (complex data ie 2*columns):
+                        System.arraycopy(t, startt, output, p * outPlaneStride + r * subSizeColumns, subSizeColumns);
+                    }
+                }
+            };
+        }
+
+        if (nthreads > 1) {
+            // fork and join tasks:
+            ConcurrencyUtils.forkAndJoin(tasks);
+
+        } else {
+            // execute the single task using the current thread:
+            tasks[0].run();
+        }
+
+        // 2 - Process columns of all planes (plane, column) (complex data):
+        final int nCols = planes * scdiv2;
+
+        for (int i = 0; i < nthreads; i++) {
+            final int n0 = i;
+            final int startt = rmul2 * i;
+
+            tasks[i] = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /** Get the current thread to check if the computation is interrupted */
+                    final Thread currentThread = Thread.currentThread();
+
+                    int idx2, oIdx, base;
+
+                    // include column/2:
+                    for (int k = n0, p, c; k < nCols; k += nthreads) {
+                        p = k / scdiv2;
+                        c = k - p * scdiv2;
+
+                        // index of the real part of the column c in the first row of the plane p:
+                        base = p * outPlaneStride + 2 * c;
+
+                        // A - clear complete column:
+                        System.arraycopy(emptyData, 0, t, startt, rmul2);
+
+                        // B - copy row data and center rows in t (complex data ie 2*columns):
+                        for (int r = 0; r < idiv2; r++) {
+                            // copy fft data for quadrants 3 and 4 at the beginning of the t array:
+                            oIdx = base + r * subSizeColumns;
+                            idx2 = startt + 2 * r;
+
+                            t[idx2] = output[oIdx];
+                            t[idx2 + 1] = output[oIdx + 1];
+
+                            // copy fft data for quadrants 2 and 1 at the end of the t array:
+                            oIdx = base + (r + idiv2) * subSizeColumns;
+                            idx2 = startt + 2 * (r + rowInOffset);
+
+                            t[idx2] = output[oIdx];
+                            t[idx2 + 1] = output[oIdx + 1];
+                        }
+
+                        // C - compute complex forward as t contains complex data:
+                        fftRows.complexForward(t, startt);
+
+                        // fast interrupt:
+                        if (currentThread.isInterrupted()) {
+                            return;
+                        }
+
+                        // D - Fix column 0 directly on t (process only subSize / 2 rows):
+                        if (c == 0) {
+                            for (int i = 1, idxI, idxJ; i < sdiv2; i++) {
+                                idxI = startt + 2 * i;
+                                idxJ = startt + rmul2 - 2 * i;
+
+                                t[idxJ] = 0.5 * (t[idxI] - t[idxJ]);
+                                t[idxI] -= t[idxJ]; // ie : 0.5 * (t[idxI] + t[idxJ])
+
+                                t[idxJ + 1] = 0.5 * (t[idxI + 1] + t[idxJ + 1]);
+                                t[idxI + 1] -= t[idxJ + 1];
+                            }
+                        }
+
+                        // E - copy data from t(start and end) to output (complex data ie 2*columns):
+                        for (int r = 0; r < sdiv2; r++) {
+                            idx2 = startt + 2 * r;
+                            oIdx = base + r * subSizeColumns;
+
+                            output[oIdx] = t[idx2];
+                            output[oIdx + 1] = t[idx2 + 1];
+
+                            idx2 = startt + 2 * (r + rowOutOffset);
+                            oIdx = base + (r + sdiv2) * subSizeColumns;
+
+                            output[oIdx] = t[idx2];
+                            output[oIdx + 1] = t[idx2 + 1];
+                        }
+                    }
+                }
+            };
+        }
+
+        if (nthreads > 1) {
+            // fork and join tasks:
+            ConcurrencyUtils.forkAndJoin(tasks);
+
+        } else {
+            // execute the single task using the current thread:
+            tasks[0].run();
+        }
+
+        if (subSize < columns) {
+            // fix column zero of each plane (see realForwardSubset):
+            for (int p = 0, base; p < planes; p++) {
+                base = p * outPlaneStride;
+
+                for (int r = 1, j; r < sdiv2; r++) {
+                    j = subSize - r;
+
+                    output[base + j * subSizeColumns + 1] = output[base + r * subSizeColumns + subSize];
+                    output[base + j * subSizeColumns] = -output[base + r * subSizeColumns + subSize + 1];
+                }
+
+                output[base + 1] = output[base + subSize];
+
+                output[base + sdiv2 * subSizeColumns + 1] = output[base + sdiv2 * subSizeColumns + subSize]; // quadrant 3
+
+                // Clear column/2 values:
+                for (int r = 0; r < subSize; r++) {
+                    output[base + r * subSizeColumns + subSize] = 0;
+                    output[base + r * subSizeColumns + subSize + 1] = 0;
+                }
+            }
+        }
+
+        return output;
+    }
+
     /**
      * Computes 2D forward DFT of real data leaving the result in <code>a</code>
      * . This method computes full real forward transform, i.e. you will get the
@@ -980,12 +1681,13 @@ public class DoubleFFT_2D {
 
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && useThreads && (rows >= nthreads) && (n2d2 - 2 >= nthreads)) {
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int p = rows / nthreads;
             for (int l = 0; l < nthreads; l++) {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int i = firstRow; i < lastRow; i++) {
                             fftColumns.realForward(a[i]);
@@ -1005,6 +1707,7 @@ public class DoubleFFT_2D {
                 final int firstColumn = 1 + l * p;
                 final int lastColumn = (l == (nthreads - 1)) ? n2d2 - 1 : firstColumn + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int c = firstColumn; c < lastColumn; c++) {
                             int idx2 = 2 * c;
@@ -1043,6 +1746,7 @@ public class DoubleFFT_2D {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx1 = 2 * r;
@@ -1061,6 +1765,7 @@ public class DoubleFFT_2D {
                 final int firstRow = 1 + l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx3 = rows - r;
@@ -1147,12 +1852,13 @@ public class DoubleFFT_2D {
 
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && useThreads && (rows >= nthreads) && (n2d2 - 2 >= nthreads)) {
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int p = rows / nthreads;
             for (int l = 0; l < nthreads; l++) {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int i = firstRow; i < lastRow; i++) {
                             fftColumns.realForward(a, i * columns);
@@ -1172,6 +1878,7 @@ public class DoubleFFT_2D {
                 final int firstColumn = 1 + l * p;
                 final int lastColumn = (l == (nthreads - 1)) ? n2d2 - 1 : firstColumn + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int c = firstColumn; c < lastColumn; c++) {
                             int idx0 = 2 * c;
@@ -1187,7 +1894,7 @@ public class DoubleFFT_2D {
                 });
             }
             ConcurrencyUtils.waitForCompletion(futures);
-            
+
             if ((columns % 2) == 0) {
                 for (int r = 0; r < rows; r++) {
                     temp[n2d2 - 1][r] = a[r * columns + 1];
@@ -1211,6 +1918,7 @@ public class DoubleFFT_2D {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx1 = 2 * r;
@@ -1225,11 +1933,12 @@ public class DoubleFFT_2D {
                 });
             }
             ConcurrencyUtils.waitForCompletion(futures);
-            
+
             for (int l = 0; l < nthreads; l++) {
                 final int firstRow = 1 + l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx5 = r * rowStride;
@@ -1249,7 +1958,6 @@ public class DoubleFFT_2D {
                 });
             }
             ConcurrencyUtils.waitForCompletion(futures);
-            
         } else {
             for (int r = 0; r < rows; r++) {
                 fftColumns.realForward(a, r * columns);
@@ -1322,12 +2030,13 @@ public class DoubleFFT_2D {
 
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && useThreads && (rows >= nthreads) && (n2d2 - 2 >= nthreads)) {
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int p = rows / nthreads;
             for (int l = 0; l < nthreads; l++) {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int i = firstRow; i < lastRow; i++) {
                             fftColumns.realInverse2(a[i], 0, scale);
@@ -1347,6 +2056,7 @@ public class DoubleFFT_2D {
                 final int firstColumn = 1 + l * p;
                 final int lastColumn = (l == (nthreads - 1)) ? n2d2 - 1 : firstColumn + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int c = firstColumn; c < lastColumn; c++) {
                             int idx2 = 2 * c;
@@ -1385,6 +2095,7 @@ public class DoubleFFT_2D {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx1 = 2 * r;
@@ -1403,6 +2114,7 @@ public class DoubleFFT_2D {
                 final int firstRow = 1 + l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx3 = rows - r;
@@ -1489,12 +2201,13 @@ public class DoubleFFT_2D {
 
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && useThreads && (rows >= nthreads) && (n2d2 - 2 >= nthreads)) {
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int p = rows / nthreads;
             for (int l = 0; l < nthreads; l++) {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int i = firstRow; i < lastRow; i++) {
                             fftColumns.realInverse2(a, i * columns, scale);
@@ -1514,6 +2227,7 @@ public class DoubleFFT_2D {
                 final int firstColumn = 1 + l * p;
                 final int lastColumn = (l == (nthreads - 1)) ? n2d2 - 1 : firstColumn + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int c = firstColumn; c < lastColumn; c++) {
                             int idx0 = 2 * c;
@@ -1553,6 +2267,7 @@ public class DoubleFFT_2D {
                 final int firstRow = l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx1 = 2 * r;
@@ -1572,6 +2287,7 @@ public class DoubleFFT_2D {
                 final int firstRow = 1 + l * p;
                 final int lastRow = (l == (nthreads - 1)) ? rows : firstRow + p;
                 futures[l] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         for (int r = firstRow; r < lastRow; r++) {
                             int idx5 = r * rowStride;
@@ -1680,9 +2396,9 @@ public class DoubleFFT_2D {
                 j = rows - i;
                 idx1 = i * columns;
                 idx2 = j * columns;
-                a[idx2] = 0.5f * (a[idx1] - a[idx2]);
+                a[idx2] = 0.5 * (a[idx1] - a[idx2]);
                 a[idx1] -= a[idx2];
-                a[idx2 + 1] = 0.5f * (a[idx1 + 1] + a[idx2 + 1]);
+                a[idx2 + 1] = 0.5 * (a[idx1 + 1] + a[idx2 + 1]);
                 a[idx1 + 1] -= a[idx2 + 1];
             }
         }
@@ -1706,9 +2422,9 @@ public class DoubleFFT_2D {
         } else {
             for (int i = 1; i < n1h; i++) {
                 j = rows - i;
-                a[j][0] = 0.5f * (a[i][0] - a[j][0]);
+                a[j][0] = 0.5 * (a[i][0] - a[j][0]);
                 a[i][0] -= a[j][0];
-                a[j][1] = 0.5f * (a[i][1] + a[j][1]);
+                a[j][1] = 0.5 * (a[i][1] + a[j][1]);
                 a[i][1] -= a[j][1];
             }
         }
@@ -1869,14 +2585,16 @@ public class DoubleFFT_2D {
 
     private void cdft2d_sub(int isgn, double[][] a, boolean scale) {
         int idx2, idx3, idx4, idx5;
+        final int rmul2 = 2 * rows;
+
         if (isgn == -1) {
             if (columns > 4) {
                 for (int c = 0; c < columns; c += 8) {
                     for (int r = 0; r < rows; r++) {
                         idx2 = 2 * r;
-                        idx3 = 2 * rows + 2 * r;
-                        idx4 = idx3 + 2 * rows;
-                        idx5 = idx4 + 2 * rows;
+                        idx3 = idx2 + rmul2;
+                        idx4 = idx3 + rmul2;
+                        idx5 = idx4 + rmul2;
                         t[idx2] = a[r][c];
                         t[idx2 + 1] = a[r][c + 1];
                         t[idx3] = a[r][c + 2];
@@ -1887,14 +2605,15 @@ public class DoubleFFT_2D {
                         t[idx5 + 1] = a[r][c + 7];
                     }
                     fftRows.complexForward(t, 0);
-                    fftRows.complexForward(t, 2 * rows);
-                    fftRows.complexForward(t, 4 * rows);
-                    fftRows.complexForward(t, 6 * rows);
+                    fftRows.complexForward(t, rmul2);
+                    fftRows.complexForward(t, 2 * rmul2);
+                    fftRows.complexForward(t, 3 * rmul2);
+
                     for (int r = 0; r < rows; r++) {
                         idx2 = 2 * r;
-                        idx3 = 2 * rows + 2 * r;
-                        idx4 = idx3 + 2 * rows;
-                        idx5 = idx4 + 2 * rows;
+                        idx3 = idx2 + rmul2;
+                        idx4 = idx3 + rmul2;
+                        idx5 = idx4 + rmul2;
                         a[r][c] = t[idx2];
                         a[r][c + 1] = t[idx2 + 1];
                         a[r][c + 2] = t[idx3];
@@ -1908,17 +2627,18 @@ public class DoubleFFT_2D {
             } else if (columns == 4) {
                 for (int r = 0; r < rows; r++) {
                     idx2 = 2 * r;
-                    idx3 = 2 * rows + 2 * r;
+                    idx3 = idx2 + rmul2;
                     t[idx2] = a[r][0];
                     t[idx2 + 1] = a[r][1];
                     t[idx3] = a[r][2];
                     t[idx3 + 1] = a[r][3];
                 }
                 fftRows.complexForward(t, 0);
-                fftRows.complexForward(t, 2 * rows);
+                fftRows.complexForward(t, rmul2);
+
                 for (int r = 0; r < rows; r++) {
                     idx2 = 2 * r;
-                    idx3 = 2 * rows + 2 * r;
+                    idx3 = idx2 + rmul2;
                     a[r][0] = t[idx2];
                     a[r][1] = t[idx2 + 1];
                     a[r][2] = t[idx3];
@@ -1931,6 +2651,7 @@ public class DoubleFFT_2D {
                     t[idx2 + 1] = a[r][1];
                 }
                 fftRows.complexForward(t, 0);
+
                 for (int r = 0; r < rows; r++) {
                     idx2 = 2 * r;
                     a[r][0] = t[idx2];
@@ -1942,9 +2663,9 @@ public class DoubleFFT_2D {
                 for (int c = 0; c < columns; c += 8) {
                     for (int r = 0; r < rows; r++) {
                         idx2 = 2 * r;
-                        idx3 = 2 * rows + 2 * r;
-                        idx4 = idx3 + 2 * rows;
-                        idx5 = idx4 + 2 * rows;
+                        idx3 = idx2 + rmul2;
+                        idx4 = idx3 + rmul2;
+                        idx5 = idx4 + rmul2;
                         t[idx2] = a[r][c];
                         t[idx2 + 1] = a[r][c + 1];
                         t[idx3] = a[r][c + 2];
@@ -1955,14 +2676,15 @@ public class DoubleFFT_2D {
                         t[idx5 + 1] = a[r][c + 7];
                     }
                     fftRows.complexInverse(t, 0, scale);
-                    fftRows.complexInverse(t, 2 * rows, scale);
-                    fftRows.complexInverse(t, 4 * rows, scale);
-                    fftRows.complexInverse(t, 6 * rows, scale);
+                    fftRows.complexInverse(t, rmul2, scale);
+                    fftRows.complexInverse(t, 2 * rmul2, scale);
+                    fftRows.complexInverse(t, 3 * rmul2, scale);
+
                     for (int r = 0; r < rows; r++) {
                         idx2 = 2 * r;
-                        idx3 = 2 * rows + 2 * r;
-                        idx4 = idx3 + 2 * rows;
-                        idx5 = idx4 + 2 * rows;
+                        idx3 = idx2 + rmul2;
+                        idx4 = idx3 + rmul2;
+                        idx5 = idx4 + rmul2;
                         a[r][c] = t[idx2];
                         a[r][c + 1] = t[idx2 + 1];
                         a[r][c + 2] = t[idx3];
@@ -1976,17 +2698,18 @@ public class DoubleFFT_2D {
             } else if (columns == 4) {
                 for (int r = 0; r < rows; r++) {
                     idx2 = 2 * r;
-                    idx3 = 2 * rows + 2 * r;
+                    idx3 = idx2 + rmul2;
                     t[idx2] = a[r][0];
                     t[idx2 + 1] = a[r][1];
                     t[idx3] = a[r][2];
                     t[idx3 + 1] = a[r][3];
                 }
                 fftRows.complexInverse(t, 0, scale);
-                fftRows.complexInverse(t, 2 * rows, scale);
+                fftRows.complexInverse(t, rmul2, scale);
+
                 for (int r = 0; r < rows; r++) {
                     idx2 = 2 * r;
-                    idx3 = 2 * rows + 2 * r;
+                    idx3 = idx2 + rmul2;
                     a[r][0] = t[idx2];
                     a[r][1] = t[idx2 + 1];
                     a[r][2] = t[idx3];
@@ -1999,6 +2722,7 @@ public class DoubleFFT_2D {
                     t[idx2 + 1] = a[r][1];
                 }
                 fftRows.complexInverse(t, 0, scale);
+
                 for (int r = 0; r < rows; r++) {
                     idx2 = 2 * r;
                     a[r][0] = t[idx2];
@@ -2011,10 +2735,11 @@ public class DoubleFFT_2D {
     private void xdft2d0_subth1(final int icr, final int isgn, final double[] a, final boolean scale) {
         final int nthreads = ConcurrencyUtils.getNumberOfThreads() > rows ? rows : ConcurrencyUtils.getNumberOfThreads();
 
-        Future<?>[] futures = new Future[nthreads];
+        Future<?>[] futures = new Future<?>[nthreads];
         for (int i = 0; i < nthreads; i++) {
             final int n0 = i;
             futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                 public void run() {
                     if (icr == 0) {
                         if (isgn == -1) {
@@ -2046,10 +2771,11 @@ public class DoubleFFT_2D {
     private void xdft2d0_subth2(final int icr, final int isgn, final double[] a, final boolean scale) {
         final int nthreads = ConcurrencyUtils.getNumberOfThreads() > rows ? rows : ConcurrencyUtils.getNumberOfThreads();
 
-        Future<?>[] futures = new Future[nthreads];
+        Future<?>[] futures = new Future<?>[nthreads];
         for (int i = 0; i < nthreads; i++) {
             final int n0 = i;
             futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                 public void run() {
                     if (icr == 0) {
                         if (isgn == -1) {
@@ -2081,10 +2807,11 @@ public class DoubleFFT_2D {
     private void xdft2d0_subth1(final int icr, final int isgn, final double[][] a, final boolean scale) {
         final int nthreads = ConcurrencyUtils.getNumberOfThreads() > rows ? rows : ConcurrencyUtils.getNumberOfThreads();
 
-        Future<?>[] futures = new Future[nthreads];
+        Future<?>[] futures = new Future<?>[nthreads];
         for (int i = 0; i < nthreads; i++) {
             final int n0 = i;
             futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                 public void run() {
                     if (icr == 0) {
                         if (isgn == -1) {
@@ -2116,10 +2843,11 @@ public class DoubleFFT_2D {
     private void xdft2d0_subth2(final int icr, final int isgn, final double[][] a, final boolean scale) {
         final int nthreads = ConcurrencyUtils.getNumberOfThreads() > rows ? rows : ConcurrencyUtils.getNumberOfThreads();
 
-        Future<?>[] futures = new Future[nthreads];
+        Future<?>[] futures = new Future<?>[nthreads];
         for (int i = 0; i < nthreads; i++) {
             final int n0 = i;
             futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                 public void run() {
                     if (icr == 0) {
                         if (isgn == -1) {
@@ -2157,12 +2885,13 @@ public class DoubleFFT_2D {
             nthread = columns >> 1;
             nt >>= 2;
         }
-        Future<?>[] futures = new Future[nthread];
+        Future<?>[] futures = new Future<?>[nthread];
         final int nthreads = nthread;
         for (int i = 0; i < nthread; i++) {
             final int n0 = i;
             final int startt = nt * i;
             futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                 public void run() {
                     int idx1, idx2, idx3, idx4, idx5;
                     if (isgn == -1) {
@@ -2329,22 +3058,24 @@ public class DoubleFFT_2D {
             nthread = columns >> 1;
             nt >>= 2;
         }
-        Future<?>[] futures = new Future[nthread];
+        Future<?>[] futures = new Future<?>[nthread];
         final int nthreads = nthread;
         for (int i = 0; i < nthreads; i++) {
             final int n0 = i;
             final int startt = nt * i;
             futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                 public void run() {
                     int idx2, idx3, idx4, idx5;
+                    final int rmul2 = 2 * rows;
                     if (isgn == -1) {
                         if (columns > 4 * nthreads) {
                             for (int c = 8 * n0; c < columns; c += 8 * nthreads) {
                                 for (int r = 0; r < rows; r++) {
                                     idx2 = startt + 2 * r;
-                                    idx3 = startt + 2 * rows + 2 * r;
-                                    idx4 = idx3 + 2 * rows;
-                                    idx5 = idx4 + 2 * rows;
+                                    idx3 = idx2 + rmul2;
+                                    idx4 = idx3 + rmul2;
+                                    idx5 = idx4 + rmul2;
                                     t[idx2] = a[r][c];
                                     t[idx2 + 1] = a[r][c + 1];
                                     t[idx3] = a[r][c + 2];
@@ -2355,14 +3086,15 @@ public class DoubleFFT_2D {
                                     t[idx5 + 1] = a[r][c + 7];
                                 }
                                 fftRows.complexForward(t, startt);
-                                fftRows.complexForward(t, startt + 2 * rows);
-                                fftRows.complexForward(t, startt + 4 * rows);
-                                fftRows.complexForward(t, startt + 6 * rows);
+                                fftRows.complexForward(t, startt + rmul2);
+                                fftRows.complexForward(t, startt + 2 * rmul2);
+                                fftRows.complexForward(t, startt + 3 * rmul2);
+
                                 for (int r = 0; r < rows; r++) {
                                     idx2 = startt + 2 * r;
-                                    idx3 = startt + 2 * rows + 2 * r;
-                                    idx4 = idx3 + 2 * rows;
-                                    idx5 = idx4 + 2 * rows;
+                                    idx3 = idx2 + rmul2;
+                                    idx4 = idx3 + rmul2;
+                                    idx5 = idx4 + rmul2;
                                     a[r][c] = t[idx2];
                                     a[r][c + 1] = t[idx2 + 1];
                                     a[r][c + 2] = t[idx3];
@@ -2376,17 +3108,18 @@ public class DoubleFFT_2D {
                         } else if (columns == 4 * nthreads) {
                             for (int r = 0; r < rows; r++) {
                                 idx2 = startt + 2 * r;
-                                idx3 = startt + 2 * rows + 2 * r;
+                                idx3 = idx2 + rmul2;
                                 t[idx2] = a[r][4 * n0];
                                 t[idx2 + 1] = a[r][4 * n0 + 1];
                                 t[idx3] = a[r][4 * n0 + 2];
                                 t[idx3 + 1] = a[r][4 * n0 + 3];
                             }
                             fftRows.complexForward(t, startt);
-                            fftRows.complexForward(t, startt + 2 * rows);
+                            fftRows.complexForward(t, startt + rmul2);
+
                             for (int r = 0; r < rows; r++) {
                                 idx2 = startt + 2 * r;
-                                idx3 = startt + 2 * rows + 2 * r;
+                                idx3 = idx2 + rmul2;
                                 a[r][4 * n0] = t[idx2];
                                 a[r][4 * n0 + 1] = t[idx2 + 1];
                                 a[r][4 * n0 + 2] = t[idx3];
@@ -2399,6 +3132,7 @@ public class DoubleFFT_2D {
                                 t[idx2 + 1] = a[r][2 * n0 + 1];
                             }
                             fftRows.complexForward(t, startt);
+
                             for (int r = 0; r < rows; r++) {
                                 idx2 = startt + 2 * r;
                                 a[r][2 * n0] = t[idx2];
@@ -2410,9 +3144,9 @@ public class DoubleFFT_2D {
                             for (int c = 8 * n0; c < columns; c += 8 * nthreads) {
                                 for (int r = 0; r < rows; r++) {
                                     idx2 = startt + 2 * r;
-                                    idx3 = startt + 2 * rows + 2 * r;
-                                    idx4 = idx3 + 2 * rows;
-                                    idx5 = idx4 + 2 * rows;
+                                    idx3 = idx2 + rmul2;
+                                    idx4 = idx3 + rmul2;
+                                    idx5 = idx4 + rmul2;
                                     t[idx2] = a[r][c];
                                     t[idx2 + 1] = a[r][c + 1];
                                     t[idx3] = a[r][c + 2];
@@ -2423,14 +3157,15 @@ public class DoubleFFT_2D {
                                     t[idx5 + 1] = a[r][c + 7];
                                 }
                                 fftRows.complexInverse(t, startt, scale);
-                                fftRows.complexInverse(t, startt + 2 * rows, scale);
-                                fftRows.complexInverse(t, startt + 4 * rows, scale);
-                                fftRows.complexInverse(t, startt + 6 * rows, scale);
+                                fftRows.complexInverse(t, startt + rmul2, scale);
+                                fftRows.complexInverse(t, startt + 2 * rmul2, scale);
+                                fftRows.complexInverse(t, startt + 3 * rmul2, scale);
+
                                 for (int r = 0; r < rows; r++) {
                                     idx2 = startt + 2 * r;
-                                    idx3 = startt + 2 * rows + 2 * r;
-                                    idx4 = idx3 + 2 * rows;
-                                    idx5 = idx4 + 2 * rows;
+                                    idx3 = idx2 + rmul2;
+                                    idx4 = idx3 + rmul2;
+                                    idx5 = idx4 + rmul2;
                                     a[r][c] = t[idx2];
                                     a[r][c + 1] = t[idx2 + 1];
                                     a[r][c + 2] = t[idx3];
@@ -2444,17 +3179,18 @@ public class DoubleFFT_2D {
                         } else if (columns == 4 * nthreads) {
                             for (int r = 0; r < rows; r++) {
                                 idx2 = startt + 2 * r;
-                                idx3 = startt + 2 * rows + 2 * r;
+                                idx3 = idx2 + rmul2;
                                 t[idx2] = a[r][4 * n0];
                                 t[idx2 + 1] = a[r][4 * n0 + 1];
                                 t[idx3] = a[r][4 * n0 + 2];
                                 t[idx3 + 1] = a[r][4 * n0 + 3];
                             }
                             fftRows.complexInverse(t, startt, scale);
-                            fftRows.complexInverse(t, startt + 2 * rows, scale);
+                            fftRows.complexInverse(t, startt + rmul2, scale);
+
                             for (int r = 0; r < rows; r++) {
                                 idx2 = startt + 2 * r;
-                                idx3 = startt + 2 * rows + 2 * r;
+                                idx3 = idx2 + rmul2;
                                 a[r][4 * n0] = t[idx2];
                                 a[r][4 * n0 + 1] = t[idx2 + 1];
                                 a[r][4 * n0 + 2] = t[idx3];
@@ -2497,14 +3233,14 @@ public class DoubleFFT_2D {
         }
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && useThreads && (n1d2 >= nthreads)) {
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int l1k = n1d2 / nthreads;
             final int newn2 = 2 * columns;
             for (int i = 0; i < nthreads; i++) {
                 final int l1offa, l1stopa, l2offa, l2stopa;
-                if (i == 0)
+                if (i == 0) {
                     l1offa = i * l1k + 1;
-                else {
+                } else {
                     l1offa = i * l1k;
                 }
                 l1stopa = i * l1k + l1k;
@@ -2515,6 +3251,7 @@ public class DoubleFFT_2D {
                     l2stopa = i * l1k + l1k;
                 }
                 futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         int idx1, idx2, idx3, idx4;
 
@@ -2594,13 +3331,13 @@ public class DoubleFFT_2D {
 
         int nthreads = ConcurrencyUtils.getNumberOfThreads();
         if ((nthreads > 1) && useThreads && (n1d2 >= nthreads)) {
-            Future<?>[] futures = new Future[nthreads];
+            Future<?>[] futures = new Future<?>[nthreads];
             int l1k = n1d2 / nthreads;
             for (int i = 0; i < nthreads; i++) {
                 final int l1offa, l1stopa, l2offa, l2stopa;
-                if (i == 0)
+                if (i == 0) {
                     l1offa = i * l1k + 1;
-                else {
+                } else {
                     l1offa = i * l1k;
                 }
                 l1stopa = i * l1k + l1k;
@@ -2611,6 +3348,7 @@ public class DoubleFFT_2D {
                     l2stopa = i * l1k + l1k;
                 }
                 futures[i] = ConcurrencyUtils.submit(new Runnable() {
+
                     public void run() {
                         int idx1, idx2;
                         for (int r = l1offa; r < l1stopa; r++) {
@@ -115,6 +115,13 @@ public final class FloatFFT_2D {
             }
         } else {
             isPowerOfTwo = false;
+
+            // LBO: realForwardSubset also supports even sizes (mixed radix or bluestein 1D plans):
+            if (useSubSet && (rows % 2 == 0) && (columns % 2 == 0)) {
+                oldNthreads = -1;
+                nt = ConcurrencyUtils.getNumberOfThreads() * 2 * rows;
+                t = new float[nt];
+            }
         }
         fftRows = new FloatFFT_1D(rows, false);
         if (rows == columns) {
@@ -705,7 +712,8 @@ public final class FloatFFT_2D {
      * Computes only a subset of the 2D forward DFT of real data (without leaving
      * the result in <code>a</code>).
      * This method only works when the sizes of both dimensions are
-     * power-of-two numbers. The physical layout of the output data is as follows:
+     * even numbers (power-of-two numbers or products of 2, 3, 5 and 7 are the fastest).
+     * The physical layout of the output data is as follows:
      * 
      * <pre>
      * a[k1][2*k2] = Re[k1][k2] = Re[rows-k1][columns-k2], 
@@ -733,7 +741,7 @@ public final class FloatFFT_2D {
      * @param subSize size = rows = columns of the output array containing the subset of the 2D forward DFT (must be an even number)
      * @param inputSize size = rows = columns of the input array a (must be an even number)
      * @param data data to transform
-     * @return subset of the 2D forward DFT (power of two) of the given size subSize = rows = columns
+     * @return subset of the 2D forward DFT of the given size subSize = rows = columns
      */
     public float[][] realForwardSubset(final int subSize, final int inputSize,
                                        final float[][] data) {
@@ -744,7 +752,8 @@ public final class FloatFFT_2D {
      * Computes only a subset of the 2D forward DFT of real data (without leaving
      * the result in <code>a</code>).
      * This method only works when the sizes of both dimensions are
-     * power-of-two numbers. The physical layout of the output data is as follows:
+     * even numbers (power-of-two numbers or products of 2, 3, 5 and 7 are the fastest).
+     * The physical layout of the output data is as follows:
      * 
      * <pre>
      * a[k1][2*k2] = Re[k1][k2] = Re[rows-k1][columns-k2], 
@@ -773,15 +782,16 @@ public final class FloatFFT_2D {
      * @param inputSize size = rows = columns of the input array a (must be an even number)
      * @param data data to transform
      * @param outputData optional output data[N][M] (N >= subSize & M >= subSize + 2)
-     * @return subset of the 2D forward DFT (power of two) of the given size subSize = rows = columns
+     * @return subset of the 2D forward DFT of the given size subSize = rows = columns
      */
     public float[][] realForwardSubset(final int subSize, final int inputSize,
                                        final float[][] data,
                                        final float[][] outputData) {
 //        System.out.println("realForwardSubset: inputSize = " + inputSize + " - subSize = " + subSize + " - fft rows = " + rows + " - cols = " + columns);
 
-        if (isPowerOfTwo == false) {
-            throw new IllegalArgumentException("rows and columns must be power of two numbers.");
+        // LBO: any even size works as FloatFFT_1D gives the same packed layout for even n (split radix, mixed radix or bluestein):
+        if ((rows % 2 != 0) || (columns % 2 != 0)) {
+            throw new IllegalArgumentException("rows and columns must be even numbers.");
         }
         if (subSize % 2 != 0) {
             throw new IllegalArgumentException("sub size must be an even number because subSize = number of rows = 2 * (columns / 2).");
@@ -1099,6 +1109,272 @@ public final class FloatFFT_2D {
         return output;
     }
 
+    /**
+     * Return the number of columns of the output of realForwardSubset for the given sub size
+     * (1 column pair more to store columns/2 values if subSize &lt; columns)
+     * 
+     * @param subSize size = rows of the output array containing the subset of the 2D forward DFT
+     * @return number of columns of the output array
+     */
+    public int getSubsetColumns(final int subSize) {
+        return (subSize < columns) ? subSize + 2 : subSize;
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of real data for a batch of planes (cube)
+     * in a single pass: rows and columns of all planes are processed by the same tasks (plane, row)
+     * so small planes still use all threads and the t array is shared by all planes.
+     * This method only works when the sizes of both dimensions are even numbers.
+     * The physical layout of each output plane is the one of realForwardSubset(subSize, inputSize, data, outputData)
+     * stored in a flat array: plane p, row r starts at index (p * subSize + r) * getSubsetColumns(subSize).
+     * 
+     * @param subSize size = rows = columns of the output planes containing the subset of the 2D forward DFT (must be an even number)
+     * @param inputSize size = rows = columns of the input planes (must be an even number)
+     * @param planes number of planes
+     * @param data flat data to transform
+     * @param offset index of the first value (plane = 0, row = 0, col = 0) in data
+     * @param rowStride distance between two input rows in data
+     * @param planeStride distance between two input planes in data
+     * @param outputData optional flat output data (length &gt;= planes * subSize * getSubsetColumns(subSize))
+     * @return flat output data containing the subsets of the 2D forward DFT of all planes
+     */
+    public float[] realForwardSubset(final int subSize, final int inputSize, final int planes,
+                                     final float[] data, final int offset, final int rowStride, final int planeStride,
+                                     final float[] outputData) {
+        if ((rows % 2 != 0) || (columns % 2 != 0)) {
+            throw new IllegalArgumentException("rows and columns must be even numbers.");
+        }
+        if (subSize % 2 != 0) {
+            throw new IllegalArgumentException("sub size must be an even number because subSize = number of rows = 2 * (columns / 2).");
+        }
+        if (inputSize % 2 != 0) {
+            throw new IllegalArgumentException("input size must be an even number because input size / 2 = center of image.");
+        }
+        if (inputSize > subSize) {
+            throw new IllegalArgumentException("output size must be larger than input size.");
+        }
+        if (subSize > rows) {
+            throw new IllegalArgumentException("sub size must be larger than fft size.");
+        }
+        if (planes <= 0) {
+            throw new IllegalArgumentException("planes must be greater than 0.");
+        }
+
+        // use threads if the complete cube is large enough:
+        final int nthreads = (!useThreads && ((long) planes * rows * columns) < ConcurrencyUtils.getThreadsBeginN_2D())
+                ? 1 : ConcurrencyUtils.getNumberOfThreads();
+
+        // fix t array capacity:
+        if (oldNthreads != -1) {
+            nt = nthreads * 2 * rows;
+            t = new float[nt];
+            oldNthreads = -1; // to ensure correct allocation next time
+        }
+
+        // add 1 column more to compute and store columns/2 values:
+        final int subSizeColumns = getSubsetColumns(subSize);
+        final int outPlaneStride = subSize * subSizeColumns;
+
+        // Create new output array (could be given):
+        final float[] output;
+        if ((outputData != null) && (outputData.length >= planes * outPlaneStride)) {
+            output = outputData;
+        } else {
+            output = new float[planes * outPlaneStride];
+        }
+
+        final int rmul2 = 2 * rows;
+        final int idiv2 = inputSize / 2;
+        final int rowInOffset = (columns - idiv2);
+        final int sdiv2 = subSize / 2;
+        final int scdiv2 = subSizeColumns / 2;
+        final int rowOutOffset = (columns - sdiv2);
+
+        // emptyData contain 2 * rows or columns used by both rows and columns:
+        final float[] emptyData;
+        if (emptyArray == null) {
+            emptyArray = emptyData = new float[Math.max(rmul2, columns)]; // fixed
+        } else {
+            emptyData = emptyArray;
+        }
+
+        // computation tasks:
+        final Runnable[] tasks = new Runnable[nthreads];
+
+        // 1 - Process rows of all planes (plane, row):
+        final int nRows = planes * inputSize;
+
+        for (int i = 0; i < nthreads; i++) {
+            final int n0 = i;
+            final int startt = columns * i;
+
+            tasks[i] = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /** Get the current thread to check if the computation is interrupted */
+                    final Thread currentThread = Thread.currentThread();
+
+                    for (int k = n0, p, r, inRow; k < nRows; k += nthreads) {
+                        p = k / inputSize;
+                        r = k - p * inputSize;
+
+                        // A - clear complete row:
+                        System.arraycopy(emptyData, 0, t, startt, columns);
+
+                        // B - copy input data in t (quadrants 3 and 4 then quadrants 2 and 1, see realForwardSubset):
+                        inRow = offset + p * planeStride + ((r < idiv2) ? r + idiv2 : r - idiv2) * rowStride;
+
+                        System.arraycopy(data, inRow + idiv2, t, startt, idiv2);
+                        System.arraycopy(data, inRow, t, startt + rowInOffset, idiv2);
+
+                        // C - compute real forward as t contains real data:
+                        fftColumns.realForward(t, startt);
+
+                        // fast interrupt:
+                        if (currentThread.isInterrupted()) {
+                            return;
+                        }
+
+                        // D - copy data from t to the beginning of the output plane (complex data ie 2*columns):
+                        System.arraycopy(t, startt, output, p * outPlaneStride + r * subSizeColumns, subSizeColumns);
+                    }
+                }
+            };
+        }
+
+        if (nthreads > 1) {
+            // fork and join tasks:
+            ConcurrencyUtils.forkAndJoin(tasks);
+
+        } else {
+            // execute the single task using the current thread:
+            tasks[0].run();
+        }
+
+        // 2 - Process columns of all planes (plane, column) (complex data):
+        final int nCols = planes * scdiv2;
+
+        for (int i = 0; i < nthreads; i++) {
+            final int n0 = i;
+            final int startt = rmul2 * i;
+
+            tasks[i] = new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /** Get the current thread to check if the computation is interrupted */
+                    final Thread currentThread = Thread.currentThread();
+
+                    int idx2, oIdx, base;
+
+                    // include column/2:
+                    for (int k = n0, p, c; k < nCols; k += nthreads) {
+                        p = k / scdiv2;
+                        c = k - p * scdiv2;
+
+                        // index of the real part of the column c in the first row of the plane p:
+                        base = p * outPlaneStride + 2 * c;
+
+                        // A - clear complete column:
+                        System.arraycopy(emptyData, 0, t, startt, rmul2);
+
+                        // B - copy row data and center rows in t (complex data ie 2*columns):
+                        for (int r = 0; r < idiv2; r++) {
+                            // copy fft data for quadrants 3 and 4 at the beginning of the t array:
+                            oIdx = base + r * subSizeColumns;
+                            idx2 = startt + 2 * r;
+
+                            t[idx2] = output[oIdx];
+                            t[idx2 + 1] = output[oIdx + 1];
+
+                            // copy fft data for quadrants 2 and 1 at the end of the t array:
+                            oIdx = base + (r + idiv2) * subSizeColumns;
+                            idx2 = startt + 2 * (r + rowInOffset);
+
+                            t[idx2] = output[oIdx];
+                            t[idx2 + 1] = output[oIdx + 1];
+                        }
+
+                        // C - compute complex forward as t contains complex data:
+                        fftRows.complexForward(t, startt);
+
+                        // fast interrupt:
+                        if (currentThread.isInterrupted()) {
+                            return;
+                        }
+
+                        // D - Fix column 0 directly on t (process only subSize / 2 rows):
+                        if (c == 0) {
+                            for (int i = 1, idxI, idxJ; i < sdiv2; i++) {
+                                idxI = startt + 2 * i;
+                                idxJ = startt + rmul2 - 2 * i;
+
+                                t[idxJ] = 0.5f * (t[idxI] - t[idxJ]);
+                                t[idxI] -= t[idxJ]; // ie : 0.5f * (t[idxI] + t[idxJ])
+
+                                t[idxJ + 1] = 0.5f * (t[idxI + 1] + t[idxJ + 1]);
+                                t[idxI + 1] -= t[idxJ + 1];
+                            }
+                        }
+
+                        // E - copy data from t(start and end) to output (complex data ie 2*columns):
+                        for (int r = 0; r < sdiv2; r++) {
+                            idx2 = startt + 2 * r;
+                            oIdx = base + r * subSizeColumns;
+
+                            output[oIdx] = t[idx2];
+                            output[oIdx + 1] = t[idx2 + 1];
+
+                            idx2 = startt + 2 * (r + rowOutOffset);
+                            oIdx = base + (r + sdiv2) * subSizeColumns;
+
+                            output[oIdx] = t[idx2];
+                            output[oIdx + 1] = t[idx2 + 1];
+                        }
+                    }
+                }
+            };
+        }
+
+        if (nthreads > 1) {
+            // fork and join tasks:
+            ConcurrencyUtils.forkAndJoin(tasks);
+
+        } else {
+            // execute the single task using the current thread:
+            tasks[0].run();
+        }
+
+        if (subSize < columns) {
+            // fix column zero of each plane (see realForwardSubset):
+            for (int p = 0, base; p < planes; p++) {
+                base = p * outPlaneStride;
+
+                for (int r = 1, j; r < sdiv2; r++) {
+                    j = subSize - r;
+
+                    output[base + j * subSizeColumns + 1] = output[base + r * subSizeColumns + subSize];
+                    output[base + j * subSizeColumns] = -output[base + r * subSizeColumns + subSize + 1];
+                }
+
+                output[base + 1] = output[base + subSize];
+
+                output[base + sdiv2 * subSizeColumns + 1] = output[base + sdiv2 * subSizeColumns + subSize]; // quadrant 3
+
+                // Clear column/2 values:
+                for (int r = 0; r < subSize; r++) {
+                    output[base + r * subSizeColumns + subSize] = 0f;
+                    output[base + r * subSizeColumns + subSize + 1] = 0f;
+                }
+            }
+        }
+
+        return output;
+    }
+
     /**
      * Computes 2D forward DFT of real data leaving the result in <code>a</code>
      * . This method computes full real forward transform, i.e. you will get the
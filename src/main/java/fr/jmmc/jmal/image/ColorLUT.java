@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.MathUtils;
+import java.awt.image.IndexColorModel;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precomputed packed ARGB table of an indexed color model for a given alpha value:
+ * colors are linearly interpolated (see ImageUtils.getRGB()) at SUB_STEPS sub-steps per color index
+ * so a scaled value gives its color with one multiply, one clamp and one array load.
+ *
+ * Tables are built lazily and cached per (color model, alpha); the cache does not keep color models alive.
+ *
+ * @author bourgesl
+ */
+public final class ColorLUT {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ColorLUT.class.getName());
+    /** number of sub-steps per color index */
+    public final static int SUB_STEPS = 16;
+    /** tables per color model (weak keys) indexed by alpha */
+    private final static Map<IndexColorModel, ColorLUT[]> cache = new WeakHashMap<IndexColorModel, ColorLUT[]>(16);
+
+    /* members */
+    /** packed ARGB colors */
+    private final int[] _rgb;
+    /** index of the last color in the table */
+    private final int _maxIndex;
+
+    /**
+     * Return the (cached) table of the given color model and alpha mask
+     * @param colorModel color model
+     * @param alphaMask alpha mask (0 - 255) &lt;&lt; 24
+     * @return color table
+     */
+    public static ColorLUT getInstance(final IndexColorModel colorModel, final int alphaMask) {
+        final int alpha = alphaMask >>> 24;
+
+        synchronized (cache) {
+            ColorLUT[] luts = cache.get(colorModel);
+            if (luts == null) {
+                luts = new ColorLUT[256];
+                cache.put(colorModel, luts);
+            }
+            ColorLUT lut = luts[alpha];
+            if (lut == null) {
+                lut = new ColorLUT(colorModel, alpha << 24);
+                luts[alpha] = lut;
+            }
+            return lut;
+        }
+    }
+
+    /**
+     * Build the table of the given color model and alpha mask
+     * @param colorModel color model
+     * @param alphaMask alpha mask (0 - 255) &lt;&lt; 24
+     */
+    private ColorLUT(final IndexColorModel colorModel, final int alphaMask) {
+        final long start = System.nanoTime();
+
+        final int iMaxColor = colorModel.getMapSize() - 1;
+
+        this._maxIndex = iMaxColor * SUB_STEPS;
+        this._rgb = new int[_maxIndex + 1];
+
+        for (int i = 0; i <= _maxIndex; i++) {
+            _rgb[i] = ImageUtils.getRGB(colorModel, iMaxColor, ((float) i) / SUB_STEPS, alphaMask);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("ColorLUT: {} colors - alpha = {}: duration = {} ms.", _rgb.length, alphaMask >>> 24,
+                    1e-6d * (System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Return the packed ARGB color of the given value
+     * @param value data value to convert between 0.0 and colorModel.getMapSize() - 1
+     * @return packed ARGB color
+     */
+    public int getRGB(final float value) {
+        return getRGBAt(value * SUB_STEPS);
+    }
+
+    /**
+     * Return the packed ARGB color of the given table position (value x SUB_STEPS) (NaN gives the lowest color)
+     * @param position table position
+     * @return packed ARGB color
+     */
+    public int getRGBAt(final float position) {
+        int i = (int) (position + 0.5f);
+        if (i < 0) {
+            i = 0;
+        } else if (i > _maxIndex) {
+            i = _maxIndex;
+        }
+        return _rgb[i];
+    }
+
+    /**
+     * Return the packed ARGB color of the given value using logarithmic scale (fast log2 approximation):
+     * table position = log2(value) x log2Factor - offset
+     * i.e. log2Factor = log10(2) x scalingFactor x SUB_STEPS and offset = log10(min) x scalingFactor x SUB_STEPS
+     * @param value data value (zero, negative or NaN values give the lowest color)
+     * @param log2Factor log2 to table position factor
+     * @param offset table position offset
+     * @return packed ARGB color
+     */
+    public int getRGBLog(final float value, final float log2Factor, final float offset) {
+        if (value > 0f) {
+            return getRGBAt(MathUtils.fastLog2(value) * log2Factor - offset);
+        }
+        // lowest color
+        return _rgb[0];
+    }
+
+    /**
+     * @return number of colors in the table
+     */
+    public int getSize() {
+        return _rgb.length;
+    }
+}
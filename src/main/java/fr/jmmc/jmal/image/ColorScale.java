@@ -13,5 +13,9 @@ public enum ColorScale {
     /** linar color scale */
     LINEAR,
     /** logarithmic color scale */
-    LOGARITHMIC
+    LOGARITHMIC,
+    /** linear color scale clipped to percentiles (see ImageUtils.PERCENTILE_LOW / PERCENTILE_HIGH) */
+    PERCENTILE,
+    /** histogram equalization (colors follow the cumulative distribution of values) */
+    EQUALIZED
 }
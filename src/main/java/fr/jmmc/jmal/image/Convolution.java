@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
+import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This utility class provides 2D convolution of images by a kernel (beam, PSF, pupil transfer ...):
+ * out(x, y) = sum_(i,j) kernel(i, j) x image(x - (i - centerX), y - (j - centerY)), zero outside the image.
+ *
+ * Two methods are available:
+ * - DIRECT: sum over the non zero kernel values (small kernels)
+ * - FFT: overlap-save on square power of two tiles (realForward, packed complex multiply by the cached
+ * kernel spectrum, realInverse); a single tile covers the whole image if it is cheaper
+ * AUTO picks the cheapest method and tile size according to a simple cost model.
+ *
+ * @author bourgesl
+ */
+public final class Convolution {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(Convolution.class.getName());
+    /** Jmcs Parallel Job executor */
+    private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
+    /** cost of one real FFT value per log2(N^2) relative to one multiply-add (forward + inverse) */
+    private final static double FFT_COST_FACTOR = 2.0;
+    /** cost of the packed complex multiply and tile copies per FFT value */
+    private final static double FFT_COST_EXTRA = 4.0;
+    /** minimum FFT tile size */
+    private final static int MIN_TILE_SIZE = 16;
+    /** metrics */
+    private static final Timer TIMER_DIRECT = Metrics.timer("convolution.direct");
+    private static final Timer TIMER_FFT = Metrics.timer("convolution.fft");
+    /** FFT plan pool */
+    private static final FFTPlanPool planPool = FFTPlanPool.getInstance();
+
+    /**
+     * Convolution method
+     */
+    public enum Method {
+
+        /** choose the cheapest method */
+        AUTO,
+        /** direct sum */
+        DIRECT,
+        /** FFT (overlap-save) */
+        FFT;
+    }
+
+    /**
+     * Forbidden constructor
+     */
+    private Convolution() {
+        super();
+    }
+
+    /**
+     * Convolve the given image by the given kernel (cheapest method)
+     * @param array input image [height][width]
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @return new convolved image [height][width] (see FloatArrayCache.recycleArray())
+     */
+    public static float[][] convolve(final float[][] array, final int width, final int height, final ConvolutionKernel kernel) {
+        return convolve(array, width, height, kernel, Method.AUTO, CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Convolve the given image by the given kernel
+     * @param array input image [height][width]
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @param method convolution method
+     * @param token cancellation token
+     * @return new convolved image [height][width] (see FloatArrayCache.recycleArray())
+     *
+     * @throws InterruptedJobException if the given token is cancelled (the output array is recycled)
+     */
+    public static float[][] convolve(final float[][] array, final int width, final int height, final ConvolutionKernel kernel,
+                                     final Method method, final CancellationToken token) throws InterruptedJobException {
+        switch (method) {
+            case DIRECT:
+                return convolveDirect(array, width, height, kernel, token);
+            case FFT:
+                return convolveFFT(array, width, height, kernel, getTileSize(width, height, kernel), token);
+            case AUTO:
+            default:
+                final int tileSize = getTileSize(width, height, kernel);
+
+                if (getDirectCost(width, height, kernel) <= getFFTCost(width, height, kernel, tileSize)) {
+                    return convolveDirect(array, width, height, kernel, token);
+                }
+                return convolveFFT(array, width, height, kernel, tileSize, token);
+        }
+    }
+
+    /**
+     * Return the estimated cost of the direct convolution (multiply-add count)
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @return estimated cost
+     */
+    public static double getDirectCost(final int width, final int height, final ConvolutionKernel kernel) {
+        return (double) width * height * kernel.getNonZeroCount();
+    }
+
+    /**
+     * Return the estimated cost of the FFT convolution using the given tile size
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @param tileSize FFT tile size (power of two)
+     * @return estimated cost (same unit as getDirectCost()) or Double.POSITIVE_INFINITY if the tile is too small
+     */
+    public static double getFFTCost(final int width, final int height, final ConvolutionKernel kernel, final int tileSize) {
+        final int validX = tileSize - kernel.getWidth() + 1;
+        final int validY = tileSize - kernel.getHeight() + 1;
+        if (validX <= 0 || validY <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double tiles = (double) ((width + validX - 1) / validX) * ((height + validY - 1) / validY);
+        final double n2 = (double) tileSize * tileSize;
+
+        return tiles * n2 * (FFT_COST_FACTOR * 2.0 * log2(tileSize) + FFT_COST_EXTRA);
+    }
+
+    /**
+     * Return the cheapest FFT tile size (power of two) for the given image and kernel:
+     * from twice the kernel size (overlap-save) up to a single tile covering the whole image
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @return FFT tile size (power of two)
+     */
+    public static int getTileSize(final int width, final int height, final ConvolutionKernel kernel) {
+        final int kernelSize = Math.max(kernel.getWidth(), kernel.getHeight());
+        final int maxSize = FFTUtils.getPowerOfTwo(Math.max(width + kernel.getWidth(), height + kernel.getHeight()) - 1);
+
+        int best = maxSize;
+        double bestCost = getFFTCost(width, height, kernel, maxSize);
+
+        for (int n = Math.max(MIN_TILE_SIZE, FFTUtils.getPowerOfTwo(2 * kernelSize)); n < maxSize; n <<= 1) {
+            final double cost = getFFTCost(width, height, kernel, n);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = n;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Convolve the given image by the given kernel (direct sum)
+     * @param array input image [height][width]
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @param token cancellation token
+     * @return new convolved image [height][width] (see FloatArrayCache.recycleArray())
+     *
+     * @throws InterruptedJobException if the given token is cancelled (the output array is recycled)
+     */
+    public static float[][] convolveDirect(final float[][] array, final int width, final int height, final ConvolutionKernel kernel,
+                                           final CancellationToken token) throws InterruptedJobException {
+        final long start = System.nanoTime();
+
+        final float[][] output = FloatArrayCache.getArray(height, width);
+
+        final float[][] kData = kernel.getData();
+        final int kw = kernel.getWidth();
+        final int kh = kernel.getHeight();
+        final int cx = kernel.getCenterX();
+        final int cy = kernel.getCenterY();
+
+        final int nJobs = ParallelThresholds.isParallel(ParallelThresholds.Stage.CONVOLUTION, (long) width * height) ? jobExecutor.getMaxParallelJob() : 1;
+
+        // computation tasks:
+        final Runnable[] jobs = new Runnable[nJobs];
+
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
+        for (int n = 0; n < nJobs; n++) {
+            final int n0 = n;
+
+            jobs[n] = new Runnable() {
+                @Override
+                public void run() {
+                    // use double precision accumulator:
+                    final double[] acc = new double[width];
+
+                    float[] kRow, iRow, oRow;
+                    float w;
+
+                    for (int y = n0, sy; y < height; y += nJobs) {
+                        Arrays.fill(acc, 0.0);
+
+                        for (int j = 0; j < kh; j++) {
+                            sy = y - (j - cy);
+                            if (sy < 0 || sy >= height) {
+                                continue;
+                            }
+                            kRow = kData[j];
+                            iRow = array[sy];
+
+                            for (int i = 0, dx, x0, x1; i < kw; i++) {
+                                w = kRow[i];
+                                if (w == 0f) {
+                                    continue;
+                                }
+                                // source column sx = x - dx:
+                                dx = i - cx;
+                                x0 = Math.max(0, dx);
+                                x1 = Math.min(width, width + dx);
+
+                                for (int x = x0; x < x1; x++) {
+                                    acc[x] += w * iRow[x - dx];
+                                }
+                            }
+                        }
+
+                        oRow = output[y];
+                        for (int x = 0; x < width; x++) {
+                            oRow[x] = (float) acc[x];
+                        }
+
+                        // fast interrupt:
+                        if (jobToken.isCancelled()) {
+                            return;
+                        }
+                    }
+                }
+            };
+        }
+
+        forkAndJoin("Convolution.convolveDirect", jobs, output, jobToken);
+
+        final long duration = System.nanoTime() - start;
+        TIMER_DIRECT.record(duration);
+
+        logger.info("convolveDirect: [{} x {}] by [{} x {}] duration = {} ms.", width, height, kw, kh, 1e-6d * duration);
+
+        return output;
+    }
+
+    /**
+     * Convolve the given image by the given kernel (FFT with overlap-save tiles)
+     * @param array input image [height][width]
+     * @param width image width
+     * @param height image height
+     * @param kernel convolution kernel
+     * @param tileSize FFT tile size (power of two larger than the kernel sizes, see getTileSize())
+     * @param token cancellation token
+     * @return new convolved image [height][width] (see FloatArrayCache.recycleArray())
+     *
+     * @throws InterruptedJobException if the given token is cancelled (the output array is recycled)
+     */
+    public static float[][] convolveFFT(final float[][] array, final int width, final int height, final ConvolutionKernel kernel,
+                                        final int tileSize, final CancellationToken token) throws InterruptedJobException {
+        if (!ConcurrencyUtils.isPowerOf2(tileSize) || tileSize < kernel.getWidth() || tileSize < kernel.getHeight()) {
+            throw new IllegalArgumentException("Invalid tile size (" + tileSize + ") must be a power of two larger than the kernel "
+                    + kernel + " !");
+        }
+        final long start = System.nanoTime();
+
+        // fast interrupt :
+        token.checkCancelled("Convolution.convolveFFT");
+
+        // shared kernel spectrum (cached):
+        final float[][] spectrum = kernel.getSpectrum(tileSize);
+
+        final float[][] output = FloatArrayCache.getArray(height, width);
+
+        // overlap-save: valid outputs in each tile (no circular wrap):
+        final int offX = kernel.getWidth() - 1 - kernel.getCenterX();
+        final int offY = kernel.getHeight() - 1 - kernel.getCenterY();
+        final int validX = tileSize - kernel.getWidth() + 1;
+        final int validY = tileSize - kernel.getHeight() + 1;
+
+        final int tilesX = (width + validX - 1) / validX;
+        final int tilesY = (height + validY - 1) / validY;
+        final int nTiles = tilesX * tilesY;
+
+        // parallelize over tiles (FloatFFT_2D is multi-threaded for a single large tile):
+        final int nJobs = Math.min(nTiles, jobExecutor.getMaxParallelJob());
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("convolveFFT: tile size = {} - tiles = {} x {} - jobs = {}", tileSize, tilesX, tilesY, nJobs);
+        }
+
+        // computation tasks:
+        final Runnable[] jobs = new Runnable[nJobs];
+
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
+        for (int n = 0; n < nJobs; n++) {
+            final int n0 = n;
+
+            jobs[n] = new Runnable() {
+                @Override
+                public void run() {
+                    final FloatFFT_2D fft2d = planPool.acquire(tileSize, tileSize, false);
+                    final float[][] tile = FloatArrayCache.getArray(tileSize, tileSize);
+                    try {
+                        for (int t = n0, x0, y0; t < nTiles; t += nJobs) {
+                            x0 = (t % tilesX) * validX;
+                            y0 = (t / tilesX) * validY;
+
+                            // A - copy the input area (x0 - offX, y0 - offY) zero-padded:
+                            for (int r = 0, sy, sx0, c0, c1; r < tileSize; r++) {
+                                final float[] tRow = tile[r];
+                                sy = y0 - offY + r;
+                                if (sy < 0 || sy >= height) {
+                                    Arrays.fill(tRow, 0f);
+                                    continue;
+                                }
+                                sx0 = x0 - offX;
+                                c0 = Math.max(0, -sx0);
+                                c1 = Math.min(tileSize, width - sx0);
+
+                                if (c1 <= c0) {
+                                    Arrays.fill(tRow, 0f);
+                                    continue;
+                                }
+                                Arrays.fill(tRow, 0, c0, 0f);
+                                System.arraycopy(array[sy], sx0 + c0, tRow, c0, c1 - c0);
+                                Arrays.fill(tRow, c1, tileSize, 0f);
+                            }
+
+                            // B - forward, multiply by the kernel spectrum, inverse:
+                            fft2d.realForward(tile);
+                            multiplyPacked(tileSize, tile, spectrum);
+                            fft2d.realInverse(tile, true);
+
+                            // C - copy valid outputs:
+                            final int w = Math.min(validX, width - x0);
+                            final int h = Math.min(validY, height - y0);
+
+                            for (int r = 0; r < h; r++) {
+                                System.arraycopy(tile[offY + r], offX, output[y0 + r], x0, w);
+                            }
+
+                            // fast interrupt:
+                            if (jobToken.isCancelled()) {
+                                return;
+                            }
+                        }
+                    } finally {
+                        FloatArrayCache.recycleArray(tile);
+                        planPool.release(fft2d, false);
+                    }
+                }
+            };
+        }
+
+        forkAndJoin("Convolution.convolveFFT", jobs, output, jobToken);
+
+        final long duration = System.nanoTime() - start;
+        TIMER_FFT.record(duration);
+
+        logger.info("convolveFFT: [{} x {}] by [{} x {}] tile size = {} duration = {} ms.",
+                width, height, kernel.getWidth(), kernel.getHeight(), tileSize, 1e-6d * duration);
+
+        return output;
+    }
+
+    /**
+     * Multiply the given packed real FFT (FloatFFT_2D.realForward layout) by the given packed spectrum (in-place)
+     * @param size rows = columns (power of two)
+     * @param a packed real FFT to multiply
+     * @param b packed spectrum
+     */
+    static void multiplyPacked(final int size, final float[][] a, final float[][] b) {
+        final int half = size / 2;
+
+        float re, im, bre, bim;
+
+        // columns 1 .. size/2 - 1 (all rows):
+        for (int r = 0; r < size; r++) {
+            final float[] aRow = a[r];
+            final float[] bRow = b[r];
+
+            for (int c = 2; c < size; c += 2) {
+                re = aRow[c];
+                im = aRow[c + 1];
+                bre = bRow[c];
+                bim = bRow[c + 1];
+
+                aRow[c] = re * bre - im * bim;
+                aRow[c + 1] = re * bim + im * bre;
+            }
+        }
+
+        // column 0 and column size/2 are packed in a[r][0..1]:
+        for (int r = 1, j; r < half; r++) {
+            // a[r][0] = Re[r][0], a[r][1] = Im[r][0]:
+            re = a[r][0];
+            im = a[r][1];
+            bre = b[r][0];
+            bim = b[r][1];
+
+            a[r][0] = re * bre - im * bim;
+            a[r][1] = re * bim + im * bre;
+
+            // a[size-r][1] = Re[r][size/2], a[size-r][0] = -Im[r][size/2]:
+            j = size - r;
+            re = a[j][1];
+            im = -a[j][0];
+            bre = b[j][1];
+            bim = -b[j][0];
+
+            a[j][1] = re * bre - im * bim;
+            a[j][0] = -(re * bim + im * bre);
+        }
+
+        // real values: Re[0][0], Re[0][size/2], Re[size/2][0], Re[size/2][size/2]:
+        a[0][0] *= b[0][0];
+        a[0][1] *= b[0][1];
+        a[half][0] *= b[half][0];
+        a[half][1] *= b[half][1];
+    }
+
+    /**
+     * Execute the given jobs and recycle the output array if interrupted or cancelled
+     * @param jobName job name
+     * @param jobs jobs to execute
+     * @param output output array
+     * @param token child token given to the jobs (see CancellationToken.createChild())
+     * @throws InterruptedJobException if the given token is cancelled
+     */
+    private static void forkAndJoin(final String jobName, final Runnable[] jobs, final float[][] output,
+                                    final CancellationToken token) throws InterruptedJobException {
+        try {
+            // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
+            jobExecutor.forkAndJoin(jobName, jobs);
+
+            // fast interrupt (partial output) :
+            token.checkCancelled(jobName);
+
+        } catch (RuntimeException re) {
+            logger.debug("recycleArray <= interrupted job:");
+            // stop remaining jobs before recycling their output:
+            token.cancel();
+            FloatArrayCache.recycleArray(output);
+            // rethrow exception:
+            throw re;
+        }
+    }
+
+    /**
+     * @param n power of two
+     * @return log2(n)
+     */
+    private static int log2(final int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+}
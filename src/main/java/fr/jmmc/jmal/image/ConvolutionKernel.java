@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
+import java.util.concurrent.ConcurrentHashMap;
+import net.jafama.FastMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable convolution kernel (beam, PSF, pupil transfer ...) with its origin (center) pixel.
+ *
+ * Kernel spectra (packed real FFT of the kernel wrapped around its origin) are computed once per FFT size
+ * and cached by this kernel instance: reuse the same kernel instance to convolve many images.
+ *
+ * @author bourgesl
+ */
+public final class ConvolutionKernel {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ConvolutionKernel.class.getName());
+    /** FFT plan pool */
+    private static final FFTPlanPool planPool = FFTPlanPool.getInstance();
+
+    /* members */
+    /** kernel values [height][width] */
+    private final float[][] _data;
+    /** kernel width */
+    private final int _width;
+    /** kernel height */
+    private final int _height;
+    /** origin column */
+    private final int _centerX;
+    /** origin row */
+    private final int _centerY;
+    /** number of non zero values */
+    private final int _nonZeroCount;
+    /** kernel spectra keyed by FFT size */
+    private final ConcurrentHashMap<Integer, float[][]> _spectra = new ConcurrentHashMap<Integer, float[][]>(4);
+
+    /**
+     * Create a kernel (copy of the given values) centered at (width / 2, height / 2)
+     * @param data kernel values [height][width]
+     * @param width kernel width
+     * @param height kernel height
+     */
+    public ConvolutionKernel(final float[][] data, final int width, final int height) {
+        this(data, width, height, width / 2, height / 2);
+    }
+
+    /**
+     * Create a kernel (copy of the given values)
+     * @param data kernel values [height][width]
+     * @param width kernel width
+     * @param height kernel height
+     * @param centerX origin column
+     * @param centerY origin row
+     * @throws IllegalArgumentException if the sizes or the origin are invalid
+     */
+    public ConvolutionKernel(final float[][] data, final int width, final int height, final int centerX, final int centerY) {
+        if (width <= 0 || height <= 0 || centerX < 0 || centerX >= width || centerY < 0 || centerY >= height) {
+            throw new IllegalArgumentException("Invalid kernel: width = " + width + " height = " + height
+                    + " center = (" + centerX + ", " + centerY + ")");
+        }
+        this._data = ImageArrayUtils.copy(height, width, data);
+        this._width = width;
+        this._height = height;
+        this._centerX = centerX;
+        this._centerY = centerY;
+
+        int n = 0;
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                if (_data[j][i] != 0f) {
+                    n++;
+                }
+            }
+        }
+        this._nonZeroCount = n;
+    }
+
+    /**
+     * Create a normalized (sum = 1) elliptical gaussian kernel (beam) truncated at 4 sigma
+     * @param sigmaX gaussian sigma along the x-axis (pixels)
+     * @param sigmaY gaussian sigma along the y-axis (pixels)
+     * @return new kernel
+     */
+    public static ConvolutionKernel gaussian(final double sigmaX, final double sigmaY) {
+        final int hw = Math.max(1, (int) Math.ceil(4.0 * sigmaX));
+        final int hh = Math.max(1, (int) Math.ceil(4.0 * sigmaY));
+        final int width = 2 * hw + 1;
+        final int height = 2 * hh + 1;
+
+        final double normX = -1.0 / (2.0 * sigmaX * sigmaX);
+        final double normY = -1.0 / (2.0 * sigmaY * sigmaY);
+
+        final float[][] data = new float[height][width];
+        double sum = 0.0;
+        for (int j = 0; j < height; j++) {
+            final double wy = FastMath.exp(normY * (j - hh) * (j - hh));
+            for (int i = 0; i < width; i++) {
+                final double w = wy * FastMath.exp(normX * (i - hw) * (i - hw));
+                data[j][i] = (float) w;
+                sum += w;
+            }
+        }
+        final float norm = (float) (1.0 / sum);
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                data[j][i] *= norm;
+            }
+        }
+        return new ConvolutionKernel(data, width, height, hw, hh);
+    }
+
+    /**
+     * @return kernel width
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * @return kernel height
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * @return origin column
+     */
+    public int getCenterX() {
+        return _centerX;
+    }
+
+    /**
+     * @return origin row
+     */
+    public int getCenterY() {
+        return _centerY;
+    }
+
+    /**
+     * @return number of non zero values (direct convolution cost)
+     */
+    public int getNonZeroCount() {
+        return _nonZeroCount;
+    }
+
+    /**
+     * @param col column index
+     * @param row row index
+     * @return kernel value
+     */
+    public float get(final int col, final int row) {
+        return _data[row][col];
+    }
+
+    /**
+     * Return the kernel values (shared, must not be modified)
+     * @return kernel values [height][width]
+     */
+    float[][] getData() {
+        return _data;
+    }
+
+    /**
+     * Return the kernel spectrum for the given FFT size (cached):
+     * packed real FFT (FloatFFT_2D.realForward) of the kernel wrapped around its origin i.e.
+     * value(col, row) at [(row - centerY) mod fftSize][(col - centerX) mod fftSize]
+     * @param fftSize FFT size (power of two larger than the kernel sizes)
+     * @return kernel spectrum [fftSize][fftSize] (shared, must not be modified)
+     */
+    float[][] getSpectrum(final int fftSize) {
+        final Integer key = Integer.valueOf(fftSize);
+
+        float[][] spectrum = _spectra.get(key);
+        if (spectrum == null) {
+            spectrum = computeSpectrum(fftSize);
+            final float[][] previous = _spectra.putIfAbsent(key, spectrum);
+            if (previous != null) {
+                spectrum = previous;
+            }
+        }
+        return spectrum;
+    }
+
+    /**
+     * Drop the cached kernel spectra
+     */
+    public void clearSpectra() {
+        _spectra.clear();
+    }
+
+    /**
+     * Compute the kernel spectrum for the given FFT size
+     * @param fftSize FFT size
+     * @return kernel spectrum [fftSize][fftSize]
+     */
+    private float[][] computeSpectrum(final int fftSize) {
+        if (fftSize < _width || fftSize < _height) {
+            throw new IllegalArgumentException("Invalid FFT size (" + fftSize + ") < kernel size [" + _width + " x " + _height + "] !");
+        }
+        final long start = System.nanoTime();
+
+        final float[][] spectrum = new float[fftSize][fftSize];
+
+        // wrap the kernel around its origin:
+        for (int j = 0, r; j < _height; j++) {
+            r = j - _centerY;
+            if (r < 0) {
+                r += fftSize;
+            }
+            final float[] row = spectrum[r];
+            for (int i = 0, c; i < _width; i++) {
+                c = i - _centerX;
+                if (c < 0) {
+                    c += fftSize;
+                }
+                row[c] = _data[j][i];
+            }
+        }
+
+        final FloatFFT_2D fft2d = planPool.acquire(fftSize, fftSize, false);
+        try {
+            fft2d.realForward(spectrum);
+        } finally {
+            planPool.release(fft2d, false);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("computeSpectrum[{}]: duration = {} ms.", fftSize, 1e-6d * (System.nanoTime() - start));
+        }
+        return spectrum;
+    }
+
+    @Override
+    public String toString() {
+        return "ConvolutionKernel[" + _width + " x " + _height + " - center = (" + _centerX + ", " + _centerY
+                + ") - spectra = " + _spectra.keySet() + ']';
+    }
+}
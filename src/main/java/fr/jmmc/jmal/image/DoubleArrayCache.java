@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simple double[][] pool (double precision FFT work arrays)
+ * @author bourgesl
+ */
+public final class DoubleArrayCache {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(DoubleArrayCache.class.getName());
+
+    /** double[][] pool for getArray()/recycleArray() */
+    private final static BufferPool<double[][]> array2dCache = new BufferPool<double[][]>("DoubleArray2D") {
+
+        @Override
+        protected int getLength(final double[][] array2D) {
+            return array2D.length;
+        }
+
+        @Override
+        protected int getLength2(final double[][] array2D) {
+            return array2D[0].length;
+        }
+
+        @Override
+        protected long getByteSize(final double[][] array2D) {
+            return 8L * array2D.length * array2D[0].length;
+        }
+    };
+
+    /**
+     * Get a (dirty) array [length][length2] from the pool or allocate a new array
+     * @param length number of rows
+     * @param length2 number of columns
+     * @return (dirty) array [length][length2]
+     */
+    public static double[][] getArray(final int length, final int length2) {
+        double[][] array2D = array2dCache.getItem(length, length2);
+        if (array2D != null) {
+            return array2D;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("create a new array: {} x {}", length, length2);
+        }
+        return array2dCache.track(new double[length][length2]);
+    }
+
+    /**
+     * Give back the given array to the pool
+     * @param array2D array to recycle (may be null)
+     */
+    public static void recycleArray(final double[][] array2D) {
+        array2dCache.putItem(array2D);
+    }
+
+    /**
+     * Log arrays obtained by getArray() and never recycled (jmal.pool.checks=true only)
+     * @return number of outstanding arrays
+     */
+    public static int reportLeaks() {
+        return array2dCache.reportLeaks();
+    }
+
+    private DoubleArrayCache() {
+        super();
+    }
+
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_2D;
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
+import fr.jmmc.jmal.util.metrics.Counter;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of FloatFFT_2D and DoubleFFT_2D plans (twiddle factors and work buffers) keyed by (rows, columns, subset):
+ * each size bucket keeps up to maxStrongPlans plans strongly reachable (never dropped by the GC)
+ * and overflows into soft references.
+ *
+ * FloatFFT_2D and DoubleFFT_2D instances are not thread-safe: acquire() gives an exclusive plan that must be given back by release().
+ *
+ * System properties:
+ * - jmal.fft.plans (default 2): maximum number of strong plans per size
+ * - jmal.fft.prewarm (default none): comma-separated square FFT sizes (subset plans) created at startup
+ *
+ * @author bourgesl
+ */
+public final class FFTPlanPool {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(FFTPlanPool.class.getName());
+    /** default maximum number of strong plans per size */
+    public static final int DEFAULT_STRONG_PLANS = 2;
+    /** singleton */
+    private static final FFTPlanPool instance = new FFTPlanPool(
+            Integer.getInteger("jmal.fft.plans", DEFAULT_STRONG_PLANS));
+
+    static {
+        final String prewarm = System.getProperty("jmal.fft.prewarm");
+        if (prewarm != null && !prewarm.isEmpty()) {
+            for (String size : prewarm.split(",")) {
+                try {
+                    final int n = Integer.parseInt(size.trim());
+                    instance.prewarm(n, n, true, 1);
+                } catch (IllegalArgumentException iae) {
+                    logger.warn("Invalid FFT size [{}] in jmal.fft.prewarm", size, iae);
+                }
+            }
+        }
+    }
+
+    /* members */
+    /** maximum number of strong plans per size */
+    private final int maxStrongPlans;
+    /** single precision size buckets keyed by (rows, columns, subset) */
+    private final ConcurrentHashMap<Long, Bucket<FloatFFT_2D>> buckets = new ConcurrentHashMap<Long, Bucket<FloatFFT_2D>>();
+    /** double precision size buckets keyed by (rows, columns, subset) */
+    private final ConcurrentHashMap<Long, Bucket<DoubleFFT_2D>> doubleBuckets = new ConcurrentHashMap<Long, Bucket<DoubleFFT_2D>>();
+    /** statistics */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder softHits = new LongAdder();
+    /** metrics */
+    private final Counter hitCounter = Metrics.counter("fft.plans.hit");
+    private final Counter missCounter = Metrics.counter("fft.plans.miss");
+
+    /**
+     * Return the shared plan pool
+     * @return shared plan pool
+     */
+    public static FFTPlanPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Create a new plan pool
+     * @param maxStrongPlans maximum number of strong plans per size (0 means soft references only)
+     */
+    public FFTPlanPool(final int maxStrongPlans) {
+        this.maxStrongPlans = Math.max(0, maxStrongPlans);
+    }
+
+    /**
+     * Return the maximum number of strong plans per size
+     * @return maximum number of strong plans per size
+     */
+    public int getMaxStrongPlans() {
+        return maxStrongPlans;
+    }
+
+    /**
+     * Get an exclusive plan for the given sizes (pooled or new one)
+     * @param rows number of rows (even number for realForwardSubset)
+     * @param columns number of columns (even number for realForwardSubset)
+     * @param subset true to allocate only memory for realForwardSubset
+     * @return plan to give back by release(plan, subset)
+     */
+    public FloatFFT_2D acquire(final int rows, final int columns, final boolean subset) {
+        FloatFFT_2D plan = getBucket(buckets, rows, columns, subset).poll(this);
+        if (plan != null) {
+            hits.increment();
+            hitCounter.increment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("acquire: reuse fft2d[{} x {}] @ {}", rows, columns, plan.hashCode());
+            }
+            return plan;
+        }
+        misses.increment();
+        missCounter.increment();
+
+        final long start = System.nanoTime();
+
+        plan = new FloatFFT_2D(rows, columns, subset);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("acquire: new fft2d[{} x {}]: duration = {} ms.", rows, columns, 1e-6d * (System.nanoTime() - start));
+        }
+        return plan;
+    }
+
+    /**
+     * Give back the given plan to the pool
+     * @param plan plan obtained by acquire(rows, columns, subset)
+     * @param subset subset flag given to acquire()
+     */
+    public void release(final FloatFFT_2D plan, final boolean subset) {
+        if (plan != null) {
+            getBucket(buckets, plan.getRows(), plan.getColumns(), subset).offer(plan, maxStrongPlans);
+        }
+    }
+
+    /**
+     * Get an exclusive double precision plan for the given sizes (pooled or new one)
+     * @param rows number of rows (even number for realForwardSubset)
+     * @param columns number of columns (even number for realForwardSubset)
+     * @param subset true to allocate only memory for realForwardSubset
+     * @return plan to give back by release(plan, subset)
+     */
+    public DoubleFFT_2D acquireDouble(final int rows, final int columns, final boolean subset) {
+        DoubleFFT_2D plan = getBucket(doubleBuckets, rows, columns, subset).poll(this);
+        if (plan != null) {
+            hits.increment();
+            hitCounter.increment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("acquireDouble: reuse fft2d[{} x {}] @ {}", rows, columns, plan.hashCode());
+            }
+            return plan;
+        }
+        misses.increment();
+        missCounter.increment();
+
+        final long start = System.nanoTime();
+
+        plan = new DoubleFFT_2D(rows, columns, subset);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("acquireDouble: new fft2d[{} x {}]: duration = {} ms.", rows, columns, 1e-6d * (System.nanoTime() - start));
+        }
+        return plan;
+    }
+
+    /**
+     * Give back the given double precision plan to the pool
+     * @param plan plan obtained by acquireDouble(rows, columns, subset)
+     * @param subset subset flag given to acquireDouble()
+     */
+    public void release(final DoubleFFT_2D plan, final boolean subset) {
+        if (plan != null) {
+            getBucket(doubleBuckets, plan.getRows(), plan.getColumns(), subset).offer(plan, maxStrongPlans);
+        }
+    }
+
+    /**
+     * Ensure the pool contains at least the given number of strong plans for the given sizes
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param subset true to allocate only memory for realForwardSubset
+     * @param count number of plans (limited to the maximum number of strong plans per size)
+     */
+    public void prewarm(final int rows, final int columns, final boolean subset, final int count) {
+        final Bucket<FloatFFT_2D> bucket = getBucket(buckets, rows, columns, subset);
+        final int n = Math.min(count, maxStrongPlans) - bucket.getStrongCount();
+
+        if (n > 0) {
+            final long start = System.nanoTime();
+
+            for (int i = 0; i < n; i++) {
+                bucket.offer(new FloatFFT_2D(rows, columns, subset), maxStrongPlans);
+            }
+            logger.info("prewarm: {} fft2d[{} x {}]: duration = {} ms.", n, rows, columns, 1e-6d * (System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Drop all pooled plans and reset statistics
+     */
+    public void clear() {
+        buckets.clear();
+        doubleBuckets.clear();
+        hits.reset();
+        misses.reset();
+        softHits.reset();
+    }
+
+    /**
+     * @return number of acquire() calls returning a pooled plan
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of acquire() calls returning a pooled plan kept only by a soft reference
+     */
+    public long getSoftHitCount() {
+        return softHits.sum();
+    }
+
+    /**
+     * @return number of acquire() calls creating a new plan
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of strong plans currently pooled (all sizes)
+     */
+    public int getStrongCount() {
+        int n = 0;
+        for (Bucket<FloatFFT_2D> bucket : buckets.values()) {
+            n += bucket.getStrongCount();
+        }
+        for (Bucket<DoubleFFT_2D> bucket : doubleBuckets.values()) {
+            n += bucket.getStrongCount();
+        }
+        return n;
+    }
+
+    /**
+     * Return the statistics (hits, misses and pooled plans per size)
+     * @return statistics as string
+     */
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("FFTPlanPool[hits = ").append(getHitCount()).append(" (soft = ").append(getSoftHitCount())
+                .append(") - misses = ").append(getMissCount()).append(" - max strong plans = ").append(maxStrongPlans);
+        for (Bucket<FloatFFT_2D> bucket : buckets.values()) {
+            sb.append(" - ").append(bucket);
+        }
+        for (Bucket<DoubleFFT_2D> bucket : doubleBuckets.values()) {
+            sb.append(" - double ").append(bucket);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Return the bucket for the given sizes (created if missing)
+     * @param <T> plan type
+     * @param buckets single or double precision buckets
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param subset subset flag
+     * @return bucket
+     */
+    private static <T> Bucket<T> getBucket(final ConcurrentHashMap<Long, Bucket<T>> buckets,
+                                           final int rows, final int columns, final boolean subset) {
+        final Long key = Long.valueOf((((long) rows) << 32) | (((long) columns) << 1) | (subset ? 1L : 0L));
+
+        Bucket<T> bucket = buckets.get(key);
+        if (bucket == null) {
+            final Bucket<T> newBucket = new Bucket<T>(rows, columns, subset);
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Plans of the same size: strong plans first then soft overflow (per-size lock)
+     * @param <T> plan type
+     */
+    private static final class Bucket<T> {
+
+        /** number of rows */
+        private final int rows;
+        /** number of columns */
+        private final int columns;
+        /** subset flag */
+        private final boolean subset;
+        /** strong plans */
+        private final ArrayDeque<T> strong = new ArrayDeque<T>(DEFAULT_STRONG_PLANS);
+        /** soft overflow */
+        private final ArrayDeque<SoftReference<T>> soft = new ArrayDeque<SoftReference<T>>(2);
+
+        Bucket(final int rows, final int columns, final boolean subset) {
+            this.rows = rows;
+            this.columns = columns;
+            this.subset = subset;
+        }
+
+        synchronized T poll(final FFTPlanPool pool) {
+            T plan = strong.pollLast();
+            if (plan == null) {
+                SoftReference<T> ref;
+                while ((ref = soft.pollLast()) != null) {
+                    plan = ref.get();
+                    if (plan != null) {
+                        pool.softHits.increment();
+                        break;
+                    }
+                }
+            }
+            return plan;
+        }
+
+        synchronized void offer(final T plan, final int maxStrongPlans) {
+            if (strong.size() < maxStrongPlans) {
+                strong.addLast(plan);
+            } else {
+                // prune cleared references:
+                for (Iterator<SoftReference<T>> it = soft.iterator(); it.hasNext();) {
+                    if (it.next().get() == null) {
+                        it.remove();
+                    }
+                }
+                soft.addLast(new SoftReference<T>(plan));
+            }
+        }
+
+        synchronized int getStrongCount() {
+            return strong.size();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return rows + " x " + columns + (subset ? " (subset)" : "") + ": strong = " + strong.size() + " soft = " + soft.size();
+        }
+    }
+}
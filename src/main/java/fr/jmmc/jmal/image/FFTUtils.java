@@ -3,14 +3,17 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image;
 
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_2D;
 import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
-import edu.emory.mathcs.jtransforms.fft.RealFFTUtils_2D;
 import edu.emory.mathcs.utils.ConcurrencyUtils;
 import fr.jmmc.jmal.model.ImageMode;
 import fr.jmmc.jmal.model.VisConverter;
 import fr.jmmc.jmal.model.VisNoiseService;
-import fr.jmmc.jmal.util.GenericWeakCache;
+import fr.jmmc.jmal.util.CancellationToken;
 import fr.jmmc.jmal.util.ThreadLocalRandom;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
 import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
 import java.util.Random;
 import org.slf4j.Logger;
@@ -26,19 +29,26 @@ public final class FFTUtils {
     private static final Logger logger = LoggerFactory.getLogger(FFTUtils.class.getName());
     /** Jmcs Parallel Job executor */
     private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
-    /** weak image cache for createImage()/recycleImage() */
-    private final static GenericWeakCache<FloatFFT_2D> fft2dCache = new GenericWeakCache<FloatFFT_2D>("FloatFFT2D") {
+    /** metrics */
+    private static final Timer TIMER_COMPUTE_FFT = Metrics.timer("fft.computeFFT");
+    private static final Timer TIMER_COMPUTE_FFT_DOUBLE = Metrics.timer("fft.computeFFTDouble");
+    private static final Timer TIMER_COMPUTE_FFT_CUBE = Metrics.timer("fft.computeFFTCube");
+    private static final Timer TIMER_CONVERT = Metrics.timer("fft.convert");
+    private static final Timer TIMER_EXTRACT_FFT = Metrics.timer("fft.extractFFT");
+    private static final Timer TIMER_SHIFT_QUADRANTS = Metrics.timer("fft.shiftQuadrants");
+    /** FFT plan pool */
+    private static final FFTPlanPool planPool = FFTPlanPool.getInstance();
 
-        @Override
-        protected boolean checkSizes(FloatFFT_2D fft2d, int length, int length2) {
-            return (fft2d.getRows() == length && fft2d.getColumns() == length2);
-        }
+    /**
+     * FFT arithmetic precision
+     */
+    public enum Precision {
 
-        @Override
-        public String getSizes(FloatFFT_2D fft2d) {
-            return String.format("%d x %d", fft2d.getRows(), fft2d.getColumns());
-        }
-    };
+        /** single precision (FloatFFT_2D): fastest */
+        SINGLE,
+        /** double precision (DoubleFFT_2D): lower noise floor for high dynamic range images (1e-5 contrast or less) */
+        DOUBLE;
+    }
 
     /**
      * Forbidden constructor
@@ -59,15 +69,97 @@ public final class FFTUtils {
         return ConcurrencyUtils.nextPow2(value);
     }
 
+    /**
+     * Return the smallest fast FFT size equals or larger than the given value
+     * i.e. an even number having only 2, 3, 5 or 7 factors (mixed radix):
+     * the FFT size is much closer to the requested size than using getPowerOfTwo()
+     * @param value value to use
+     * @return smallest fast FFT size equals or larger than the given value
+     */
+    public static int getFastSize(final int value) {
+        if (value <= 2) {
+            return 2;
+        }
+        for (int n = (value % 2 == 0) ? value : value + 1;; n += 2) {
+            if (isFastSize(n)) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Return true if the given value is an even number having only 2, 3, 5 or 7 factors
+     * @param value value to test
+     * @return true if the given value is a fast FFT size
+     */
+    public static boolean isFastSize(final int value) {
+        if (value < 2 || value % 2 != 0) {
+            return false;
+        }
+        int n = value;
+        while (n % 2 == 0) {
+            n /= 2;
+        }
+        while (n % 3 == 0) {
+            n /= 3;
+        }
+        while (n % 5 == 0) {
+            n /= 5;
+        }
+        while (n % 7 == 0) {
+            n /= 7;
+        }
+        return n == 1;
+    }
+
     /**
      * Computes only a subset of the 2D forward DFT of real data
      * @param inputSize input image size (width == height); must be an even number
      * @param array input image
-     * @param fftSize FFT dimensions (width == height); must be a power of two
+     * @param fftSize FFT dimensions (width == height); must be an even number (see getFastSize())
      * @param outputSize output size (width == height); must be an even number
-     * @return subset of the 2D real FFT array (power of two) of the given size outputSize = rows = columns
+     * @return subset of the 2D real FFT array of the given size outputSize = rows = columns
      */
     public static float[][] computeFFT(final int inputSize, final float[][] array, final int fftSize, final int outputSize) {
+        return computeFFT(inputSize, array, fftSize, outputSize, CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of real data
+     * @param inputSize input image size (width == height); must be an even number
+     * @param array input image
+     * @param fftSize FFT dimensions (width == height); must be an even number (see getFastSize())
+     * @param outputSize output size (width == height); must be an even number
+     * @param token cancellation token
+     * @return subset of the 2D real FFT array of the given size outputSize = rows = columns
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (work arrays are recycled)
+     */
+    public static float[][] computeFFT(final int inputSize, final float[][] array, final int fftSize, final int outputSize,
+                                       final CancellationToken token) throws InterruptedJobException {
+        return computeFFT(inputSize, array, fftSize, outputSize, Precision.SINGLE, token);
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of real data using the given arithmetic precision
+     * @param inputSize input image size (width == height); must be an even number
+     * @param array input image
+     * @param fftSize FFT dimensions (width == height); must be an even number (see getFastSize())
+     * @param outputSize output size (width == height); must be an even number
+     * @param precision FFT arithmetic precision (the output is always given in single precision)
+     * @param token cancellation token
+     * @return subset of the 2D real FFT array of the given size outputSize = rows = columns
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (work arrays are recycled)
+     */
+    public static float[][] computeFFT(final int inputSize, final float[][] array, final int fftSize, final int outputSize,
+                                       final Precision precision, final CancellationToken token) throws InterruptedJobException {
+        if (precision == Precision.DOUBLE) {
+            return computeFFTDouble(inputSize, array, fftSize, outputSize, token);
+        }
+        // fast interrupt :
+        token.checkCancelled("FFTUtils.computeFFT");
+
         if (logger.isDebugEnabled()) {
             logger.debug("computeFFT: image size = {} - FFT size = {} - output size = {}",
                     inputSize, fftSize, outputSize);
@@ -81,17 +173,11 @@ public final class FFTUtils {
                     fftSize, fftSubSize, inputSize, outputSize);
         }
 
-        long start = System.nanoTime();
+        final long startFFT = System.nanoTime();
+        long start = startFFT;
 
         // use fftSize to have hyper resolution in fourier plane:
-        FloatFFT_2D fft2d = fft2dCache.getItem(fftSize, fftSize);
-        if (fft2d != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("reuse fft2d[{}] @ {}", fft2dCache.getSizes(fft2d), fft2d.hashCode());
-            }
-        } else {
-            fft2d = new FloatFFT_2D(fftSize, fftSize, true); // rows, cols must be power of two !!
-        }
+        final FloatFFT_2D fft2d = planPool.acquire(fftSize, fftSize, true); // rows, cols must be even numbers !!
 
         float[][] fftData = null;
         try {
@@ -101,6 +187,9 @@ public final class FFTUtils {
             // compute subset of real FFT (power of 2):
             fftData = fft2d.realForwardSubset(fftSubSize, inputSize, array, fftData);
 
+            // fast interrupt :
+            token.checkCancelled("FFTUtils.computeFFT");
+
         } catch (RuntimeException re) {
             logger.debug("recycleArray <= interrupted job:");
             FloatArrayCache.recycleArray(fftData);
@@ -111,7 +200,7 @@ public final class FFTUtils {
             throw re;
         } finally {
             // Note: when threads are interrupted, some may still be still running is using the fft2d instance:
-            fft2dCache.putItem(fft2d);
+            planPool.release(fft2d, true);
         }
 
         logger.info("FloatFFT_2D.realForwardSubset: duration = {} ms.", 1e-6d * (System.nanoTime() - start));
@@ -130,10 +219,195 @@ public final class FFTUtils {
                 FloatArrayCache.recycleArray(array2D);
             }
         }
+        TIMER_COMPUTE_FFT.record(System.nanoTime() - startFFT);
 
         return fftData;
     }
 
+    /**
+     * Computes only a subset of the 2D forward DFT of real data in double precision (DoubleFFT_2D)
+     * and extract the output subset in single precision
+     * @param inputSize input image size (width == height); must be an even number
+     * @param array input image
+     * @param fftSize FFT dimensions (width == height); must be an even number (see getFastSize())
+     * @param outputSize output size (width == height); must be an even number
+     * @param token cancellation token
+     * @return subset of the 2D real FFT array of the given size outputSize = rows = columns
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (work arrays are recycled)
+     */
+    private static float[][] computeFFTDouble(final int inputSize, final float[][] array, final int fftSize, final int outputSize,
+                                              final CancellationToken token) throws InterruptedJobException {
+        // fast interrupt :
+        token.checkCancelled("FFTUtils.computeFFT");
+
+        // FFT sub size must be larger than input image:
+        final int fftSubSize = Math.max(inputSize, outputSize);
+
+        if (logger.isInfoEnabled()) {
+            logger.info("computeFFTDouble: FFT size = {} - sub size = {} - input size = {} - output size = {}",
+                    fftSize, fftSubSize, inputSize, outputSize);
+        }
+
+        final long startFFT = System.nanoTime();
+
+        // use fftSize to have hyper resolution in fourier plane:
+        final DoubleFFT_2D fft2d = planPool.acquireDouble(fftSize, fftSize, true); // rows, cols must be even numbers !!
+
+        double[][] input = null;
+        double[][] fftData = null;
+        try {
+            // Get work arrays from weak cache or allocate new arrays with enough capacity:
+            input = DoubleArrayCache.getArray(inputSize, inputSize);
+
+            for (int r = 0; r < inputSize; r++) {
+                final float[] row = array[r];
+                final double[] dRow = input[r];
+                for (int c = 0; c < inputSize; c++) {
+                    dRow[c] = row[c];
+                }
+            }
+
+            fftData = DoubleArrayCache.getArray(fftSubSize, fftSubSize + 2);
+
+            // compute subset of real FFT:
+            fftData = fft2d.realForwardSubset(fftSubSize, inputSize, input, fftData);
+
+            // fast interrupt :
+            token.checkCancelled("FFTUtils.computeFFT");
+
+        } catch (RuntimeException re) {
+            logger.debug("recycleArray <= interrupted job:");
+            DoubleArrayCache.recycleArray(fftData);
+            // rethrow exception:
+            if (re instanceof IllegalArgumentException) {
+                throw new IllegalStateException("Invalid argument to compute FFT :", re);
+            }
+            throw re;
+        } finally {
+            DoubleArrayCache.recycleArray(input);
+            // Note: when threads are interrupted, some may still be still running is using the fft2d instance:
+            planPool.release(fft2d, true);
+        }
+
+        logger.info("DoubleFFT_2D.realForwardSubset: duration = {} ms.", 1e-6d * (System.nanoTime() - startFFT));
+
+        // extract part of the FFT (single precision):
+        final float[][] output = FloatArrayCache.getArray(outputSize, outputSize);
+
+        extractFFT(fftSubSize, fftData, outputSize, output);
+
+        DoubleArrayCache.recycleArray(fftData);
+
+        TIMER_COMPUTE_FFT_DOUBLE.record(System.nanoTime() - startFFT);
+
+        return output;
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of the given flat image
+     * Note: rows are copied into a pooled 2D array as FloatFFT_2D works on float[rows][cols]
+     * @param image input image (width == height); must be an even number
+     * @param fftSize FFT dimensions (width == height); must be an even number (see getFastSize())
+     * @param outputSize output size (width == height); must be an even number
+     * @param token cancellation token
+     * @return subset of the 2D real FFT array of the given size outputSize = rows = columns
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (work arrays are recycled)
+     */
+    public static float[][] computeFFT(final FloatImage image, final int fftSize, final int outputSize,
+                                       final CancellationToken token) throws InterruptedJobException {
+        final int inputSize = image.getWidth();
+        if (image.getHeight() != inputSize) {
+            throw new IllegalStateException("Invalid image size: " + image + " (width must be equal to height) !");
+        }
+        final float[][] array = image.copyTo(FloatArrayCache.getArray(inputSize, inputSize));
+        try {
+            return computeFFT(inputSize, array, fftSize, outputSize, token);
+        } finally {
+            FloatArrayCache.recycleArray(array);
+        }
+    }
+
+    /**
+     * Computes only a subset of the 2D forward DFT of real data for all planes of the given cube (batch)
+     * using a single plan and a single thread fan-out for rows and columns of all planes (plane, row)
+     * instead of calling computeFFT() for each plane
+     * @param cube input cube (width == height); must be an even number
+     * @param fftSize FFT dimensions (width == height); must be an even number (see getFastSize())
+     * @param outputSize output size (width == height); must be an even number
+     * @param token cancellation token
+     * @return new cube [outputSize x outputSize x depth] (see FloatArrayCache.recycleCube()) whose planes
+     * are the subsets of the 2D real FFT arrays
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (work arrays are recycled)
+     */
+    public static FloatCube computeFFT(final FloatCube cube, final int fftSize, final int outputSize,
+                                       final CancellationToken token) throws InterruptedJobException {
+        // fast interrupt :
+        token.checkCancelled("FFTUtils.computeFFT");
+
+        final int inputSize = cube.getWidth();
+        if (cube.getHeight() != inputSize) {
+            throw new IllegalStateException("Invalid cube size: " + cube + " (width must be equal to height) !");
+        }
+        final int planes = cube.getDepth();
+
+        // FFT sub size must be larger than input image:
+        final int fftSubSize = Math.max(inputSize, outputSize);
+
+        if (logger.isInfoEnabled()) {
+            logger.info("computeFFT: FFT size = {} - sub size = {} - input size = {} - output size = {} - planes = {}",
+                    fftSize, fftSubSize, inputSize, outputSize, planes);
+        }
+
+        final long startFFT = System.nanoTime();
+
+        // use fftSize to have hyper resolution in fourier plane:
+        final FloatFFT_2D fft2d = planPool.acquire(fftSize, fftSize, true); // rows, cols must be even numbers !!
+
+        FloatCube fftData = null;
+        final int fftColumns;
+        try {
+            fftColumns = fft2d.getSubsetColumns(fftSubSize);
+
+            // Get a work cube from the pool or allocate a new cube with enough capacity:
+            fftData = FloatArrayCache.getCube(fftColumns, fftSubSize, planes);
+
+            // compute subset of real FFT for all planes:
+            fft2d.realForwardSubset(fftSubSize, inputSize, planes, cube.getData(), 0, inputSize, cube.getPlaneStride(),
+                    fftData.getData());
+
+            // fast interrupt :
+            token.checkCancelled("FFTUtils.computeFFT");
+
+        } catch (RuntimeException re) {
+            logger.debug("recycleCube <= interrupted job:");
+            FloatArrayCache.recycleCube(fftData);
+            // rethrow exception:
+            if (re instanceof IllegalArgumentException) {
+                throw new IllegalStateException("Invalid argument to compute FFT :", re);
+            }
+            throw re;
+        } finally {
+            planPool.release(fft2d, true);
+        }
+
+        logger.info("FloatFFT_2D.realForwardSubset: duration = {} ms.", 1e-6d * (System.nanoTime() - startFFT));
+
+        // extract part of the FFT for all planes:
+        final FloatCube output = FloatArrayCache.getCube(outputSize, outputSize, planes);
+        for (int k = 0; k < planes; k++) {
+            extractFFT(fftSubSize, fftColumns, fftData.getData(), fftData.getPlaneOffset(k),
+                    outputSize, output.getData(), output.getPlaneOffset(k));
+        }
+        FloatArrayCache.recycleCube(fftData);
+
+        TIMER_COMPUTE_FFT_CUBE.record(System.nanoTime() - startFFT);
+
+        return output;
+    }
+
     /**
      * Convert the given FFT data (real packed data) of the given size to Amplitude or Phase according to the given mode
      * And shift quadrants to have zero (DC) at the image center
@@ -171,11 +445,30 @@ public final class FFTUtils {
      */
     public static float[][] convert(final int fftSize, final float[][] fftData, final ImageMode mode, final int outputSize,
                                     final VisNoiseService noiseService) {
+        return convert(fftSize, fftData, mode, outputSize, noiseService, CancellationToken.forCurrentThread());
+    }
 
-        final long start = System.nanoTime();
+    /**
+     * Convert the given FFT data (real packed data) of the given size to Amplitude or Phase according to the given mode
+     * And shift quadrants to have zero (DC) at the image center
+     * @param fftSize number of rows = number of columns
+     * @param fftData FFT data (real packed data)
+     * @param mode image mode (amplitude or phase)
+     * @param outputSize output size (width == height); must be an even number
+     * @param noiseService optional noise service to compute noisy complex visibilities before computing amplitude or phase
+     * @param token cancellation token
+     * @return amplitude or phase image
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the output array is recycled)
+     */
+    public static float[][] convert(final int fftSize, final float[][] fftData, final ImageMode mode, final int outputSize,
+                                    final VisNoiseService noiseService, final CancellationToken token) throws InterruptedJobException {
 
-        // rows, cols must be power of two or at least even numbers:
-        final RealFFTUtils_2D unpacker = new RealFFTUtils_2D(fftSize, fftSize);
+        if (fftSize % 2 != 0 || outputSize % 2 != 0 || outputSize > fftSize) {
+            throw new IllegalStateException("Invalid sizes: fft size = " + fftSize + " output size = " + outputSize
+                    + " (must be even numbers and output size <= fft size) !");
+        }
+        final long start = System.nanoTime();
 
         // Get an output array from weak cache or allocate a new array with enough capacity:
         final float[][] output = FloatArrayCache.getArray(outputSize, outputSize);
@@ -186,10 +479,7 @@ public final class FFTUtils {
         final int ro2 = outputSize / 2;
         final int fftOffset = fftSize - ro2;
 
-        /** Get the current thread to check if the computation is interrupted */
-        final Thread currentThread = Thread.currentThread();
-
-        // this step indicates when the thread.isInterrupted() is called in the for loop
+        // this step indicates when the token.isCancelled() is called in the for loop
         final int stepInterrupt = Math.min(16, 1 + outputSize / 32);
 
         final int nJobs = jobExecutor.getMaxParallelJob();
@@ -197,6 +487,9 @@ public final class FFTUtils {
         // computation tasks:
         final Runnable[] jobs = new Runnable[nJobs];
 
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
         // create tasks:
         for (int i = 0; i < nJobs; i++) {
             final int n0 = i;
@@ -207,74 +500,122 @@ public final class FFTUtils {
                     // random instance dedicated to this thread:
                     final Random threadRandom = ThreadLocalRandom.current();
 
-                    float[] oRow;
-                    double re, im;
-
-                    // Process quadrant 1 and 2 (cache locality):
+                    // Quadrants are written directly at their shifted location (zero (DC) at the image center):
+                    /*
+                     * | 1 2 | => | 3 4 |
+                     * | 4 3 |    | 2 1 |
+                     */
                     for (int r = n0; r < ro2; r += nJobs) {
-                        oRow = output[r];
-
-                        for (int i = 0, c; i < ro2; i++) {
-                            // quadrant 1:
-                            c = 2 * i;
-                            re = unpacker.unpack(r, c, fftData);
-                            im = unpacker.unpack(r, c + 1, fftData);
-
-                            oRow[i] = converter.convert(re, im, threadRandom);
-
-                            // quadrant 2:
-                            c = 2 * (fftOffset + i);
-                            re = unpacker.unpack(r, c, fftData);
-                            im = unpacker.unpack(r, c + 1, fftData);
+                        // quadrants 1 and 2 (positive frequencies along rows) => bottom half:
+                        convertRow(fftSize, fftData, r, ro2, converter, threadRandom, output[r + ro2]);
 
-                            oRow[ro2 + i] = converter.convert(re, im, threadRandom);
-                        }
+                        // quadrants 4 and 3 (negative frequencies along rows) => top half:
+                        convertRow(fftSize, fftData, r + fftOffset, ro2, converter, threadRandom, output[r]);
 
                         // fast interrupt:
-                        if (r % stepInterrupt == 0 && currentThread.isInterrupted()) {
+                        if (r % stepInterrupt == 0 && jobToken.isCancelled()) {
                             logger.debug("convert: cancelled");
                             return;
                         }
                     }
+                }
+            };
+        }
 
-                    // Process quadrant 4 and 3 (cache locality):
-                    for (int r = n0; r < ro2; r += nJobs) {
-                        oRow = output[r + ro2];
-
-                        for (int i = 0, c; i < ro2; i++) {
-                            // quadrant 4:
-                            c = 2 * i;
-                            re = unpacker.unpack(r + fftOffset, c, fftData);
-                            im = unpacker.unpack(r + fftOffset, c + 1, fftData);
+        try {
+            // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
+            jobExecutor.forkAndJoin("FFTUtils.convert", jobs);
 
-                            oRow[i] = converter.convert(re, im, threadRandom);
+            // fast interrupt (partial output) :
+            token.checkCancelled("FFTUtils.convert");
 
-                            // quadrant 3:
-                            c = 2 * (fftOffset + i);
-                            re = unpacker.unpack(r + fftOffset, c, fftData);
-                            im = unpacker.unpack(r + fftOffset, c + 1, fftData);
+        } catch (RuntimeException re) {
+            logger.debug("recycleArray <= interrupted job:");
+            // stop remaining jobs before recycling their output:
+            jobToken.cancel();
+            FloatArrayCache.recycleArray(output);
+            // rethrow exception:
+            throw re;
+        }
 
-                            oRow[ro2 + i] = converter.convert(re, im, threadRandom);
-                        }
+        final long duration = System.nanoTime() - start;
+        TIMER_CONVERT.record(duration);
 
-                        // fast interrupt:
-                        if (r % stepInterrupt == 0 && currentThread.isInterrupted()) {
-                            logger.debug("convert: cancelled");
-                            return;
-                        }
-                    }
-                }
-            };
-        }
+        logger.info("convert: duration = {} ms.", 1e-6d * duration);
 
-        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
-        jobExecutor.forkAndJoin("FFTUtils.convert", jobs);
+        return output;
+    }
 
-        logger.info("convert: duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+    /**
+     * Convert one row of the given FFT data (real packed data) to Amplitude or Phase (shifted columns):
+     * oRow[ro2 + i] = value(k2 = i) and oRow[i] = value(k2 = fftSize - ro2 + i) for 0 &lt;= i &lt; ro2
+     * 
+     * Specialized unpack loops (see RealFFTUtils_2D.getIndex()): 0 &lt; k2 &lt; fftSize/2 are stored in the fft row
+     * and k2 &gt; fftSize/2 are conjugates stored in the symmetric row; only k2 = 0 and k2 = fftSize/2 are special.
+     * 
+     * @param fftSize number of rows = number of columns
+     * @param fftData FFT data (real packed data)
+     * @param fr fft row index
+     * @param ro2 half of the output size
+     * @param converter data converter
+     * @param threadRandom random instance dedicated to this thread
+     * @param oRow output row
+     */
+    private static void convertRow(final int fftSize, final float[][] fftData, final int fr, final int ro2,
+                                   final VisConverter converter, final Random threadRandom, final float[] oRow) {
+        final int half = fftSize / 2;
+
+        final float[] fRow = fftData[fr];
+        // conjugate row (fftSize - fr) mod fftSize:
+        final float[] cRow = fftData[(fr == 0) ? 0 : fftSize - fr];
+
+        // k2 = 0:
+        float re, im;
+        if (fr == 0) {
+            re = fRow[0];
+            im = 0f;
+        } else if (2 * fr == fftSize) {
+            re = fftData[half][0];
+            im = 0f;
+        } else if (2 * fr < fftSize) {
+            re = fRow[0];
+            im = fRow[1];
+        } else {
+            re = cRow[0];
+            im = -cRow[1];
+        }
+        oRow[ro2] = converter.convert(re, im, threadRandom);
 
-        FFTUtils.shiftQuadrants(outputSize, output);
+        // 0 < k2 < fftSize/2 (positive frequencies):
+        for (int i = 1, c; i < ro2; i++) {
+            c = i << 1;
+            oRow[ro2 + i] = converter.convert(fRow[c], fRow[c + 1], threadRandom);
+        }
 
-        return output;
+        // k2 = fftSize - ro2 + i (negative frequencies) = conjugate of k2' = ro2 - i:
+        int i = 0;
+        if (ro2 == half) {
+            // k2 = fftSize/2:
+            if (fr == 0) {
+                re = fRow[1];
+                im = 0f;
+            } else if (2 * fr == fftSize) {
+                re = fftData[half][1];
+                im = 0f;
+            } else if (2 * fr < fftSize) {
+                re = cRow[1];
+                im = -cRow[0];
+            } else {
+                re = fRow[1];
+                im = fRow[0];
+            }
+            oRow[0] = converter.convert(re, im, threadRandom);
+            i = 1;
+        }
+        for (int c; i < ro2; i++) {
+            c = (ro2 - i) << 1;
+            oRow[i] = converter.convert(cRow[c], -cRow[c + 1], threadRandom);
+        }
     }
 
     /**
@@ -315,8 +656,11 @@ public final class FFTUtils {
             }
         }
 
+        final long duration = System.nanoTime() - start;
+        TIMER_SHIFT_QUADRANTS.record(duration);
+
         if (logger.isDebugEnabled()) {
-            logger.debug("shiftQuadrants: duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+            logger.debug("shiftQuadrants: duration = {} ms.", 1e-6d * duration);
         }
     }
 
@@ -344,6 +688,7 @@ public final class FFTUtils {
         if (logger.isDebugEnabled()) {
             logger.debug("extractFFT: output size = {} - FFT size = {}", outputSize, size);
         }
+        final long start = System.nanoTime();
 
         final int ro2 = outputSize / 2; // half of row dimension
 
@@ -398,6 +743,117 @@ public final class FFTUtils {
         output[ro2][0] = fftData[ro2][0]; // quadrant 2
         output[ro2][1] = fftData[ro2][outputSize]; // quadrant 3
 
+        TIMER_EXTRACT_FFT.record(System.nanoTime() - start);
+
         return output;
     }
+
+    /**
+     * Extract a sub part of the given flat real FFT 2D array (rows = columns = size) into the given flat output
+     * (see extractFFT(int, float[][], int))
+     * 
+     * @param size input size of the real FFT (rows = columns = size)
+     * @param fftColumns number of columns in the flat FFT data (size or size + 2)
+     * @param fftData flat real FFT
+     * @param fftOffset index of the first value in fftData
+     * @param outputSize output size (must be an even number)
+     * @param output flat output (rows = columns = outputSize)
+     * @param outOffset index of the first value in output
+     */
+    private static void extractFFT(final int size, final int fftColumns, final float[] fftData, final int fftOffset,
+                                   final int outputSize, final float[] output, final int outOffset) {
+        if (outputSize % 2 != 0) {
+            throw new IllegalStateException("Invalid output size (" + outputSize + ") must be an even number !");
+        }
+        if (outputSize > size) {
+            throw new IllegalStateException("Invalid output size (" + outputSize + ") > fft size (" + size + ") !");
+        }
+        final long start = System.nanoTime();
+
+        final int ro2 = outputSize / 2; // half of row dimension
+
+        final int ef2 = size - ro2; // index of the first row in FFT (quadrant 3 / 4)
+
+        for (int r = 0; r < ro2; r++) {
+            // copy complex data (re, im) from fftData beginning to output row:
+            System.arraycopy(fftData, fftOffset + r * fftColumns, output, outOffset + r * outputSize, outputSize);
+
+            // copy complex data (re, im) from fftData end to output row:
+            System.arraycopy(fftData, fftOffset + (ef2 + r) * fftColumns, output, outOffset + (r + ro2) * outputSize, outputSize);
+        }
+
+        if (outputSize != size) {
+            // fix column zero (see extractFFT(int, float[][], int)):
+            for (int r = 1, j; r < ro2; r++) {
+                j = outputSize - r;
+
+                output[outOffset + j * outputSize + 1] = fftData[fftOffset + r * fftColumns + outputSize];
+                output[outOffset + j * outputSize] = -fftData[fftOffset + r * fftColumns + outputSize + 1];
+            }
+            output[outOffset + 1] = fftData[fftOffset + outputSize];
+
+            output[outOffset + ro2 * outputSize] = fftData[fftOffset + ro2 * fftColumns]; // quadrant 2
+            output[outOffset + ro2 * outputSize + 1] = fftData[fftOffset + ro2 * fftColumns + outputSize]; // quadrant 3
+        }
+
+        TIMER_EXTRACT_FFT.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Extract a sub part of the given double precision real FFT 2D array into the given single precision output
+     * (see extractFFT(int, float[][], int))
+     * 
+     * @param size input size of the real FFT (rows = columns = size)
+     * @param fftData real FFT (double precision)
+     * @param outputSize output size (must be an even number)
+     * @param output output array [outputSize][outputSize]
+     */
+    private static void extractFFT(final int size, final double[][] fftData, final int outputSize, final float[][] output) {
+        if (outputSize % 2 != 0) {
+            throw new IllegalStateException("Invalid output size (" + outputSize + ") must be an even number !");
+        }
+        if (outputSize > size) {
+            throw new IllegalStateException("Invalid output size (" + outputSize + ") > fft size (" + size + ") !");
+        }
+        final long start = System.nanoTime();
+
+        final int ro2 = outputSize / 2; // half of row dimension
+
+        final int ef2 = size - ro2; // index of the first row in FFT (quadrant 3 / 4)
+
+        float[] oRow;
+        double[] fRow;
+
+        for (int r = 0; r < ro2; r++) {
+            // copy complex data (re, im) from fftData beginning to output row:
+            oRow = output[r];
+            fRow = fftData[r];
+            for (int c = 0; c < outputSize; c++) {
+                oRow[c] = (float) fRow[c];
+            }
+
+            // copy complex data (re, im) from fftData end to output row:
+            oRow = output[r + ro2];
+            fRow = fftData[ef2 + r];
+            for (int c = 0; c < outputSize; c++) {
+                oRow[c] = (float) fRow[c];
+            }
+        }
+
+        if (outputSize != size) {
+            // fix column zero (see extractFFT(int, float[][], int)):
+            for (int r = 1, j; r < ro2; r++) {
+                j = outputSize - r;
+
+                output[j][1] = (float) fftData[r][outputSize];
+                output[j][0] = (float) -fftData[r][outputSize + 1];
+            }
+            output[0][1] = (float) fftData[0][outputSize];
+
+            output[ro2][0] = (float) fftData[ro2][0]; // quadrant 2
+            output[ro2][1] = (float) fftData[ro2][outputSize]; // quadrant 3
+        }
+
+        TIMER_EXTRACT_FFT.record(System.nanoTime() - start);
+    }
 }
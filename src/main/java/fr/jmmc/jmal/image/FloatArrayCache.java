@@ -3,12 +3,12 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image;
 
-import fr.jmmc.jmal.util.GenericWeakCache;
+import fr.jmmc.jmal.util.BufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Simple float[][] weak cache
+ * Simple float[][] and flat float[] (cube) pool
  * @author bourgesl
  */
 public final class FloatArrayCache {
@@ -16,35 +16,111 @@ public final class FloatArrayCache {
     /** Class logger */
     private static final Logger logger = LoggerFactory.getLogger(FloatArrayCache.class.getName());
 
-    /** weak image cache for createImage()/recycleImage() */
-    private final static GenericWeakCache<float[][]> array2dCache = new GenericWeakCache<float[][]>("FloatArray2D") {
+    /** float[][] pool for getArray()/recycleArray() */
+    private final static BufferPool<float[][]> array2dCache = new BufferPool<float[][]>("FloatArray2D") {
 
         @Override
-        protected boolean checkSizes(float[][] array2D, int length, int length2) {
-            return (array2D.length == length && array2D[0].length == length2);
+        protected int getLength(final float[][] array2D) {
+            return array2D.length;
         }
 
         @Override
-        public String getSizes(float[][] array2D) {
-            return String.format("%d x %d", array2D.length, array2D[0].length);
+        protected int getLength2(final float[][] array2D) {
+            return array2D[0].length;
+        }
+
+        @Override
+        protected long getByteSize(final float[][] array2D) {
+            return 4L * array2D.length * array2D[0].length;
         }
     };
 
-    public static float[][] getArray(int length, int length2) {
+    /** flat float[] pool for getCube()/recycleCube() */
+    private final static BufferPool<float[]> array1dCache = new BufferPool<float[]>("FloatArray1D") {
+
+        @Override
+        protected int getLength(final float[] array) {
+            return array.length;
+        }
+
+        @Override
+        protected int getLength2(final float[] array) {
+            return 1;
+        }
+
+        @Override
+        protected long getByteSize(final float[] array) {
+            return 4L * array.length;
+        }
+
+        @Override
+        public String getSizes(final float[] array) {
+            return String.valueOf(array.length);
+        }
+    };
+
+    /**
+     * Get a (dirty) array [length][length2] from the pool or allocate a new array
+     * @param length number of rows
+     * @param length2 number of columns
+     * @return (dirty) array [length][length2]
+     */
+    public static float[][] getArray(final int length, final int length2) {
         float[][] array2D = array2dCache.getItem(length, length2);
         if (array2D != null) {
             return array2D;
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("create a new array: {} x {}", length + 4, length2 + 4);
+            logger.debug("create a new array: {} x {}", length, length2);
         }
-        return new float[length][length2];
+        return array2dCache.track(new float[length][length2]);
     }
 
+    /**
+     * Give back the given array to the pool
+     * @param array2D array to recycle (may be null)
+     */
     public static void recycleArray(final float[][] array2D) {
         array2dCache.putItem(array2D);
     }
 
+    /**
+     * Get a (dirty) cube [width x height x depth] backed by a pooled flat array or allocate a new cube
+     * @param width plane width
+     * @param height plane height
+     * @param depth number of planes
+     * @return (dirty) cube
+     */
+    public static FloatCube getCube(final int width, final int height, final int depth) {
+        final int length = width * height * depth;
+        float[] array = array1dCache.getItem(length, 1);
+        if (array == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("create a new cube: {} x {} x {}", width, height, depth);
+            }
+            array = array1dCache.track(new float[length]);
+        }
+        return new FloatCube(array, width, height, depth);
+    }
+
+    /**
+     * Give back the data array of the given cube to the pool
+     * @param cube cube to recycle (may be null)
+     */
+    public static void recycleCube(final FloatCube cube) {
+        if (cube != null) {
+            array1dCache.putItem(cube.getData());
+        }
+    }
+
+    /**
+     * Log arrays obtained by getArray() or getCube() and never recycled (jmal.pool.checks=true only)
+     * @return number of outstanding arrays
+     */
+    public static int reportLeaks() {
+        return array2dCache.reportLeaks() + array1dCache.reportLeaks();
+    }
+
     private FloatArrayCache() {
         super();
     }
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+/**
+ * Flat float cube buffer (planes of the same size, ie wavelength planes):
+ * value(col, row, plane) = data[plane * width * height + row * width + col]
+ *
+ * Planes are contiguous in a single array and getPlane() returns a FloatImage view (no copy).
+ *
+ * @author bourgesl
+ */
+public final class FloatCube {
+
+    /* members */
+    /** data array */
+    private final float[] _data;
+    /** plane width */
+    private final int _width;
+    /** plane height */
+    private final int _height;
+    /** number of planes */
+    private final int _depth;
+
+    /**
+     * Create a new cube (zero-filled)
+     * @param width plane width
+     * @param height plane height
+     * @param depth number of planes
+     */
+    public FloatCube(final int width, final int height, final int depth) {
+        this(new float[width * height * depth], width, height, depth);
+    }
+
+    /**
+     * Create a cube on the given data array (no copy)
+     * @param data data array
+     * @param width plane width
+     * @param height plane height
+     * @param depth number of planes
+     * @throws IllegalArgumentException if the sizes do not match the data array
+     */
+    public FloatCube(final float[] data, final int width, final int height, final int depth) {
+        if (width <= 0 || height <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Invalid cube sizes: width = " + width + " height = " + height
+                    + " depth = " + depth);
+        }
+        if ((long) width * height * depth > data.length) {
+            throw new IllegalArgumentException("Invalid data array size: " + data.length + "; expected at least: "
+                    + ((long) width * height * depth) + ".");
+        }
+        this._data = data;
+        this._width = width;
+        this._height = height;
+        this._depth = depth;
+    }
+
+    /**
+     * Copy the given planes float[depth][height][width] into a new cube (adapter)
+     * @param planes input planes
+     * @return new cube
+     */
+    public static FloatCube copyOf(final float[][][] planes) {
+        final float[][] first = planes[0];
+        final FloatCube cube = new FloatCube(first[0].length, first.length, planes.length);
+        for (int k = 0; k < planes.length; k++) {
+            cube.getPlane(k).copyFrom(planes[k]);
+        }
+        return cube;
+    }
+
+    /**
+     * @return data array (shared)
+     */
+    public float[] getData() {
+        return _data;
+    }
+
+    /**
+     * @return plane width
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * @return plane height
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * @return number of planes
+     */
+    public int getDepth() {
+        return _depth;
+    }
+
+    /**
+     * @return distance between two planes in the data array
+     */
+    public int getPlaneStride() {
+        return _width * _height;
+    }
+
+    /**
+     * @param plane plane index
+     * @return index of the first value of the given plane in the data array
+     */
+    public int getPlaneOffset(final int plane) {
+        return plane * _width * _height;
+    }
+
+    /**
+     * Return the given plane as a contiguous image sharing the same data array
+     * @param plane plane index
+     * @return plane view
+     * @throws IllegalArgumentException if the plane index is invalid
+     */
+    public FloatImage getPlane(final int plane) {
+        if (plane < 0 || plane >= _depth) {
+            throw new IllegalArgumentException("Invalid plane [" + plane + "] of cube " + this);
+        }
+        return new FloatImage(_data, getPlaneOffset(plane), _width, _height, _width);
+    }
+
+    /**
+     * @param col column index
+     * @param row row index
+     * @param plane plane index
+     * @return value at the given column, row and plane
+     */
+    public float get(final int col, final int row, final int plane) {
+        return _data[(plane * _height + row) * _width + col];
+    }
+
+    /**
+     * @param col column index
+     * @param row row index
+     * @param plane plane index
+     * @param value value to set at the given column, row and plane
+     */
+    public void set(final int col, final int row, final int plane, final float value) {
+        _data[(plane * _height + row) * _width + col] = value;
+    }
+
+    @Override
+    public String toString() {
+        return "FloatCube[" + _width + " x " + _height + " x " + _depth + ']';
+    }
+}
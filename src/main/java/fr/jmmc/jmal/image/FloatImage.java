@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import java.util.Arrays;
+
+/**
+ * Flat row-major float image buffer: value(col, row) = data[offset + row * stride + col]
+ *
+ * Unlike jagged float[rows][cols] arrays, rows are contiguous in a single array (no per-row indirection,
+ * bulk copies) and sub-views share the same data (zero-copy crop).
+ *
+ * @author bourgesl
+ */
+public final class FloatImage {
+
+    /* members */
+    /** data array */
+    private final float[] _data;
+    /** index of the first value (col = 0, row = 0) */
+    private final int _offset;
+    /** image width */
+    private final int _width;
+    /** image height */
+    private final int _height;
+    /** distance between two rows in the data array */
+    private final int _stride;
+
+    /**
+     * Create a new image (zero-filled)
+     * @param width image width
+     * @param height image height
+     */
+    public FloatImage(final int width, final int height) {
+        this(new float[width * height], 0, width, height, width);
+    }
+
+    /**
+     * Create an image on the given data array
+     * @param data data array
+     * @param offset index of the first value (col = 0, row = 0)
+     * @param width image width
+     * @param height image height
+     * @param stride distance between two rows in the data array (&gt;= width)
+     * @throws IllegalArgumentException if the sizes do not match the data array
+     */
+    public FloatImage(final float[] data, final int offset, final int width, final int height, final int stride) {
+        if (width <= 0 || height <= 0 || stride < width || offset < 0) {
+            throw new IllegalArgumentException("Invalid image sizes: offset = " + offset + " width = " + width
+                    + " height = " + height + " stride = " + stride);
+        }
+        if (offset + (long) (height - 1) * stride + width > data.length) {
+            throw new IllegalArgumentException("Invalid data array size: " + data.length + "; expected at least: "
+                    + (offset + (long) (height - 1) * stride + width) + ".");
+        }
+        this._data = data;
+        this._offset = offset;
+        this._width = width;
+        this._height = height;
+        this._stride = stride;
+    }
+
+    /**
+     * Wrap the given data array [width x height] (no copy)
+     * @param data data array
+     * @param width image width
+     * @param height image height
+     * @return new image on the given data array
+     */
+    public static FloatImage wrap(final float[] data, final int width, final int height) {
+        return new FloatImage(data, 0, width, height, width);
+    }
+
+    /**
+     * Copy the given 2D array float[rows][cols] into a new image (adapter)
+     * @param rows number of rows in the input array
+     * @param cols number of columns in the input array
+     * @param array input 2D array
+     * @return new image
+     */
+    public static FloatImage copyOf(final int rows, final int cols, final float[][] array) {
+        final FloatImage image = new FloatImage(cols, rows);
+        image.copyFrom(array);
+        return image;
+    }
+
+    /**
+     * Return a sub-view sharing the same data array
+     * @param x first column
+     * @param y first row
+     * @param width sub image width
+     * @param height sub image height
+     * @return sub-view
+     * @throws IllegalArgumentException if the area is outside this image
+     */
+    public FloatImage subView(final int x, final int y, final int width, final int height) {
+        if (x < 0 || y < 0 || x + width > _width || y + height > _height) {
+            throw new IllegalArgumentException("Invalid sub image [" + x + ", " + y + ", " + width + ", " + height
+                    + "] of image [" + _width + " x " + _height + "]");
+        }
+        return new FloatImage(_data, getIndex(x, y), width, height, _stride);
+    }
+
+    /**
+     * @return data array (shared)
+     */
+    public float[] getData() {
+        return _data;
+    }
+
+    /**
+     * @return index of the first value (col = 0, row = 0)
+     */
+    public int getOffset() {
+        return _offset;
+    }
+
+    /**
+     * @return image width
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * @return image height
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * @return distance between two rows in the data array
+     */
+    public int getStride() {
+        return _stride;
+    }
+
+    /**
+     * @return true if rows are contiguous (stride = width)
+     */
+    public boolean isContiguous() {
+        return _stride == _width;
+    }
+
+    /**
+     * @param row row index
+     * @return index of the first value of the given row in the data array
+     */
+    public int getRowOffset(final int row) {
+        return _offset + row * _stride;
+    }
+
+    /**
+     * @param col column index
+     * @param row row index
+     * @return index of the given value in the data array
+     */
+    public int getIndex(final int col, final int row) {
+        return _offset + row * _stride + col;
+    }
+
+    /**
+     * @param col column index
+     * @param row row index
+     * @return value at the given column and row
+     */
+    public float get(final int col, final int row) {
+        return _data[_offset + row * _stride + col];
+    }
+
+    /**
+     * @param col column index
+     * @param row row index
+     * @param value value to set at the given column and row
+     */
+    public void set(final int col, final int row, final float value) {
+        _data[_offset + row * _stride + col] = value;
+    }
+
+    /**
+     * Fill this image with the given value
+     * @param value value
+     */
+    public void fill(final float value) {
+        if (isContiguous()) {
+            Arrays.fill(_data, _offset, _offset + _width * _height, value);
+        } else {
+            for (int j = 0, off; j < _height; j++) {
+                off = getRowOffset(j);
+                Arrays.fill(_data, off, off + _width, value);
+            }
+        }
+    }
+
+    /**
+     * Copy the given 2D array float[height][width] into this image
+     * @param array input 2D array
+     */
+    public void copyFrom(final float[][] array) {
+        for (int j = 0; j < _height; j++) {
+            System.arraycopy(array[j], 0, _data, getRowOffset(j), _width);
+        }
+    }
+
+    /**
+     * Copy this image into the given 2D array float[height][width]
+     * @param array output 2D array
+     * @return given output 2D array
+     */
+    public float[][] copyTo(final float[][] array) {
+        for (int j = 0; j < _height; j++) {
+            System.arraycopy(_data, getRowOffset(j), array[j], 0, _width);
+        }
+        return array;
+    }
+
+    /**
+     * Copy this image into a new 2D array float[height][width] (adapter)
+     * @return new 2D array
+     */
+    public float[][] toArray2D() {
+        return copyTo(new float[_height][_width]);
+    }
+
+    /**
+     * Copy this image (or sub-view) into a new contiguous image
+     * @return new image
+     */
+    public FloatImage copy() {
+        final FloatImage image = new FloatImage(_width, _height);
+        if (isContiguous()) {
+            System.arraycopy(_data, _offset, image._data, 0, _width * _height);
+        } else {
+            for (int j = 0; j < _height; j++) {
+                System.arraycopy(_data, getRowOffset(j), image._data, j * _width, _width);
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public String toString() {
+        return "FloatImage[" + _width + " x " + _height + " - offset = " + _offset + " - stride = " + _stride + ']';
+    }
+}
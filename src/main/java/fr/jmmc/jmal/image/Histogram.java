@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+/**
+ * Histogram of float values using regular bins over [min; max] (values outside are counted apart as underflow or overflow,
+ * NaN values are ignored).
+ *
+ * Histograms with the same bins can be merged (partial histograms computed by parallel jobs) and give
+ * percentiles or the cumulative distribution (histogram equalization) without sorting values.
+ *
+ * @author bourgesl
+ */
+public final class Histogram {
+
+    /* members */
+    /** lower value */
+    private float _min = 0f;
+    /** upper value */
+    private float _max = 0f;
+    /** value to bin factor */
+    private float _binFactor = 0f;
+    /** counts per bin */
+    private int[] _counts = null;
+    /** number of values lower than min */
+    private long _underflow = 0L;
+    /** number of values greater than max */
+    private long _overflow = 0L;
+    /** total number of values (including underflow and overflow) */
+    private long _count = 0L;
+    /** cumulative distribution (lazy) */
+    private volatile float[] _cdf = null;
+
+    /**
+     * Create an undefined histogram (see setRange)
+     */
+    public Histogram() {
+        super();
+    }
+
+    /**
+     * Create an empty histogram
+     * @param min lower value
+     * @param max upper value
+     * @param nBins number of bins
+     */
+    public Histogram(final float min, final float max, final int nBins) {
+        setRange(min, max, nBins);
+    }
+
+    /**
+     * Define the bins and clear counts
+     * @param min lower value
+     * @param max upper value
+     * @param nBins number of bins
+     * @throws IllegalArgumentException if the number of bins or the range is invalid
+     */
+    public void setRange(final float min, final float max, final int nBins) {
+        if (nBins < 1) {
+            throw new IllegalArgumentException("Invalid number of bins: " + nBins);
+        }
+        if (!(min <= max)) {
+            throw new IllegalArgumentException("Invalid range [" + min + " - " + max + "] !");
+        }
+        _min = min;
+        _max = max;
+        // single bin if min = max:
+        _binFactor = (max > min) ? nBins / (max - min) : 0f;
+        _counts = new int[nBins];
+        _underflow = 0L;
+        _overflow = 0L;
+        _count = 0L;
+        _cdf = null;
+    }
+
+    /**
+     * Add the given value
+     * @param value value to add (ignored if NaN)
+     */
+    public void add(final float value) {
+        if (value != value) {
+            // NaN
+            return;
+        }
+        _count++;
+        if (value < _min) {
+            _underflow++;
+        } else if (value > _max) {
+            _overflow++;
+        } else {
+            final int last = _counts.length - 1;
+            final int i = (int) ((value - _min) * _binFactor);
+            // value = max in the last bin:
+            _counts[(i < last) ? i : last]++;
+        }
+    }
+
+    /**
+     * Add the counts of the given histogram (same bins)
+     * @param other histogram to merge
+     * @throws IllegalArgumentException if bins are different
+     */
+    public void merge(final Histogram other) {
+        if (other._counts.length != _counts.length || other._min != _min || other._max != _max) {
+            throw new IllegalArgumentException("Incompatible histogram bins: " + other + " <> " + this);
+        }
+        final int[] counts = _counts;
+        final int[] otherCounts = other._counts;
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += otherCounts[i];
+        }
+        _underflow += other._underflow;
+        _overflow += other._overflow;
+        _count += other._count;
+        _cdf = null;
+    }
+
+    /**
+     * Return the value below which the given percentage of values lies (linear interpolation inside the bin)
+     * @param percent percentage in [0; 100]
+     * @return percentile value or NaN if the histogram is empty
+     */
+    public float getPercentile(final double percent) {
+        if (_count == 0L) {
+            return Float.NaN;
+        }
+        if (_binFactor == 0f) {
+            return _min;
+        }
+        final int[] counts = _counts;
+        final double target = Math.min(1.0, Math.max(0.0, 0.01 * percent)) * _count;
+
+        long cumulative = _underflow;
+        if (target <= cumulative) {
+            return _min;
+        }
+        int i = 0;
+        for (; i < counts.length; i++) {
+            if (counts[i] != 0 && cumulative + counts[i] >= target) {
+                break;
+            }
+            cumulative += counts[i];
+        }
+        if (i == counts.length) {
+            return _max;
+        }
+        final double ratio = (target - cumulative) / counts[i];
+
+        return (float) (_min + (i + ratio) / _binFactor);
+    }
+
+    /**
+     * Return the fraction of values lower than the given value (cumulative distribution interpolated inside the bin)
+     * i.e. the histogram equalization transfer function
+     * @param value value (NaN or values lower than min give 0, values greater than max give 1)
+     * @return fraction in [0; 1]
+     */
+    public float getCumulativeFraction(final float value) {
+        float[] cdf = _cdf;
+        if (cdf == null) {
+            cdf = getCumulativeDistribution();
+        }
+        if (!(value >= _min)) {
+            return 0f;
+        }
+        if (value > _max) {
+            return 1f;
+        }
+        final float position = (value - _min) * _binFactor;
+
+        final int last = _counts.length;
+        if (position >= last) {
+            return cdf[last];
+        }
+        final int i = (int) position;
+        return cdf[i] + (position - i) * (cdf[i + 1] - cdf[i]);
+    }
+
+    /**
+     * Return the cumulative distribution at bin edges: cdf[i] = fraction of values lower than the bin i (underflow included)
+     * @return cumulative distribution (nBins + 1 values)
+     */
+    public float[] getCumulativeDistribution() {
+        float[] cdf = _cdf;
+        if (cdf == null) {
+            final int[] counts = _counts;
+            cdf = new float[counts.length + 1];
+
+            if (_count != 0L) {
+                final double norm = 1.0 / _count;
+                long cumulative = _underflow;
+                cdf[0] = (float) (cumulative * norm);
+                for (int i = 0; i < counts.length; i++) {
+                    cumulative += counts[i];
+                    cdf[i + 1] = (float) (cumulative * norm);
+                }
+            }
+            _cdf = cdf;
+        }
+        return cdf;
+    }
+
+    /**
+     * @return lower value
+     */
+    public float getMin() {
+        return _min;
+    }
+
+    /**
+     * @return upper value
+     */
+    public float getMax() {
+        return _max;
+    }
+
+    /**
+     * @return number of bins
+     */
+    public int getBinCount() {
+        return _counts.length;
+    }
+
+    /**
+     * Return the number of values in the given bin
+     * @param bin bin index
+     * @return number of values in the given bin
+     */
+    public int getCount(final int bin) {
+        return _counts[bin];
+    }
+
+    /**
+     * @return number of values lower than min
+     */
+    public long getUnderflow() {
+        return _underflow;
+    }
+
+    /**
+     * @return number of values greater than max
+     */
+    public long getOverflow() {
+        return _overflow;
+    }
+
+    /**
+     * @return total number of values (including underflow and overflow)
+     */
+    public long getCount() {
+        return _count;
+    }
+
+    /**
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        return "Histogram[" + _min + " - " + _max + "; bins: " + ((_counts != null) ? _counts.length : 0) + "; count: " + _count + "]";
+    }
+}
@@ -134,4 +134,57 @@ public final class ImageArrayUtils {
 
         return output;
     }
+
+    /**
+     * Enlarge the given flat image putting its data at the center of the larger output image
+     * @param input input image
+     * @param rowsDest number of rows for the output image
+     * @param colsDest number of columns for the output image
+     * @return new image or the input image if sizes are equal or null if the output image is smaller
+     */
+    public static FloatImage enlarge(final FloatImage input, final int rowsDest, final int colsDest) {
+        final int rows = input.getHeight();
+        final int cols = input.getWidth();
+
+        if (rowsDest < rows || colsDest < cols) {
+            return null;
+        }
+        if (rowsDest == rows && colsDest == cols) {
+            return input;
+        }
+        final FloatImage output = new FloatImage(colsDest, rowsDest);
+
+        // center image in output:
+        final int rowOffset = (rowsDest - rows) / 2;
+        final int colOffset = (colsDest - cols) / 2;
+
+        final float[] inData = input.getData();
+        final float[] outData = output.getData();
+
+        for (int j = 0; j < rows; j++) {
+            System.arraycopy(inData, input.getRowOffset(j), outData, output.getIndex(colOffset, j + rowOffset), cols);
+        }
+        return output;
+    }
+
+    /**
+     * Return one rectangular area at the center of the given flat image as a sub-view (no copy)
+     * @param input input image
+     * @param rowsDest number of rows arround the input image center
+     * @param colsDest number of columns arround the input image center
+     * @return sub-view or the input image if sizes are equal or null if the area is larger than the input image
+     */
+    public static FloatImage extract(final FloatImage input, final int rowsDest, final int colsDest) {
+        final int rows = input.getHeight();
+        final int cols = input.getWidth();
+
+        if (rowsDest > rows || colsDest > cols) {
+            return null;
+        }
+        if (rowsDest == rows && colsDest == cols) {
+            return input;
+        }
+        // extract image at the center of the input:
+        return input.subView((cols - colsDest) / 2, (rows - rowsDest) / 2, colsDest, rowsDest);
+    }
 }
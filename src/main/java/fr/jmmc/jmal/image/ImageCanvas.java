@@ -10,10 +10,14 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.Toolkit;
 
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
@@ -27,11 +31,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Image Canvas
+ * Image Canvas: the image is drawn from a multi-resolution pyramid of colorized tiles (see ImagePyramid)
+ * so only visible tiles at the appropriate level are drawn; use the mouse wheel to zoom, drag to pan
+ * and double-click to reset the view.
  *
  * @author Laurent BOURGES.
  */
-public class ImageCanvas extends Canvas implements MouseMotionListener {
+public class ImageCanvas extends Canvas implements MouseMotionListener, MouseWheelListener {
 
     /** default serial UID for Serializable interface */
     private static final long serialVersionUID = 1;
@@ -54,6 +60,12 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
     private static final int wedgeImageDist = 10;
     /** distance between wedge and its legend */
     private static final int wedgeLegendDist = 10;
+    /** zoom factor per mouse wheel notch */
+    private static final double zoomStep = 1.25;
+    /** maximum scale (screen pixels per image pixel) */
+    private static final double maxScale = 32.0;
+    /** minimum distance between ticks (screen pixels) */
+    private static final int minTickDist = 25;
     /* members */
     /** antialiasing flag */
     private boolean antiAliasing;
@@ -63,8 +75,8 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
     private IndexColorModel colorModel;
     /** wedge image */
     private transient Image wedge = null;
-    /** main image */
-    private transient BufferedImage image = null;
+    /** image pyramid */
+    private transient ImagePyramid pyramid = null;
     /** observable image instance */
     private ObservableImage observe;
     /** image width */
@@ -81,6 +93,25 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
     private int mouseY;
     /** mouse pixel value */
     private int mousePixel;
+    /** last mouse x position (drag) */
+    private int lastX;
+    /** last mouse y position (drag) */
+    private int lastY;
+    /* view */
+    /** zoom factor (1 = fit the canvas) */
+    private double zoom = 1.0;
+    /** x coordinate of the view center (image pixels) */
+    private double centerX;
+    /** y coordinate of the view center (image pixels) */
+    private double centerY;
+    /** x coordinate of the view origin (image pixels) */
+    private double viewX;
+    /** y coordinate of the view origin (image pixels) */
+    private double viewY;
+    /** horizontal scale (screen pixels per image pixel) */
+    private double scaleX;
+    /** vertical scale (screen pixels per image pixel) */
+    private double scaleY;
     /* data */
     /** float data array (1D) */
     private float[] data1D = null;
@@ -109,6 +140,22 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
 
         observe = new ObservableImage();
         this.addMouseMotionListener(this);
+        this.addMouseWheelListener(this);
+        this.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(final MouseEvent me) {
+                lastX = me.getX();
+                lastY = me.getY();
+            }
+
+            @Override
+            public void mouseClicked(final MouseEvent me) {
+                if (me.getClickCount() == 2) {
+                    resetView();
+                    repaint();
+                }
+            }
+        });
     }
 
     /**
@@ -232,6 +279,7 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
 
         // rebuild image :
         buildImage();
+        resetView();
 
         // set new canvas dimension
         final Dimension d = new Dimension(width, height);
@@ -248,12 +296,15 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
         observe.addObserver(observer);
     }
 
-    /** Change color model and repaint canvas */
+    /** Change color model and repaint canvas (tiles are re-colorized in the background) */
     public void setColorModel(IndexColorModel cm) {
         colorModel = cm;
 
         buildWedge();
-        buildImage();
+
+        if (pyramid != null) {
+            pyramid.setColorModel(cm);
+        }
 
         repaint();
     }
@@ -265,13 +316,15 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
      */
     @Override
     public void mouseMoved(MouseEvent me) {
-        mouseX = ((me.getX() - leftInset) * w) / canvasWidth;
-        mouseY = ((me.getY() - topInset) * h) / canvasHeight;
+        updateView();
+        mouseX = (int) Math.floor(viewX + (me.getX() - leftInset - 1) / scaleX);
+        mouseY = (int) Math.floor(viewY + (me.getY() - topInset - 1) / scaleY);
 
         if ((mouseX >= 0) && (mouseY >= 0) && (mouseX < w) && (mouseY < h)) {
-            if (image != null) {
-                // first band = Red. => buggy with RGB rendering
-                mousePixel = image.getRaster().getSample(mouseX, mouseY, 0);
+            if (pyramid != null) {
+                // color index (linear scale) clamped in [0, mapSize - 1] as colorization:
+                mousePixel = ImageUtils.getColor(colorModel.getMapSize() - 1,
+                        ImageUtils.getScaledValue(false, minValue, normalisePixelCoefficient, pyramid.getValue(mouseX, mouseY)));
                 observe.setChanged();
             }
         }
@@ -280,12 +333,101 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
     }
 
     /**
-     * MouseMotionListener implementation
+     * MouseMotionListener implementation: pan the view
      *
      * @param me mouse event
      */
     @Override
     public void mouseDragged(MouseEvent me) {
+        updateView();
+        centerX -= (me.getX() - lastX) / scaleX;
+        centerY -= (me.getY() - lastY) / scaleY;
+        lastX = me.getX();
+        lastY = me.getY();
+
+        updateView();
+        repaint();
+    }
+
+    /**
+     * MouseWheelListener implementation: zoom around the mouse position
+     *
+     * @param mwe mouse wheel event
+     */
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent mwe) {
+        if (w == 0 || h == 0) {
+            return;
+        }
+        updateView();
+        // image point under the mouse:
+        final double dx = mwe.getX() - leftInset - 1;
+        final double dy = mwe.getY() - topInset - 1;
+        final double px = viewX + dx / scaleX;
+        final double py = viewY + dy / scaleY;
+
+        final double maxZoom = Math.max(1.0, maxScale / Math.min((double) canvasWidth / w, (double) canvasHeight / h));
+
+        zoom = Math.min(maxZoom, Math.max(1.0, zoom * Math.pow(zoomStep, -mwe.getWheelRotation())));
+
+        // keep the same image point under the mouse:
+        final double newScaleX = (canvasWidth * zoom) / w;
+        final double newScaleY = (canvasHeight * zoom) / h;
+        centerX = px - dx / newScaleX + canvasWidth / (2.0 * newScaleX);
+        centerY = py - dy / newScaleY + canvasHeight / (2.0 * newScaleY);
+
+        updateView();
+        repaint();
+    }
+
+    /**
+     * Reset the view to fit the whole image
+     */
+    public void resetView() {
+        zoom = 1.0;
+        centerX = 0.5 * w;
+        centerY = 0.5 * h;
+        updateView();
+    }
+
+    /**
+     * Update the view (scales and origin) given the canvas size, zoom factor and view center (clamped)
+     */
+    private void updateView() {
+        if (w == 0 || h == 0 || canvasWidth <= 0 || canvasHeight <= 0) {
+            scaleX = scaleY = 1.0;
+            viewX = viewY = 0.0;
+            return;
+        }
+        scaleX = (canvasWidth * zoom) / w;
+        scaleY = (canvasHeight * zoom) / h;
+
+        final double halfX = canvasWidth / (2.0 * scaleX);
+        final double halfY = canvasHeight / (2.0 * scaleY);
+
+        centerX = Math.min(w - halfX, Math.max(halfX, centerX));
+        centerY = Math.min(h - halfY, Math.max(halfY, centerY));
+
+        viewX = centerX - halfX;
+        viewY = centerY - halfY;
+    }
+
+    /**
+     * Return the screen x coordinate of the given image x coordinate
+     * @param x image x coordinate (pixels)
+     * @return screen x coordinate
+     */
+    private int toScreenX(final double x) {
+        return leftInset + 1 + (int) Math.round((x - viewX) * scaleX);
+    }
+
+    /**
+     * Return the screen y coordinate of the given image y coordinate
+     * @param y image y coordinate (pixels)
+     * @return screen y coordinate
+     */
+    private int toScreenY(final double y) {
+        return topInset + 1 + (int) Math.round((y - viewY) * scaleY);
     }
 
     private void buildWedge() {
@@ -303,18 +445,90 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
     }
 
     /**
-     * Convert the data to image using the current color model
+     * Create the image pyramid of the data using the current color model (levels are built in the background)
      */
     private void buildImage() {
-        // build image with RGB linear LUT interpolation :
-        if (this.data1D != null) {
+        if (this.pyramid != null) {
+            this.pyramid.dispose();
+            this.pyramid = null;
+        }
+        if (this.data1D != null || this.data2D != null) {
             this.normalisePixelCoefficient = ImageUtils.computeScalingFactor(this.minValue, this.maxValue, colorModel.getMapSize());
-            this.image = ImageUtils.createImage(this.w, this.h, this.data1D, this.minValue, colorModel, normalisePixelCoefficient);
 
-        } else if (this.data2D != null) {
-            this.normalisePixelCoefficient = ImageUtils.computeScalingFactor(this.minValue, this.maxValue, colorModel.getMapSize());
-            this.image = ImageUtils.createImage(this.w, this.h, this.data2D, this.minValue, colorModel, normalisePixelCoefficient);
+            // repaint once levels or tiles are ready:
+            this.pyramid = new ImagePyramid(this.w, this.h, this.data1D, this.data2D, this.minValue, normalisePixelCoefficient,
+                    colorModel, new Runnable() {
+                @Override
+                public void run() {
+                    repaint();
+                }
+            });
+            this.pyramid.start();
+        }
+    }
+
+    /**
+     * Draw the visible tiles at the level matching the current scale: missing tiles are replaced
+     * by the matching part of a coarser tile (if available) until ready
+     *
+     * @param g2d graphics object
+     * @param pyr image pyramid
+     * @return number of visible tiles
+     */
+    private int drawTiles(final Graphics2D g2d, final ImagePyramid pyr) {
+        final int level = ImagePyramid.getLevel(Math.min(scaleX, scaleY), pyr.getLevelCount());
+
+        if (!pyr.isLevelReady(level)) {
+            // repaint once ready
+            return 0;
         }
+        final int tileSize = ImagePyramid.TILE_SIZE;
+        // image pixels per tile:
+        final int tileExtent = tileSize << level;
+        final int levelWidth = pyr.getLevelWidth(level);
+        final int levelHeight = pyr.getLevelHeight(level);
+
+        final int tx0 = Math.max(0, (int) Math.floor(viewX / tileExtent));
+        final int ty0 = Math.max(0, (int) Math.floor(viewY / tileExtent));
+        final int tx1 = Math.min((levelWidth - 1) / tileSize, (int) Math.floor((viewX + canvasWidth / scaleX) / tileExtent));
+        final int ty1 = Math.min((levelHeight - 1) / tileSize, (int) Math.floor((viewY + canvasHeight / scaleY) / tileExtent));
+
+        for (int ty = ty0; ty <= ty1; ty++) {
+            final int y1 = toScreenY(ty * tileExtent);
+            final int y2 = toScreenY(Math.min((ty + 1) * tileExtent, h));
+
+            for (int tx = tx0; tx <= tx1; tx++) {
+                final int x1 = toScreenX(tx * tileExtent);
+                final int x2 = toScreenX(Math.min((tx + 1) * tileExtent, w));
+
+                final BufferedImage tile = pyr.getTile(level, tx, ty);
+
+                if (tile != null) {
+                    g2d.drawImage(tile, x1, y1, x2, y2, 0, 0, tile.getWidth(), tile.getHeight(), null);
+                } else {
+                    // use the first available coarser tile:
+                    for (int l = level + 1, n = pyr.getLevelCount(); l < n && pyr.isLevelReady(l); l++) {
+                        final int shift = l - level;
+                        // tile area in level l pixels:
+                        final int px1 = (tx * tileSize) >> shift;
+                        final int py1 = (ty * tileSize) >> shift;
+                        final int px2 = Math.min(((tx + 1) * tileSize) >> shift, pyr.getLevelWidth(l));
+                        final int py2 = Math.min(((ty + 1) * tileSize) >> shift, pyr.getLevelHeight(l));
+                        final int ptx = px1 / tileSize;
+                        final int pty = py1 / tileSize;
+
+                        final BufferedImage parent = pyr.getTile(l, ptx, pty);
+                        if (parent != null) {
+                            g2d.drawImage(parent, x1, y1, x2, y2,
+                                    px1 - ptx * tileSize, py1 - pty * tileSize,
+                                    px2 - ptx * tileSize, py2 - pty * tileSize, null);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return (tx1 - tx0 + 1) * (ty1 - ty0 + 1);
     }
 
     public Dimension getCanvasDimension() {
@@ -359,28 +573,42 @@ public class ImageCanvas extends Canvas implements MouseMotionListener {
                 - wedgeImageDist;
         canvasHeight = (int) d.getHeight() - topInset - bottomInset;
 
+        updateView();
+
         g2d.setColor(Color.GRAY);
         g2d.fillRect(0, 0, (int) d.getWidth(), (int) d.getHeight());
         g2d.setColor(Color.BLACK);
 
         if ((canvasWidth > 0) && (canvasHeight > 0)) {
-            if (image != null) {
-                // draw image into rect
-                g2d.drawImage(image, leftInset + 1, topInset + 1, canvasWidth, canvasHeight, null);
+            final ImagePyramid pyr = pyramid;
+            if (pyr != null) {
+                // draw visible tiles into rect
+                final Shape clip = g2d.getClip();
+                g2d.clipRect(leftInset + 1, topInset + 1, canvasWidth, canvasHeight);
+
+                final int nTiles = drawTiles(g2d, pyr);
+
+                g2d.setClip(clip);
+
+                // keep visible tiles and some more (pan / zoom):
+                pyr.trim(2 * nTiles + 64);
 
                 if (isDrawTicks()) {
-                    final int step = 5;
+                    int step = 5;
+                    while (step * Math.min(scaleX, scaleY) < minTickDist) {
+                        step *= 2;
+                    }
 
                     // draw vertical tics
-                    for (int i = 0; i < h; i += step) {
-                        int y = topInset + ((canvasHeight * i) / h) + (canvasHeight / (2 * h));
+                    for (int i = step * (int) Math.ceil(viewY / step), end = (int) Math.min(h, viewY + canvasHeight / scaleY); i < end; i += step) {
+                        int y = toScreenY(i + 0.5) - 1;
                         g2d.drawLine(leftInset - 2, y, leftInset, y);
                         g2d.drawString(Integer.toString(i), leftInset - 20, y + 4);
                     }
 
                     // draw horizontal tics
-                    for (int i = 0; i < w; i += step) {
-                        int x = leftInset + ((canvasWidth * i) / w) + (canvasWidth / (2 * w));
+                    for (int i = step * (int) Math.ceil(viewX / step), end = (int) Math.min(w, viewX + canvasWidth / scaleX); i < end; i += step) {
+                        int x = toScreenX(i + 0.5) - 1;
                         g2d.drawLine(x, topInset + canvasHeight, x, topInset + canvasHeight + 3);
                         g2d.drawString(Integer.toString(i), x - 4, topInset + canvasHeight + 15);
                     }
@@ -0,0 +1,542 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmcs.util.concurrent.ThreadExecutors;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multi-resolution pyramid (mip-map) of colorized tiles used to draw large images interactively:
+ * - level 0 is the given data (no copy), each next level halves the previous one (2x2 mean ignoring NaN)
+ * until the image fits in a single tile; levels are built in the background (see start())
+ * - tiles (TILE_SIZE x TILE_SIZE) are colorized on demand in the background (see getTile()) and cached (LRU)
+ * - changing the color model only invalidates tiles: cached tiles are re-colorized (coarsest first) and
+ * remain usable until replaced
+ *
+ * Levels and tiles use image coordinates (top row first) as ImageUtils.createImage().
+ *
+ * @author bourgesl
+ */
+public final class ImagePyramid {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ImagePyramid.class.getName());
+    /** tile size (pixels) */
+    public final static int TILE_SIZE = 256;
+    /** tile size shift */
+    private final static int TILE_SHIFT = 8;
+    /** dedicated thread executor (single thread) */
+    private final static ThreadExecutors executor = ThreadExecutors.getSingleExecutor("ImagePyramidThreadPool");
+
+    /* members */
+    /** image width */
+    private final int _width;
+    /** image height */
+    private final int _height;
+    /** minimum data value */
+    private final float _min;
+    /** data to color linear scaling factor */
+    private final float _scalingFactor;
+    /** listener called when a level or a tile is ready (any thread) or null */
+    private final Runnable _listener;
+    /** cancellation token (dispose) */
+    private final CancellationToken _token = CancellationToken.create();
+    /** level widths */
+    private final int[] _levelWidths;
+    /** level heights */
+    private final int[] _levelHeights;
+    /** levels (published by _levelsReady) */
+    private final Level[] _levels;
+    /** number of levels ready */
+    private volatile int _levelsReady;
+    /** color model (guarded by this) */
+    private IndexColorModel _colorModel;
+    /** color model generation (guarded by this) */
+    private int _generation = 0;
+    /** tile cache in access order (guarded by this) */
+    private final LinkedHashMap<Long, Tile> _tiles = new LinkedHashMap<Long, Tile>(64, 0.75f, true);
+    /** requested tile keys (guarded by this) */
+    private final Set<Long> _pending = new HashSet<Long>();
+    /** replaced tile images to recycle in trim() (guarded by this) */
+    private final List<BufferedImage> _released = new ArrayList<BufferedImage>();
+
+    /**
+     * Create the pyramid for the given data (1D or 2D); only level 0 is available until start() is called
+     *
+     * @param width image width
+     * @param height image height
+     * @param array1D data array (1D) or null
+     * @param array2D data array (2D) or null
+     * @param min minimum data value
+     * @param scalingFactor data to color linear scaling factor (see ImageUtils.computeScalingFactor())
+     * @param colorModel color model
+     * @param listener listener called when a level or a tile is ready (any thread) or null
+     */
+    public ImagePyramid(final int width, final int height, final float[] array1D, final float[][] array2D,
+                        final float min, final float scalingFactor, final IndexColorModel colorModel,
+                        final Runnable listener) {
+        this._width = width;
+        this._height = height;
+        this._min = min;
+        this._scalingFactor = scalingFactor;
+        this._colorModel = colorModel;
+        this._listener = listener;
+
+        int count = 1;
+        for (int size = Math.max(width, height); size > TILE_SIZE; size = (size + 1) >> 1) {
+            count++;
+        }
+        this._levelWidths = new int[count];
+        this._levelHeights = new int[count];
+        for (int l = 0, w = width, h = height; l < count; l++, w = (w + 1) >> 1, h = (h + 1) >> 1) {
+            _levelWidths[l] = w;
+            _levelHeights[l] = h;
+        }
+
+        this._levels = new Level[count];
+
+        final Level level0;
+        if (array1D != null) {
+            level0 = new Level(width, height, array1D);
+        } else {
+            // rows are drawn bottom-up (see ImageUtils.createImage):
+            final float[][] rows = new float[height][];
+            for (int j = 0; j < height; j++) {
+                rows[j] = array2D[height - 1 - j];
+            }
+            level0 = new Level(width, height, rows);
+        }
+        _levels[0] = level0;
+        _levelsReady = 1;
+    }
+
+    /**
+     * Build the other levels in the background
+     */
+    public void start() {
+        if (_levels.length > 1) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    buildLevels();
+                }
+            });
+        }
+    }
+
+    /**
+     * Cancel background tasks and clear the tile cache
+     */
+    public void dispose() {
+        _token.cancel();
+
+        synchronized (this) {
+            // images may still be drawn: let them be garbage collected:
+            _tiles.clear();
+            _pending.clear();
+            _released.clear();
+        }
+    }
+
+    /**
+     * Build the levels (coarser levels from finer ones)
+     */
+    void buildLevels() {
+        final long start = System.nanoTime();
+
+        for (int l = _levelsReady; l < _levels.length; l++) {
+            final Level level = downsample(_levels[l - 1]);
+            if (level == null) {
+                // cancelled:
+                return;
+            }
+            _levels[l] = level;
+            // publish:
+            _levelsReady = l + 1;
+
+            fireChange();
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("buildLevels: {} levels in {} ms.", _levels.length, 1e-6d * (System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Return the level halving the given level (2x2 mean ignoring NaN)
+     * @param src finer level
+     * @return coarser level or null if cancelled
+     */
+    private Level downsample(final Level src) {
+        final int srcWidth = src.width;
+        final int srcHeight = src.height;
+        final int width = (srcWidth + 1) >> 1;
+        final int height = (srcHeight + 1) >> 1;
+
+        final float[] data = new float[width * height];
+
+        for (int j = 0, k = 0; j < height; j++) {
+            if (_token.isCancelled()) {
+                return null;
+            }
+            final int y1 = j << 1;
+            final int y2 = Math.min(y1 + 1, srcHeight - 1);
+            final float[] row1 = src.getRow(y1);
+            final float[] row2 = src.getRow(y2);
+            final int offset1 = src.getOffset(y1);
+            final int offset2 = src.getOffset(y2);
+
+            for (int i = 0; i < width; i++, k++) {
+                final int x1 = i << 1;
+                final int x2 = Math.min(x1 + 1, srcWidth - 1);
+
+                float sum = 0f;
+                int n = 0;
+                float value;
+
+                value = row1[offset1 + x1];
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    n++;
+                }
+                value = row1[offset1 + x2];
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    n++;
+                }
+                value = row2[offset2 + x1];
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    n++;
+                }
+                value = row2[offset2 + x2];
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    n++;
+                }
+                data[k] = (n != 0) ? sum / n : Float.NaN;
+            }
+        }
+        return new Level(width, height, data);
+    }
+
+    /**
+     * Change the color model: cached tiles are re-colorized in the background (coarsest level first)
+     * and remain available until replaced
+     * @param colorModel color model
+     */
+    public void setColorModel(final IndexColorModel colorModel) {
+        final List<Long> keys;
+        synchronized (this) {
+            if (colorModel == _colorModel) {
+                return;
+            }
+            _colorModel = colorModel;
+            _generation++;
+
+            keys = new ArrayList<Long>(_tiles.keySet());
+        }
+        // coarsest level first (higher bits):
+        Collections.sort(keys, Collections.reverseOrder());
+
+        for (Long key : keys) {
+            final long k = key.longValue();
+            requestTile(key, (int) (k >> 48), (int) (k & 0xFFFFFF), (int) ((k >> 24) & 0xFFFFFF));
+        }
+    }
+
+    /**
+     * Return the cached tile at the given level and tile indexes (colorized with the current or a previous
+     * color model) or null if not available yet: missing or invalid tiles are colorized in the background
+     * and the listener is called once ready
+     *
+     * @param level level index
+     * @param tx tile column index
+     * @param ty tile row index
+     * @return tile image or null
+     */
+    public BufferedImage getTile(final int level, final int tx, final int ty) {
+        if (!isLevelReady(level)) {
+            return null;
+        }
+        final Long key = getKey(level, tx, ty);
+        final Tile tile;
+        final boolean valid;
+        synchronized (this) {
+            tile = _tiles.get(key);
+            valid = (tile != null) && (tile.generation == _generation);
+        }
+        if (!valid) {
+            requestTile(key, level, tx, ty);
+        }
+        return (tile != null) ? tile.image : null;
+    }
+
+    /**
+     * Colorize the given tile in the background (once)
+     * @param key tile key
+     * @param level level index
+     * @param tx tile column index
+     * @param ty tile row index
+     */
+    private void requestTile(final Long key, final int level, final int tx, final int ty) {
+        synchronized (this) {
+            if (!_pending.add(key)) {
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (_token.isCancelled()) {
+                    return;
+                }
+                final IndexColorModel colorModel;
+                final int generation;
+                synchronized (ImagePyramid.this) {
+                    colorModel = _colorModel;
+                    generation = _generation;
+                }
+
+                final BufferedImage image = createTile(level, tx, ty, colorModel);
+
+                synchronized (ImagePyramid.this) {
+                    _pending.remove(key);
+
+                    if (_token.isCancelled()) {
+                        ImageUtils.recycleImage(image);
+                        return;
+                    }
+                    final Tile old = _tiles.put(key, new Tile(image, generation));
+                    if (old != null) {
+                        // may be drawn now:
+                        _released.add(old.image);
+                    }
+                }
+                fireChange();
+            }
+        });
+    }
+
+    /**
+     * Colorize the given tile (synchronously)
+     *
+     * @param level level index (ready)
+     * @param tx tile column index
+     * @param ty tile row index
+     * @param colorModel color model
+     * @return new tile image (see ImageUtils.createImage(width, height, colorModel))
+     */
+    BufferedImage createTile(final int level, final int tx, final int ty, final IndexColorModel colorModel) {
+        final Level lvl = _levels[level];
+
+        final int x0 = tx << TILE_SHIFT;
+        final int y0 = ty << TILE_SHIFT;
+        final int width = Math.min(TILE_SIZE, lvl.width - x0);
+        final int height = Math.min(TILE_SIZE, lvl.height - y0);
+
+        final BufferedImage image = ImageUtils.createImage(width, height, colorModel);
+        final WritableRaster raster = image.getRaster();
+        final Object rowBuffer = ImageUtils.createRowBuffer(width);
+        final int iMaxColor = colorModel.getMapSize() - 1;
+        // color table resolved once per tile:
+        final ColorLUT lut = ImageUtils.getColorLUT(colorModel);
+
+        for (int y = 0; y < height; y++) {
+            ImageUtils.colorizeRow(lvl.getRow(y0 + y), lvl.getOffset(y0 + y) + x0, width, lut, iMaxColor,
+                    _min, _scalingFactor, false, false, raster, y, rowBuffer);
+        }
+        return image;
+    }
+
+    /**
+     * Recycle replaced tiles and evict least recently used tiles above the given capacity:
+     * must be called by the thread drawing tiles once done (EDT)
+     * @param maxTiles maximum number of cached tiles
+     */
+    public void trim(final int maxTiles) {
+        synchronized (this) {
+            for (int i = 0, len = _released.size(); i < len; i++) {
+                ImageUtils.recycleImage(_released.get(i));
+            }
+            _released.clear();
+
+            for (Iterator<Map.Entry<Long, Tile>> it = _tiles.entrySet().iterator(); _tiles.size() > maxTiles && it.hasNext();) {
+                final Tile tile = it.next().getValue();
+                it.remove();
+                ImageUtils.recycleImage(tile.image);
+            }
+        }
+    }
+
+    /**
+     * Notify the listener
+     */
+    private void fireChange() {
+        if (_listener != null && !_token.isCancelled()) {
+            _listener.run();
+        }
+    }
+
+    /**
+     * Return the level to draw the image at the given scale (screen pixels per image pixel):
+     * the coarsest level whose pixels are not larger than screen pixels
+     *
+     * @param scale screen pixels per image pixel
+     * @param levelCount number of levels
+     * @return level index
+     */
+    public static int getLevel(final double scale, final int levelCount) {
+        int level = 0;
+        while (level < levelCount - 1 && scale * (1 << (level + 1)) <= 1.0) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Return the key of the given tile
+     * @param level level index
+     * @param tx tile column index
+     * @param ty tile row index
+     * @return tile key
+     */
+    private static Long getKey(final int level, final int tx, final int ty) {
+        return Long.valueOf(((long) level << 48) | ((long) ty << 24) | tx);
+    }
+
+    /**
+     * Return the data value at the given level and pixel (image coordinates)
+     * @param level level index (ready)
+     * @param x column index
+     * @param y row index (top row first)
+     * @return data value
+     */
+    float getValue(final int level, final int x, final int y) {
+        final Level lvl = _levels[level];
+        return lvl.getRow(y)[lvl.getOffset(y) + x];
+    }
+
+    /**
+     * Return the data value at the given pixel (image coordinates)
+     * @param x column index
+     * @param y row index (top row first)
+     * @return data value
+     */
+    public float getValue(final int x, final int y) {
+        return getValue(0, x, y);
+    }
+
+    /**
+     * Return true if the given level is ready
+     * @param level level index
+     * @return true if the given level is ready
+     */
+    public boolean isLevelReady(final int level) {
+        return level < _levelsReady;
+    }
+
+    /**
+     * @return number of levels
+     */
+    public int getLevelCount() {
+        return _levels.length;
+    }
+
+    /**
+     * @param level level index
+     * @return level width
+     */
+    public int getLevelWidth(final int level) {
+        return _levelWidths[level];
+    }
+
+    /**
+     * @param level level index
+     * @return level height
+     */
+    public int getLevelHeight(final int level) {
+        return _levelHeights[level];
+    }
+
+    /**
+     * @return image width
+     */
+    public int getWidth() {
+        return _width;
+    }
+
+    /**
+     * @return image height
+     */
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Level data: rows in image order (top row first) either as a flat array or as row references
+     */
+    private static final class Level {
+
+        /** level width */
+        final int width;
+        /** level height */
+        final int height;
+        /** flat data (top row first) or null */
+        final float[] data;
+        /** rows or null */
+        final float[][] rows;
+
+        Level(final int width, final int height, final float[] data) {
+            this.width = width;
+            this.height = height;
+            this.data = data;
+            this.rows = null;
+        }
+
+        Level(final int width, final int height, final float[][] rows) {
+            this.width = width;
+            this.height = height;
+            this.data = null;
+            this.rows = rows;
+        }
+
+        float[] getRow(final int y) {
+            return (rows != null) ? rows[y] : data;
+        }
+
+        int getOffset(final int y) {
+            return (rows != null) ? 0 : y * width;
+        }
+    }
+
+    /**
+     * Colorized tile
+     */
+    private static final class Tile {
+
+        /** tile image */
+        final BufferedImage image;
+        /** color model generation */
+        final int generation;
+
+        Tile(final BufferedImage image, final int generation) {
+            this.image = image;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
+import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Affine resampling of float data (before colorization) using separable interpolation kernels:
+ * kernel weights are tabulated at PHASES sub-pixel phases and output rows are processed by tiles in parallel.
+ *
+ * Coordinates are continuous pixel coordinates: the pixel (col, row) covers [col; col + 1] x [row; row + 1].
+ * Output pixels whose center maps outside the input data get the background value; interpolation taps
+ * outside the input data use the nearest edge value.
+ *
+ * @author bourgesl
+ */
+public final class ImageResampler {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ImageResampler.class.getName());
+    /** number of tabulated sub-pixel phases */
+    public final static int PHASES = 256;
+    /** number of output rows per tile */
+    private final static int TILE_ROWS = 16;
+    /** Jmcs Parallel Job executor */
+    private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
+    /** metrics */
+    private final static Timer TIMER_TRANSFORM = Metrics.timer("resampler.transform");
+
+    /**
+     * Interpolation kernels
+     */
+    public enum Kernel {
+
+        /** nearest neighbor */
+        NEAREST(0),
+        /** bilinear (triangle) */
+        BILINEAR(1),
+        /** bicubic (Keys, a = -0.5) */
+        BICUBIC(2),
+        /** Lanczos (3 lobes) */
+        LANCZOS3(3);
+
+        /** kernel half width (pixels) */
+        private final int _support;
+        /** normalized weights [phase][tap] (flattened) */
+        private final float[] _weights;
+
+        /**
+         * Private constructor
+         * @param support kernel half width (pixels)
+         */
+        private Kernel(final int support) {
+            this._support = support;
+            this._weights = (support != 0) ? tabulate(support) : null;
+        }
+
+        /**
+         * @return kernel half width (pixels)
+         */
+        public int getSupport() {
+            return _support;
+        }
+
+        /**
+         * @return number of taps per axis
+         */
+        public int getTaps() {
+            return 2 * _support;
+        }
+
+        /**
+         * Tabulate the kernel weights: weights[phase x taps + k] = kernel(phase / PHASES + support - 1 - k) normalized
+         * @param support kernel half width (pixels)
+         * @return tabulated weights
+         */
+        private static float[] tabulate(final int support) {
+            final int taps = 2 * support;
+            final float[] weights = new float[(PHASES + 1) * taps];
+
+            for (int p = 0; p <= PHASES; p++) {
+                final double frac = ((double) p) / PHASES;
+                double sum = 0.0;
+                for (int k = 0; k < taps; k++) {
+                    sum += evaluate(support, frac + support - 1 - k);
+                }
+                for (int k = 0; k < taps; k++) {
+                    weights[p * taps + k] = (float) (evaluate(support, frac + support - 1 - k) / sum);
+                }
+            }
+            return weights;
+        }
+
+        /**
+         * Evaluate the kernel function of the given half width at the given distance
+         * (called while initializing enum constants so kernels are identified by their half width)
+         * @param support kernel half width (pixels)
+         * @param distance distance in pixels
+         * @return kernel value
+         */
+        static double evaluate(final int support, final double distance) {
+            final double x = Math.abs(distance);
+            switch (support) {
+                case 1:
+                    // bilinear:
+                    return (x < 1.0) ? 1.0 - x : 0.0;
+                case 2:
+                    // bicubic (Keys, a = -0.5):
+                    if (x <= 1.0) {
+                        return (1.5 * x - 2.5) * x * x + 1.0;
+                    }
+                    if (x < 2.0) {
+                        return ((-0.5 * x + 2.5) * x - 4.0) * x + 2.0;
+                    }
+                    return 0.0;
+                case 3:
+                    // Lanczos (3 lobes):
+                    if (x < 1e-9) {
+                        return 1.0;
+                    }
+                    if (x < 3.0) {
+                        final double px = Math.PI * x;
+                        return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+                    }
+                    return 0.0;
+                default:
+                    // nearest:
+                    return (x < 0.5) ? 1.0 : 0.0;
+            }
+        }
+    }
+
+    /**
+     * Forbidden constructor
+     */
+    private ImageResampler() {
+        super();
+    }
+
+    /**
+     * Return the transform of data arrays (row 0 at the bottom of the image, see ImageUtils.createImage)
+     * equivalent to the given transform of images (row 0 at the top)
+     * @param imageTransform transform of image coordinates (input image to output image)
+     * @param width input width
+     * @param height input height
+     * @param outWidth output width
+     * @param outHeight output height
+     * @return transform of data coordinates (input data to output data)
+     */
+    public static AffineTransform getDataTransform(final AffineTransform imageTransform,
+                                                   final int width, final int height,
+                                                   final int outWidth, final int outHeight) {
+        // flip output vertically:
+        final AffineTransform dataTransform = new AffineTransform(1.0, 0.0, 0.0, -1.0, 0.0, outHeight);
+        dataTransform.concatenate(imageTransform);
+        // flip input vertically:
+        dataTransform.concatenate(new AffineTransform(1.0, 0.0, 0.0, -1.0, 0.0, height));
+        return dataTransform;
+    }
+
+    /**
+     * Resample the given data array using the given affine transform (input to output coordinates)
+     *
+     * @param width input width
+     * @param height input height
+     * @param array input data array [rows][cols]
+     * @param transform affine transform from input to output coordinates
+     * @param outWidth output width
+     * @param outHeight output height
+     * @param kernel interpolation kernel
+     * @param background value of output pixels outside the input data (NaN gives the lowest color)
+     * @param token cancellation token
+     * @return output data array [outHeight][outWidth] (see FloatArrayCache.recycleArray)
+     *
+     * @throws IllegalArgumentException if the transform is not invertible
+     * @throws InterruptedJobException if the given token is cancelled (the output array is recycled)
+     */
+    public static float[][] transform(final int width, final int height, final float[][] array,
+                                      final AffineTransform transform,
+                                      final int outWidth, final int outHeight,
+                                      final Kernel kernel, final float background,
+                                      final CancellationToken token) throws InterruptedJobException {
+        final AffineTransform inverse;
+        try {
+            inverse = transform.createInverse();
+        } catch (NoninvertibleTransformException nte) {
+            throw new IllegalArgumentException("Invalid transform: " + transform, nte);
+        }
+        final long start = System.nanoTime();
+
+        // fast interrupt :
+        token.checkCancelled("ImageResampler.transform");
+
+        final float[][] output = FloatArrayCache.getArray(outHeight, outWidth);
+
+        // output to input steps per column:
+        final double stepX = inverse.getScaleX();
+        final double stepY = inverse.getShearY();
+
+        final int nTiles = (outHeight + TILE_ROWS - 1) / TILE_ROWS;
+
+        final int nJobs = ParallelThresholds.isParallel(ParallelThresholds.Stage.IMAGE, (long) outWidth * outHeight)
+                ? Math.min(nTiles, jobExecutor.getMaxParallelJob()) : 1;
+
+        // computation tasks:
+        final Runnable[] jobs = new Runnable[nJobs];
+
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
+        for (int n = 0; n < nJobs; n++) {
+            final int n0 = n;
+
+            jobs[n] = new Runnable() {
+                @Override
+                public void run() {
+                    final int taps = kernel.getTaps();
+                    // clamped tap indexes:
+                    final int[] cols = new int[taps];
+                    final int[] rows = new int[taps];
+                    final double[] pt = new double[2];
+
+                    for (int t = n0; t < nTiles; t += nJobs) {
+                        for (int j = t * TILE_ROWS, end = Math.min(outHeight, j + TILE_ROWS); j < end; j++) {
+                            // input position of the first output pixel center in this row:
+                            pt[0] = 0.5;
+                            pt[1] = j + 0.5;
+                            inverse.transform(pt, 0, pt, 0, 1);
+
+                            if (taps == 0) {
+                                resampleRowNearest(width, height, array, pt[0], pt[1], stepX, stepY,
+                                        output[j], outWidth, background);
+                            } else {
+                                resampleRow(width, height, array, pt[0], pt[1], stepX, stepY,
+                                        output[j], outWidth, background, kernel, cols, rows);
+                            }
+                        }
+                        // fast interrupt:
+                        if (jobToken.isCancelled()) {
+                            return;
+                        }
+                    }
+                }
+            };
+        }
+
+        try {
+            // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
+            jobExecutor.forkAndJoin("ImageResampler.transform", jobs);
+
+            // fast interrupt (partial output) :
+            token.checkCancelled("ImageResampler.transform");
+
+        } catch (RuntimeException re) {
+            logger.debug("recycleArray <= interrupted job:");
+            // stop remaining jobs before recycling their output:
+            jobToken.cancel();
+            FloatArrayCache.recycleArray(output);
+            // rethrow exception:
+            throw re;
+        }
+
+        final long duration = System.nanoTime() - start;
+        TIMER_TRANSFORM.record(duration);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("transform: [{} x {}] to [{} x {}] kernel = {} duration = {} ms.",
+                    width, height, outWidth, outHeight, kernel, 1e-6d * duration);
+        }
+        return output;
+    }
+
+    /**
+     * Resample one output row using the nearest neighbor
+     * @param width input width
+     * @param height input height
+     * @param array input data array [rows][cols]
+     * @param x0 input x of the first output pixel center
+     * @param y0 input y of the first output pixel center
+     * @param stepX input x step per output column
+     * @param stepY input y step per output column
+     * @param outRow output row
+     * @param outWidth output width
+     * @param background value outside the input data
+     */
+    private static void resampleRowNearest(final int width, final int height, final float[][] array,
+                                           final double x0, final double y0, final double stepX, final double stepY,
+                                           final float[] outRow, final int outWidth, final float background) {
+        for (int i = 0; i < outWidth; i++) {
+            final double x = x0 + i * stepX;
+            final double y = y0 + i * stepY;
+
+            if (x < 0.0 || y < 0.0 || x >= width || y >= height) {
+                outRow[i] = background;
+            } else {
+                outRow[i] = array[(int) y][(int) x];
+            }
+        }
+    }
+
+    /**
+     * Resample one output row using the given separable kernel
+     * @param width input width
+     * @param height input height
+     * @param array input data array [rows][cols]
+     * @param x0 input x of the first output pixel center
+     * @param y0 input y of the first output pixel center
+     * @param stepX input x step per output column
+     * @param stepY input y step per output column
+     * @param outRow output row
+     * @param outWidth output width
+     * @param background value outside the input data
+     * @param kernel interpolation kernel
+     * @param cols buffer of clamped column indexes (taps)
+     * @param rows buffer of clamped row indexes (taps)
+     */
+    private static void resampleRow(final int width, final int height, final float[][] array,
+                                    final double x0, final double y0, final double stepX, final double stepY,
+                                    final float[] outRow, final int outWidth, final float background,
+                                    final Kernel kernel, final int[] cols, final int[] rows) {
+        final int support = kernel.getSupport();
+        final int taps = kernel.getTaps();
+        final float[] weights = kernel._weights;
+        final int lastCol = width - 1;
+        final int lastRow = height - 1;
+
+        for (int i = 0; i < outWidth; i++) {
+            final double x = x0 + i * stepX;
+            final double y = y0 + i * stepY;
+
+            if (x < 0.0 || y < 0.0 || x >= width || y >= height) {
+                outRow[i] = background;
+                continue;
+            }
+            // index space (pixel centers):
+            final double px = x - 0.5;
+            final double py = y - 0.5;
+            final int ix = (int) Math.floor(px);
+            final int iy = (int) Math.floor(py);
+
+            final int wx = ((int) ((px - ix) * PHASES + 0.5)) * taps;
+            final int wy = ((int) ((py - iy) * PHASES + 0.5)) * taps;
+
+            // tap indexes (edge values outside):
+            for (int k = 0, c = ix - support + 1, r = iy - support + 1; k < taps; k++, c++, r++) {
+                cols[k] = (c < 0) ? 0 : (c > lastCol) ? lastCol : c;
+                rows[k] = (r < 0) ? 0 : (r > lastRow) ? lastRow : r;
+            }
+
+            float sum = 0f;
+            for (int kr = 0; kr < taps; kr++) {
+                final float[] row = array[rows[kr]];
+
+                float rowSum = 0f;
+                for (int kc = 0; kc < taps; kc++) {
+                    rowSum += weights[wx + kc] * row[cols[kc]];
+                }
+                sum += weights[wy + kr] * rowSum;
+            }
+            outRow[i] = sum;
+        }
+    }
+}
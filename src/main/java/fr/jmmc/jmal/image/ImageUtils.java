@@ -5,7 +5,13 @@
  */
 package fr.jmmc.jmal.image;
 
-import fr.jmmc.jmal.util.GenericWeakCache;
+import fr.jmmc.jmal.image.job.ImageHistogramJob;
+import fr.jmmc.jmal.util.BufferPool;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.MathUtils;
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
 import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
 import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
 import java.awt.Color;
@@ -38,23 +44,37 @@ public final class ImageUtils {
     private final static int ALPHA_MASK = 0xff << 24;
     /** flag to use RGB color interpolation */
     public final static boolean USE_RGB_INTERPOLATION = true;
-    /** threshold to use parallel jobs (256 x 256 pixels) */
-    private final static int JOB_THRESHOLD = 256 * 256 - 1;
+    /** lower percentile (%) of the PERCENTILE color scale */
+    public final static float PERCENTILE_LOW = 0.5f;
+    /** upper percentile (%) of the PERCENTILE color scale */
+    public final static float PERCENTILE_HIGH = 99.5f;
+    /** maximum number of histogram passes (range refinement) */
+    private final static int HISTOGRAM_PASSES = 3;
+    /** image interpolation */
+    private static ImageInterpolation IMAGE_INTERPOLATION_MODE = ImageInterpolation.Bicubic;
     /** Graphics image interpolation */
     private static Object IMAGE_INTERPOLATION = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
     /** Jmcs Parallel Job executor */
     private final static ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
-    /** weak image cache for createImage()/recycleImage() */
-    private final static GenericWeakCache<BufferedImage> imageCache = new GenericWeakCache<BufferedImage>("ImageUtils") {
+    /** metrics */
+    private final static Timer TIMER_CREATE_IMAGE = Metrics.timer("image.createImage");
+    /** image pool for createImage()/recycleImage() */
+    private final static BufferPool<BufferedImage> imageCache = new BufferPool<BufferedImage>("ImageUtils") {
 
         @Override
-        protected boolean checkSizes(BufferedImage image, int length, int length2) {
-            return (image.getWidth() == length && image.getHeight() == length2);
+        protected int getLength(final BufferedImage image) {
+            return image.getWidth();
         }
 
         @Override
-        public String getSizes(BufferedImage image) {
-            return String.format("%d x %d", image.getWidth(), image.getHeight());
+        protected int getLength2(final BufferedImage image) {
+            return image.getHeight();
+        }
+
+        @Override
+        protected long getByteSize(final BufferedImage image) {
+            final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+            return ((long) dataBuffer.getSize()) * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8L;
         }
     };
 
@@ -64,7 +84,9 @@ public final class ImageUtils {
         /** Bilinear image interpolation */
         Bilinear,
         /** Bicubic image interpolation */
-        Bicubic;
+        Bicubic,
+        /** Lanczos image interpolation (data resampling only, bicubic for Graphics) */
+        Lanczos;
     }
 
     /**
@@ -79,16 +101,30 @@ public final class ImageUtils {
     }
 
     public static ImageInterpolation getImageInterpolation() {
-        if (IMAGE_INTERPOLATION == RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
-            return ImageInterpolation.None;
-        } else if (IMAGE_INTERPOLATION == RenderingHints.VALUE_INTERPOLATION_BILINEAR) {
-            return ImageInterpolation.Bilinear;
-        } else {
-            return ImageInterpolation.Bicubic;
+        return IMAGE_INTERPOLATION_MODE;
+    }
+
+    /**
+     * Return the data resampling kernel matching the image interpolation (see ImageResampler)
+     * @return data resampling kernel
+     */
+    public static ImageResampler.Kernel getResamplerKernel() {
+        switch (IMAGE_INTERPOLATION_MODE) {
+            case None:
+                return ImageResampler.Kernel.NEAREST;
+            case Bilinear:
+                return ImageResampler.Kernel.BILINEAR;
+            case Lanczos:
+                return ImageResampler.Kernel.LANCZOS3;
+            default:
+            case Bicubic:
+                return ImageResampler.Kernel.BICUBIC;
         }
     }
 
     public static void setImageInterpolation(final ImageInterpolation interpolation) {
+        IMAGE_INTERPOLATION_MODE = interpolation;
+
         switch (interpolation) {
             case None:
                 IMAGE_INTERPOLATION = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
@@ -98,6 +134,7 @@ public final class ImageUtils {
                 break;
             default:
             case Bicubic:
+            case Lanczos:
                 IMAGE_INTERPOLATION = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
         }
     }
@@ -106,10 +143,35 @@ public final class ImageUtils {
      * Convert min/max range to the given color scaling method
      * @param min data min value
      * @param max data max value
-     * @param colorScale color scaling method
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
      * @return scaled min / max values
+     * @throws IllegalArgumentException if the color scale is histogram based (see isHistogramScale)
      */
     public static float[] scaleMinMax(final float min, final float max, final ColorScale colorScale) {
+        checkLinearScale(colorScale);
+        return scaleRange(min, max, colorScale);
+    }
+
+    /**
+     * Throw an IllegalArgumentException if the given color scale is histogram based:
+     * the scaled min / scaling factor form only supports LINEAR or LOGARITHMIC color scales
+     * @param colorScale color scaling method
+     * @throws IllegalArgumentException if the color scale is histogram based (see isHistogramScale)
+     */
+    private static void checkLinearScale(final ColorScale colorScale) {
+        if (isHistogramScale(colorScale)) {
+            throw new IllegalArgumentException("Unsupported color scale (histogram): " + colorScale);
+        }
+    }
+
+    /**
+     * Convert min/max range to the given color scaling method (histogram based color scales are linear)
+     * @param min data min value
+     * @param max data max value
+     * @param colorScale color scaling method
+     * @return scaled min / max values
+     */
+    private static float[] scaleRange(final float min, final float max, final ColorScale colorScale) {
 
         final float scaledMin;
         final float scaledMax;
@@ -135,6 +197,93 @@ public final class ImageUtils {
         return new float[]{scaledMin, scaledMax};
     }
 
+    /**
+     * Return true if the given color scaling method depends on the histogram of values (PERCENTILE or EQUALIZED)
+     * @param colorScale color scaling method
+     * @return true if the histogram of values is needed
+     */
+    public static boolean isHistogramScale(final ColorScale colorScale) {
+        return colorScale == ColorScale.PERCENTILE || colorScale == ColorScale.EQUALIZED;
+    }
+
+    /**
+     * Compute the histogram of the given data array or flat image over [min; max] if the given color scaling method needs it:
+     * when outliers crush the bins (percentile range covering less than 1/16 of the bins), the histogram is computed again
+     * over the percentile range (up to HISTOGRAM_PASSES times)
+     * @param array data array (2D) or null if using a flat image
+     * @param image flat image or null if using a data array (2D)
+     * @param width image width
+     * @param height image height
+     * @param min lower data value
+     * @param max upper data value
+     * @param colorScale color scaling method
+     * @param token cancellation token
+     * @return histogram or null if not needed (see isHistogramScale)
+     *
+     * @throws InterruptedJobException if the given token is cancelled
+     */
+    private static Histogram computeHistogram(final float[][] array, final FloatImage image, final int width, final int height,
+                                              final float min, final float max,
+                                              final ColorScale colorScale, final CancellationToken token) {
+        if (!isHistogramScale(colorScale) || !(min <= max)) {
+            return null;
+        }
+        final int nBins = ImageHistogramJob.DEFAULT_BINS;
+
+        float lower = min;
+        float upper = max;
+        Histogram histogram = null;
+
+        for (int pass = 1; pass <= HISTOGRAM_PASSES; pass++) {
+            final ImageHistogramJob job = (array != null) ? new ImageHistogramJob(array, width, height, lower, upper, nBins)
+                    : new ImageHistogramJob(image, lower, upper, nBins);
+
+            histogram = job.forkAndJoin(token);
+
+            if (histogram.getCount() == 0L || lower == upper) {
+                break;
+            }
+            final float low = histogram.getPercentile(PERCENTILE_LOW);
+            final float high = histogram.getPercentile(PERCENTILE_HIGH);
+            final float binWidth = (upper - lower) / nBins;
+
+            if ((high - low) >= (nBins / 16) * binWidth) {
+                break;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("computeHistogram: pass {} - refine range[{} - {}] to [{} - {}]", pass, lower, upper, low, high);
+            }
+            // keep one bin around percentiles:
+            lower = Math.max(lower, low - binWidth);
+            upper = Math.min(upper, high + binWidth);
+        }
+        return histogram;
+    }
+
+    /**
+     * Convert min/max range to the given color scaling method:
+     * the PERCENTILE color scale uses the [PERCENTILE_LOW - PERCENTILE_HIGH] percentiles of the given histogram
+     * @param min data min value
+     * @param max data max value
+     * @param colorScale color scaling method
+     * @param histogram histogram of values (PERCENTILE or EQUALIZED) or null
+     * @return scaled min / max values
+     */
+    private static float[] scaleMinMax(final float min, final float max, final ColorScale colorScale, final Histogram histogram) {
+        if (colorScale == ColorScale.PERCENTILE && histogram.getCount() != 0L) {
+            final float low = histogram.getPercentile(PERCENTILE_LOW);
+            final float high = histogram.getPercentile(PERCENTILE_HIGH);
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("scaleMinMax: percentile range[{} - {}]", low, high);
+            }
+            if (low < high) {
+                return scaleRange(low, high, ColorScale.LINEAR);
+            }
+        }
+        return scaleRange(min, max, colorScale);
+    }
+
     /**
      * Return the value to pixel coefficient
      *
@@ -195,11 +344,17 @@ public final class ImageUtils {
                                             final IndexColorModel colorModel,
                                             final ColorScale colorScale) {
 
-        final float[] scaledMinMax = scaleMinMax(min, max, colorScale);
+        final CancellationToken token = CancellationToken.forCurrentThread();
+
+        final Histogram histogram = (array != null && array.length == (width * height))
+                ? computeHistogram(null, FloatImage.wrap(array, width, height), width, height, min, max, colorScale, token) : null;
+
+        final float[] scaledMinMax = scaleMinMax(min, max, colorScale, histogram);
 
         final float scalingFactor = computeScalingFactor(scaledMinMax[0], scaledMinMax[1], colorModel.getMapSize());
 
-        return ImageUtils.createImage(width, height, array, scaledMinMax[0], colorModel, scalingFactor, colorScale);
+        return ImageUtils.createImage(width, height, array, scaledMinMax[0], colorModel, scalingFactor, colorScale,
+                (colorScale == ColorScale.EQUALIZED) ? histogram : null, token);
     }
 
     /**
@@ -231,16 +386,67 @@ public final class ImageUtils {
      * @param scaledMin minimum data value or log10(min) 
      * @param colorModel color model
      * @param scalingFactor value to pixel coefficient
-     * @param colorScale color scaling method
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
      * @return new BufferedImage or null if interrupted
      * 
      * @throws InterruptedJobException if the current thread is interrupted (cancelled)
+     * @throws IllegalArgumentException if the color scale is histogram based (see isHistogramScale)
      * @throws RuntimeException if any exception occured during the computation
      */
     public static BufferedImage createImage(final int width, final int height,
                                             final float[] array, final float scaledMin,
                                             final IndexColorModel colorModel, final float scalingFactor,
                                             final ColorScale colorScale) {
+        return ImageUtils.createImage(width, height, array, scaledMin, colorModel, scalingFactor, colorScale, CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Create an Image from the given data array using the specified Color Model
+     *
+     * @param width image width
+     * @param height image height
+     * @param array data array (1D)
+     * @param scaledMin minimum data value or log10(min) 
+     * @param colorModel color model
+     * @param scalingFactor value to pixel coefficient
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
+     * @param token cancellation token
+     * @return new BufferedImage
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
+     * @throws IllegalArgumentException if the color scale is histogram based (see isHistogramScale)
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    public static BufferedImage createImage(final int width, final int height,
+                                            final float[] array, final float scaledMin,
+                                            final IndexColorModel colorModel, final float scalingFactor,
+                                            final ColorScale colorScale, final CancellationToken token) {
+        checkLinearScale(colorScale);
+        return ImageUtils.createImage(width, height, array, scaledMin, colorModel, scalingFactor, colorScale, null, token);
+    }
+
+    /**
+     * Create an Image from the given data array using the specified Color Model
+     *
+     * @param width image width
+     * @param height image height
+     * @param array data array (1D)
+     * @param scaledMin minimum data value or log10(min) 
+     * @param colorModel color model
+     * @param scalingFactor value to pixel coefficient
+     * @param colorScale color scaling method
+     * @param equalization histogram used to equalize colors or null
+     * @param token cancellation token
+     * @return new BufferedImage
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    private static BufferedImage createImage(final int width, final int height,
+                                             final float[] array, final float scaledMin,
+                                             final IndexColorModel colorModel, final float scalingFactor,
+                                             final ColorScale colorScale, final Histogram equalization,
+                                             final CancellationToken token) {
         if (array == null) {
             throw new IllegalStateException("Undefined data array.");
         }
@@ -256,24 +462,29 @@ public final class ImageUtils {
 
         final BufferedImage image = createImage(width, height, colorModel);
         final WritableRaster imageRaster = image.getRaster();
-        final DataBuffer dataBuffer = imageRaster.getDataBuffer();
 
         // Should split the computation in parts ?
         // i.e. enough big compute task ?
-        final int nJobs = (array.length >= JOB_THRESHOLD) ? jobExecutor.getMaxParallelJob() : 1;
+        final int nJobs = ParallelThresholds.isParallel(ParallelThresholds.Stage.IMAGE, array.length) ? jobExecutor.getMaxParallelJob() : 1;
 
         final ComputeImagePart[] jobs = new ComputeImagePart[nJobs];
 
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
         for (int i = 0; i < nJobs; i++) {
             // ensure last job goes until lineEnd:
-            jobs[i] = new ComputeImagePart(array, scaledMin, colorModel, scalingFactor, colorScale, dataBuffer, i, nJobs);
+            jobs[i] = new ComputeImagePart(array, width, height, scaledMin, colorModel, scalingFactor, colorScale, equalization, imageRaster, i, nJobs, jobToken);
         }
 
-        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
-        jobExecutor.forkAndJoin("ImageUtils.createImage", jobs);
+        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if cancelled):
+        forkAndJoin(image, jobs, jobToken);
+
+        final long duration = System.nanoTime() - start;
+        TIMER_CREATE_IMAGE.record(duration);
 
         if (logger.isDebugEnabled()) {
-            logger.debug("compute : duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+            logger.debug("compute : duration = {} ms.", 1e-6d * duration);
         }
 
         return image;
@@ -317,12 +528,38 @@ public final class ImageUtils {
     public static BufferedImage createImage(final int width, final int height,
                                             final float[][] array, final float min, final float max,
                                             final IndexColorModel colorModel, final ColorScale colorScale) {
+        return ImageUtils.createImage(width, height, array, min, max, colorModel, colorScale, CancellationToken.forCurrentThread());
+    }
 
-        final float[] scaledMinMax = scaleMinMax(min, max, colorScale);
+    /**
+     * Create an Image from the given data array using the specified Color Model
+     *
+     * @param width image width
+     * @param height image height
+     * @param array data array (2D)
+     * @param min lower data value (lower threshold)
+     * @param max upper data value (upper threshold)
+     * @param colorModel color model
+     * @param colorScale color scaling method
+     * @param token cancellation token
+     * @return new BufferedImage
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    public static BufferedImage createImage(final int width, final int height,
+                                            final float[][] array, final float min, final float max,
+                                            final IndexColorModel colorModel, final ColorScale colorScale,
+                                            final CancellationToken token) {
+
+        final Histogram histogram = (array != null) ? computeHistogram(array, null, width, height, min, max, colorScale, token) : null;
+
+        final float[] scaledMinMax = scaleMinMax(min, max, colorScale, histogram);
 
         final float scalingFactor = computeScalingFactor(scaledMinMax[0], scaledMinMax[1], colorModel.getMapSize());
 
-        return ImageUtils.createImage(width, height, array, scaledMinMax[0], colorModel, scalingFactor, colorScale);
+        return ImageUtils.createImage(width, height, array, scaledMinMax[0], colorModel, scalingFactor, colorScale,
+                (colorScale == ColorScale.EQUALIZED) ? histogram : null, token);
     }
 
     /**
@@ -354,16 +591,67 @@ public final class ImageUtils {
      * @param scaledMin minimum data value or log10(min) 
      * @param colorModel color model
      * @param scalingFactor value to pixel coefficient
-     * @param colorScale color scaling method
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
      * @return new BufferedImage or null if interrupted
      * 
      * @throws InterruptedJobException if the current thread is interrupted (cancelled)
+     * @throws IllegalArgumentException if the color scale is histogram based (see isHistogramScale)
      * @throws RuntimeException if any exception occured during the computation
      */
     public static BufferedImage createImage(final int width, final int height,
                                             final float[][] array, final float scaledMin,
                                             final IndexColorModel colorModel, final float scalingFactor,
                                             final ColorScale colorScale) {
+        return ImageUtils.createImage(width, height, array, scaledMin, colorModel, scalingFactor, colorScale, CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Create an Image from the given data array using the specified Color Model
+     *
+     * @param width image width
+     * @param height image height
+     * @param array data array (2D) [rows][cols]
+     * @param scaledMin minimum data value or log10(min) 
+     * @param colorModel color model
+     * @param scalingFactor value to pixel coefficient
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
+     * @param token cancellation token
+     * @return new BufferedImage
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
+     * @throws IllegalArgumentException if the color scale is histogram based (see isHistogramScale)
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    public static BufferedImage createImage(final int width, final int height,
+                                            final float[][] array, final float scaledMin,
+                                            final IndexColorModel colorModel, final float scalingFactor,
+                                            final ColorScale colorScale, final CancellationToken token) {
+        checkLinearScale(colorScale);
+        return ImageUtils.createImage(width, height, array, scaledMin, colorModel, scalingFactor, colorScale, null, token);
+    }
+
+    /**
+     * Create an Image from the given data array using the specified Color Model
+     *
+     * @param width image width
+     * @param height image height
+     * @param array data array (2D) [rows][cols]
+     * @param scaledMin minimum data value or log10(min) 
+     * @param colorModel color model
+     * @param scalingFactor value to pixel coefficient
+     * @param colorScale color scaling method
+     * @param equalization histogram used to equalize colors or null
+     * @param token cancellation token
+     * @return new BufferedImage
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    private static BufferedImage createImage(final int width, final int height,
+                                             final float[][] array, final float scaledMin,
+                                             final IndexColorModel colorModel, final float scalingFactor,
+                                             final ColorScale colorScale, final Histogram equalization,
+                                             final CancellationToken token) {
         if (array == null) {
             throw new IllegalStateException("Undefined data array.");
         }
@@ -383,35 +671,123 @@ public final class ImageUtils {
 
         final BufferedImage image = createImage(width, height, colorModel);
         final WritableRaster imageRaster = image.getRaster();
-        final DataBuffer dataBuffer = imageRaster.getDataBuffer();
 
         // Should split the computation in parts ?
         // i.e. enough big compute task ?
-        final int nJobs = ((width * height) >= JOB_THRESHOLD) ? jobExecutor.getMaxParallelJob() : 1;
+        final int nJobs = ParallelThresholds.isParallel(ParallelThresholds.Stage.IMAGE, (long) width * height) ? jobExecutor.getMaxParallelJob() : 1;
 
         final ComputeImagePart[] jobs = new ComputeImagePart[nJobs];
 
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
         for (int i = 0; i < nJobs; i++) {
             // ensure last job goes until lineEnd:
-            jobs[i] = new ComputeImagePart(array, width, height, scaledMin, colorModel, scalingFactor, colorScale, dataBuffer, i, nJobs);
+            jobs[i] = new ComputeImagePart(array, width, height, scaledMin, colorModel, scalingFactor, colorScale, equalization, imageRaster, i, nJobs, jobToken);
+        }
+
+        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if cancelled):
+        forkAndJoin(image, jobs, jobToken);
+
+        final long duration = System.nanoTime() - start;
+        TIMER_CREATE_IMAGE.record(duration);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("compute : duration = {} ms.", 1e-6d * duration);
+        }
+
+        return image;
+    }
+
+    /**
+     * Create an Image from the given flat image using the specified Color Model
+     *
+     * @param image flat image (row 0 at the bottom of the created image)
+     * @param min lower data value (lower threshold)
+     * @param max upper data value (upper threshold)
+     * @param colorModel color model
+     * @param colorScale color scaling method
+     * @param token cancellation token
+     * @return new BufferedImage
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    public static BufferedImage createImage(final FloatImage image, final float min, final float max,
+                                            final IndexColorModel colorModel, final ColorScale colorScale,
+                                            final CancellationToken token) {
+
+        final Histogram histogram = computeHistogram(null, image, image.getWidth(), image.getHeight(), min, max, colorScale, token);
+
+        final float[] scaledMinMax = scaleMinMax(min, max, colorScale, histogram);
+
+        final float scalingFactor = computeScalingFactor(scaledMinMax[0], scaledMinMax[1], colorModel.getMapSize());
+        final Histogram equalization = (colorScale == ColorScale.EQUALIZED) ? histogram : null;
+
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("createImage: using {}", image);
         }
 
-        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
+        // Start the computations :
+        final long start = System.nanoTime();
+
+        final BufferedImage bufImage = createImage(width, height, colorModel);
+        final WritableRaster imageRaster = bufImage.getRaster();
+
+        // Should split the computation in parts ?
+        // i.e. enough big compute task ?
+        final int nJobs = ParallelThresholds.isParallel(ParallelThresholds.Stage.IMAGE, (long) width * height) ? jobExecutor.getMaxParallelJob() : 1;
+
+        final ComputeImagePart[] jobs = new ComputeImagePart[nJobs];
+
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
+        for (int i = 0; i < nJobs; i++) {
+            jobs[i] = new ComputeImagePart(image, scaledMinMax[0], colorModel, scalingFactor, colorScale, equalization, imageRaster, i, nJobs, jobToken);
+        }
+
+        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if cancelled):
+        forkAndJoin(bufImage, jobs, jobToken);
+
+        final long duration = System.nanoTime() - start;
+        TIMER_CREATE_IMAGE.record(duration);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("compute : duration = {} ms.", 1e-6d * duration);
+        }
+
+        return bufImage;
+    }
+
+    /**
+     * Execute the given image jobs and recycle the image if they failed or the given token is cancelled
+     * @param image image filled by the given jobs
+     * @param jobs image jobs
+     * @param token child token given to the jobs (see CancellationToken.createChild())
+     * 
+     * @throws InterruptedJobException if the given token is cancelled
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    private static void forkAndJoin(final BufferedImage image, final ComputeImagePart[] jobs, final CancellationToken token) {
         try {
             jobExecutor.forkAndJoin("ImageUtils.createImage", jobs);
+
+            // fast interrupt (partial image) :
+            token.checkCancelled("ImageUtils.createImage");
+
         } catch (RuntimeException re) {
             logger.debug("recycleImage <= interrupted job:");
+            // stop remaining jobs before recycling their image:
+            token.cancel();
             // recycle image:
             recycleImage(image);
             // rethrow exception:
             throw re;
         }
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("compute : duration = {} ms.", 1e-6d * (System.nanoTime() - start));
-        }
-
-        return image;
     }
 
     public static BufferedImage transformImage(final BufferedImage image, final IndexColorModel colorModel,
@@ -561,13 +937,16 @@ public final class ImageUtils {
 
         BufferedImage image = imageCache.getItem(width, height);
         if (image != null) {
+            if (!USE_RGB_INTERPOLATION && image.getColorModel() != colorModel) {
+                // reuse the raster with the given indexed color model:
+                image = new BufferedImage(colorModel, image.getRaster(), false, null);
+            }
             return image;
         }
 
         final ColorModel imageColorModel;
         final WritableRaster imageRaster;
 
-        // TODO: memory waste: reuse images if possible !!
         if (USE_RGB_INTERPOLATION) {
             imageColorModel = ColorModel.getRGBdefault();
             imageRaster = imageColorModel.createCompatibleWritableRaster(width, height);
@@ -583,13 +962,25 @@ public final class ImageUtils {
             logger.debug("create image[{} x {}] @ {}", image.getWidth(), image.getHeight(), image.hashCode());
         }
 
-        return image;
+        return imageCache.track(image);
     }
 
+    /**
+     * Give back the given image to the pool
+     * @param image image to recycle (may be null)
+     */
     public static void recycleImage(final BufferedImage image) {
         imageCache.putItem(image);
     }
 
+    /**
+     * Log images obtained by createImage() and never recycled (jmal.pool.checks=true only)
+     * @return number of outstanding images
+     */
+    public static int reportLeaks() {
+        return imageCache.reportLeaks();
+    }
+
     /**
      * Return the color index using the indexed color model for the given value (linear scale)
      *
@@ -653,6 +1044,212 @@ public final class ImageUtils {
         return alphaMask | (r << 16) | (g << 8) | b;
     }
 
+    /**
+     * Create a row buffer of pixels compatible with the raster of createImage(width, height, colorModel):
+     * packed ARGB int[] (RGB interpolation) or color index byte[]
+     *
+     * @param width number of pixels
+     * @return new row buffer (int[] or byte[])
+     */
+    public static Object createRowBuffer(final int width) {
+        if (USE_RGB_INTERPOLATION) {
+            return new int[width];
+        }
+        return new byte[width];
+    }
+
+    /**
+     * Convert the given row of data values to pixels (RGB interpolation or color indexes) in the given raster row:
+     * pixels are written in the given row buffer first then copied at once in the raster (managed image)
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param colorModel color model
+     * @param iMaxColor index of the highest color
+     * @param scaledMin minimum data value or log10(min)
+     * @param scalingFactor data to color linear scaling factor
+     * @param doLog10 true to use logarithmic scale
+     * @param raster image raster (see createImage(width, height, colorModel))
+     * @param y raster row index
+     * @param rowBuffer row buffer of at least width pixels (see createRowBuffer(width))
+     */
+    public static void colorizeRow(final float[] row, final int rowOffset, final int width,
+                                   final IndexColorModel colorModel, final int iMaxColor,
+                                   final float scaledMin, final float scalingFactor, final boolean doLog10,
+                                   final WritableRaster raster, final int y, final Object rowBuffer) {
+        colorizeRow(row, rowOffset, width, getColorLUT(colorModel), iMaxColor, scaledMin, scalingFactor, doLog10, false,
+                raster, y, rowBuffer);
+    }
+
+    /**
+     * Return the color table used to colorize rows with the given color model (to be resolved once per job)
+     * @param colorModel color model
+     * @return color table or null if colors are not interpolated (color indexes)
+     */
+    public static ColorLUT getColorLUT(final IndexColorModel colorModel) {
+        return (USE_RGB_INTERPOLATION) ? ColorLUT.getInstance(colorModel, ALPHA_MASK) : null;
+    }
+
+    /**
+     * Convert the given row of data values to pixels (RGB interpolation or color indexes) in the given raster row
+     * optionally mirrored (first value written in the last column):
+     * pixels are written in the given row buffer first then copied at once in the raster (managed image)
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param lut color table (see getColorLUT(colorModel))
+     * @param iMaxColor index of the highest color
+     * @param scaledMin minimum data value or log10(min)
+     * @param scalingFactor data to color linear scaling factor
+     * @param doLog10 true to use logarithmic scale
+     * @param flipX true to flip the row horizontally
+     * @param raster image raster (see createImage(width, height, colorModel))
+     * @param y raster row index
+     * @param rowBuffer row buffer of at least width pixels (see createRowBuffer(width))
+     */
+    public static void colorizeRow(final float[] row, final int rowOffset, final int width,
+                                   final ColorLUT lut, final int iMaxColor,
+                                   final float scaledMin, final float scalingFactor, final boolean doLog10,
+                                   final boolean flipX, final WritableRaster raster, final int y, final Object rowBuffer) {
+        if (lut != null) {
+            colorizeRow(row, rowOffset, width, lut, scaledMin, scalingFactor, doLog10, flipX, (int[]) rowBuffer, 0);
+        } else {
+            colorizeRow(row, rowOffset, width, iMaxColor, scaledMin, scalingFactor, doLog10, flipX, (byte[]) rowBuffer, 0);
+        }
+        // bulk copy (one row):
+        raster.setDataElements(0, y, width, 1, rowBuffer);
+    }
+
+    /**
+     * Convert the given row of data values to RGB pixels using the given color table in the given pixel array
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param lut color table (see ColorLUT.getInstance(colorModel, alphaMask))
+     * @param scaledMin minimum data value or log10(min)
+     * @param scalingFactor data to color linear scaling factor
+     * @param doLog10 true to use logarithmic scale
+     * @param pixels packed ARGB pixels
+     * @param offset index of the first pixel in the given pixel array
+     */
+    public static void colorizeRow(final float[] row, final int rowOffset, final int width, final ColorLUT lut,
+                                   final float scaledMin, final float scalingFactor, final boolean doLog10,
+                                   final int[] pixels, final int offset) {
+        colorizeRow(row, rowOffset, width, lut, scaledMin, scalingFactor, doLog10, false, pixels, offset);
+    }
+
+    /**
+     * Convert the given row of data values to RGB pixels using the given color table in the given pixel array
+     * optionally mirrored (first value written in the last pixel)
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param lut color table (see ColorLUT.getInstance(colorModel, alphaMask))
+     * @param scaledMin minimum data value or log10(min)
+     * @param scalingFactor data to color linear scaling factor
+     * @param doLog10 true to use logarithmic scale
+     * @param flipX true to flip the row horizontally
+     * @param pixels packed ARGB pixels
+     * @param offset index of the first pixel in the given pixel array
+     */
+    public static void colorizeRow(final float[] row, final int rowOffset, final int width, final ColorLUT lut,
+                                   final float scaledMin, final float scalingFactor, final boolean doLog10,
+                                   final boolean flipX, final int[] pixels, final int offset) {
+        // scale directly to the table position:
+        final float lutFactor = scalingFactor * ColorLUT.SUB_STEPS;
+
+        // mirrored columns are written backwards:
+        final int step = (flipX) ? -1 : 1;
+        int p = (flipX) ? offset + width - 1 : offset;
+
+        if (doLog10) {
+            // log10(value) = log2(value) x log10(2) (fast log2):
+            final float log2Factor = MathUtils.LOG10_2 * lutFactor;
+            final float logOffset = scaledMin * lutFactor;
+
+            for (int i = 0; i < width; i++, p += step) {
+                pixels[p] = lut.getRGBLog(row[rowOffset + i], log2Factor, logOffset);
+            }
+        } else {
+            final float lutOffset = scaledMin * lutFactor;
+
+            for (int i = 0; i < width; i++, p += step) {
+                pixels[p] = lut.getRGBAt(row[rowOffset + i] * lutFactor - lutOffset);
+            }
+        }
+    }
+
+    /**
+     * Convert the given row of data values to color indexes in the given pixel array
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param iMaxColor index of the highest color
+     * @param scaledMin minimum data value or log10(min)
+     * @param scalingFactor data to color linear scaling factor
+     * @param doLog10 true to use logarithmic scale
+     * @param flipX true to flip the row horizontally
+     * @param pixels color indexes
+     * @param offset index of the first pixel in the given pixel array
+     */
+    private static void colorizeRow(final float[] row, final int rowOffset, final int width, final int iMaxColor,
+                                    final float scaledMin, final float scalingFactor, final boolean doLog10,
+                                    final boolean flipX, final byte[] pixels, final int offset) {
+        // mirrored columns are written backwards:
+        final int step = (flipX) ? -1 : 1;
+        int p = (flipX) ? offset + width - 1 : offset;
+
+        for (int i = 0; i < width; i++, p += step) {
+            pixels[p] = (byte) getColor(iMaxColor, getScaledValue(doLog10, scaledMin, scalingFactor, row[rowOffset + i]));
+        }
+    }
+
+    /**
+     * Convert the given row of data values to RGB pixels following the cumulative distribution of the given histogram
+     * (histogram equalization) in the given pixel array
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param equalization histogram of values
+     * @param lut color table (see ColorLUT.getInstance(colorModel, alphaMask))
+     * @param pixels packed ARGB pixels
+     * @param offset index of the first pixel in the given pixel array
+     */
+    private static void colorizeRow(final float[] row, final int rowOffset, final int width, final Histogram equalization,
+                                    final ColorLUT lut, final int[] pixels, final int offset) {
+        // cumulative fraction to table position:
+        final float lutFactor = lut.getSize() - 1;
+
+        for (int i = 0; i < width; i++) {
+            pixels[offset + i] = lut.getRGBAt(equalization.getCumulativeFraction(row[rowOffset + i]) * lutFactor);
+        }
+    }
+
+    /**
+     * Convert the given row of data values to color indexes following the cumulative distribution of the given histogram
+     * (histogram equalization) in the given pixel array
+     *
+     * @param row data values
+     * @param rowOffset index of the first value in the given row
+     * @param width number of values
+     * @param equalization histogram of values
+     * @param iMaxColor index of the highest color
+     * @param pixels color indexes
+     * @param offset index of the first pixel in the given pixel array
+     */
+    private static void colorizeRow(final float[] row, final int rowOffset, final int width, final Histogram equalization,
+                                    final int iMaxColor, final byte[] pixels, final int offset) {
+        for (int i = 0; i < width; i++) {
+            pixels[offset + i] = (byte) getColor(iMaxColor, equalization.getCumulativeFraction(row[rowOffset + i]) * iMaxColor);
+        }
+    }
+
     /**
      * Scale the given value using linear or logarithmic scale
      * 
@@ -685,6 +1282,8 @@ public final class ImageUtils {
         private final float[] _array1D;
         /** data array (2D) [rows][cols] */
         private final float[][] _array2D;
+        /** flat image */
+        private final FloatImage _image;
         /** image width */
         private final int _width;
         /** image height */
@@ -697,43 +1296,54 @@ public final class ImageUtils {
         private final ColorScale _colorScale;
         /** data to color linear scaling factor */
         private final float _scalingFactor;
+        /** histogram used to equalize colors or null */
+        private final Histogram _equalization;
         /* output */
-        /** image raster dataBuffer */
-        private final DataBuffer _dataBuffer;
+        /** image raster */
+        private final WritableRaster _raster;
         /* job boundaries */
         /** job index */
         private final int _jobIndex;
         /** total number of concurrent jobs */
         private final int _jobCount;
+        /** cancellation token */
+        private final CancellationToken _token;
 
         /**
          * Create the task
          *
          * @param array data array (1D)
+         * @param width image width
+         * @param height image height
          * @param scaledMin lower data value
          * @param colorModel indexed color model
          * @param scalingFactor data to color linear scaling factor
          * @param colorScale color scaling method
-         * @param dataBuffer image raster dataBuffer
+         * @param equalization histogram used to equalize colors or null
+         * @param raster image raster
          * @param jobIndex job index used to process data interlaced
          * @param jobCount total number of concurrent jobs
+         * @param token cancellation token
          */
-        ComputeImagePart(final float[] array, final float scaledMin,
+        ComputeImagePart(final float[] array, final int width, final int height, final float scaledMin,
                          final IndexColorModel colorModel, final float scalingFactor, final ColorScale colorScale,
-                         final DataBuffer dataBuffer,
-                         final int jobIndex, final int jobCount) {
+                         final Histogram equalization, final WritableRaster raster,
+                         final int jobIndex, final int jobCount, final CancellationToken token) {
 
             this._array1D = array;
             this._array2D = null;
-            this._width = array.length;
-            this._height = 0;
+            this._image = null;
+            this._width = width;
+            this._height = height;
             this._scaledMin = scaledMin;
             this._colorModel = colorModel;
             this._colorScale = colorScale;
             this._scalingFactor = scalingFactor;
-            this._dataBuffer = dataBuffer;
+            this._equalization = equalization;
+            this._raster = raster;
             this._jobIndex = jobIndex;
             this._jobCount = jobCount;
+            this._token = token;
         }
 
         /**
@@ -746,26 +1356,66 @@ public final class ImageUtils {
          * @param colorModel indexed color model
          * @param scalingFactor data to color linear scaling factor
          * @param colorScale color scaling method
-         * @param dataBuffer image raster dataBuffer
+         * @param equalization histogram used to equalize colors or null
+         * @param raster image raster
          * @param jobIndex job index used to process data interlaced
          * @param jobCount total number of concurrent jobs
+         * @param token cancellation token
          */
         ComputeImagePart(final float[][] array, final int width, final int height, final float scaledMin,
                          final IndexColorModel colorModel, final float scalingFactor, final ColorScale colorScale,
-                         final DataBuffer dataBuffer,
-                         final int jobIndex, final int jobCount) {
+                         final Histogram equalization, final WritableRaster raster,
+                         final int jobIndex, final int jobCount, final CancellationToken token) {
 
             this._array1D = null;
             this._array2D = array;
+            this._image = null;
             this._width = width;
             this._height = height;
             this._scaledMin = scaledMin;
             this._colorModel = colorModel;
             this._colorScale = colorScale;
             this._scalingFactor = scalingFactor;
-            this._dataBuffer = dataBuffer;
+            this._equalization = equalization;
+            this._raster = raster;
+            this._jobIndex = jobIndex;
+            this._jobCount = jobCount;
+            this._token = token;
+        }
+
+        /**
+         * Create the task
+         *
+         * @param image flat image
+         * @param scaledMin lower data value
+         * @param colorModel indexed color model
+         * @param scalingFactor data to color linear scaling factor
+         * @param colorScale color scaling method
+         * @param equalization histogram used to equalize colors or null
+         * @param raster image raster
+         * @param jobIndex job index used to process data interlaced
+         * @param jobCount total number of concurrent jobs
+         * @param token cancellation token
+         */
+        ComputeImagePart(final FloatImage image, final float scaledMin,
+                         final IndexColorModel colorModel, final float scalingFactor, final ColorScale colorScale,
+                         final Histogram equalization, final WritableRaster raster,
+                         final int jobIndex, final int jobCount, final CancellationToken token) {
+
+            this._array1D = null;
+            this._array2D = null;
+            this._image = image;
+            this._width = image.getWidth();
+            this._height = image.getHeight();
+            this._scaledMin = scaledMin;
+            this._colorModel = colorModel;
+            this._colorScale = colorScale;
+            this._scalingFactor = scalingFactor;
+            this._equalization = equalization;
+            this._raster = raster;
             this._jobIndex = jobIndex;
             this._jobCount = jobCount;
+            this._token = token;
         }
 
         /**
@@ -782,94 +1432,68 @@ public final class ImageUtils {
             final int height = _height;
             final float[] array1D = _array1D;
             final float[][] array2D = _array2D;
+            final FloatImage image = _image;
             final float scaledMin = _scaledMin;
             final IndexColorModel colorModel = _colorModel;
             final float scalingFactor = _scalingFactor;
             final boolean doLog10 = (_colorScale == ColorScale.LOGARITHMIC);
+            final Histogram equalization = _equalization;
             /* output */
-            final DataBuffer dataBuffer = _dataBuffer;
+            final WritableRaster raster = _raster;
             /* job boundaries */
             final int jobIndex = _jobIndex;
             final int jobCount = _jobCount;
 
             // Prepare other variables:
             final int iMaxColor = colorModel.getMapSize() - 1;
+            final ColorLUT lut = getColorLUT(colorModel);
 
-            /** Get the current thread to check if the computation is interrupted */
-            final Thread currentThread = Thread.currentThread();
+            /** Get the token to check if the computation is cancelled */
+            final CancellationToken token = _token;
 
-            if (USE_RGB_INTERPOLATION) {
+            // row buffer (one per job) copied at once into the raster (keeps the image managed):
+            final Object rowBuffer = createRowBuffer(width);
 
-                // initialize raster pixels
+            // initialize raster pixels
+            float[] row;
+            for (int y, k = 0, j = jobIndex, lastRow = height - 1; j < height; j += jobCount) {
                 if (array1D != null) {
-                    for (int i = jobIndex; i < width; i += jobCount) {
-
-                        dataBuffer.setElem(i, getRGB(colorModel, iMaxColor,
-                                getScaledValue(doLog10, scaledMin, scalingFactor, array1D[i]), ALPHA_MASK));
-
-                        // fast interrupt:
-                        if (currentThread.isInterrupted()) {
-                            logger.debug("ComputeImagePart: cancelled (vis)");
-                            return;
-                        }
-                    } // pixel by pixel
-                } else if (array2D != null) {
-                    float[] row;
-                    for (int i, offset, j = jobIndex, lastRow = height - 1; j < height; j += jobCount) {
-                        // inverse vertical axis (0 at bottom, height at top):
-                        offset = width * (lastRow - j);
+                    // 1D array: same row order as the raster
+                    y = j;
+                    row = array1D;
+                    k = width * j;
+                } else {
+                    // inverse vertical axis (0 at bottom, height at top):
+                    y = lastRow - j;
+                    if (array2D != null) {
                         row = array2D[j];
-
-                        for (i = 0; i < width; i++) {
-
-                            dataBuffer.setElem(offset + i, getRGB(colorModel, iMaxColor,
-                                    getScaledValue(doLog10, scaledMin, scalingFactor, row[i]), ALPHA_MASK));
-                        }
-
-                        // fast interrupt:
-                        if (currentThread.isInterrupted()) {
-                            logger.debug("ComputeImagePart: cancelled (vis)");
-                            return;
-                        }
-                    } // line by line
+                    } else {
+                        // flat image: same data array with row offset
+                        row = image.getData();
+                        k = image.getRowOffset(j);
+                    }
                 }
 
-            } else {
-
-                // initialize raster pixels
-                if (array1D != null) {
-                    for (int i = jobIndex; i < width; i += jobCount) {
-
-                        dataBuffer.setElem(i, getColor(iMaxColor,
-                                getScaledValue(doLog10, scaledMin, scalingFactor, array1D[i])));
-
-                        // fast interrupt:
-                        if (currentThread.isInterrupted()) {
-                            logger.debug("ComputeImagePart: cancelled (vis)");
-                            return;
-                        }
-                    } // pixel by pixel
-                } else if (array2D != null) {
-                    float[] row;
-                    for (int i, offset, j = jobIndex, lastRow = height - 1; j < height; j += jobCount) {
-                        // inverse vertical axis (0 at bottom, height at top):
-                        offset = width * (lastRow - j);
-                        row = array2D[j];
-
-                        for (i = 0; i < width; i++) {
-
-                            dataBuffer.setElem(offset + i, getColor(iMaxColor,
-                                    getScaledValue(doLog10, scaledMin, scalingFactor, row[i])));
-                        }
+                if (equalization != null) {
+                    if (USE_RGB_INTERPOLATION) {
+                        colorizeRow(row, k, width, equalization, lut, (int[]) rowBuffer, 0);
+                    } else {
+                        colorizeRow(row, k, width, equalization, iMaxColor, (byte[]) rowBuffer, 0);
+                    }
+                } else if (USE_RGB_INTERPOLATION) {
+                    colorizeRow(row, k, width, lut, scaledMin, scalingFactor, doLog10, (int[]) rowBuffer, 0);
+                } else {
+                    colorizeRow(row, k, width, iMaxColor, scaledMin, scalingFactor, doLog10, false, (byte[]) rowBuffer, 0);
+                }
+                // bulk copy (one row):
+                raster.setDataElements(0, y, width, 1, rowBuffer);
 
-                        // fast interrupt:
-                        if (currentThread.isInterrupted()) {
-                            logger.debug("ComputeImagePart: cancelled (vis)");
-                            return;
-                        }
-                    } // line by line
+                // fast interrupt:
+                if (token.isCancelled()) {
+                    logger.debug("ComputeImagePart: cancelled (vis)");
+                    return;
                 }
-            }
+            } // line by line
 
             // Compute done.
             if (logger.isDebugEnabled()) {
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
+import fr.jmmc.jmal.image.job.ImageMinMaxJob;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.ModelUVMapService;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.ParallelThresholds.Stage;
+import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the single thread versus parallel jobs crossover of each processing stage (see ParallelThresholds)
+ * on this machine: each stage is timed on square images of increasing sizes with its threshold forced
+ * to serial then to parallel; the threshold becomes the geometric mean of the work amounts surrounding
+ * the first size where parallel jobs are faster.
+ *
+ * Run once (main) to write the profile file given by -Djmal.thresholds.profile, or call calibrate() on demand.
+ *
+ * @author bourgesl
+ */
+public final class ParallelThresholdCalibrator {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ParallelThresholdCalibrator.class.getName());
+    /** default square sizes */
+    private static final int[] DEFAULT_SIZES = new int[]{32, 64, 128, 256, 512, 1024};
+    /** minimal relative gain of parallel jobs */
+    private static final double MIN_GAIN = 0.10;
+    /** number of warmup runs */
+    private static final int WARMUP = 3;
+    /** number of measured runs (best time) */
+    private static final int RUNS = 5;
+    /** serial (never reached) threshold */
+    private static final int SERIAL = Integer.MAX_VALUE;
+
+    /**
+     * Forbidden constructor
+     */
+    private ParallelThresholdCalibrator() {
+        super();
+    }
+
+    /**
+     * Calibrate all stages, apply and save the measured thresholds into the given profile file
+     * @param args optional profile file path (default: jmal.thresholds.profile system property)
+     * @throws IOException if an I/O exception occurred
+     */
+    public static void main(final String[] args) throws IOException {
+        final File profile = (args.length != 0) ? new File(args[0]) : ParallelThresholds.getProfileFile();
+        if (profile == null) {
+            logger.error("Usage: ParallelThresholdCalibrator <profile file> or -Djmal.thresholds.profile=<profile file>");
+            return;
+        }
+        calibrate(profile);
+    }
+
+    /**
+     * Calibrate all stages, apply and save the measured thresholds into the given profile file
+     * @param profile profile file
+     * @return applied thresholds keyed by stage
+     * @throws IOException if an I/O exception occurred
+     */
+    public static Map<Stage, Integer> calibrate(final File profile) throws IOException {
+        final Map<Stage, Integer> values = calibrate();
+        ParallelThresholds.save(profile);
+        return values;
+    }
+
+    /**
+     * Calibrate all stages and apply the measured thresholds
+     * @return applied thresholds keyed by stage
+     */
+    public static Map<Stage, Integer> calibrate() {
+        final Map<Stage, Integer> values = new EnumMap<Stage, Integer>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            values.put(stage, Integer.valueOf(calibrate(stage, DEFAULT_SIZES)));
+        }
+        ParallelThresholds.setThresholds(values);
+
+        // FFT plans decide to use threads when they are created:
+        FFTPlanPool.getInstance().clear();
+
+        logger.info("calibrate: {}", values);
+        return values;
+    }
+
+    /**
+     * Measure the threshold of the given stage (not applied)
+     * @param stage processing stage
+     * @param sizes increasing square sizes (even numbers)
+     * @return measured threshold (or the current one if only one parallel job is available)
+     */
+    static int calibrate(final Stage stage, final int[] sizes) {
+        final int current = ParallelThresholds.getThreshold(stage);
+
+        if (ParallelJobExecutor.getInstance().getMaxParallelJob() <= 1) {
+            logger.info("calibrate[{}]: single cpu; keep threshold = {}", stage, current);
+            return current;
+        }
+
+        final Workload workload = createWorkload(stage);
+
+        long previousWork = 0L;
+        long work = 0L;
+        try {
+            for (int size : sizes) {
+                workload.prepare(size);
+                work = workload.getWork(size);
+
+                final long serial = measure(stage, workload, SERIAL);
+                final long parallel = measure(stage, workload, 0);
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("calibrate[{}]: size = {} - serial = {} ms - parallel = {} ms", stage, size,
+                            1e-6d * serial, 1e-6d * parallel);
+                }
+
+                if (parallel < (1.0 - MIN_GAIN) * serial) {
+                    final long threshold = (previousWork == 0L) ? work : (long) Math.sqrt((double) previousWork * work);
+                    logger.info("calibrate[{}]: crossover at size = {} => threshold = {}", stage, size, threshold);
+                    return (int) Math.min(threshold, Integer.MAX_VALUE);
+                }
+                previousWork = work;
+            }
+        } finally {
+            workload.release();
+            ParallelThresholds.setThreshold(stage, current);
+        }
+        // parallel jobs never faster: use 4 times the largest work:
+        final long threshold = Math.min(4L * work, Integer.MAX_VALUE);
+        logger.info("calibrate[{}]: no crossover => threshold = {}", stage, threshold);
+        return (int) threshold;
+    }
+
+    /**
+     * Return the best duration of the given workload using the given threshold
+     * @param stage processing stage
+     * @param workload workload
+     * @param threshold threshold to use
+     * @return best duration in nanoseconds
+     */
+    private static long measure(final Stage stage, final Workload workload, final int threshold) {
+        ParallelThresholds.setThreshold(stage, threshold);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            workload.init();
+            final long start = System.nanoTime();
+            workload.run();
+            final long duration = System.nanoTime() - start;
+            if (i >= WARMUP && duration < best) {
+                best = duration;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the workload matching the given stage
+     * @param stage processing stage
+     * @return workload
+     */
+    private static Workload createWorkload(final Stage stage) {
+        switch (stage) {
+            case MODEL:
+                return new ModelWorkload();
+            case IMAGE:
+                return new Workload() {
+                    @Override
+                    void run() {
+                        ImageUtils.recycleImage(ImageUtils.createImage(size, size, data, 0f, 1f,
+                                ColorModels.getDefaultColorModel(), ColorScale.LINEAR, CancellationToken.create()));
+                    }
+                };
+            case IMAGE_JOB:
+                return new Workload() {
+                    @Override
+                    void run() {
+                        new ImageMinMaxJob(data, size, size).forkAndJoin(CancellationToken.create());
+                    }
+                };
+            case CONVOLUTION:
+                return new Workload() {
+                    private final ConvolutionKernel kernel = ConvolutionKernel.gaussian(1.0, 1.0);
+
+                    @Override
+                    void run() {
+                        FloatArrayCache.recycleArray(Convolution.convolveDirect(data, size, size, kernel, CancellationToken.create()));
+                    }
+                };
+            case FFT_2D:
+                return new Workload() {
+                    private FloatFFT_2D fft2d = null;
+                    private float[][] output = null;
+
+                    @Override
+                    void init() {
+                        // plans decide to use threads when they are created:
+                        fft2d = new FloatFFT_2D(size, size, true);
+                        if (output == null || output.length != size) {
+                            output = new float[size][size + 2];
+                        }
+                    }
+
+                    @Override
+                    void run() {
+                        fft2d.realForwardSubset(size, size, data, output);
+                    }
+                };
+            default:
+                throw new IllegalStateException("Unsupported stage: " + stage);
+        }
+    }
+
+    /**
+     * Timed task on a square image of the given size
+     */
+    private static class Workload {
+
+        /** image size */
+        int size = 0;
+        /** random image [size][size] */
+        float[][] data = null;
+
+        /**
+         * Prepare the data for the given size (not timed)
+         * @param size image size
+         */
+        void prepare(final int size) {
+            this.size = size;
+            this.data = new float[size][size];
+            final Random random = new Random(size);
+            for (float[] row : data) {
+                for (int i = 0; i < size; i++) {
+                    row[i] = random.nextFloat();
+                }
+            }
+        }
+
+        /**
+         * @param size image size
+         * @return amount of work in stage units
+         */
+        long getWork(final int size) {
+            return (long) size * size;
+        }
+
+        /**
+         * Prepare one run (not timed)
+         */
+        void init() {
+            // no-op
+        }
+
+        /**
+         * Timed run
+         */
+        void run() {
+            // no-op
+        }
+
+        /**
+         * Release resources
+         */
+        void release() {
+            data = null;
+        }
+    }
+
+    /**
+     * ModelUVMapService.computeUVMap() on a single disk model
+     */
+    private static final class ModelWorkload extends Workload {
+
+        /** models */
+        private final List<Model> models;
+        /** uv rectangle */
+        private final Rectangle2D.Double uvRect = new Rectangle2D.Double(-1e7, -1e7, 2e7, 2e7);
+
+        ModelWorkload() {
+            final Model model = ModelManager.getInstance().createModel(ModelDefinition.MODEL_DISK);
+            ModelManager.setParameterValue(model, ModelDefinition.PARAM_DIAMETER, 2.0);
+            ModelManager.setParameterValue(model, ModelDefinition.PARAM_X, 1.0);
+            this.models = Arrays.asList(model);
+        }
+
+        @Override
+        void prepare(final int size) {
+            this.size = size;
+        }
+
+        @Override
+        long getWork(final int size) {
+            return (long) size * size * models.size();
+        }
+
+        @Override
+        void run() {
+            final BufferedImage image = ModelUVMapService.computeUVMap(models, uvRect, ImageMode.AMP, size,
+                    ColorModels.getDefaultColorModel(), ColorScale.LINEAR).getUvMap();
+            ImageUtils.recycleImage(image);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.io;
+
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.UVMapData;
+import fr.jmmc.jmal.model.VisConverter;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming FITS writer of float data (single primary HDU, BITPIX = -32) written row by row
+ * with constant extra memory: rows are written in order (row 0 = first FITS row, at the bottom of images).
+ *
+ * Raw uv maps are written either as values (amplitude, phase, square amplitude) or as complex
+ * visibilities (NAXIS1 = 2 for real and imaginary parts) with linear uv coordinates (CTYPE = 'UU' / 'VV').
+ *
+ * @author bourgesl
+ */
+public final class FitsWriter {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(FitsWriter.class.getName());
+    /** FITS block size */
+    public final static int BLOCK_SIZE = 2880;
+    /** FITS card size */
+    private final static int CARD_SIZE = 80;
+
+    /**
+     * Forbidden constructor
+     */
+    private FitsWriter() {
+        super();
+    }
+
+    /**
+     * Write the raw uv map of the given data into the given file
+     *
+     * @param file output file
+     * @param uvMapData uv map data (complex visibilities)
+     * @param mode image mode to convert complex visibilities or null to write them (NAXIS1 = 2)
+     * @throws IOException if an I/O exception occurred
+     */
+    public static void write(final File file, final UVMapData uvMapData, final ImageMode mode) throws IOException {
+        final int size = uvMapData.getImageSize();
+        final float[][] visData = uvMapData.getData();
+
+        final List<String> cards = new ArrayList<String>();
+        final FloatRows rows;
+        final int[] axes;
+        final int offset;
+
+        if (mode == null) {
+            rows = FloatRows.wrap(visData, 2 * size, size);
+            axes = new int[]{2, size, size};
+            cards.add(card("CTYPE1", "COMPLEX", "real, imaginary"));
+            offset = 1;
+        } else {
+            rows = FloatRows.convert(visData, size, size, VisConverter.create(mode, uvMapData.getNoiseService()));
+            axes = new int[]{size, size};
+            offset = 0;
+            cards.add(card("IMGMODE", mode.name(), "image mode"));
+            if (mode == ImageMode.PHASE) {
+                cards.add(card("BUNIT", "deg", null));
+            }
+        }
+
+        // linear uv coordinates (samples at min + i x step, see ModelUVMapService):
+        final Rectangle2D.Double uvRect = uvMapData.getUvMapRect();
+        final String u = Integer.toString(offset + 1);
+        final String v = Integer.toString(offset + 2);
+        cards.add(card("CTYPE" + u, "UU", "u spatial frequency (rad-1)"));
+        cards.add(card("CRPIX" + u, 1.0, null));
+        cards.add(card("CRVAL" + u, uvRect.getX(), null));
+        cards.add(card("CDELT" + u, uvRect.getWidth() / size, null));
+        cards.add(card("CTYPE" + v, "VV", "v spatial frequency (rad-1)"));
+        cards.add(card("CRPIX" + v, 1.0, null));
+        cards.add(card("CRVAL" + v, uvRect.getY(), null));
+        cards.add(card("CDELT" + v, uvRect.getHeight() / size, null));
+
+        if (uvMapData.getWaveLength() != null) {
+            cards.add(card("WAVELENG", uvMapData.getWaveLength().doubleValue(), "wavelength (m)"));
+        }
+
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        try {
+            write(out, rows, axes, cards);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the given rows as a FITS image into the given stream (not closed)
+     *
+     * @param out output stream
+     * @param rows rows (getWidth() = product of the first axes)
+     * @param axes axis lengths (NAXIS1 first); the last one is the number of rows
+     * @param cards additional header cards (see card()) or null
+     * @throws IOException if an I/O exception occurred
+     * @throws IllegalArgumentException if axes do not match the rows
+     */
+    public static void write(final OutputStream out, final FloatRows rows, final int[] axes,
+                             final List<String> cards) throws IOException {
+        long rowSize = 1L;
+        for (int i = 0; i < axes.length - 1; i++) {
+            rowSize *= axes[i];
+        }
+        if (rowSize != rows.getWidth() || axes[axes.length - 1] != rows.getHeight()) {
+            throw new IllegalArgumentException("Invalid axes " + Arrays.toString(axes)
+                    + " for rows [" + rows.getWidth() + " x " + rows.getHeight() + "]");
+        }
+        final long start = System.nanoTime();
+
+        // header:
+        final StringBuilder header = new StringBuilder(BLOCK_SIZE);
+        header.append(card("SIMPLE", Boolean.TRUE, "conforms to FITS standard"));
+        header.append(card("BITPIX", -32, "IEEE single precision floating point"));
+        header.append(card("NAXIS", axes.length, null));
+        for (int i = 0; i < axes.length; i++) {
+            header.append(card("NAXIS" + (i + 1), axes[i], null));
+        }
+        if (cards != null) {
+            for (String card : cards) {
+                header.append(card);
+            }
+        }
+        header.append(pad("END", CARD_SIZE));
+
+        final int headerSize = padding(header.length()) + header.length();
+        out.write(pad(header.toString(), headerSize).getBytes("US-ASCII"));
+
+        // data (big endian):
+        final int width = rows.getWidth();
+        final int height = rows.getHeight();
+        final float[] values = new float[width];
+        final ByteBuffer buffer = ByteBuffer.allocate(4 * width).order(ByteOrder.BIG_ENDIAN);
+
+        for (int j = 0; j < height; j++) {
+            rows.readRow(j, values);
+            buffer.clear();
+            buffer.asFloatBuffer().put(values, 0, width);
+            out.write(buffer.array(), 0, 4 * width);
+        }
+
+        final int dataPadding = padding(4L * width * height);
+        if (dataPadding != 0) {
+            out.write(new byte[dataPadding]);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("write: {} in {} ms.", Arrays.toString(axes), 1e-6d * (System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Return the header card for the given keyword and value (String, Boolean or Number)
+     * @param keyword keyword (8 chars max)
+     * @param value value
+     * @param comment optional comment or null
+     * @return card (80 chars)
+     */
+    public static String card(final String keyword, final Object value, final String comment) {
+        final StringBuilder sb = new StringBuilder(CARD_SIZE);
+        sb.append(pad(keyword.toUpperCase(Locale.US), 8)).append("= ");
+
+        final String strValue;
+        if (value instanceof String) {
+            // quoted string (at least 8 chars), left justified:
+            strValue = pad('\'' + pad(((String) value).replace("'", "''"), 8) + '\'', 20);
+        } else if (value instanceof Boolean) {
+            strValue = leftPad(((Boolean) value).booleanValue() ? "T" : "F", 20);
+        } else if (value instanceof Double || value instanceof Float) {
+            strValue = leftPad(Double.toString(((Number) value).doubleValue()).replace('e', 'E'), 20);
+        } else {
+            strValue = leftPad(String.valueOf(value), 20);
+        }
+        sb.append(strValue);
+
+        if (comment != null) {
+            sb.append(" / ").append(comment);
+        }
+        if (sb.length() > CARD_SIZE) {
+            sb.setLength(CARD_SIZE);
+        }
+        return pad(sb.toString(), CARD_SIZE);
+    }
+
+    /**
+     * Return the number of padding bytes to complete the last block
+     * @param length length in bytes
+     * @return number of padding bytes
+     */
+    private static int padding(final long length) {
+        final int rem = (int) (length % BLOCK_SIZE);
+        return (rem == 0) ? 0 : BLOCK_SIZE - rem;
+    }
+
+    /**
+     * Pad the given string with spaces (right)
+     * @param value string
+     * @param length length
+     * @return padded string
+     */
+    private static String pad(final String value, final int length) {
+        final StringBuilder sb = new StringBuilder(Math.max(length, value.length())).append(value);
+        while (sb.length() < length) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Pad the given string with spaces (left)
+     * @param value string
+     * @param length length
+     * @return padded string
+     */
+    private static String leftPad(final String value, final int length) {
+        final StringBuilder sb = new StringBuilder(Math.max(length, value.length()));
+        for (int i = value.length(); i < length; i++) {
+            sb.append(' ');
+        }
+        return sb.append(value).toString();
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.io;
+
+import fr.jmmc.jmal.image.FloatImage;
+import fr.jmmc.jmal.model.VisConverter;
+import fr.jmmc.jmal.util.ThreadLocalRandom;
+
+/**
+ * Source of float rows read one at a time by streaming writers (PngWriter, FitsWriter):
+ * row 0 is the first data row i.e. the bottom of images (see ImageUtils.createImage).
+ *
+ * readRow() may be called concurrently by several threads (each with its own buffer).
+ *
+ * @author bourgesl
+ */
+public abstract class FloatRows {
+
+    /* members */
+    /** number of values per row */
+    protected final int _width;
+    /** number of rows */
+    protected final int _height;
+
+    /**
+     * Protected constructor
+     * @param width number of values per row
+     * @param height number of rows
+     */
+    protected FloatRows(final int width, final int height) {
+        this._width = width;
+        this._height = height;
+    }
+
+    /**
+     * Copy the values of the given row into the given buffer
+     * @param row row index (0 = first data row)
+     * @param buffer buffer of at least getWidth() values
+     */
+    public abstract void readRow(final int row, final float[] buffer);
+
+    /**
+     * @return number of values per row
+     */
+    public final int getWidth() {
+        return _width;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public final int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Return the rows of the given data array
+     * @param array data array (2D)
+     * @param width number of values per row
+     * @param height number of rows
+     * @return rows
+     */
+    public static FloatRows wrap(final float[][] array, final int width, final int height) {
+        return new FloatRows(width, height) {
+            @Override
+            public void readRow(final int row, final float[] buffer) {
+                System.arraycopy(array[row], 0, buffer, 0, _width);
+            }
+        };
+    }
+
+    /**
+     * Return the rows of the given flat image
+     * @param image flat image
+     * @return rows
+     */
+    public static FloatRows wrap(final FloatImage image) {
+        return new FloatRows(image.getWidth(), image.getHeight()) {
+            @Override
+            public void readRow(final int row, final float[] buffer) {
+                System.arraycopy(image.getData(), image.getRowOffset(row), buffer, 0, _width);
+            }
+        };
+    }
+
+    /**
+     * Return the rows of values (amplitude, phase...) converted on the fly from the given complex visibility data
+     * @param visData complex visibility data as float[rows][cols] where cols = 2 x width (re, im)
+     * @param width number of complex values per row
+     * @param height number of rows
+     * @param converter complex to value converter (see VisConverter.create())
+     * @return rows
+     */
+    public static FloatRows convert(final float[][] visData, final int width, final int height, final VisConverter converter) {
+        return new FloatRows(width, height) {
+            @Override
+            public void readRow(final int row, final float[] buffer) {
+                final float[] vRow = visData[row];
+                final ThreadLocalRandom threadRandom = ThreadLocalRandom.current();
+
+                for (int i = 0, k = 0; i < _width; i++, k += 2) {
+                    buffer[i] = converter.convert(vRow[k], vRow[k + 1], threadRandom);
+                }
+            }
+        };
+    }
+}
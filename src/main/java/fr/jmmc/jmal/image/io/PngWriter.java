@@ -0,0 +1,544 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.io;
+
+import fr.jmmc.jmal.image.ColorLUT;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.image.ImageUtils;
+import fr.jmmc.jmal.model.UVMapData;
+import fr.jmmc.jmal.model.VisConverter;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
+import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming PNG writer (8 bits RGB) encoding float rows directly (no BufferedImage):
+ * rows are colorized as ImageUtils.createImage() does (linear or logarithmic color scale, RGB interpolation),
+ * filtered (Sub) and deflated with constant extra memory.
+ *
+ * In parallel mode, bands of rows are colorized and deflated concurrently (one Deflater per band flushed
+ * on a byte boundary with SYNC_FLUSH) then written in order: the zlib stream is the concatenation of the band
+ * streams and its Adler-32 checksum is combined from the band checksums. Memory is bounded by the bands
+ * in flight (one per parallel job).
+ *
+ * @author bourgesl
+ */
+public final class PngWriter {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(PngWriter.class.getName());
+    /** PNG signature */
+    private final static byte[] SIGNATURE = new byte[]{(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    /** opaque alpha */
+    private final static int ALPHA_MASK = 0xff << 24;
+    /** IDAT chunk size (serial mode) */
+    private final static int CHUNK_SIZE = 64 * 1024;
+    /** approximate uncompressed size of a band (parallel mode) */
+    private final static int BAND_SIZE = 256 * 1024;
+    /** Adler-32 modulus */
+    private final static int ADLER_BASE = 65521;
+    /** Jmcs Parallel Job executor */
+    private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
+    /** metrics */
+    private final static Timer TIMER_WRITE = Metrics.timer("png.write");
+
+    /**
+     * Forbidden constructor
+     */
+    private PngWriter() {
+        super();
+    }
+
+    /**
+     * Write the uv map of the given data (same colors as its image) into the given file:
+     * values are converted on the fly from the complex visibility data
+     *
+     * @param file output file
+     * @param uvMapData uv map data (not rotated)
+     * @param parallel true to deflate bands in parallel
+     * @throws IOException if an I/O exception occurred
+     * @throws IllegalArgumentException if the uv map is rotated or uses an histogram color scale
+     */
+    public static void write(final File file, final UVMapData uvMapData, final boolean parallel) throws IOException {
+        final int size = uvMapData.getImageSize();
+        if (uvMapData.getUvMapSize() != size) {
+            throw new IllegalArgumentException("Rotated uv maps are not supported !");
+        }
+        final FloatRows rows = FloatRows.convert(uvMapData.getData(), size, size,
+                VisConverter.create(uvMapData.getImageMode(), uvMapData.getNoiseService()));
+
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), CHUNK_SIZE);
+        try {
+            write(out, rows, uvMapData.getMin().floatValue(), uvMapData.getMax().floatValue(),
+                    uvMapData.getColorModel(), uvMapData.getColorScale(), uvMapData.isUAxisInverted(), parallel);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the given rows as a PNG image into the given stream (not closed)
+     *
+     * @param out output stream
+     * @param rows rows (row 0 at the bottom of the image)
+     * @param min lower data value (lower threshold)
+     * @param max upper data value (upper threshold)
+     * @param colorModel color model
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
+     * @param flipX true to flip the image horizontally
+     * @param parallel true to deflate bands in parallel
+     * @throws IOException if an I/O exception occurred
+     * @throws IllegalArgumentException if the color scale depends on the histogram of values
+     * @throws InterruptedJobException if the current thread is interrupted (cancelled)
+     */
+    public static void write(final OutputStream out, final FloatRows rows, final float min, final float max,
+                             final IndexColorModel colorModel, final ColorScale colorScale,
+                             final boolean flipX, final boolean parallel) throws IOException {
+
+        final int nJobs = (parallel && ParallelThresholds.isParallel(ParallelThresholds.Stage.IMAGE, (long) rows.getWidth() * rows.getHeight()))
+                ? jobExecutor.getMaxParallelJob() : 1;
+
+        write(out, rows, min, max, colorModel, colorScale, flipX, nJobs);
+    }
+
+    /**
+     * Write the given rows as a PNG image (8 bits RGB) using the given number of deflate jobs
+     *
+     * @param out output stream
+     * @param rows rows (row 0 = bottom of the image)
+     * @param min lower data value (lower threshold)
+     * @param max upper data value (upper threshold)
+     * @param colorModel color model
+     * @param colorScale color scaling method (LINEAR or LOGARITHMIC)
+     * @param flipX true to flip the image horizontally
+     * @param nJobs number of parallel deflate jobs (1 means a single zlib stream)
+     * @throws IOException if an I/O exception occurred
+     */
+    static void write(final OutputStream out, final FloatRows rows, final float min, final float max,
+                      final IndexColorModel colorModel, final ColorScale colorScale,
+                      final boolean flipX, final int nJobs) throws IOException {
+
+        if (ImageUtils.isHistogramScale(colorScale)) {
+            throw new IllegalArgumentException("Unsupported color scale (histogram): " + colorScale);
+        }
+        final long start = System.nanoTime();
+
+        final float[] scaledMinMax = ImageUtils.scaleMinMax(min, max, colorScale);
+        final float scalingFactor = ImageUtils.computeScalingFactor(scaledMinMax[0], scaledMinMax[1], colorModel.getMapSize());
+
+        final RowEncoder encoder = new RowEncoder(rows, ColorLUT.getInstance(colorModel, ALPHA_MASK), scaledMinMax[0],
+                scalingFactor, colorScale == ColorScale.LOGARITHMIC, flipX);
+
+        final int width = rows.getWidth();
+        final int height = rows.getHeight();
+
+        out.write(SIGNATURE);
+
+        final byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bit depth
+        header[9] = 2;  // color type = RGB
+        // compression, filter, interlace = 0
+        writeChunk(out, "IHDR", header, 0, header.length);
+
+        final CancellationToken token = CancellationToken.forCurrentThread();
+
+        if (nJobs > 1) {
+            writeParallel(out, encoder, nJobs, token);
+        } else {
+            writeSerial(out, encoder, token);
+        }
+
+        writeChunk(out, "IEND", header, 0, 0);
+
+        TIMER_WRITE.record(System.nanoTime() - start);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("write: {} x {} ({} jobs) in {} ms.", width, height, nJobs, 1e-6d * (System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Deflate all rows as a single zlib stream (current thread)
+     * @param out output stream
+     * @param encoder row encoder
+     * @param token cancellation token
+     * @throws IOException if an I/O exception occurred
+     */
+    private static void writeSerial(final OutputStream out, final RowEncoder encoder, final CancellationToken token) throws IOException {
+        final int height = encoder.getHeight();
+        final float[] values = encoder.createValues();
+        final int[] pixels = encoder.createPixels();
+        final byte[] line = new byte[encoder.getLineSize()];
+        final byte[] chunk = new byte[CHUNK_SIZE];
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            int pos = 0;
+            for (int y = 0; y < height; y++) {
+                if ((y & 0x3F) == 0) {
+                    token.checkCancelled("PngWriter.write");
+                }
+                encoder.encode(y, values, pixels, line, 0);
+                deflater.setInput(line);
+
+                while (!deflater.needsInput()) {
+                    pos += deflater.deflate(chunk, pos, CHUNK_SIZE - pos);
+                    if (pos == CHUNK_SIZE) {
+                        writeChunk(out, "IDAT", chunk, 0, pos);
+                        pos = 0;
+                    }
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                pos += deflater.deflate(chunk, pos, CHUNK_SIZE - pos);
+                if (pos == CHUNK_SIZE) {
+                    writeChunk(out, "IDAT", chunk, 0, pos);
+                    pos = 0;
+                }
+            }
+            if (pos != 0) {
+                writeChunk(out, "IDAT", chunk, 0, pos);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflate bands of rows in parallel (waves of nJobs bands) and write them in order
+     * @param out output stream
+     * @param encoder row encoder
+     * @param nJobs number of parallel jobs
+     * @param token cancellation token
+     * @throws IOException if an I/O exception occurred
+     */
+    private static void writeParallel(final OutputStream out, final RowEncoder encoder, final int nJobs,
+                                      final CancellationToken token) throws IOException {
+        final int height = encoder.getHeight();
+        final int lineSize = encoder.getLineSize();
+        final int bandRows = Math.max(8, BAND_SIZE / lineSize);
+        final int nBands = (height + bandRows - 1) / bandRows;
+
+        final DeflateBand[] bands = new DeflateBand[nJobs];
+        for (int i = 0; i < nJobs; i++) {
+            bands[i] = new DeflateBand(encoder, bandRows, nBands, token);
+        }
+
+        // zlib header (deflate, 32K window, default level):
+        final byte[] zlibHeader = new byte[]{0x78, (byte) 0x9C};
+        writeChunk(out, "IDAT", zlibHeader, 0, zlibHeader.length);
+
+        long adler = 1L;
+        try {
+            for (int band = 0; band < nBands; band += nJobs) {
+                final int nWave = Math.min(nJobs, nBands - band);
+                final DeflateBand[] jobs = (nWave == nJobs) ? bands : Arrays.copyOf(bands, nWave);
+
+                for (int i = 0; i < nWave; i++) {
+                    jobs[i].setBand(band + i);
+                }
+
+                // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if cancelled):
+                jobExecutor.forkAndJoin("PngWriter.write", jobs);
+
+                token.checkCancelled("PngWriter.write");
+
+                for (int i = 0; i < nWave; i++) {
+                    final DeflateBand job = jobs[i];
+                    adler = combineAdler32(adler, job.getAdler(), job.getLength());
+                    writeChunk(out, "IDAT", job.getOutput(), 0, job.getOutputSize());
+                }
+            }
+        } finally {
+            for (DeflateBand job : bands) {
+                job.end();
+            }
+        }
+
+        // zlib trailer (Adler-32 of uncompressed data):
+        final byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) adler);
+        writeChunk(out, "IDAT", trailer, 0, trailer.length);
+    }
+
+    /**
+     * Return the Adler-32 checksum of the concatenation of two byte sequences (see zlib adler32_combine)
+     * @param adler1 checksum of the first sequence
+     * @param adler2 checksum of the second sequence
+     * @param len2 length of the second sequence
+     * @return combined checksum
+     */
+    static long combineAdler32(final long adler1, final long adler2, final long len2) {
+        final long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFFL;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFFL) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFFL) + ((adler2 >> 16) & 0xFFFFL) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Write a PNG chunk (length, type, data, CRC)
+     * @param out output stream
+     * @param type chunk type
+     * @param data chunk data
+     * @param offset data offset
+     * @param length data length
+     * @throws IOException if an I/O exception occurred
+     */
+    private static void writeChunk(final OutputStream out, final String type, final byte[] data,
+                                   final int offset, final int length) throws IOException {
+        final byte[] buffer = new byte[8];
+        putInt(buffer, 0, length);
+        for (int i = 0; i < 4; i++) {
+            buffer[4 + i] = (byte) type.charAt(i);
+        }
+        out.write(buffer, 0, 8);
+        out.write(data, offset, length);
+
+        final CRC32 crc = new CRC32();
+        crc.update(buffer, 4, 4);
+        crc.update(data, offset, length);
+        putInt(buffer, 0, (int) crc.getValue());
+        out.write(buffer, 0, 4);
+    }
+
+    /**
+     * Store the given integer (big endian)
+     * @param buffer byte buffer
+     * @param offset buffer offset
+     * @param value integer value
+     */
+    private static void putInt(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Converts rows to filtered PNG lines (filter byte + RGB bytes); thread-safe
+     */
+    private static final class RowEncoder {
+
+        /** rows */
+        private final FloatRows _rows;
+        /** color table */
+        private final ColorLUT _lut;
+        /** minimum data value or log10(min) */
+        private final float _scaledMin;
+        /** data to color linear scaling factor */
+        private final float _scalingFactor;
+        /** true to use logarithmic scale */
+        private final boolean _doLog10;
+        /** true to flip the image horizontally */
+        private final boolean _flipX;
+
+        RowEncoder(final FloatRows rows, final ColorLUT lut, final float scaledMin, final float scalingFactor,
+                   final boolean doLog10, final boolean flipX) {
+            this._rows = rows;
+            this._lut = lut;
+            this._scaledMin = scaledMin;
+            this._scalingFactor = scalingFactor;
+            this._doLog10 = doLog10;
+            this._flipX = flipX;
+        }
+
+        int getHeight() {
+            return _rows.getHeight();
+        }
+
+        int getLineSize() {
+            return 1 + 3 * _rows.getWidth();
+        }
+
+        float[] createValues() {
+            return new float[_rows.getWidth()];
+        }
+
+        int[] createPixels() {
+            return new int[_rows.getWidth()];
+        }
+
+        /**
+         * Encode the given image line (top first)
+         * @param y image line index (0 = top)
+         * @param values value buffer (see createValues())
+         * @param pixels pixel buffer (see createPixels())
+         * @param line output buffer
+         * @param offset output offset
+         */
+        void encode(final int y, final float[] values, final int[] pixels, final byte[] line, final int offset) {
+            final int width = _rows.getWidth();
+
+            // row 0 at the bottom:
+            _rows.readRow(_rows.getHeight() - 1 - y, values);
+
+            ImageUtils.colorizeRow(values, 0, width, _lut, _scaledMin, _scalingFactor, _doLog10, pixels, 0);
+
+            // filter Sub: difference with the previous pixel (byte arithmetic)
+            line[offset] = 1;
+            int pr = 0, pg = 0, pb = 0;
+            for (int i = 0, k = offset + 1; i < width; i++, k += 3) {
+                final int rgb = pixels[_flipX ? (width - 1 - i) : i];
+                final int r = (rgb >> 16) & 0xFF;
+                final int g = (rgb >> 8) & 0xFF;
+                final int b = rgb & 0xFF;
+                line[k] = (byte) (r - pr);
+                line[k + 1] = (byte) (g - pg);
+                line[k + 2] = (byte) (b - pb);
+                pr = r;
+                pg = g;
+                pb = b;
+            }
+        }
+    }
+
+    /**
+     * Job encoding and deflating one band of lines (raw deflate stream ending on a byte boundary)
+     */
+    private static final class DeflateBand implements Runnable {
+
+        /** row encoder */
+        private final RowEncoder _encoder;
+        /** number of lines per band */
+        private final int _bandRows;
+        /** number of bands */
+        private final int _nBands;
+        /** cancellation token */
+        private final CancellationToken _token;
+        /** deflater (raw, reused) */
+        private final Deflater _deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        /** value buffer */
+        private final float[] _values;
+        /** pixel buffer */
+        private final int[] _pixels;
+        /** uncompressed lines */
+        private final byte[] _lines;
+        /** Adler-32 of uncompressed lines */
+        private final Adler32 _adler = new Adler32();
+        /** band index */
+        private int _band;
+        /** uncompressed length */
+        private int _length;
+        /** compressed output (grows) */
+        private byte[] _output;
+        /** compressed size */
+        private int _outputSize;
+
+        DeflateBand(final RowEncoder encoder, final int bandRows, final int nBands, final CancellationToken token) {
+            this._encoder = encoder;
+            this._bandRows = bandRows;
+            this._nBands = nBands;
+            this._token = token;
+            this._values = encoder.createValues();
+            this._pixels = encoder.createPixels();
+            this._lines = new byte[bandRows * encoder.getLineSize()];
+            this._output = new byte[_lines.length / 4 + 64];
+        }
+
+        void setBand(final int band) {
+            this._band = band;
+        }
+
+        @Override
+        public void run() {
+            if (_token.isCancelled()) {
+                return;
+            }
+            final int lineSize = _encoder.getLineSize();
+            final int y0 = _band * _bandRows;
+            final int y1 = Math.min(y0 + _bandRows, _encoder.getHeight());
+
+            int length = 0;
+            for (int y = y0; y < y1; y++, length += lineSize) {
+                _encoder.encode(y, _values, _pixels, _lines, length);
+            }
+            _length = length;
+
+            _adler.reset();
+            _adler.update(_lines, 0, length);
+
+            final Deflater deflater = _deflater;
+            deflater.reset();
+            deflater.setInput(_lines, 0, length);
+
+            _outputSize = 0;
+
+            if (_band == _nBands - 1) {
+                // last band (final block):
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+            } else {
+                // flush on a byte boundary (stream continued by the next band):
+                do {
+                    deflate(Deflater.SYNC_FLUSH);
+                } while (_outputSize == _output.length);
+            }
+        }
+
+        /**
+         * Deflate into the output buffer (grows when full)
+         * @param flush flush mode
+         */
+        private void deflate(final int flush) {
+            if (_outputSize == _output.length) {
+                _output = Arrays.copyOf(_output, _output.length << 1);
+            }
+            _outputSize += _deflater.deflate(_output, _outputSize, _output.length - _outputSize, flush);
+        }
+
+        long getAdler() {
+            return _adler.getValue();
+        }
+
+        int getLength() {
+            return _length;
+        }
+
+        byte[] getOutput() {
+            return _output;
+        }
+
+        int getOutputSize() {
+            return _outputSize;
+        }
+
+        void end() {
+            _deflater.end();
+        }
+    }
+}
@@ -3,6 +3,11 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image.job;
 
+import fr.jmmc.jmal.image.FloatImage;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
 import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
 import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
 import java.util.List;
@@ -21,17 +26,26 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
 
     /** Class logger */
     protected static final Logger logger = LoggerFactory.getLogger(AbstractImageJob.class.getName());
-    /** default threshold = 65536 */
+    /** default threshold = 65536 (see ParallelThresholds.Stage.IMAGE_JOB) */
     public final static int DEFAULT_THRESHOLD = 256 * 256;
     /** Jmcs Parallel Job executor */
     private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
+    /** job timers per job class ("job." + simple class name) resolved once */
+    private static final ClassValue<Timer> TIMERS = new ClassValue<Timer>() {
+        @Override
+        protected Timer computeValue(final Class<?> type) {
+            return Metrics.timer("job." + type.getSimpleName());
+        }
+    };
 
     /* members */
     /** job name */
     protected final String _jobName;
     /* input */
-    /** data array (2D) [rows][cols] */
+    /** data array (2D) [rows][cols] or null if using a flat image */
     protected final float[][] _array2D;
+    /** flat image or null if using a data array (2D) */
+    protected final FloatImage _image;
     /** image width */
     protected final int _width;
     /** image height */
@@ -41,6 +55,8 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
     private final int _jobIndex;
     /** total number of concurrent jobs */
     private final int _jobCount;
+    /** cancellation token (shared by parent and child jobs) */
+    private CancellationToken _token = null;
     /* output */
     /** result object */
     protected final V _result;
@@ -56,6 +72,28 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
     public AbstractImageJob(final String jobName, final float[][] array, final int width, final int height) {
         this._jobName = jobName;
         this._array2D = array;
+        this._image = null;
+        this._width = width;
+        this._height = height;
+        // job boundaries for single thread:
+        this._jobIndex = 0;
+        this._jobCount = 1;
+        // define result object:
+        this._result = initializeResult();
+    }
+
+    /**
+     * Create the image Job on a flat image
+     *
+     * @param jobName job name used when throwing an exception
+     * @param image flat image
+     * @param width processed width (&lt;= image width)
+     * @param height processed height (&lt;= image height)
+     */
+    public AbstractImageJob(final String jobName, final FloatImage image, final int width, final int height) {
+        this._jobName = jobName;
+        this._array2D = null;
+        this._image = image;
         this._width = width;
         this._height = height;
         // job boundaries for single thread:
@@ -65,6 +103,25 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
         this._result = initializeResult();
     }
 
+    /**
+     * Create the image Job processing the same data as the given job (see ImageFusedJob)
+     *
+     * @param jobName job name used when throwing an exception
+     * @param job job giving the data array (2D) or the flat image and the processed width and height
+     */
+    AbstractImageJob(final String jobName, final AbstractImageJob<?> job) {
+        this._jobName = jobName;
+        this._array2D = job._array2D;
+        this._image = job._image;
+        this._width = job._width;
+        this._height = job._height;
+        // job boundaries for single thread:
+        this._jobIndex = 0;
+        this._jobCount = 1;
+        // define result object:
+        this._result = initializeResult();
+    }
+
     /**
      * Create the image Job given a parent job
      *
@@ -75,10 +132,12 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
     protected AbstractImageJob(final AbstractImageJob<V> parentJob, final int jobIndex, final int jobCount) {
         this._jobName = parentJob._jobName;
         this._array2D = parentJob._array2D;
+        this._image = parentJob._image;
         this._width = parentJob._width;
         this._height = parentJob._height;
         this._jobIndex = jobIndex;
         this._jobCount = jobCount;
+        this._token = parentJob._token;
         // define result object:
         this._result = initializeResult();
     }
@@ -88,11 +147,25 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
      * @return result object
      * @throws InterruptedJobException if the current thread is interrupted (cancelled)
      */
-    @SuppressWarnings("unchecked")
     public final V forkAndJoin() throws InterruptedJobException {
+        return forkAndJoin(CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Execute this job (forked in parallel jobs if the image is large enough) and return its merged result
+     *
+     * @param token cancellation token checked by every job at each row
+     * @return result object
+     * @throws InterruptedJobException if the given token is cancelled
+     */
+    @SuppressWarnings("unchecked")
+    public final V forkAndJoin(final CancellationToken token) throws InterruptedJobException {
 
         V result;
 
+        // define the token before creating child jobs:
+        this._token = token;
+
         // Start the computations :
         final long start = System.nanoTime();
 
@@ -121,13 +194,15 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
             result = call();
         }
 
-        // fast interrupt :
-        if (Thread.currentThread().isInterrupted()) {
-            throw new InterruptedJobException(_jobName + ": interrupted");
-        }
+        // fast interrupt (partial results are discarded) :
+        token.checkCancelled(_jobName);
+
+        final long duration = System.nanoTime() - start;
+        // metrics per job class:
+        TIMERS.get(getClass()).record(duration);
 
         if (logger.isDebugEnabled()) {
-            logger.debug("compute : duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+            logger.debug("compute : duration = {} ms.", 1e-6d * duration);
         }
 
         return result;
@@ -146,28 +221,33 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
         // Copy members to local variables:
         /* input */
         final float[][] array2D = _array2D;
-        final int width = _width;
         final int height = _height;
         /* job boundaries */
         final int jobIndex = _jobIndex;
         final int jobCount = _jobCount;
 
-        /** Get the current thread to check if the computation is interrupted */
-        final Thread currentThread = Thread.currentThread();
+        /** Get the token to check if the computation is cancelled */
+        final CancellationToken token = (_token != null) ? _token : CancellationToken.forCurrentThread();
+
+        final FloatImage image = _image;
 
         float[] row;
+        int offset = 0;
 
         // iterate on rows starting at jobIndex and skip jobCount rows at each iteration:
-        for (int i, j = jobIndex; j < height; j += jobCount) {
-            row = array2D[j];
+        for (int j = jobIndex; j < height; j += jobCount) {
+            if (array2D != null) {
+                row = array2D[j];
+            } else {
+                // flat image: same data array with row offset
+                row = image.getData();
+                offset = image.getRowOffset(j);
+            }
 
-            // iterate on cols:
-            for (i = 0; i < width; i++) {
-                processValue(i, j, row[i]);
-            } // column
+            processRow(j, row, offset);
 
             // fast interrupt:
-            if (currentThread.isInterrupted()) {
+            if (token.isCancelled()) {
                 logger.debug("AbstractImageJob: cancelled (vis)");
                 return null;
             }
@@ -180,6 +260,30 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
         return _result;
     }
 
+    /**
+     * Return the value at the given column and row index (data array or flat image)
+     * @param col column index
+     * @param row row index
+     * @return value
+     */
+    protected final float getValue(final int col, final int row) {
+        return (_array2D != null) ? _array2D[row][col] : _image.get(col, row);
+    }
+
+    /**
+     * Set the value at the given column and row index (data array or flat image)
+     * @param col column index
+     * @param row row index
+     * @param value value to set
+     */
+    protected final void setValue(final int col, final int row, final float value) {
+        if (_array2D != null) {
+            _array2D[row][col] = value;
+        } else {
+            _image.set(col, row, value);
+        }
+    }
+
     /**
      * Initialize a new child job for the given job index
      * @param jobIndex job index used to process data interlaced
@@ -210,10 +314,35 @@ public abstract class AbstractImageJob<V> implements Callable<V> {
     protected abstract void processValue(final int col, final int row, final float value);
 
     /**
-     * Return true if the job should be forked in smaller jobs
+     * Process the given row i.e. the processed width values starting at the given offset:
+     * this default implementation calls processValue() for each column; override it to process the row array directly
+     * (values may be updated in place: values[offset + col] is the value at (col, row))
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final int width = _width;
+        for (int i = 0; i < width; i++) {
+            processValue(i, row, values[offset + i]);
+        }
+    }
+
+    /**
+     * Return true if processRow() only reads or updates values of the given row
+     * i.e. this job can run in the same traversal as other jobs (see ImageFusedJob)
+     * @return true by default
+     */
+    protected boolean isRowLocal() {
+        return true;
+    }
+
+    /**
+     * Return true if the job should be forked in smaller jobs (see ParallelThresholds.Stage.IMAGE_JOB)
      * @return true if the job should be forked in smaller jobs 
      */
     public boolean shouldForkJobs() {
-        return _width * _height > DEFAULT_THRESHOLD;
+        return ParallelThresholds.isParallel(ParallelThresholds.Stage.IMAGE_JOB, (long) _width * _height);
     }
 }
@@ -3,6 +3,7 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image.job;
 
+import fr.jmmc.jmal.image.FloatImage;
 import java.util.List;
 
 /**
@@ -41,6 +42,25 @@ public final class ImageFlipJob extends AbstractImageJob<Void> {
         this._lastIdx = (_flipX) ? 2 * _width - 1 : 2 * _height - 1;
     }
 
+    /**
+     * Create the image Job on a flat image
+     *
+     * @param image flat image
+     * @param flipX true to flip x axis; false to flip y axis
+     */
+    public ImageFlipJob(final FloatImage image, final boolean flipX) {
+        // process only half rows or columns:
+        super("ImageFlipJob", image, (flipX) ? image.getWidth() / 2 : image.getWidth(), (!flipX) ? image.getHeight() / 2 : image.getHeight());
+        if (image.getWidth() % 2 != 0) {
+            throw new IllegalStateException("Image width (" + image.getWidth() + ") must be an even number !");
+        }
+        if (image.getHeight() % 2 != 0) {
+            throw new IllegalStateException("Image height (" + image.getHeight() + ") must be an even number !");
+        }
+        this._flipX = flipX;
+        this._lastIdx = (_flipX) ? 2 * _width - 1 : 2 * _height - 1;
+    }
+
     /**
      * Create the image Job given a parent job
      *
@@ -93,14 +113,21 @@ public final class ImageFlipJob extends AbstractImageJob<Void> {
     protected void processValue(final int col, final int row, final float value) {
         if (_flipX) {
             final int lastCol = _lastIdx - col;
-            final float[] aRow = _array2D[row];
-            aRow[col] = aRow[lastCol];
-            aRow[lastCol] = value;
+            setValue(col, row, getValue(lastCol, row));
+            setValue(lastCol, row, value);
         } else {
             final int lastRow = _lastIdx - row;
-            final float[] aLastRow = _array2D[lastRow];
-            _array2D[row][col] = aLastRow[col];
-            aLastRow[col] = value;
+            setValue(col, row, getValue(col, lastRow));
+            setValue(col, lastRow, value);
         }
     }
+
+    /**
+     * Return false as values are swapped with other columns or rows
+     * @return false
+     */
+    @Override
+    protected boolean isRowLocal() {
+        return false;
+    }
 }
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Job running several image jobs on the same data in a single traversal (one memory pass):
+ * each row is given to every job in order so values updated by one job are seen by the next ones
+ * (same results as running the jobs one after the other).
+ *
+ * Results are available from the given jobs once this job is done (partial results are merged by each job).
+ * Only row-local jobs can be fused (see AbstractImageJob.isRowLocal()).
+ *
+ * @author bourgesl
+ */
+public final class ImageFusedJob extends AbstractImageJob<List<AbstractImageJob<?>>> {
+
+    /**
+     * Create the image Job
+     *
+     * @param jobs jobs processing the same data array (2D) or flat image with the same width and height
+     * @throws IllegalArgumentException if no job is given or if jobs can not be fused
+     */
+    public ImageFusedJob(final AbstractImageJob<?>... jobs) {
+        super("ImageFusedJob", checkJobs(jobs));
+
+        for (AbstractImageJob<?> job : jobs) {
+            _result.add(job);
+        }
+    }
+
+    /**
+     * Create the image Job given a parent job
+     *
+     * @param parentJob parent Job producing same result
+     * @param jobIndex job index used to process data interlaced
+     * @param jobCount total number of concurrent jobs
+     */
+    protected ImageFusedJob(final ImageFusedJob parentJob, final int jobIndex, final int jobCount) {
+        super(parentJob, jobIndex, jobCount);
+
+        for (AbstractImageJob<?> job : parentJob._result) {
+            _result.add(job.initializeChildJob(jobIndex, jobCount));
+        }
+    }
+
+    /**
+     * Check that the given jobs can be fused
+     * @param jobs jobs to fuse
+     * @return first job
+     * @throws IllegalArgumentException if no job is given or if jobs can not be fused
+     */
+    private static AbstractImageJob<?> checkJobs(final AbstractImageJob<?>[] jobs) {
+        if (jobs == null || jobs.length == 0) {
+            throw new IllegalArgumentException("No job to fuse !");
+        }
+        final AbstractImageJob<?> first = jobs[0];
+
+        for (AbstractImageJob<?> job : jobs) {
+            if (!job.isRowLocal()) {
+                throw new IllegalArgumentException("Job " + job._jobName + " can not be fused (not row local) !");
+            }
+            if (job._array2D != first._array2D || job._image != first._image
+                    || job._width != first._width || job._height != first._height) {
+                throw new IllegalArgumentException("Job " + job._jobName + " does not process the same data as " + first._jobName + " !");
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Initialize a new child job
+     * @param jobIndex job index used to process data interlaced
+     * @param jobCount total number of concurrent jobs
+     * @return child job
+     */
+    @Override
+    protected ImageFusedJob initializeChildJob(final int jobIndex, final int jobCount) {
+        return new ImageFusedJob(this, jobIndex, jobCount);
+    }
+
+    /**
+     * Initialize the result object (one per job) i.e. the jobs (or child jobs) holding results
+     * @return result Object
+     */
+    @Override
+    protected List<AbstractImageJob<?>> initializeResult() {
+        return new ArrayList<AbstractImageJob<?>>(4);
+    }
+
+    /**
+     * Merge partial result objects: each job merges the partial results of its child jobs
+     * @param partialResults partial result objects
+     */
+    @Override
+    protected void merge(final List<List<AbstractImageJob<?>>> partialResults) {
+        final List<AbstractImageJob<?>> jobs = _result;
+
+        for (int i = 0, len = jobs.size(); i < len; i++) {
+            mergeJob(jobs.get(i), partialResults, i);
+        }
+    }
+
+    /**
+     * Merge the partial results of the child jobs at the given index into the given job
+     * @param job job to merge into
+     * @param partialResults child jobs (per fused child job)
+     * @param index job index in the fused jobs
+     * @param <V> job result type
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> void mergeJob(final AbstractImageJob<V> job, final List<List<AbstractImageJob<?>>> partialResults,
+                                     final int index) {
+        final List<V> results = new ArrayList<V>(partialResults.size());
+
+        for (List<AbstractImageJob<?>> partial : partialResults) {
+            // null if cancelled:
+            if (partial != null) {
+                results.add(((AbstractImageJob<V>) partial.get(index))._result);
+            }
+        }
+        job.merge(results);
+    }
+
+    /**
+     * Process the given value at the given row and column index with every job in order
+     *
+     * @param col column index
+     * @param row row index
+     * @param value value at the given row and column
+     */
+    @Override
+    protected void processValue(final int col, final int row, final float value) {
+        final List<AbstractImageJob<?>> jobs = _result;
+
+        jobs.get(0).processValue(col, row, value);
+
+        for (int i = 1, len = jobs.size(); i < len; i++) {
+            // value may be updated in place by previous jobs:
+            jobs.get(i).processValue(col, row, getValue(col, row));
+        }
+    }
+
+    /**
+     * Process the given row with every job in order
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final List<AbstractImageJob<?>> jobs = _result;
+
+        for (int i = 0, len = jobs.size(); i < len; i++) {
+            jobs.get(i).processRow(row, values, offset);
+        }
+    }
+
+    /**
+     * Return the fused jobs (results are available once this job is done)
+     * @return fused jobs
+     */
+    public List<AbstractImageJob<?>> getJobs() {
+        return _result;
+    }
+}
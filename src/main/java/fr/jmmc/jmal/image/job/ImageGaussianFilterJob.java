@@ -106,6 +106,24 @@ public final class ImageGaussianFilterJob extends AbstractImageJob<Void> {
     @Override
     protected void processValue(final int col, final int row, final float value) {
         // use double precision for accuracy:
-        _array2D[row][col] = (float) (_colWeights[col] * _rowWeights[row] * value);
+        setValue(col, row, (float) (_colWeights[col] * _rowWeights[row] * value));
+    }
+
+    /**
+     * Process the given row in place
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final double[] colWeights = _colWeights;
+        final double rowWeight = _rowWeights[row];
+
+        for (int i = 0, width = _width; i < width; i++) {
+            // use double precision for accuracy:
+            values[offset + i] = (float) (colWeights[i] * rowWeight * values[offset + i]);
+        }
     }
 }
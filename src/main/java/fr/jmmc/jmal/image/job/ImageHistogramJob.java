@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.job;
+
+import fr.jmmc.jmal.image.FloatImage;
+import fr.jmmc.jmal.image.Histogram;
+import java.util.List;
+
+/**
+ * Job dedicated to compute the histogram of image values over a given range:
+ * each child job fills its own histogram merged at the end (no sort)
+ * @author bourgesl
+ */
+public final class ImageHistogramJob extends AbstractImageJob<Histogram> {
+
+    /** default number of bins */
+    public final static int DEFAULT_BINS = 4096;
+
+    /* members */
+    /** lower value */
+    private final float _min;
+    /** upper value */
+    private final float _max;
+    /** number of bins */
+    private final int _nBins;
+
+    /**
+     * Create the image Job
+     *
+     * @param array data array (2D)
+     * @param width image width
+     * @param height image height
+     * @param min lower value (see ImageMinMaxJob)
+     * @param max upper value (see ImageMinMaxJob)
+     * @param nBins number of bins
+     */
+    public ImageHistogramJob(final float[][] array, final int width, final int height,
+                             final float min, final float max, final int nBins) {
+        super("ImageHistogramJob", array, width, height);
+        this._min = min;
+        this._max = max;
+        this._nBins = nBins;
+        _result.setRange(min, max, nBins);
+    }
+
+    /**
+     * Create the image Job on a flat image
+     *
+     * @param image flat image
+     * @param min lower value (see ImageMinMaxJob)
+     * @param max upper value (see ImageMinMaxJob)
+     * @param nBins number of bins
+     */
+    public ImageHistogramJob(final FloatImage image, final float min, final float max, final int nBins) {
+        super("ImageHistogramJob", image, image.getWidth(), image.getHeight());
+        this._min = min;
+        this._max = max;
+        this._nBins = nBins;
+        _result.setRange(min, max, nBins);
+    }
+
+    /**
+     * Create the image Job given a parent job
+     *
+     * @param parentJob parent Job producing same result
+     * @param jobIndex job index used to process data interlaced
+     * @param jobCount total number of concurrent jobs
+     */
+    protected ImageHistogramJob(final ImageHistogramJob parentJob, final int jobIndex, final int jobCount) {
+        super(parentJob, jobIndex, jobCount);
+        this._min = parentJob._min;
+        this._max = parentJob._max;
+        this._nBins = parentJob._nBins;
+        _result.setRange(_min, _max, _nBins);
+    }
+
+    /**
+     * Initialize a new child job
+     * @param jobIndex job index used to process data interlaced
+     * @param jobCount total number of concurrent jobs
+     * @return child job
+     */
+    @Override
+    protected ImageHistogramJob initializeChildJob(final int jobIndex, final int jobCount) {
+        return new ImageHistogramJob(this, jobIndex, jobCount);
+    }
+
+    /**
+     * Initialize the result object (one per job): bins are defined by the constructor
+     * @return result Object
+     */
+    @Override
+    protected Histogram initializeResult() {
+        return new Histogram();
+    }
+
+    /**
+     * Merge partial result objects to produce the final result object
+     * @param partialResults partial result objects
+     */
+    @Override
+    protected void merge(final List<Histogram> partialResults) {
+        final Histogram result = _result;
+
+        for (Histogram partial : partialResults) {
+            result.merge(partial);
+        }
+    }
+
+    /**
+     * Process the given value at the given row and column index
+     *
+     * @param col row index
+     * @param row column index
+     */
+    @Override
+    protected void processValue(final int col, final int row, final float value) {
+        _result.add(value);
+    }
+
+    /**
+     * Process the given row
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final Histogram result = _result;
+
+        for (int i = offset, end = offset + _width; i < end; i++) {
+            result.add(values[i]);
+        }
+    }
+
+    /**
+     * Return the histogram
+     * @return histogram
+     */
+    public Histogram getHistogram() {
+        return _result;
+    }
+}
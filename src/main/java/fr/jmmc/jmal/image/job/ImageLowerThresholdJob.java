@@ -3,6 +3,7 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image.job;
 
+import fr.jmmc.jmal.image.FloatImage;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,6 +40,19 @@ public final class ImageLowerThresholdJob extends AbstractImageJob<AtomicInteger
         this._replaceBy = replaceBy;
     }
 
+    /**
+     * Create the image Job on a flat image
+     *
+     * @param image flat image
+     * @param threshold threshold value to check
+     * @param replaceBy replacement value to use
+     */
+    public ImageLowerThresholdJob(final FloatImage image, final float threshold, final float replaceBy) {
+        super("ImageLowerThresholdJob", image, image.getWidth(), image.getHeight());
+        this._threshold = threshold;
+        this._replaceBy = replaceBy;
+    }
+
     /**
      * Create the image Job given a parent job
      *
@@ -95,11 +109,39 @@ public final class ImageLowerThresholdJob extends AbstractImageJob<AtomicInteger
             if (DEBUG) {
                 logger.info("threshold reached at ({}, {}) : {}", col, row, value);
             }
-            _array2D[row][col] = _replaceBy;
+            setValue(col, row, _replaceBy);
             _result.incrementAndGet();
         }
     }
 
+    /**
+     * Process the given row in place (updated values counted once per row)
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final float threshold = _threshold;
+        final float replaceBy = _replaceBy;
+        int count = 0;
+
+        for (int i = offset, end = offset + _width; i < end; i++) {
+            final float value = values[i];
+            if (value != 0f && value <= threshold) {
+                if (DEBUG) {
+                    logger.info("threshold reached at ({}, {}) : {}", i - offset, row, value);
+                }
+                values[i] = replaceBy;
+                count++;
+            }
+        }
+        if (count != 0) {
+            _result.addAndGet(count);
+        }
+    }
+
     /**
      * Return the number of updated data values
      * @return number of updated data values
@@ -3,6 +3,7 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image.job;
 
+import fr.jmmc.jmal.image.FloatImage;
 import fr.jmmc.jmal.image.job.ImageMinMaxJob.MinMaxResult;
 import java.util.List;
 
@@ -41,6 +42,17 @@ public final class ImageMinMaxJob extends AbstractImageJob<MinMaxResult> {
         this._excludeZero = excludeZero;
     }
 
+    /**
+     * Create the image Job on a flat image
+     *
+     * @param image flat image
+     * @param excludeZero true to indicate to ignore zero values
+     */
+    public ImageMinMaxJob(final FloatImage image, final boolean excludeZero) {
+        super("ImageMinMaxJob", image, image.getWidth(), image.getHeight());
+        this._excludeZero = excludeZero;
+    }
+
     /**
      * Create the image Job given a parent job
      *
@@ -123,6 +135,43 @@ public final class ImageMinMaxJob extends AbstractImageJob<MinMaxResult> {
         }
     }
 
+    /**
+     * Process the given row (tight loop on local variables)
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final boolean excludeZero = _excludeZero;
+        final MinMaxResult result = _result;
+
+        int nData = 0;
+        double sum = 0d;
+        float min = result._min;
+        float max = result._max;
+
+        for (int i = offset, end = offset + _width; i < end; i++) {
+            final float value = values[i];
+            if (excludeZero && value == 0f) {
+                continue;
+            }
+            nData++;
+            sum += value;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        result._nData += nData;
+        result._sum += sum;
+        result._min = min;
+        result._max = max;
+    }
+
     /**
      * Return the number of data
      * @return number of data
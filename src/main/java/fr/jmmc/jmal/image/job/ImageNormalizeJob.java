@@ -3,6 +3,7 @@
  ******************************************************************************/
 package fr.jmmc.jmal.image.job;
 
+import fr.jmmc.jmal.image.FloatImage;
 import java.util.List;
 
 /**
@@ -30,6 +31,17 @@ public final class ImageNormalizeJob extends AbstractImageJob<Void> {
         this._factor = factor;
     }
 
+    /**
+     * Create the image Job on a flat image
+     *
+     * @param image flat image
+     * @param factor factor value to use
+     */
+    public ImageNormalizeJob(final FloatImage image, final double factor) {
+        super("ImageNormalizeJob", image, image.getWidth(), image.getHeight());
+        this._factor = factor;
+    }
+
     /**
      * Create the image Job given a parent job
      *
@@ -81,7 +93,26 @@ public final class ImageNormalizeJob extends AbstractImageJob<Void> {
     protected void processValue(final int col, final int row, final float value) {
         if (value != 0f) {
             // use double precision for accuracy:
-            _array2D[row][col] = (float) (_factor * value);
+            setValue(col, row, (float) (_factor * value));
+        }
+    }
+
+    /**
+     * Process the given row in place
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final double factor = _factor;
+
+        for (int i = offset, end = offset + _width; i < end; i++) {
+            if (values[i] != 0f) {
+                // use double precision for accuracy:
+                values[i] = (float) (factor * values[i]);
+            }
         }
     }
 }
@@ -4,18 +4,29 @@
 package fr.jmmc.jmal.image.job;
 
 import fr.jmmc.jmal.image.job.ImageRegionThresholdJob.BoundaryResult;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
+import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
 import java.util.List;
 
 /**
  * Simple Job dedicated to find boundaries of data values higher than given threshold
+ * either by visiting all values (forkAndJoin) or by scanning inward from the image edges (searchBoundingBox)
  * @author bourgesl
  */
 public final class ImageRegionThresholdJob extends AbstractImageJob<BoundaryResult> {
 
+    /** bounding box search timer */
+    private final static Timer TIMER_BBOX = Metrics.timer("job.ImageRegionThresholdJob.bbox");
+
     /** undefined lower index (Integer.MAX_VALUE) */
     public final static int UNDEFINED_LOWER_INDEX = Integer.MAX_VALUE;
     /** undefined upper index (Integer.MIN_VALUE) */
     public final static int UNDEFINED_UPPER_INDEX = Integer.MIN_VALUE;
+    /** Jmcs Parallel Job executor */
+    private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
     /** threshold value (inclusive) */
     final float _threshold;
 
@@ -120,6 +131,167 @@ public final class ImageRegionThresholdJob extends AbstractImageJob<BoundaryResu
         }
     }
 
+    /**
+     * Process the given row: find the first and last columns above the threshold
+     *
+     * @param row row index
+     * @param values row values (data array row or flat image data)
+     * @param offset index of the first value of the row in the given array
+     */
+    @Override
+    protected void processRow(final int row, final float[] values, final int offset) {
+        final float threshold = _threshold;
+        final int width = _width;
+
+        int first = 0;
+        while (first < width && !(values[offset + first] != 0f && values[offset + first] > threshold)) {
+            first++;
+        }
+        if (first == width) {
+            // no value above threshold
+            return;
+        }
+        int last = width - 1;
+        while (!(values[offset + last] != 0f && values[offset + last] > threshold)) {
+            last--;
+        }
+
+        final BoundaryResult result = _result;
+
+        // column boundaries:
+        if (first < result._columnLowerIndex) {
+            result._columnLowerIndex = first;
+        }
+        if (last > result._columnUpperIndex) {
+            result._columnUpperIndex = last;
+        }
+        // row boundaries:
+        if (row < result._rowLowerIndex) {
+            result._rowLowerIndex = row;
+        }
+        if (row > result._rowUpperIndex) {
+            result._rowUpperIndex = row;
+        }
+    }
+
+    /**
+     * Find the boundaries by scanning inward from the image edges (current thread token)
+     * @see #searchBoundingBox(CancellationToken)
+     * @return result object
+     * @throws InterruptedJobException if the current thread is interrupted (cancelled)
+     */
+    public BoundaryResult searchBoundingBox() throws InterruptedJobException {
+        return searchBoundingBox(CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Find the boundaries by scanning inward from the image edges (same result as forkAndJoin()):
+     * the lower and upper rows are searched first (from the bottom and top edges in parallel) and stop at the
+     * first row having a value above the threshold; then the lower and upper columns are searched
+     * (from the left and right edges in parallel) within these rows and only up to the best column found so far.
+     *
+     * Only the empty margins around the region are visited i.e. a small fraction of the image for compact sources.
+     *
+     * @param token cancellation token checked by every scan at each row
+     * @return result object
+     * @throws InterruptedJobException if the given token is cancelled
+     */
+    public BoundaryResult searchBoundingBox(final CancellationToken token) throws InterruptedJobException {
+        final long start = System.nanoTime();
+
+        final boolean parallel = jobExecutor.isEnabled() && shouldForkJobs();
+
+        // rows:
+        final EdgeScan bottom = new EdgeScan(EdgeScan.BOTTOM, token);
+        final EdgeScan top = new EdgeScan(EdgeScan.TOP, token);
+        bottom._other = top;
+        top._other = bottom;
+
+        runScans(new EdgeScan[]{bottom, top}, parallel);
+        token.checkCancelled(_jobName);
+
+        final BoundaryResult result = _result;
+
+        if (bottom._index == -1) {
+            // no value above threshold:
+            result._columnLowerIndex = UNDEFINED_LOWER_INDEX;
+            result._columnUpperIndex = UNDEFINED_UPPER_INDEX;
+            result._rowLowerIndex = UNDEFINED_LOWER_INDEX;
+            result._rowUpperIndex = UNDEFINED_UPPER_INDEX;
+        } else {
+            // columns (within found rows):
+            final EdgeScan left = new EdgeScan(EdgeScan.LEFT, token);
+            final EdgeScan right = new EdgeScan(EdgeScan.RIGHT, token);
+            left._rowLower = right._rowLower = bottom._index;
+            left._rowUpper = right._rowUpper = top._index;
+
+            runScans(new EdgeScan[]{left, right}, parallel);
+            token.checkCancelled(_jobName);
+
+            result._columnLowerIndex = left._index;
+            result._columnUpperIndex = right._index;
+            result._rowLowerIndex = bottom._index;
+            result._rowUpperIndex = top._index;
+        }
+
+        final long duration = System.nanoTime() - start;
+        TIMER_BBOX.record(duration);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("searchBoundingBox : duration = {} ms.", 1e-6d * duration);
+        }
+        return result;
+    }
+
+    /**
+     * Run the given scans in parallel or using the current thread
+     * @param scans scans to run
+     * @param parallel true to run scans in parallel
+     */
+    private static void runScans(final EdgeScan[] scans, final boolean parallel) {
+        if (parallel) {
+            jobExecutor.forkAndJoin("ImageRegionThresholdJob.searchBoundingBox", scans);
+        } else {
+            for (EdgeScan scan : scans) {
+                scan.run();
+            }
+        }
+    }
+
+    /**
+     * Return the index of the first value above the threshold in the given column range
+     * @param values row values
+     * @param from first column (inclusive)
+     * @param to last column (exclusive)
+     * @return column index or -1 if none
+     */
+    private int indexOfFirst(final float[] values, final int from, final int to) {
+        final float threshold = _threshold;
+        for (int i = from; i < to; i++) {
+            if (values[i] != 0f && values[i] > threshold) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of the last value above the threshold in the given column range
+     * @param values row values
+     * @param from first column (inclusive)
+     * @param to last column (exclusive)
+     * @return column index or -1 if none
+     */
+    private int indexOfLast(final float[] values, final int from, final int to) {
+        final float threshold = _threshold;
+        for (int i = to - 1; i >= from; i--) {
+            if (values[i] != 0f && values[i] > threshold) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Return the lower column index where projected data != 0.0
      * @return lower column index where projected data != 0.0
@@ -152,6 +324,110 @@ public final class ImageRegionThresholdJob extends AbstractImageJob<BoundaryResu
         return _result._rowUpperIndex;
     }
 
+    /**
+     * Scan inward from one image edge, stopping at the first row (or column) having a value above the threshold
+     */
+    private final class EdgeScan implements Runnable {
+
+        /** scan rows upward from the bottom edge */
+        final static int BOTTOM = 0;
+        /** scan rows downward from the top edge */
+        final static int TOP = 1;
+        /** scan columns rightward from the left edge */
+        final static int LEFT = 2;
+        /** scan columns leftward from the right edge */
+        final static int RIGHT = 3;
+        /* members */
+        /** scanned edge */
+        private final int _edge;
+        /** cancellation token */
+        private final CancellationToken _token;
+        /** opposite row scan (rows beyond its cursor are known empty) */
+        EdgeScan _other = null;
+        /** column scans: lower row index (inclusive) */
+        int _rowLower;
+        /** column scans: upper row index (inclusive) */
+        int _rowUpper;
+        /** row scans: row being tested (all rows before it from the edge are empty) */
+        volatile int _cursor;
+        /** found row (or column) index or -1 if none */
+        int _index = -1;
+
+        EdgeScan(final int edge, final CancellationToken token) {
+            this._edge = edge;
+            this._token = token;
+            this._cursor = (edge == TOP) ? _height : -1;
+        }
+
+        @Override
+        public void run() {
+            final float[][] array = _array2D;
+            final int width = _width;
+            final int height = _height;
+            final CancellationToken token = _token;
+
+            switch (_edge) {
+                case BOTTOM:
+                    for (int j = 0; j < height; j++) {
+                        _cursor = j;
+                        if (j > _other._cursor || token.isCancelled()) {
+                            // the top scan already found rows [j, height[ empty:
+                            break;
+                        }
+                        if (indexOfFirst(array[j], 0, width) != -1) {
+                            _index = j;
+                            return;
+                        }
+                    }
+                    _cursor = height;
+                    break;
+                case TOP:
+                    for (int j = height - 1; j >= 0; j--) {
+                        _cursor = j;
+                        if (j < _other._cursor || token.isCancelled()) {
+                            // the bottom scan already found rows [0, j] empty:
+                            break;
+                        }
+                        if (indexOfFirst(array[j], 0, width) != -1) {
+                            _index = j;
+                            return;
+                        }
+                    }
+                    _cursor = -1;
+                    break;
+                case LEFT:
+                    // search only before the best column so far:
+                    int lower = width;
+                    for (int j = _rowLower; j <= _rowUpper && lower != 0; j++) {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        final int i = indexOfFirst(array[j], 0, lower);
+                        if (i != -1) {
+                            lower = i;
+                        }
+                    }
+                    _index = lower;
+                    break;
+                case RIGHT:
+                    // search only after the best column so far:
+                    int upper = -1;
+                    for (int j = _rowLower; j <= _rowUpper && upper != width - 1; j++) {
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        final int i = indexOfLast(array[j], upper + 1, width);
+                        if (i != -1) {
+                            upper = i;
+                        }
+                    }
+                    _index = upper;
+                    break;
+                default:
+            }
+        }
+    }
+
     /**
      * Result container
      */
@@ -4,12 +4,15 @@
 package fr.jmmc.jmal.model;
 
 import fr.jmmc.jmal.complex.MutableComplex;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.function.math.BlackBodyFunction;
 import fr.jmmc.jmal.model.function.math.FluxFunction;
 import fr.jmmc.jmal.model.function.math.FourierFunctions;
 import fr.jmmc.jmal.model.function.math.PunctFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
 import fr.jmmc.jmal.model.targetmodel.Parameter;
+import fr.jmmc.jmal.model.targetmodel.ParameterLink;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +44,17 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
     /* members */
     /** wavelength variant */
     protected final WavelengthVariant wlVariant;
+    /* parameter ordinals of common parameters (see newModel()) */
+    /** ordinal of the flux weight parameter */
+    protected final int ordinalFluxWeight;
+    /** ordinal of the temperature parameter or -1 if not black body */
+    protected final int ordinalTemperature;
+    /** ordinal of the x parameter */
+    protected final int ordinalX;
+    /** ordinal of the y parameter */
+    protected final int ordinalY;
+    /** parameter types indexed by parameter ordinal i.e. parameters of newModel() (lazily initialized) */
+    private volatile String[] parameterTypes = null;
 
     /**
      * Constructor for the given wavelength variant
@@ -48,6 +62,11 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      */
     public AbstractModelFunction(final WavelengthVariant wlVariant) {
         this.wlVariant = wlVariant;
+        // same order as newModel():
+        this.ordinalFluxWeight = 0;
+        this.ordinalTemperature = isBlackBody() ? 1 : -1;
+        this.ordinalX = isBlackBody() ? 2 : 1;
+        this.ordinalY = this.ordinalX + 1;
     }
 
     /**
@@ -111,6 +130,40 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
         return model;
     }
 
+    /**
+     * Return the parameter types indexed by parameter ordinal i.e. the parameters of a new model (see newModel())
+     * @return parameter types (shared array, do not modify)
+     */
+    @Override
+    public final String[] getParameterTypes() {
+        String[] types = this.parameterTypes;
+        if (types == null) {
+            final List<Parameter> parameters = newModel().getParameters();
+
+            types = new String[parameters.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = parameters.get(i).getType();
+            }
+            this.parameterTypes = types;
+        }
+        return types;
+    }
+
+    /**
+     * Return the ordinal of the given parameter type
+     * @param type type of the parameter
+     * @return parameter ordinal or -1 if the parameter type is not used by this function
+     */
+    protected final int getParameterOrdinal(final String type) {
+        final String[] types = getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (type.equals(types[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Add a parameter supporting only positive values
      *
@@ -183,17 +236,36 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      */
     @Override
     public final void validate(final Model model) {
+        validate(model, null);
+    }
+
+    /**
+     * Check the model parameters (using the given prepared parameter slots) against their min/max bounds.
+     *
+     * @param model model to check
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @throws IllegalArgumentException
+     */
+    @Override
+    public final void validate(final Model model, final ModelSlots slots) {
         updateModelDescription(model);
 
-        for (Parameter param : model.getParameters()) {
-            final double value = param.getValue();
+        final String[] types = getParameterTypes();
 
-            if (param.getMinValue() != null && value < param.getMinValue().doubleValue()) {
-                createParameterException(param.getType(), model, "< " + param.getMinValue().doubleValue());
-            }
+        for (int i = 0; i < types.length; i++) {
+            // shared parameters are checked against the bounds of the referenced parameter:
+            final Parameter param = (slots != null) ? slots.getParameter(i) : resolveParameter(model, types[i]);
+
+            if (param != null) {
+                final double value = (slots != null) ? slots.getValue(i) : param.getValue();
+
+                if (param.getMinValue() != null && value < param.getMinValue().doubleValue()) {
+                    createParameterException(param, model, value, "< " + param.getMinValue().doubleValue());
+                }
 
-            if (param.getMaxValue() != null && value > param.getMaxValue().doubleValue()) {
-                createParameterException(param.getType(), model, "> " + param.getMaxValue().doubleValue());
+                if (param.getMaxValue() != null && value > param.getMaxValue().doubleValue()) {
+                    createParameterException(param, model, value, "> " + param.getMaxValue().doubleValue());
+                }
             }
         }
     }
@@ -233,6 +305,37 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
         }
     }
 
+    /**
+     * Shift the given group visibilities (composite model) by the group position, weight them
+     * and add them to the given visibility array i.e. the shift is applied once for all group members
+     *
+     * @param function shift function giving the group position
+     * @param flux_weights normalized group flux weights
+     * @param ufreq U frequencies in rad-1
+     * @param vfreq V frequencies in rad-1
+     * @param nVis number of visibility to compute
+     * @param groupVis complex visibility array of the group members (relative positions)
+     * @param vis complex visibility array of the parent level
+     * @param modelVis complex variable to store group complex contribution
+     */
+    public static void shiftAndAdd(final PunctFunction function, final double[] flux_weights,
+                                   final double[] ufreq, final double[] vfreq,
+                                   final int nVis, final MutableComplex[] groupVis,
+                                   final MutableComplex[] vis, final MutableComplex modelVis) {
+        // Compute :
+        final double x = function.getX();
+        final double y = function.getY();
+        final boolean zero = function.isZero();
+
+        for (int i = 0; i < nVis; i++) {
+            FourierFunctions.shift(ufreq[i], vfreq[i], zero, x, y, flux_weights[i], modelVis);
+
+            // mutable complex:
+            modelVis.multiply(groupVis[i]);
+            vis[i].add(modelVis);
+        }
+    }
+
     /**
      * Prepare the flux function for the given model
      *
@@ -241,14 +344,26 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      */
     @Override
     public final FluxFunction prepareFluxFunction(final Model model) {
+        return prepareFluxFunction(model, null);
+    }
+
+    /**
+     * Prepare the flux function for the given model using the given prepared parameter slots
+     *
+     * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @return flux function
+     */
+    @Override
+    public final FluxFunction prepareFluxFunction(final Model model, final ModelSlots slots) {
         if (isBlackBody()) {
             final BlackBodyFunction function = new BlackBodyFunction();
-            function.setFluxWeight(getParameterValue(model, PARAM_FLUX_WEIGHT));
-            function.setTemperature(getParameterValue(model, PARAM_TEMPERATURE));
+            function.setFluxWeight(getParameterValue(model, slots, ordinalFluxWeight));
+            function.setTemperature(getParameterValue(model, slots, ordinalTemperature));
             return function;
         } else {
             final FluxFunction function = new FluxFunction();
-            function.setFluxWeight(getParameterValue(model, PARAM_FLUX_WEIGHT));
+            function.setFluxWeight(getParameterValue(model, slots, ordinalFluxWeight));
             return function;
         }
     }
@@ -304,7 +419,19 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      */
     @Override
     public final PunctFunction prepareFunction(final Model model) {
-        return createFunction(model);
+        return createFunction(model, null);
+    }
+
+    /**
+     * Prepare the computation function for the given model using the given prepared parameter slots
+     *
+     * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @return model function
+     */
+    @Override
+    public final PunctFunction prepareFunction(final Model model, final ModelSlots slots) {
+        return createFunction(model, slots);
     }
 
     /**
@@ -312,12 +439,32 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      * Get model parameters to fill the function context
      *
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
-    protected abstract T createFunction(final Model model);
+    protected abstract T createFunction(final Model model, final ModelSlots slots);
 
     /**
-     * Return the parameter value of the given type among the parameters of the given model
+     * Return the parameter of the given type in the given model:
+     * the referenced parameter if shared (parameter link) or the parameter owned by the model
+     *
+     * @param model model to use
+     * @param type type of the parameter
+     * @return parameter or null if the parameter type is not present in the given model
+     */
+    public static Parameter resolveParameter(final Model model, final String type) {
+        // shared parameters override owned ones:
+        for (ParameterLink parameterLink : model.getParameterLinks()) {
+            final Parameter ref = parameterLink.getParameterRef();
+            if (ref != null && type.equals((parameterLink.getType() != null) ? parameterLink.getType() : ref.getType())) {
+                return ref;
+            }
+        }
+        return model.getParameter(type);
+    }
+
+    /**
+     * Return the parameter value of the given type in the given model (shared parameters resolved)
      *
      * @param type type of the parameter
      * @param model model to use
@@ -325,13 +472,30 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      * @throws IllegalArgumentException if the parameter type is invalid for the given model
      */
     protected static double getParameterValue(final Model model, final String type) {
-        final Parameter parameter = model.getParameter(type);
+        final Parameter parameter = resolveParameter(model, type);
         if (parameter == null) {
             throw new IllegalArgumentException("parameter [" + type + "] not found in the model [" + model.getName() + "] !");
         }
         return parameter.getValue();
     }
 
+    /**
+     * Return the parameter value of the given ordinal using the given prepared parameter slots (indexed access)
+     * or in the given model if slots is null (shared parameters resolved in both cases)
+     *
+     * @param model model to use
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @param ordinal parameter ordinal (see getParameterTypes())
+     * @return parameter value
+     * @throws IllegalArgumentException if the parameter type is invalid for the given model
+     */
+    protected final double getParameterValue(final Model model, final ModelSlots slots, final int ordinal) {
+        if (slots == null) {
+            return getParameterValue(model, getParameterTypes()[ordinal]);
+        }
+        return slots.getValue(ordinal);
+    }
+
     /**
      * Create a parameter validation exception
      *
@@ -341,9 +505,22 @@ public abstract class AbstractModelFunction<T extends PunctFunction> implements
      * @throws IllegalArgumentException
      */
     protected static void createParameterException(final String type, final Model model, final String message) throws IllegalArgumentException {
-        // Find the parameter for the given type in the model parameter list :
-        final Parameter parameter = model.getParameter(type);
+        // Find the parameter for the given type in the model (shared parameters resolved) :
+        final Parameter parameter = resolveParameter(model, type);
+
+        createParameterException(parameter, model, parameter.getValue(), message);
+    }
 
-        throw new IllegalArgumentException(parameter.getName() + " [" + parameter.getValue() + "] " + message + " not allowed in the model [" + model.getName() + "] !");
+    /**
+     * Create a parameter validation exception
+     *
+     * @param parameter invalid parameter (owned or shared)
+     * @param model model instance
+     * @param value invalid parameter value
+     * @param message validation message [< 0 for example]
+     * @throws IllegalArgumentException
+     */
+    protected static void createParameterException(final Parameter parameter, final Model model, final double value, final String message) throws IllegalArgumentException {
+        throw new IllegalArgumentException(parameter.getName() + " [" + value + "] " + message + " not allowed in the model [" + model.getName() + "] !");
     }
 }
@@ -0,0 +1,59 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.model;
+
+/**
+ * This class represents one step of the flattened evaluation plan of composite models (hierarchy):
+ * - COMPONENT: add the weighted component contribution to the current accumulator
+ * - BEGIN_GROUP: start a new (zero) accumulator for the group members
+ * - END_GROUP: shift and weight the group accumulator then add it to the parent accumulator
+ *
+ * @author bourgesl
+ */
+final class ComputeStep {
+
+    /** Step types */
+    enum Type {
+        /** component (leaf) */
+        COMPONENT,
+        /** start of a group */
+        BEGIN_GROUP,
+        /** end of a group */
+        END_GROUP
+    }
+
+    /* members */
+    /** step type */
+    final Type type;
+    /** function context (COMPONENT only) */
+    final FunctionComputeContext function;
+    /** group context (BEGIN_GROUP / END_GROUP only) */
+    final GroupComputeContext group;
+
+    /**
+     * Create a COMPONENT step
+     * @param function function context
+     */
+    ComputeStep(final FunctionComputeContext function) {
+        this.type = Type.COMPONENT;
+        this.function = function;
+        this.group = null;
+    }
+
+    /**
+     * Create a group step
+     * @param type BEGIN_GROUP or END_GROUP
+     * @param group group context
+     */
+    ComputeStep(final Type type, final GroupComputeContext group) {
+        this.type = type;
+        this.function = null;
+        this.group = group;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + ((function != null) ? function.getModelName() : group.getModelName()) + "]";
+    }
+}
@@ -22,6 +22,8 @@ public final class FunctionComputeContext {
     private final FluxFunction fluxFunction;
     /** model function to compute */
     private final PunctFunction modelFunction;
+    /** enclosing group or null if top-level */
+    private final GroupComputeContext group;
     /* output */
     /** flux contribution (normalized in prepareModels) */
     private final double[] flux;
@@ -35,11 +37,26 @@ public final class FunctionComputeContext {
      * @param modelFunction model function to compute
      */
     FunctionComputeContext(final String modelName, final int freqCount, final FluxFunction fluxFunction, final PunctFunction modelFunction) {
+        this(modelName, freqCount, fluxFunction, modelFunction, null);
+    }
+
+    /**
+     * Protected constructor
+     *
+     * @param modelName model name
+     * @param freqCount uv frequency count used to preallocate arrays
+     * @param fluxFunction flux function to compute
+     * @param modelFunction model function to compute
+     * @param group enclosing group or null if top-level
+     */
+    FunctionComputeContext(final String modelName, final int freqCount, final FluxFunction fluxFunction, final PunctFunction modelFunction,
+                           final GroupComputeContext group) {
         this.modelName = modelName;
         this.freqCount = freqCount;
 
         this.modelFunction = modelFunction;
         this.fluxFunction = fluxFunction;
+        this.group = group;
 
         flux = new double[freqCount];
     }
@@ -80,10 +97,19 @@ public final class FunctionComputeContext {
         return modelFunction;
     }
 
+    /**
+     * Return the enclosing group
+     *
+     * @return enclosing group or null if top-level
+     */
+    GroupComputeContext getGroup() {
+        return group;
+    }
+
     /* outputs */
     /**
      * Return the flux contribution
-     * @return flux contribution (normalized)
+     * @return flux contribution (normalized at its level i.e. relative to its enclosing group if any)
      */
     public double[] getFlux() {
         return flux;
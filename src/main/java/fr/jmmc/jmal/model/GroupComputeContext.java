@@ -0,0 +1,123 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.model;
+
+import fr.jmmc.jmal.model.function.math.PunctFunction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds several variables used during model computations per composite model (hierarchy) ...
+ *
+ * The group gathers the parent component and its child models; its position is applied once to the summed
+ * visibilities of its members (relative positions) and its flux is normalized at its parent level.
+ *
+ * @author bourgesl
+ */
+final class GroupComputeContext {
+
+    /* members */
+    /** name of the parent model (debugging) */
+    private final String modelName;
+    /** parent group or null if top-level */
+    private final GroupComputeContext parent;
+    /** depth in the model hierarchy (1 for top-level groups) */
+    private final int depth;
+    /** shift function giving the group position (x, y) */
+    private final PunctFunction shiftFunction;
+    /** leaf members (parent component first) */
+    private final List<FunctionComputeContext> functions = new ArrayList<FunctionComputeContext>(4);
+    /** group members */
+    private final List<GroupComputeContext> groups = new ArrayList<GroupComputeContext>(2);
+    /* output */
+    /** flux contribution (raw sum of members then normalized in prepareModels) */
+    private final double[] flux;
+
+    /**
+     * Protected constructor
+     *
+     * @param modelName parent model name
+     * @param parent parent group or null if top-level
+     * @param freqCount uv frequency count used to preallocate arrays
+     * @param shiftFunction shift function giving the group position (x, y)
+     */
+    GroupComputeContext(final String modelName, final GroupComputeContext parent, final int freqCount,
+                        final PunctFunction shiftFunction) {
+        this.modelName = modelName;
+        this.parent = parent;
+        this.depth = (parent != null) ? parent.getDepth() + 1 : 1;
+        this.shiftFunction = shiftFunction;
+
+        flux = new double[freqCount];
+    }
+
+    /**
+     * Return the name of the parent model
+     *
+     * @return name of the parent model
+     */
+    String getModelName() {
+        return modelName;
+    }
+
+    /**
+     * Return the parent group
+     *
+     * @return parent group or null if top-level
+     */
+    GroupComputeContext getParent() {
+        return parent;
+    }
+
+    /**
+     * Return the depth in the model hierarchy (1 for top-level groups)
+     *
+     * @return depth in the model hierarchy
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Return the shift function giving the group position (x, y)
+     *
+     * @return shift function
+     */
+    PunctFunction getShiftFunction() {
+        return shiftFunction;
+    }
+
+    /**
+     * Return the leaf members (parent component first)
+     *
+     * @return leaf members
+     */
+    List<FunctionComputeContext> getFunctions() {
+        return functions;
+    }
+
+    /**
+     * Return the group members
+     *
+     * @return group members
+     */
+    List<GroupComputeContext> getGroups() {
+        return groups;
+    }
+
+    /* outputs */
+    /**
+     * Return the flux contribution
+     * @return flux contribution (normalized at the parent level)
+     */
+    double[] getFlux() {
+        return flux;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupComputeContext[" + modelName + "]{depth=" + depth + ", shiftFunction=" + shiftFunction
+                + ", functions=" + functions + ", groups=" + groups + '}';
+    }
+}
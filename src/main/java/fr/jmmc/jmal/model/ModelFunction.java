@@ -3,6 +3,7 @@
  ***************************************************************************** */
 package fr.jmmc.jmal.model;
 
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.function.math.FluxFunction;
 import fr.jmmc.jmal.model.function.math.PunctFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -49,6 +50,21 @@ public interface ModelFunction extends ModelDefinition {
      */
     public void validate(final Model model);
 
+    /**
+     * Return the parameter types indexed by parameter ordinal i.e. the parameters of a new model (see newModel())
+     * @return parameter types (shared array, do not modify)
+     */
+    public String[] getParameterTypes();
+
+    /**
+     * Check the model parameters (using the given prepared parameter slots) against their min/max bounds.
+     *
+     * @param model model to check
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @throws IllegalArgumentException
+     */
+    public void validate(final Model model, final ModelSlots slots);
+
     /**
      * @return true if the wavelength variant is Const (gray model) i.e. not dependent on wavelength
      */
@@ -62,6 +78,15 @@ public interface ModelFunction extends ModelDefinition {
      */
     public FluxFunction prepareFluxFunction(final Model model);
 
+    /**
+     * Prepare the flux function for the given model using the given prepared parameter slots
+     *
+     * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @return flux function
+     */
+    public FluxFunction prepareFluxFunction(final Model model, final ModelSlots slots);
+
     /**
      * Prepare the computation function for the given model :
      * Get model parameters to fill the function context
@@ -70,4 +95,13 @@ public interface ModelFunction extends ModelDefinition {
      * @return model function
      */
     public PunctFunction prepareFunction(final Model model);
+
+    /**
+     * Prepare the computation function for the given model using the given prepared parameter slots
+     *
+     * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
+     * @return model function
+     */
+    public PunctFunction prepareFunction(final Model model, final ModelSlots slots);
 }
@@ -3,6 +3,7 @@
  ***************************************************************************** */
 package fr.jmmc.jmal.model;
 
+import fr.jmmc.jmal.complex.MutableComplex;
 import java.util.List;
 
 /**
@@ -13,8 +14,15 @@ import java.util.List;
 public final class ModelFunctionComputeContext extends ModelComputeContext {
 
     /* members */
-    /** list of function contexts to compute */
+    /** list of function contexts to compute (all components including the ones in composite models) */
     private final List<FunctionComputeContext> modelFunctionContexts;
+    /** flattened evaluation plan for composite models or null if no composite model */
+    private final List<ComputeStep> plan;
+    /** maximum depth of composite models (0 if no composite model) */
+    private final int maxDepth;
+    /* output */
+    /** complex visiblity accumulators per group depth [depth][freqCount] (index 0 unused) */
+    private final MutableComplex[][] groupVis;
 
     /**
      * Copy constructor
@@ -22,7 +30,7 @@ public final class ModelFunctionComputeContext extends ModelComputeContext {
      * @param context model compute context
      */
     public ModelFunctionComputeContext(final ModelFunctionComputeContext context) {
-        this(context.getFreqCount(), context.getModelFunctionContexts());
+        this(context.getFreqCount(), context.getModelFunctionContexts(), context.getPlan(), context.getMaxDepth());
     }
 
     /**
@@ -32,8 +40,38 @@ public final class ModelFunctionComputeContext extends ModelComputeContext {
      * @param modelFunctionContexts list of function contexts to compute
      */
     ModelFunctionComputeContext(final int freqCount, final List<FunctionComputeContext> modelFunctionContexts) {
+        this(freqCount, modelFunctionContexts, null, 0);
+    }
+
+    /**
+     * Protected constructor
+     *
+     * @param freqCount uv frequency count used to preallocate arrays
+     * @param modelFunctionContexts list of function contexts to compute
+     * @param plan flattened evaluation plan for composite models or null if no composite model
+     * @param maxDepth maximum depth of composite models (0 if no composite model)
+     */
+    ModelFunctionComputeContext(final int freqCount, final List<FunctionComputeContext> modelFunctionContexts,
+                                final List<ComputeStep> plan, final int maxDepth) {
         super(freqCount);
         this.modelFunctionContexts = modelFunctionContexts;
+        this.plan = plan;
+        this.maxDepth = maxDepth;
+
+        if (maxDepth != 0) {
+            // accumulators are specific to this context (one per thread):
+            this.groupVis = new MutableComplex[maxDepth + 1][];
+
+            for (int d = 1; d <= maxDepth; d++) {
+                final MutableComplex[] v = new MutableComplex[freqCount];
+                for (int i = 0; i < freqCount; i++) {
+                    v[i] = new MutableComplex(0d, 0d);
+                }
+                this.groupVis[d] = v;
+            }
+        } else {
+            this.groupVis = null;
+        }
     }
 
     /**
@@ -44,4 +82,57 @@ public final class ModelFunctionComputeContext extends ModelComputeContext {
     List<FunctionComputeContext> getModelFunctionContexts() {
         return modelFunctionContexts;
     }
+
+    /**
+     * Return true if this context contains composite models (hierarchy)
+     *
+     * @return true if this context contains composite models
+     */
+    boolean isComposite() {
+        return (plan != null);
+    }
+
+    /**
+     * Return the flattened evaluation plan for composite models
+     *
+     * @return flattened evaluation plan or null if no composite model
+     */
+    List<ComputeStep> getPlan() {
+        return plan;
+    }
+
+    /**
+     * Return the maximum depth of composite models
+     *
+     * @return maximum depth of composite models (0 if no composite model)
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Return the complex visiblity accumulator for the given group depth
+     *
+     * @param depth group depth (1..maxDepth)
+     * @return complex visiblity accumulator (without reset)
+     */
+    MutableComplex[] getGroupVis(final int depth) {
+        return groupVis[depth];
+    }
+
+    /**
+     * Return the complex visiblity accumulator for the given group depth reset to (0,0)
+     *
+     * @param depth group depth (1..maxDepth)
+     * @return complex visiblity accumulator
+     */
+    MutableComplex[] resetAndGetGroupVis(final int depth) {
+        final MutableComplex[] v = groupVis[depth];
+
+        // reset visibilities to (0,0):
+        for (int i = getFreqCount() - 1; i >= 0; i--) {
+            v[i].updateComplex(0d, 0d);
+        }
+        return v;
+    }
 }
@@ -5,6 +5,7 @@ package fr.jmmc.jmal.model;
 
 import fr.jmmc.jmal.Band;
 import fr.jmmc.jmal.complex.MutableComplex;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.function.CircleModelFunction;
 import fr.jmmc.jmal.model.function.DiskModelFunction;
 import fr.jmmc.jmal.model.function.GaussianModelFunction;
@@ -16,6 +17,8 @@ import fr.jmmc.jmal.model.function.math.PunctFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
 import fr.jmmc.jmal.model.targetmodel.Parameter;
 import fr.jmmc.jmal.util.MathUtils;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
 import fr.jmmc.jmcs.util.WelfordVariance;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,6 +41,9 @@ public final class ModelManager {
     private static final Logger logger = LoggerFactory.getLogger(ModelManager.class.getName());
     /** enable black-body models */
     private static final boolean ENABLE_BB = "true".equalsIgnoreCase(System.getProperty("jmal.bb", "true"));
+    /** metrics */
+    private static final Timer TIMER_PREPARE_MODELS = Metrics.timer("model.prepareModels");
+    private static final Timer TIMER_COMPUTE_MODELS = Metrics.timer("model.computeModels");
     /** singleton pattern */
     private static final ModelManager instance = new ModelManager();
     // members :
@@ -168,6 +174,17 @@ public final class ModelManager {
         return getModelFunction(type).newModel();
     }
 
+    /**
+     * Return the parameter types of the given model type indexed by parameter ordinal
+     *
+     * @param type type of the model
+     * @return parameter types (shared array, do not modify)
+     * @throws IllegalStateException if the given type is unknown
+     */
+    public String[] getParameterTypes(final String type) {
+        return getModelFunction(type).getParameterTypes();
+    }
+
     /**
      * Return the model function for the given type
      *
@@ -195,6 +212,11 @@ public final class ModelManager {
                 if (!isGray(model.getType())) {
                     return false;
                 }
+                // check child models (hierarchy):
+                final List<Model> children = model.getModels();
+                if (!children.isEmpty() && !isGray(children)) {
+                    return false;
+                }
             }
         }
         return true;
@@ -208,11 +230,15 @@ public final class ModelManager {
      */
     public void validateModels(final List<Model> models) throws IllegalArgumentException {
         if (models != null && !models.isEmpty()) {
+            // include child models (hierarchy):
+            final List<Model> allModels = new ArrayList<Model>(models.size());
+            collectModels(models, allModels);
+
             // Reject mixed gray and chromatic models:
             int nGray = 0;
             int nChroma = 0;
 
-            for (Model model : models) {
+            for (Model model : allModels) {
                 if (isGray(model.getType())) {
                     nGray++;
                 } else {
@@ -228,7 +254,7 @@ public final class ModelManager {
                 throw new IllegalArgumentException("Invalid model composition: normalized and black-body components cannot be mixed !");
             }
 
-            for (Model model : models) {
+            for (Model model : allModels) {
                 final ModelFunction mf = getModelFunction(model.getType());
 
                 // check model parameters :
@@ -237,6 +263,23 @@ public final class ModelManager {
         }
     }
 
+    /**
+     * Collect the given models and their child models (hierarchy) recursively
+     *
+     * @param models list of models to traverse
+     * @param allModels list of models to fill
+     */
+    private static void collectModels(final List<Model> models, final List<Model> allModels) {
+        for (Model model : models) {
+            allModels.add(model);
+
+            final List<Model> children = model.getModels();
+            if (!children.isEmpty()) {
+                collectModels(children, allModels);
+            }
+        }
+    }
+
     /**
      * Check the given model values.
      *
@@ -244,23 +287,19 @@ public final class ModelManager {
      */
     public void checkModelValues(final List<Model> models) {
         if (models != null && !models.isEmpty()) {
+            // include child models (hierarchy):
+            final List<Model> allModels = new ArrayList<Model>(models.size());
+            collectModels(models, allModels);
 
             // Clean models (description):
-            for (Model model : models) {
+            for (Model model : allModels) {
                 getModelFunction(model.getType()).updateModelDescription(model);
-
-                final List<Model> children = model.getModels();
-                if (!children.isEmpty()) {
-                    for (Model child : children) {
-                        getModelFunction(child.getType()).updateModelDescription(child);
-                    }
-                }
             }
         }
     }
 
     /**
-     * Check the given models have dimensions below the max distance threshold in mas.
+     * Check the given models (hierarchy) have dimensions below the max distance threshold in mas.
      *
      * @param models list of models to validate
      * @param maxDist maximum angular separation (mas)
@@ -270,21 +309,17 @@ public final class ModelManager {
         if (models != null && !models.isEmpty()) {
             logger.debug("checkModels: maxDist = {} mas", maxDist);
 
-            final int len = models.size();
-            final List<PunctFunction> functions = new ArrayList<PunctFunction>(len);
-
-            // Parse models and prepare the model functions:
-            for (Model model : models) {
-                final ModelFunction mf = getModelFunction(model.getType());
+            // Parse models (hierarchy) and prepare the model functions at absolute positions:
+            final List<PunctFunction> functions = new ArrayList<PunctFunction>(models.size());
+            prepareFunctions(models, 0.0, 0.0, functions);
 
-                // Get parameters to fill the function context :
-                final PunctFunction function = mf.prepareFunction(model);
+            final int len = functions.size();
 
+            for (PunctFunction function : functions) {
                 // check function parameters:
                 if (!function.check(maxDist)) {
                     return false;
                 }
-                functions.add(function);
             }
 
             if (len > 1) {
@@ -306,6 +341,35 @@ public final class ModelManager {
         return true;
     }
 
+    /**
+     * Prepare the functions of the given models and their child models (hierarchy) recursively
+     * at absolute positions (child positions are relative to their parent)
+     *
+     * @param models list of models
+     * @param offsetX x offset of the parent model (mas)
+     * @param offsetY y offset of the parent model (mas)
+     * @param functions list of functions to fill
+     */
+    private void prepareFunctions(final List<Model> models, final double offsetX, final double offsetY,
+                                  final List<PunctFunction> functions) {
+        for (Model model : models) {
+            final ModelFunction mf = getModelFunction(model.getType());
+
+            // Get parameters to fill the function context :
+            final PunctFunction function = mf.prepareFunction(model);
+
+            // absolute position:
+            function.setX(function.getX() + offsetX);
+            function.setY(function.getY() + offsetY);
+            functions.add(function);
+
+            final List<Model> children = model.getModels();
+            if (!children.isEmpty()) {
+                prepareFunctions(children, function.getX(), function.getY(), functions);
+            }
+        }
+    }
+
     /**
      * Prepare the complex visiblity computation of given models
      *
@@ -333,27 +397,50 @@ public final class ModelManager {
                                                      final double wavelengths[],
                                                      final double[] mFluxes,
                                                      final Map<Band, Double> bandFluxes) {
+        return prepareModels(models, freqCount, wavelengths, mFluxes, bandFluxes, null);
+    }
+
+    /**
+     * Prepare the complex visiblity computation of given models using the given parameter vector
+     * i.e. parameter values are read from its slots (shared parameters already resolved)
+     * instead of searching parameters and parameter links in every model
+     *
+     * @param models list of models to compute
+     * @param freqCount uv frequency count used to preallocate arrays
+     * @param wavelengths wavelength array corresponding to uv frequency (freqCount)
+     * @param mFluxes computed flux array from model (optional)
+     * @param bandFluxes mean flux over used bands (optional)
+     * @param vector parameter vector created from the same models (optional)
+     * @return new compute context
+     * @see ParameterVector#create(List)
+     */
+    public ModelFunctionComputeContext prepareModels(final List<Model> models, final int freqCount,
+                                                     final double wavelengths[],
+                                                     final double[] mFluxes,
+                                                     final Map<Band, Double> bandFluxes,
+                                                     final ParameterVector vector) {
 
         if (models == null || models.isEmpty() || freqCount <= 0
                 || wavelengths == null || wavelengths.length != freqCount) {
             return null;
         }
 
+        final long start = System.nanoTime();
+
         final int nModels = models.size();
+        // all components (flattened):
         final List<FunctionComputeContext> functionContexts = new ArrayList<>(nModels);
-
-        // Parse models and prepare the function contexts:
+        // top-level members:
+        final List<FunctionComputeContext> topFunctions = new ArrayList<>(nModels);
+        final List<GroupComputeContext> topGroups = new ArrayList<>(2);
+        // flattened evaluation plan (composite models only):
+        final List<ComputeStep> plan = new ArrayList<>(nModels);
+
+        // Parse models (hierarchy) and prepare the function contexts:
+        int maxDepth = 0;
         for (Model model : models) {
-            final ModelFunction mf = getModelFunction(model.getType());
-
-            // check model parameters :
-            mf.validate(model);
-
-            // Get parameters to fill the function context :
-            functionContexts.add(new FunctionComputeContext(model.getName(), freqCount,
-                    mf.prepareFluxFunction(model),
-                    mf.prepareFunction(model))
-            );
+            maxDepth = Math.max(maxDepth,
+                    prepareModel(model, null, freqCount, vector, functionContexts, topFunctions, topGroups, plan));
         }
         logger.debug("functionContexts: {}", functionContexts);
 
@@ -361,11 +448,17 @@ public final class ModelManager {
         final double[] totalFlux = (mFluxes != null) ? mFluxes : new double[freqCount];
 
         for (final FunctionComputeContext functionContext : functionContexts) {
+            final GroupComputeContext group = functionContext.getGroup();
+
             AbstractModelFunction.computeFlux(
                     functionContext.getModelFunction().computeSolidAngle(),
                     functionContext.getFluxFunction(), wavelengths,
                     functionContext.getFlux(), totalFlux
             );
+            // accumulate raw flux into enclosing groups:
+            for (GroupComputeContext g = group; g != null; g = g.getParent()) {
+                addFlux(functionContext.getFlux(), g.getFlux());
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("functionContext: {} flux: {}", functionContext, Arrays.toString(functionContext.getFlux()));
             }
@@ -375,10 +468,11 @@ public final class ModelManager {
             logger.debug("totalFlux:   {}", Arrays.toString(totalFlux));
         }
 
-        // normalize flux:
-        for (final FunctionComputeContext functionContext : functionContexts) {
-            AbstractModelFunction.normalizeFlux(functionContext.getFlux(), totalFlux);
-            if (logger.isDebugEnabled()) {
+        // normalize flux per level:
+        normalizeFluxes(topFunctions, topGroups, totalFlux);
+
+        if (logger.isDebugEnabled()) {
+            for (final FunctionComputeContext functionContext : functionContexts) {
                 logger.debug("functionContext: {} normalized flux: {}", functionContext, Arrays.toString(functionContext.getFlux()));
             }
         }
@@ -397,7 +491,133 @@ public final class ModelManager {
                 logger.debug("bandFluxes: {}", bandFluxes);
             }
         }
-        return new ModelFunctionComputeContext(freqCount, functionContexts);
+        final ModelFunctionComputeContext context;
+        if (maxDepth == 0) {
+            // no composite model:
+            context = new ModelFunctionComputeContext(freqCount, functionContexts);
+        } else {
+            logger.debug("plan: {}", plan);
+
+            context = new ModelFunctionComputeContext(freqCount, functionContexts, plan, maxDepth);
+        }
+        TIMER_PREPARE_MODELS.record(System.nanoTime() - start);
+
+        return context;
+    }
+
+    /**
+     * Prepare the given model and its child models (hierarchy) recursively:
+     * the parent component and its children form one group whose position is applied once to the summed
+     * visibilities of its members (children positions are relative to the parent position)
+     *
+     * @param model model to prepare
+     * @param group enclosing group or null if top-level
+     * @param freqCount uv frequency count used to preallocate arrays
+     * @param vector parameter vector (optional)
+     * @param functionContexts list of all function contexts (flattened)
+     * @param levelFunctions list of components at the same level
+     * @param levelGroups list of groups at the same level
+     * @param plan flattened evaluation plan
+     * @return depth of the model hierarchy (0 if no child model)
+     * @throws IllegalArgumentException if a parameter value is invalid !
+     */
+    private int prepareModel(final Model model, final GroupComputeContext group, final int freqCount,
+                             final ParameterVector vector,
+                             final List<FunctionComputeContext> functionContexts,
+                             final List<FunctionComputeContext> levelFunctions,
+                             final List<GroupComputeContext> levelGroups,
+                             final List<ComputeStep> plan) {
+
+        final ModelFunction mf = getModelFunction(model.getType());
+
+        final ModelSlots slots = (vector != null) ? vector.getSlots(model) : null;
+        if (vector != null && slots == null) {
+            throw new IllegalArgumentException("model [" + model.getName() + "] not found in the parameter vector !");
+        }
+
+        // check model parameters :
+        mf.validate(model, slots);
+
+        // Get parameters to fill the function context :
+        final PunctFunction function = mf.prepareFunction(model, slots);
+
+        final List<Model> children = model.getModels();
+
+        if (children.isEmpty()) {
+            final FunctionComputeContext functionContext = new FunctionComputeContext(model.getName(), freqCount,
+                    mf.prepareFluxFunction(model, slots), function, group);
+
+            functionContexts.add(functionContext);
+            levelFunctions.add(functionContext);
+            plan.add(new ComputeStep(functionContext));
+            return 0;
+        }
+
+        // Composite model: the group is located at the parent position:
+        final PunctFunction shiftFunction = new PunctFunction();
+        shiftFunction.setX(function.getX());
+        shiftFunction.setY(function.getY());
+
+        final GroupComputeContext groupContext = new GroupComputeContext(model.getName(), group, freqCount, shiftFunction);
+        levelGroups.add(groupContext);
+
+        plan.add(new ComputeStep(ComputeStep.Type.BEGIN_GROUP, groupContext));
+
+        // parent component at the group origin:
+        function.setX(0d);
+        function.setY(0d);
+
+        final FunctionComputeContext functionContext = new FunctionComputeContext(model.getName(), freqCount,
+                mf.prepareFluxFunction(model, slots), function, groupContext);
+
+        functionContexts.add(functionContext);
+        groupContext.getFunctions().add(functionContext);
+        plan.add(new ComputeStep(functionContext));
+
+        int depth = groupContext.getDepth();
+        for (Model child : children) {
+            depth = Math.max(depth, prepareModel(child, groupContext, freqCount, vector, functionContexts,
+                    groupContext.getFunctions(), groupContext.getGroups(), plan));
+        }
+
+        plan.add(new ComputeStep(ComputeStep.Type.END_GROUP, groupContext));
+
+        return depth;
+    }
+
+    /**
+     * Normalize the fluxes of the given components and groups (same level) by the given level flux
+     * and recursively the fluxes of group members by their (raw) group flux
+     *
+     * @param functions components at the same level
+     * @param groups groups at the same level
+     * @param levelFlux total (raw) flux of the level
+     */
+    private static void normalizeFluxes(final List<FunctionComputeContext> functions,
+                                        final List<GroupComputeContext> groups,
+                                        final double[] levelFlux) {
+
+        for (final GroupComputeContext group : groups) {
+            // normalize members first (raw group flux):
+            normalizeFluxes(group.getFunctions(), group.getGroups(), group.getFlux());
+        }
+        for (final GroupComputeContext group : groups) {
+            AbstractModelFunction.normalizeFlux(group.getFlux(), levelFlux);
+        }
+        for (final FunctionComputeContext functionContext : functions) {
+            AbstractModelFunction.normalizeFlux(functionContext.getFlux(), levelFlux);
+        }
+    }
+
+    /**
+     * Add the given flux array to the given total flux array
+     * @param flux flux to add
+     * @param totalFlux total flux to update
+     */
+    private static void addFlux(final double[] flux, final double[] totalFlux) {
+        for (int l = 0; l < flux.length; l++) {
+            totalFlux[l] += flux[l];
+        }
     }
 
     /**
@@ -409,7 +629,7 @@ public final class ModelManager {
      */
     public HashMap<String, WelfordVariance> getStatsOnFluxWeights(final ModelFunctionComputeContext context) throws IllegalArgumentException {
         if (context != null) {
-            // For now : no composite model supported (hierarchy) !
+            // all components including the ones in composite models (hierarchy):
             final List<FunctionComputeContext> functionContexts = context.getModelFunctionContexts();
 
             final int len = functionContexts.size();
@@ -421,7 +641,12 @@ public final class ModelManager {
                 final WelfordVariance statFluxWeight = new WelfordVariance();
 
                 for (int j = 0; j < flux_weights.length; j++) {
-                    statFluxWeight.add(flux_weights[j]);
+                    double weight = flux_weights[j];
+                    // global weight = product of weights per level:
+                    for (GroupComputeContext g = functionContext.getGroup(); g != null; g = g.getParent()) {
+                        weight *= g.getFlux()[j];
+                    }
+                    statFluxWeight.add(weight);
                 }
                 if (statFluxWeight.isSet()) {
                     map.put(functionContext.getModelName(), statFluxWeight);
@@ -451,24 +676,72 @@ public final class ModelManager {
                 throw new IllegalStateException("incorrect array sizes (Ufreq, VFreq, freqCount) !");
             }
 
+            final long start = System.nanoTime();
+
             vis = context.resetAndGetVis();
 
             final MutableComplex modelVis = context.getModelVis();
 
-            // For now : no composite model supported (hierarchy) !
-            for (FunctionComputeContext functionContext : context.getModelFunctionContexts()) {
-                // get normalized flux contribution from context:
-                final double[] flux_weights = functionContext.getFlux();
-
-                // add the model contribution to the current visibility array :
-                AbstractModelFunction.compute(functionContext.getModelFunction(), flux_weights,
-                        ufreq, vfreq, nVis, vis, modelVis
-                );
+            if (context.isComposite()) {
+                computeModels(context, ufreq, vfreq, nVis, vis, modelVis);
+            } else {
+                for (FunctionComputeContext functionContext : context.getModelFunctionContexts()) {
+                    // get normalized flux contribution from context:
+                    final double[] flux_weights = functionContext.getFlux();
+
+                    // add the model contribution to the current visibility array :
+                    AbstractModelFunction.compute(functionContext.getModelFunction(), flux_weights,
+                            ufreq, vfreq, nVis, vis, modelVis
+                    );
+                }
             }
+            TIMER_COMPUTE_MODELS.record(System.nanoTime() - start);
         }
         return vis;
     }
 
+    /**
+     * Compute the complex visiblity of composite models (hierarchy) following the flattened evaluation plan
+     *
+     * @param context compute context
+     * @param ufreq U frequencies in rad-1
+     * @param vfreq V frequencies in rad-1
+     * @param nVis number of visibility to compute
+     * @param vis complex visibility array (top-level)
+     * @param modelVis complex variable to store model complex contribution
+     */
+    private static void computeModels(final ModelFunctionComputeContext context,
+                                      final double[] ufreq, final double[] vfreq,
+                                      final int nVis, final MutableComplex[] vis, final MutableComplex modelVis) {
+        // current accumulator:
+        MutableComplex[] acc = vis;
+
+        for (final ComputeStep step : context.getPlan()) {
+            switch (step.type) {
+                case COMPONENT:
+                    // add the model contribution (relative to its group) to the current accumulator:
+                    AbstractModelFunction.compute(step.function.getModelFunction(), step.function.getFlux(),
+                            ufreq, vfreq, nVis, acc, modelVis
+                    );
+                    break;
+                case BEGIN_GROUP:
+                    acc = context.resetAndGetGroupVis(step.group.getDepth());
+                    break;
+                case END_GROUP:
+                    final int parentDepth = step.group.getDepth() - 1;
+                    final MutableComplex[] parentAcc = (parentDepth == 0) ? vis : context.getGroupVis(parentDepth);
+
+                    // shift once the summed group visibilities and add its weighted contribution:
+                    AbstractModelFunction.shiftAndAdd(step.group.getShiftFunction(), step.group.getFlux(),
+                            ufreq, vfreq, nVis, acc, parentAcc, modelVis
+                    );
+                    acc = parentAcc;
+                    break;
+                default:
+            }
+        }
+    }
+
     /**
      * Normalize the fluxes and update the model parameters (only for gray models)
      *
@@ -4,17 +4,26 @@
 package fr.jmmc.jmal.model;
 
 import fr.jmmc.jmal.complex.MutableComplex;
+import fr.jmmc.jmal.image.ColorLUT;
 import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.image.FloatArrayCache;
+import fr.jmmc.jmal.image.ImageResampler;
 import fr.jmmc.jmal.image.ImageUtils;
 import fr.jmmc.jmal.image.job.ImageMinMaxJob;
 import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.ParallelThresholds;
 import fr.jmmc.jmal.util.ThreadLocalRandom;
+import fr.jmmc.jmal.util.metrics.Histogram;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
 import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
 import fr.jmmc.jmcs.util.concurrent.ParallelJobExecutor;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -36,12 +45,13 @@ public final class ModelUVMapService {
     public final static Float[] RANGE_PHASE = new Float[]{Float.valueOf(-180f), Float.valueOf(180f)};
     /** Class logger */
     private static final Logger logger = LoggerFactory.getLogger(ModelUVMapService.class.getName());
-    /** threshold to use parallel jobs (65535 UV points) */
-    private final static int JOB_THRESHOLD = 256 * 256 - 1;
     /** Jmcs Parallel Job executor */
     private static final ParallelJobExecutor jobExecutor = ParallelJobExecutor.getInstance();
-    /** shared InterruptedJobException instance */
-    private static final InterruptedJobException ije = new InterruptedJobException("ModelUVMapService.computeUVMap: interrupted");
+    /** metrics */
+    private static final Timer TIMER_COMPUTE_UV_MAP = Metrics.timer("uvmap.computeUVMap");
+    private static final Timer TIMER_COMPUTE_VIS = Metrics.timer("uvmap.computeVis");
+    private static final Timer TIMER_CONVERT = Metrics.timer("uvmap.convert");
+    private static final Histogram HISTO_IMAGE_SIZE = Metrics.histogram("uvmap.imageSize");
 
     /**
      * Forbidden constructor
@@ -136,9 +146,44 @@ public final class ModelUVMapService {
                                          final VisNoiseService noiseService,
                                          final double wavelength,
                                          final boolean uAxisInverted) {
+        return computeUVMap(models, uvRect, refMin, refMax, refVisData, mode, imageSize, colorModel, colorScale,
+                noiseService, wavelength, uAxisInverted, CancellationToken.forCurrentThread());
+    }
 
-        /** Get the current thread to check if the computation is interrupted */
-        final Thread currentThread = Thread.currentThread();
+    /**
+     * Compute the UV Map for the given models and UV ranges
+     *
+     * @param models list of models to use
+     * @param uvRect expected UV frequency area in rad-1
+     * @param refMin minimum reference value used only for sub images
+     * @param refMax maximum reference value used only for sub images
+     * @param refVisData reference complex visibility data (optional)
+     * @param mode image mode (amplitude or phase)
+     * @param imageSize expected number of pixels for both width and height of the generated image
+     * @param colorModel color model to use
+     * @param colorScale color scaling method
+     * @param noiseService optional noise service to compute noisy complex visibilities before computing amplitude or phase
+     * @param wavelength wavelength to use for chromatic models or (0.0 for gray models)
+     * @param uAxisInverted true to revert u-axis orientation (East towards left); false (East towards right)
+     * @param token cancellation token (cancel(), deadline or thread interruption)
+     * @return UVMapData
+     * 
+     * @throws InterruptedJobException if the given token is cancelled
+     * @throws IllegalArgumentException if a model parameter value is invalid
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    public static UVMapData computeUVMap(final List<Model> models,
+                                         final Rectangle2D.Double uvRect,
+                                         final Float refMin, final Float refMax,
+                                         final float[][] refVisData,
+                                         final ImageMode mode,
+                                         final int imageSize,
+                                         final IndexColorModel colorModel,
+                                         final ColorScale colorScale,
+                                         final VisNoiseService noiseService,
+                                         final double wavelength,
+                                         final boolean uAxisInverted,
+                                         final CancellationToken token) {
 
         // Start the computations :
         final long start = System.nanoTime();
@@ -172,16 +217,15 @@ public final class ModelUVMapService {
             final double[] v = computeFrequencySamples(imageSize, uvRect.getY(), uvRect.getMaxY());
 
             // fast interrupt :
-            if (currentThread.isInterrupted()) {
-                throw ije;
-            }
+            token.checkCancelled("ModelUVMapService.computeUVMap");
 
             // 2 - Compute complex visibility for the given models :
             // use single precision for performance (image needs not double precision) :
             visData = new float[imageSize][2 * imageSize];
 
             // Should split the computation in parts ?
-            final int nJobs = ((imageSize * imageSize * models.size()) >= JOB_THRESHOLD) ? jobExecutor.getMaxParallelJob() : 1;
+            final int nJobs = ParallelThresholds.isParallel(ParallelThresholds.Stage.MODEL, (long) imageSize * imageSize * models.size())
+                    ? jobExecutor.getMaxParallelJob() : 1;
 
             final ComputeModelPart[] jobs = new ComputeModelPart[nJobs];
 
@@ -191,36 +235,44 @@ public final class ModelUVMapService {
                 jobContext = (i == 0) ? context : new ModelFunctionComputeContext(context);
 
                 // ensure last job goes until lineEnd:
-                jobs[i] = new ComputeModelPart(jobContext, u, v, imageSize, visData, i, nJobs);
+                jobs[i] = new ComputeModelPart(jobContext, u, v, imageSize, visData, i, nJobs, token);
             }
 
+            final long startVis = System.nanoTime();
+
             // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
             jobExecutor.forkAndJoin("ModelUVMapService.computeUVMap", jobs);
 
+            // fast interrupt (partial visibilities) :
+            token.checkCancelled("ModelUVMapService.computeUVMap");
+
+            TIMER_COMPUTE_VIS.record(System.nanoTime() - startVis);
+
         } else {
             // use reference complex visibility data:
             visData = refVisData;
         }
 
-        // 3 - Extract the amplitude/phase/square amplitude to get the uv map :
-        // data as float [rows][cols]:
-        final float[][] data = convert(imageSize, visData, mode, noiseService);
-
-        // fast interrupt :
-        if (currentThread.isInterrupted()) {
-            throw ije;
-        }
+        // 3 - Extract the amplitude/phase/square amplitude to get the uv map and its range in one pass
+        // (and colors if the color range does not depend on data):
+        final ConvertedData converted = convert(imageSize, visData, mode, noiseService, refMin, refMax,
+                colorModel, colorScale, uAxisInverted, token);
 
         // 4 - Get the image with the given color model and color scale :
         final UVMapData uvMapData = computeImage(uvRect, refMin, refMax, mode, imageSize, colorModel, colorScale,
-                imageSize, visData, data, uvRect, noiseService, 0.0, 0, uAxisInverted);
+                imageSize, visData, converted.data, uvRect, noiseService, 0.0, 0, uAxisInverted, token,
+                converted.min, converted.max, converted.image);
 
         if (wavelength > 0.0) {
             // update wavelength:
             uvMapData.setWaveLength(wavelength);
         }
+        final long duration = System.nanoTime() - start;
+        TIMER_COMPUTE_UV_MAP.record(duration);
+        HISTO_IMAGE_SIZE.update(imageSize);
+
         if (logger.isInfoEnabled()) {
-            logger.info("compute : duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+            logger.info("compute : duration = {} ms.", 1e-6d * duration);
         }
         return uvMapData;
     }
@@ -263,11 +315,55 @@ public final class ModelUVMapService {
                                          final double rotationAngle,
                                          final int rotImgSize,
                                          final boolean uAxisInverted) {
+        return computeImage(uvRect, refMin, refMax, mode, imageSize, colorModel, colorScale, dataSize, data, imgData,
+                uvMapRect, noiseService, rotationAngle, rotImgSize, uAxisInverted, CancellationToken.forCurrentThread());
+    }
+
+    /**
+     * Compute the uv map image given the model image data (amplitude or phase)
+     * 
+     * @param uvRect UV frequency area in rad-1
+     * @param refMin minimum reference value used only for sub images
+     * @param refMax maximum reference value used only for sub images
+     * @param mode image mode (amplitude or phase)
+     * @param imageSize expected number of pixels for both width and height of the generated image
+     * @param colorModel color model to use
+     * @param colorScale color scaling method
+     * @param dataSize number of rows and columns of the model image data
+     * @param data amplitude/phase/square amplitude data
+     * @param imgData model image data (amplitude/phase/square amplitude)
+     * @param uvMapRect concrete UV frequency area in rad-1
+     * @param noiseService optional noise service to compute noisy complex visibilities before computing amplitude or phase
+     * @param rotationAngle rotation angle in degrees (FT only)
+     * @param rotImgSize rotated image size (FT only)
+     * @param uAxisInverted true to revert u-axis orientation (East towards left); false (East towards right)
+     * @param token cancellation token
+     * @return UVMapData
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (intermediate images are recycled)
+     * @throws IllegalArgumentException if a model parameter value is invalid
+     * @throws RuntimeException if any exception occured during the computation
+     */
+    public static UVMapData computeImage(final Rectangle2D.Double uvRect,
+                                         final Float refMin, final Float refMax,
+                                         final ImageMode mode,
+                                         final int imageSize,
+                                         final IndexColorModel colorModel,
+                                         final ColorScale colorScale,
+                                         final int dataSize,
+                                         final float[][] data,
+                                         final float[][] imgData,
+                                         final Rectangle2D.Double uvMapRect,
+                                         final VisNoiseService noiseService,
+                                         final double rotationAngle,
+                                         final int rotImgSize,
+                                         final boolean uAxisInverted,
+                                         final CancellationToken token) {
 
         // ignore zero values if log color scale:
         final ImageMinMaxJob minMaxJob = new ImageMinMaxJob(imgData, dataSize, dataSize, (colorScale == ColorScale.LOGARITHMIC));
 
-        minMaxJob.forkAndJoin();
+        minMaxJob.forkAndJoin(token);
 
         final float dataMin = minMaxJob.getMin();
         final float dataMax = minMaxJob.getMax();
@@ -276,16 +372,175 @@ public final class ModelUVMapService {
             logger.debug("ImageMinMaxJob min: {} - max: {}", dataMin, dataMax);
         }
 
+        return computeImage(uvRect, refMin, refMax, mode, imageSize, colorModel, colorScale, dataSize, data, imgData,
+                uvMapRect, noiseService, rotationAngle, rotImgSize, uAxisInverted, token, dataMin, dataMax, null);
+    }
+
+    /**
+     * Compute the uv map image given the model image data (amplitude or phase) and its range
+     * 
+     * @param uvRect UV frequency area in rad-1
+     * @param refMin minimum reference value used only for sub images
+     * @param refMax maximum reference value used only for sub images
+     * @param mode image mode (amplitude or phase)
+     * @param imageSize expected number of pixels for both width and height of the generated image
+     * @param colorModel color model to use
+     * @param colorScale color scaling method
+     * @param dataSize number of rows and columns of the model image data
+     * @param data amplitude/phase/square amplitude data
+     * @param imgData model image data (amplitude/phase/square amplitude)
+     * @param uvMapRect concrete UV frequency area in rad-1
+     * @param noiseService optional noise service to compute noisy complex visibilities before computing amplitude or phase
+     * @param rotationAngle rotation angle in degrees (FT only)
+     * @param rotImgSize rotated image size (FT only)
+     * @param uAxisInverted true to revert u-axis orientation (East towards left); false (East towards right)
+     * @param token cancellation token
+     * @param dataMin minimum value of the model image data
+     * @param dataMax maximum value of the model image data
+     * @param image optional image already computed from the model image data using the color range
+     * given by getColorRange(mode, colorScale, noiseService, refMin, refMax, dataMin, dataMax)
+     * @return UVMapData
+     * 
+     * @throws InterruptedJobException if the given token is cancelled (intermediate images are recycled)
+     */
+    private static UVMapData computeImage(final Rectangle2D.Double uvRect,
+                                          final Float refMin, final Float refMax,
+                                          final ImageMode mode,
+                                          final int imageSize,
+                                          final IndexColorModel colorModel,
+                                          final ColorScale colorScale,
+                                          final int dataSize,
+                                          final float[][] data,
+                                          final float[][] imgData,
+                                          final Rectangle2D.Double uvMapRect,
+                                          final VisNoiseService noiseService,
+                                          final double rotationAngle,
+                                          final int rotImgSize,
+                                          final boolean uAxisInverted,
+                                          final CancellationToken token,
+                                          final float dataMin, final float dataMax,
+                                          final BufferedImage image) {
+
+        // min - max range used by color conversion:
+        final Float[] range = getColorRange(mode, colorScale, noiseService, refMin, refMax, dataMin, dataMax);
+        if (range == null) {
+            ImageUtils.recycleImage(image);
+            return null;
+        }
         // Get the image with the given color model :
-        final ColorScale usedColorScale;
+        final ColorScale usedColorScale = getColorScale(mode, colorScale);
+
+        final Float min = range[0];
+        final Float max = range[1];
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("value range in [{}, {}]", min, max);
+        }
+
+        // crop properly rotated image to match the UV rect:
+        final int outputSize = (rotationAngle != 0.0) ? rotImgSize : dataSize;
+
+        BufferedImage uvMap;
+
+        if (image == null && (rotationAngle != 0.0 || uAxisInverted)) {
+            // resample values (rotation and flip in one pass) before the color conversion:
+            final AffineTransform at = new AffineTransform();
+
+            if (uAxisInverted) {
+                // Flip the image horizontally to have RA orientation = East is towards the left:
+                at.scale(-1.0, 1.0);
+                at.translate(-outputSize, 0.0);
+            }
+            if (rotationAngle != 0.0) {
+                // center the rotated image:
+                final double offset = (outputSize - dataSize) / 2.0;
+                at.translate(offset, offset);
+                // angle sign is same direction (North -> East), rotation happens at the image center:
+                at.rotate(Math.toRadians(rotationAngle), dataSize / 2.0, dataSize / 2.0);
+            }
+
+            // NaN outside data gives the lowest color and is ignored by histograms:
+            final float[][] resampled = ImageResampler.transform(dataSize, dataSize, imgData,
+                    ImageResampler.getDataTransform(at, dataSize, dataSize, outputSize, outputSize),
+                    outputSize, outputSize, ImageUtils.getResamplerKernel(), Float.NaN, token);
+            try {
+                // throws InterruptedJobException if the token is cancelled (image recycled):
+                uvMap = ImageUtils.createImage(outputSize, outputSize, resampled, min.floatValue(), max.floatValue(),
+                        colorModel, usedColorScale, token);
+            } finally {
+                FloatArrayCache.recycleArray(resampled);
+            }
+        } else if (image != null) {
+            // image already computed (already flipped if uAxisInverted, no rotation):
+            uvMap = image;
+        } else {
+            // throws InterruptedJobException if the token is cancelled (image recycled):
+            uvMap = ImageUtils.createImage(dataSize, dataSize, imgData, min.floatValue(), max.floatValue(), colorModel, usedColorScale, token);
+        }
+
+        // provide results :
+        return new UVMapData(uvRect, mode, imageSize, colorModel, usedColorScale, min, max, Float.valueOf(dataMin), Float.valueOf(dataMax),
+                data, uvMap, outputSize, uvMapRect, noiseService, uAxisInverted);
+    }
+
+    /**
+     * Return the color scaling method used for the given image mode
+     * @param mode image mode (amplitude or phase)
+     * @param colorScale requested color scaling method
+     * @return color scaling method (linear for phase)
+     */
+    private static ColorScale getColorScale(final ImageMode mode, final ColorScale colorScale) {
+        return (mode == ImageMode.PHASE) ? ColorScale.LINEAR : colorScale;
+    }
 
+    /**
+     * Return true if the color range does not depend on the data range
+     * i.e. getColorRange() can be called before computing data (single pass);
+     * histogram based color scales (PERCENTILE or EQUALIZED) always need data
+     * @param mode image mode (amplitude or phase)
+     * @param colorScale color scaling method
+     * @param noiseService optional noise service
+     * @param refMin minimum reference value used only for sub images
+     * @param refMax maximum reference value used only for sub images
+     * @return true if the color range is fixed
+     */
+    private static boolean isFixedColorRange(final ImageMode mode, final ColorScale colorScale, final VisNoiseService noiseService,
+                                             final Float refMin, final Float refMax) {
+        switch (mode) {
+            case SQUARE:
+            case AMP:
+                if (ImageUtils.isHistogramScale(colorScale)) {
+                    return false;
+                }
+                return (refMin != null && refMax != null)
+                        || (colorScale != ColorScale.LOGARITHMIC && (noiseService == null || !noiseService.isEnabled()));
+            case PHASE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Return the min - max range used by color conversion: standard ranges (RANGE_PHASE, RANGE_AMPLITUDE_LINEAR ...)
+     * enlarged to the data range with logarithmic color scale or noise, overriden by the given reference extrema
+     * @param mode image mode (amplitude or phase)
+     * @param colorScale color scaling method
+     * @param noiseService optional noise service
+     * @param refMin minimum reference value used only for sub images
+     * @param refMax maximum reference value used only for sub images
+     * @param dataMin minimum data value (ignored if the color range is fixed)
+     * @param dataMax maximum data value (ignored if the color range is fixed)
+     * @return min - max range or null if the image mode is unsupported
+     */
+    private static Float[] getColorRange(final ImageMode mode, final ColorScale colorScale, final VisNoiseService noiseService,
+                                         final Float refMin, final Float refMax,
+                                         final float dataMin, final float dataMax) {
         // min - max range used by color conversion:
         final Float[] stdRange;
         switch (mode) {
             case SQUARE:
             case AMP:
-                usedColorScale = colorScale;
-
                 if (refMin == null || refMax == null) {
                     if ((colorScale == ColorScale.LOGARITHMIC || (noiseService != null && noiseService.isEnabled()))
                             && dataMin != dataMax && !Float.isInfinite(dataMin) && !Float.isInfinite(dataMax)) {
@@ -311,7 +566,6 @@ public final class ModelUVMapService {
                 stdRange = (colorScale == ColorScale.LOGARITHMIC) ? RANGE_AMPLITUDE_LOGARITHMIC : RANGE_AMPLITUDE_LINEAR;
                 break;
             case PHASE:
-                usedColorScale = ColorScale.LINEAR;
                 stdRange = RANGE_PHASE;
                 break;
             default:
@@ -319,45 +573,7 @@ public final class ModelUVMapService {
         }
 
         // use the given reference extrema to make the value to color conversion :
-        final Float min = (refMin != null) ? refMin : stdRange[0];
-        final Float max = (refMax != null) ? refMax : stdRange[1];
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("value range in [{}, {}]", min, max);
-        }
-
-        // throws InterruptedJobException if the current thread is interrupted (cancelled):
-        BufferedImage uvMap = ImageUtils.createImage(dataSize, dataSize, imgData, min.floatValue(), max.floatValue(), colorModel, usedColorScale);
-
-        final int outputSize;
-        if (rotationAngle != 0.0) {
-            // angle sign is same direction (North -> East):
-            final double theta = Math.toRadians(rotationAngle);
-            // rotation happens at the image center:
-            final double anchorx = uvMap.getWidth() / 2.0;
-            final double anchory = uvMap.getHeight() / 2.0;
-
-            // crop properly rotated image to match the UV rect:
-            outputSize = rotImgSize;
-
-            final AffineTransform at = AffineTransform.getRotateInstance(theta, anchorx, anchory);
-
-            uvMap = ImageUtils.transformImage(uvMap, colorModel, at, outputSize, outputSize);
-        } else {
-            outputSize = dataSize;
-        }
-
-        if (uAxisInverted) {
-            // Flip the image horizontally to have RA orientation = East is towards the left:
-            final AffineTransform at = AffineTransform.getScaleInstance(-1.0, 1.0);
-            at.translate(-outputSize, 0.0);
-
-            uvMap = ImageUtils.transformImage(uvMap, colorModel, at, outputSize, outputSize);
-        }
-
-        // provide results :
-        return new UVMapData(uvRect, mode, imageSize, colorModel, usedColorScale, min, max, Float.valueOf(dataMin), Float.valueOf(dataMax),
-                data, uvMap, outputSize, uvMapRect, noiseService, uAxisInverted);
+        return new Float[]{(refMin != null) ? refMin : stdRange[0], (refMax != null) ? refMax : stdRange[1]};
     }
 
     /**
@@ -403,6 +619,8 @@ public final class ModelUVMapService {
         private final int _jobIndex;
         /** total number of concurrent jobs */
         private final int _jobCount;
+        /** cancellation token */
+        private final CancellationToken _token;
 
         /**
          * Create the task
@@ -414,11 +632,12 @@ public final class ModelUVMapService {
          * @param data visibility data as float[rows][cols] where cols = 2 x imageSize to store complex values as (re, im)
          * @param jobIndex job index used to process data interlaced
          * @param jobCount total number of concurrent jobs
+         * @param token cancellation token
          */
         ComputeModelPart(final ModelFunctionComputeContext context,
                          final double[] u, final double[] v,
                          final int imageSize, final float[][] data,
-                         final int jobIndex, final int jobCount) {
+                         final int jobIndex, final int jobCount, final CancellationToken token) {
 
             this._context = context;
             this._u = u;
@@ -427,6 +646,7 @@ public final class ModelUVMapService {
             this._data = data;
             this._jobIndex = jobIndex;
             this._jobCount = jobCount;
+            this._token = token;
         }
 
         /**
@@ -456,10 +676,10 @@ public final class ModelUVMapService {
 
             final ModelManager modelManager = ModelManager.getInstance();
 
-            /** Get the current thread to check if the computation is interrupted */
-            final Thread currentThread = Thread.currentThread();
+            /** Get the token to check if the computation is cancelled */
+            final CancellationToken token = _token;
 
-            // this step indicates when the thread.isInterrupted() is called in the for loop
+            // this step indicates when the token.isCancelled() is called in the for loop
             final int stepInterrupt = Math.min(4, 1 + imageSize / 32);
 
             // Compute model line by line to reduce memory footprint (complex array, double[] U and v frequencies ...)
@@ -482,7 +702,7 @@ public final class ModelUVMapService {
                 }
 
                 // fast interrupt:
-                if (j % stepInterrupt == 0 && currentThread.isInterrupted()) {
+                if (j % stepInterrupt == 0 && token.isCancelled()) {
                     logger.debug("ComputeModelPart: cancelled (vis)");
                     return;
                 }
@@ -506,14 +726,26 @@ public final class ModelUVMapService {
 
     /**
      * Convert the given FT data (complex data) of the given size to Amplitude or Phase according to the given mode
+     * and compute its range in the same pass; if the color range is fixed (see isFixedColorRange()), the image
+     * is also computed in the same pass
      * @param size number of rows = number of columns / 2 (re, im)
      * @param ftData FT data (complex data)
      * @param mode image mode (amplitude or phase)
      * @param noiseService optional noise service to compute noisy complex visibilities before computing amplitude or phase
-     * @return amplitude or phase image
+     * @param refMin minimum reference value used only for sub images
+     * @param refMax maximum reference value used only for sub images
+     * @param colorModel color model to use
+     * @param colorScale color scaling method
+     * @param uAxisInverted true to flip the image horizontally (mirrored columns written directly)
+     * @param token cancellation token
+     * @return amplitude or phase image, its range and the optional image
+     * @throws InterruptedJobException if the given token is cancelled (the image is recycled)
      */
-    private static float[][] convert(final int size, final float[][] ftData, final ImageMode mode,
-                                     final VisNoiseService noiseService) {
+    private static ConvertedData convert(final int size, final float[][] ftData, final ImageMode mode,
+                                         final VisNoiseService noiseService,
+                                         final Float refMin, final Float refMax,
+                                         final IndexColorModel colorModel, final ColorScale colorScale,
+                                         final boolean uAxisInverted, final CancellationToken token) {
 
         final long start = System.nanoTime();
 
@@ -522,17 +754,52 @@ public final class ModelUVMapService {
         // thread safe data converter:
         final VisConverter converter = VisConverter.create(mode, noiseService);
 
-        /** Get the current thread to check if the computation is interrupted */
-        final Thread currentThread = Thread.currentThread();
+        // ignore zero values if log color scale (see computeImage):
+        final boolean excludeZero = (colorScale == ColorScale.LOGARITHMIC);
+
+        // single pass if the color range does not depend on data:
+        final BufferedImage image;
+        final WritableRaster raster;
+        final int iMaxColor;
+        final float scaledMin, scalingFactor;
+        final boolean doLog10;
 
-        // this step indicates when the thread.isInterrupted() is called in the for loop
+        if (isFixedColorRange(mode, colorScale, noiseService, refMin, refMax)) {
+            final Float[] range = getColorRange(mode, colorScale, noiseService, refMin, refMax, Float.NaN, Float.NaN);
+            final ColorScale usedColorScale = getColorScale(mode, colorScale);
+
+            final float[] scaledMinMax = ImageUtils.scaleMinMax(range[0].floatValue(), range[1].floatValue(), usedColorScale);
+
+            iMaxColor = colorModel.getMapSize() - 1;
+            scaledMin = scaledMinMax[0];
+            scalingFactor = ImageUtils.computeScalingFactor(scaledMinMax[0], scaledMinMax[1], colorModel.getMapSize());
+            doLog10 = (usedColorScale == ColorScale.LOGARITHMIC);
+
+            image = ImageUtils.createImage(size, size, colorModel);
+            raster = image.getRaster();
+        } else {
+            image = null;
+            raster = null;
+            iMaxColor = 0;
+            scaledMin = scalingFactor = 0f;
+            doLog10 = false;
+        }
+
+        // this step indicates when the token.isCancelled() is called in the for loop
         final int stepInterrupt = Math.min(16, 1 + size / 32);
 
         final int nJobs = jobExecutor.getMaxParallelJob();
 
+        // partial ranges:
+        final float[] mins = new float[nJobs];
+        final float[] maxs = new float[nJobs];
+
         // computation tasks:
         final Runnable[] jobs = new Runnable[nJobs];
 
+        // jobs token (stopped on failure without cancelling the given token):
+        final CancellationToken jobToken = token.createChild();
+
         // create tasks:
         for (int i = 0; i < nJobs; i++) {
             final int jobIndex = i;
@@ -542,11 +809,17 @@ public final class ModelUVMapService {
                 public void run() {
                     // random instance dedicated to this thread:
                     final Random threadRandom = ThreadLocalRandom.current();
+                    // pixel row buffer and color table dedicated to this job:
+                    final Object rowBuffer = (raster != null) ? ImageUtils.createRowBuffer(size) : null;
+                    final ColorLUT lut = (raster != null) ? ImageUtils.getColorLUT(colorModel) : null;
 
                     float[] oRow;
                     double re, im;
+                    float value;
+                    float min = Float.POSITIVE_INFINITY;
+                    float max = Float.NEGATIVE_INFINITY;
 
-                    for (int r = jobIndex; r < size; r += nJobs) {
+                    for (int r = jobIndex, lastRow = size - 1; r < size; r += nJobs) {
                         oRow = output[r];
 
                         for (int i = 0, c; i < size; i++) {
@@ -554,26 +827,94 @@ public final class ModelUVMapService {
                             re = ftData[r][c];
                             im = ftData[r][c + 1];
 
-                            oRow[i] = converter.convert(re, im, threadRandom);
+                            oRow[i] = value = converter.convert(re, im, threadRandom);
+
+                            if (excludeZero && value == 0f) {
+                                continue;
+                            }
+                            if (value < min) {
+                                min = value;
+                            }
+                            if (value > max) {
+                                max = value;
+                            }
+                        }
+
+                        if (raster != null) {
+                            // inverse vertical axis (0 at bottom, height at top) and
+                            // flip horizontally to have RA orientation = East is towards the left:
+                            ImageUtils.colorizeRow(oRow, 0, size, lut, iMaxColor, scaledMin, scalingFactor, doLog10,
+                                    uAxisInverted, raster, lastRow - r, rowBuffer);
                         }
 
                         // fast interrupt:
-                        if (r % stepInterrupt == 0 && currentThread.isInterrupted()) {
+                        if (r % stepInterrupt == 0 && jobToken.isCancelled()) {
                             logger.debug("convert: cancelled");
                             return;
                         }
                     }
+                    mins[jobIndex] = min;
+                    maxs[jobIndex] = max;
                 }
             };
         }
 
-        // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
-        jobExecutor.forkAndJoin("ModelUVMapService.convert", jobs);
+        try {
+            // execute jobs in parallel or using current thread if only one job (throws InterruptedJobException if interrupted):
+            jobExecutor.forkAndJoin("ModelUVMapService.convert", jobs);
+
+            // fast interrupt (partial output) :
+            token.checkCancelled("ModelUVMapService.convert");
+
+        } catch (RuntimeException re) {
+            // stop remaining jobs before recycling their image:
+            jobToken.cancel();
+            ImageUtils.recycleImage(image);
+            // rethrow exception:
+            throw re;
+        }
+
+        // merge partial ranges:
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < nJobs; i++) {
+            if (mins[i] < min) {
+                min = mins[i];
+            }
+            if (maxs[i] > max) {
+                max = maxs[i];
+            }
+        }
+
+        final long duration = System.nanoTime() - start;
+        TIMER_CONVERT.record(duration);
 
         if (logger.isInfoEnabled()) {
-            logger.info("convert: duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+            logger.info("convert: duration = {} ms (single pass = {}).", 1e-6d * duration, (image != null));
         }
 
-        return output;
+        return new ConvertedData(output, min, max, image);
+    }
+
+    /**
+     * Result of convert(): amplitude or phase image, its range and the optional image
+     */
+    private static final class ConvertedData {
+
+        /** amplitude or phase data */
+        final float[][] data;
+        /** minimum value */
+        final float min;
+        /** maximum value */
+        final float max;
+        /** optional image (fixed color range) */
+        final BufferedImage image;
+
+        ConvertedData(final float[][] data, final float min, final float max, final BufferedImage image) {
+            this.data = data;
+            this.min = min;
+            this.max = max;
+            this.image = image;
+        }
     }
 }
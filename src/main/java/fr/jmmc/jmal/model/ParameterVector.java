@@ -0,0 +1,295 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.model;
+
+import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmal.model.targetmodel.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the prepared parameter values of given models (hierarchy) as a primitive array (slots):
+ * - the slot indexes of every model are built once, indexed by the parameter ordinal of its model function
+ * - parameter links (shared parameters) are resolved into the slot of the referenced parameter
+ *   (see AbstractModelFunction.resolveParameter())
+ *
+ * Repeated preparations (fitters, simulators) only have to copy values into the slot array
+ * using update() or setValues(double[]) before calling ModelManager.prepareModels(..., ParameterVector).
+ *
+ * Note: this class is not thread-safe.
+ *
+ * @author bourgesl
+ */
+public final class ParameterVector {
+
+    /* members */
+    /** distinct parameters (slot order) */
+    private final Parameter[] parameters;
+    /** parameter values (slots) */
+    private final double[] values;
+    /** slots per model */
+    private final Map<Model, ModelSlots> modelSlots;
+
+    /**
+     * Create the parameter vector for the given models (hierarchy) and copy the current parameter values
+     *
+     * @param models list of models
+     * @return new parameter vector
+     */
+    public static ParameterVector create(final List<Model> models) {
+        final Map<Parameter, Integer> slotMap = new IdentityHashMap<Parameter, Integer>(32);
+        final List<Parameter> parameters = new ArrayList<Parameter>(32);
+        final Map<Model, int[]> modelSlotIndexes = new IdentityHashMap<Model, int[]>(16);
+
+        // 1 - assign one slot per distinct parameter (owned parameters first):
+        collectParameters(models, slotMap, parameters);
+
+        // 2 - resolve the slot indexes per model (links use the slot of the referenced parameter):
+        resolveSlots(ModelManager.getInstance(), models, slotMap, parameters, modelSlotIndexes);
+
+        return new ParameterVector(parameters.toArray(new Parameter[parameters.size()]), modelSlotIndexes);
+    }
+
+    /**
+     * Assign one slot per distinct parameter owned by the given models (hierarchy)
+     * @param models list of models
+     * @param slotMap slot map to fill
+     * @param parameters parameter list to fill
+     */
+    private static void collectParameters(final List<Model> models, final Map<Parameter, Integer> slotMap,
+                                          final List<Parameter> parameters) {
+        for (Model model : models) {
+            for (Parameter parameter : model.getParameters()) {
+                getSlot(parameter, slotMap, parameters);
+            }
+            final List<Model> children = model.getModels();
+            if (!children.isEmpty()) {
+                collectParameters(children, slotMap, parameters);
+            }
+        }
+    }
+
+    /**
+     * Resolve the slot indexes of the given models (hierarchy)
+     * @param mm model manager giving the parameter types of every model type
+     * @param models list of models
+     * @param slotMap slot map
+     * @param parameters parameter list (links to parameters outside the given models get their own slot)
+     * @param modelSlotIndexes slot indexes per model to fill
+     */
+    private static void resolveSlots(final ModelManager mm, final List<Model> models,
+                                     final Map<Parameter, Integer> slotMap, final List<Parameter> parameters,
+                                     final Map<Model, int[]> modelSlotIndexes) {
+        for (Model model : models) {
+            final String[] types = mm.getParameterTypes(model.getType());
+            final int[] slotIndexes = new int[types.length];
+
+            for (int i = 0; i < types.length; i++) {
+                // shared parameters override owned ones:
+                final Parameter parameter = AbstractModelFunction.resolveParameter(model, types[i]);
+                slotIndexes[i] = (parameter != null) ? getSlot(parameter, slotMap, parameters).intValue() : -1;
+            }
+            modelSlotIndexes.put(model, slotIndexes);
+
+            final List<Model> children = model.getModels();
+            if (!children.isEmpty()) {
+                resolveSlots(mm, children, slotMap, parameters, modelSlotIndexes);
+            }
+        }
+    }
+
+    /**
+     * Return the slot of the given parameter (new slot if needed)
+     * @param parameter parameter
+     * @param slotMap slot map
+     * @param parameters parameter list
+     * @return slot index
+     */
+    private static Integer getSlot(final Parameter parameter, final Map<Parameter, Integer> slotMap,
+                                   final List<Parameter> parameters) {
+        Integer slot = slotMap.get(parameter);
+        if (slot == null) {
+            slot = Integer.valueOf(parameters.size());
+            parameters.add(parameter);
+            slotMap.put(parameter, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Private constructor
+     * @param parameters distinct parameters (slot order)
+     * @param modelSlotIndexes slot indexes per model
+     */
+    private ParameterVector(final Parameter[] parameters, final Map<Model, int[]> modelSlotIndexes) {
+        this.parameters = parameters;
+        this.values = new double[parameters.length];
+        this.modelSlots = new IdentityHashMap<Model, ModelSlots>(modelSlotIndexes.size());
+
+        final ModelManager mm = ModelManager.getInstance();
+
+        for (Map.Entry<Model, int[]> e : modelSlotIndexes.entrySet()) {
+            final Model model = e.getKey();
+            this.modelSlots.put(model, new ModelSlots(model, mm.getParameterTypes(model.getType()), e.getValue()));
+        }
+        update();
+    }
+
+    /**
+     * Return the number of slots (distinct parameters)
+     * @return number of slots
+     */
+    public int getSize() {
+        return values.length;
+    }
+
+    /**
+     * Return the parameter of the given slot
+     * @param slot slot index
+     * @return parameter
+     */
+    public Parameter getParameter(final int slot) {
+        return parameters[slot];
+    }
+
+    /**
+     * Return the parameter values (live array)
+     * @return parameter values
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Copy the current values of the parameters into the slots
+     */
+    public void update() {
+        final Parameter[] params = parameters;
+        final double[] v = values;
+
+        for (int i = 0; i < params.length; i++) {
+            v[i] = params[i].getValue();
+        }
+    }
+
+    /**
+     * Copy the given values into the slots
+     * @param src values (same slot order)
+     * @throws IllegalArgumentException if the array length does not match the number of slots
+     */
+    public void setValues(final double[] src) {
+        if (src.length != values.length) {
+            throw new IllegalArgumentException("Invalid array length: " + src.length + "; expected: " + values.length + ".");
+        }
+        System.arraycopy(src, 0, values, 0, values.length);
+    }
+
+    /**
+     * Copy the slot values back into the parameters
+     */
+    public void apply() {
+        final Parameter[] params = parameters;
+        final double[] v = values;
+
+        for (int i = 0; i < params.length; i++) {
+            params[i].setValue(v[i]);
+        }
+    }
+
+    /**
+     * Return the slots of the given model
+     * @param model model
+     * @return slots of the given model or null if the model is not part of this vector
+     */
+    public ModelSlots getSlots(final Model model) {
+        return modelSlots.get(model);
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterVector" + Arrays.toString(values);
+    }
+
+    /**
+     * This class gives an indexed access to the parameter values of one model
+     * (indexed by the parameter ordinal of its model function)
+     */
+    public final class ModelSlots {
+
+        /* members */
+        /** model */
+        final Model model;
+        /** parameter types indexed by parameter ordinal */
+        final String[] types;
+        /** slot index per parameter ordinal (-1 if the parameter is not present in this model) */
+        final int[] slotIndexes;
+
+        /**
+         * Private constructor
+         * @param model model
+         * @param types parameter types indexed by parameter ordinal
+         * @param slotIndexes slot index per parameter ordinal
+         */
+        ModelSlots(final Model model, final String[] types, final int[] slotIndexes) {
+            this.model = model;
+            this.types = types;
+            this.slotIndexes = slotIndexes;
+        }
+
+        /**
+         * Return the slot index of the given parameter ordinal
+         * @param ordinal parameter ordinal
+         * @return slot index or -1 if the parameter is not present in this model
+         */
+        public int getSlot(final int ordinal) {
+            return slotIndexes[ordinal];
+        }
+
+        /**
+         * Return the slot index of the given parameter type
+         * @param type type of the parameter
+         * @return slot index or -1 if the parameter type is not present in this model
+         */
+        public int getSlot(final String type) {
+            for (int i = 0; i < types.length; i++) {
+                if (type.equals(types[i])) {
+                    return slotIndexes[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Return the parameter value of the given ordinal
+         * @param ordinal parameter ordinal
+         * @return parameter value
+         * @throws IllegalArgumentException if the parameter is not present in this model
+         */
+        public double getValue(final int ordinal) {
+            final int slot = slotIndexes[ordinal];
+            if (slot == -1) {
+                throw new IllegalArgumentException("parameter [" + types[ordinal] + "] not found in the model [" + model.getName() + "] !");
+            }
+            return values[slot];
+        }
+
+        /**
+         * Return the parameter of the given ordinal (owned or shared)
+         * @param ordinal parameter ordinal
+         * @return parameter or null if the parameter is not present in this model
+         */
+        public Parameter getParameter(final int ordinal) {
+            final int slot = slotIndexes[ordinal];
+            return (slot != -1) ? parameters[slot] : null;
+        }
+
+        @Override
+        public String toString() {
+            return "ModelSlots[" + model.getName() + "] " + Arrays.toString(types) + " = " + Arrays.toString(slotIndexes);
+        }
+    }
+}
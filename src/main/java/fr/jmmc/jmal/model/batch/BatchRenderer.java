@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.model.batch;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ImageUtils;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.ModelUVMapService;
+import fr.jmmc.jmal.model.UVMapData;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmal.util.CancellationToken;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
+import fr.jmmc.jmcs.util.jaxb.JAXBFactory;
+import fr.jmmc.jmcs.util.jaxb.XmlBindException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+import javax.xml.bind.JAXBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless batch renderer of UV maps: for each target (model file), every combination of the job specification
+ * (sizes, wavelengths, modes and color models) is computed by ModelUVMapService then written by encoder threads:
+ * - complex visibilities are computed once per size and wavelength (once per size for gray models) and shared
+ * by all image modes and color models (reference visibility data, no model preparation)
+ * - computed images (pooled, see ImageUtils) are given to the encoders through a bounded queue so computations
+ * and image writing overlap with a bounded memory footprint; images are recycled once written
+ *
+ * Command line: BatchRenderer &lt;job spec file&gt; &lt;output directory&gt; &lt;model file&gt; ...
+ * (exit code 1 if any image failed)
+ *
+ * @author bourgesl
+ */
+public final class BatchRenderer {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(BatchRenderer.class.getName());
+    /** package name for JAXB generated code */
+    private final static String TM_JAXB_PATH = "fr.jmmc.jmal.model.targetmodel";
+    /** metrics */
+    private final static Timer TIMER_COMPUTE = Metrics.timer("batch.compute");
+    private final static Timer TIMER_ENCODE = Metrics.timer("batch.encode");
+    /** end of queue marker */
+    private final static EncodeTask END = new EncodeTask(null, null);
+
+    /* members */
+    /** job specification */
+    private final BatchSpec _spec;
+    /** output directory */
+    private final File _outputDir;
+    /** number of written images */
+    private final AtomicInteger _imageCount = new AtomicInteger();
+    /** number of failed images */
+    private final AtomicInteger _failureCount = new AtomicInteger();
+    /** first encoding failure */
+    private final AtomicReference<Exception> _encodeFailure = new AtomicReference<Exception>();
+
+    /**
+     * Render the given model files using the given job specification
+     * @param args job spec file, output directory and model files
+     * @throws IOException if an I/O exception occurred
+     */
+    public static void main(final String[] args) throws IOException {
+        // no display needed:
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        if (args.length < 3) {
+            logger.error("Usage: BatchRenderer <job spec file> <output directory> <model file> ...");
+            System.exit(1);
+        }
+        final BatchSpec spec = BatchSpec.load(new File(args[0]));
+
+        final List<File> modelFiles = new ArrayList<File>(args.length - 2);
+        for (int i = 2; i < args.length; i++) {
+            modelFiles.add(new File(args[i]));
+        }
+
+        final BatchRenderer renderer = new BatchRenderer(spec, new File(args[1]));
+        renderer.render(modelFiles);
+
+        System.exit((renderer.getFailureCount() != 0) ? 1 : 0);
+    }
+
+    /**
+     * Create a batch renderer
+     * @param spec job specification
+     * @param outputDir output directory
+     */
+    public BatchRenderer(final BatchSpec spec, final File outputDir) {
+        this._spec = spec;
+        this._outputDir = outputDir;
+    }
+
+    /**
+     * Load the models (target) stored in the given file: child models of the root model if any or the root model
+     * @param file model file (XML)
+     * @return models
+     * @throws IOException if an I/O exception occurred
+     * @throws IllegalArgumentException if the file is not a valid model file
+     */
+    public static List<Model> loadModels(final File file) throws IOException, IllegalArgumentException {
+        final Object result;
+        try {
+            result = JAXBFactory.getInstance(TM_JAXB_PATH).createUnMarshaller().unmarshal(file);
+        } catch (JAXBException je) {
+            throw new IllegalArgumentException("Load failure on " + file, je);
+        } catch (XmlBindException xbe) {
+            throw new IOException("Load failure on " + file, xbe);
+        }
+        if (!(result instanceof Model)) {
+            throw new IllegalArgumentException("No model in " + file);
+        }
+        final Model root = (Model) result;
+        return (root.getModels().isEmpty()) ? Collections.singletonList(root) : root.getModels();
+    }
+
+    /**
+     * Render the given model files (target name = file name without extension)
+     * @param modelFiles model files (XML)
+     * @return number of written images
+     * @throws IOException if an I/O exception occurred (load or encoding failure)
+     */
+    public int render(final List<File> modelFiles) throws IOException {
+        final Map<String, List<Model>> targets = new LinkedHashMap<String, List<Model>>(modelFiles.size());
+
+        for (File file : modelFiles) {
+            final String name = file.getName();
+            final int pos = name.lastIndexOf('.');
+            try {
+                targets.put((pos > 0) ? name.substring(0, pos) : name, loadModels(file));
+            } catch (IllegalArgumentException iae) {
+                logger.warn("Invalid model file: {}", file, iae);
+                _failureCount.addAndGet(_spec.getImageCount());
+            }
+        }
+        return render(targets);
+    }
+
+    /**
+     * Render the given targets
+     * @param targets models keyed by target name (used by file names)
+     * @return number of written images
+     * @throws IOException if an I/O exception occurred (encoding failure)
+     */
+    public int render(final Map<String, List<Model>> targets) throws IOException {
+        if (!_outputDir.isDirectory() && !_outputDir.mkdirs()) {
+            throw new IOException("Unable to create the directory: " + _outputDir);
+        }
+        final long start = System.nanoTime();
+        final int initialCount = _imageCount.get();
+
+        final BlockingQueue<EncodeTask> queue = new ArrayBlockingQueue<EncodeTask>(_spec.getQueueCapacity());
+
+        final Thread[] encoders = new Thread[_spec.getEncoders()];
+        for (int i = 0; i < encoders.length; i++) {
+            encoders[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    encode(queue);
+                }
+            }, "BatchRenderer-encoder-" + i);
+            encoders[i].start();
+        }
+
+        try {
+            for (Map.Entry<String, List<Model>> e : targets.entrySet()) {
+                if (_encodeFailure.get() != null) {
+                    break;
+                }
+                compute(e.getKey(), e.getValue(), queue);
+            }
+        } finally {
+            // stop encoders once the queue is empty:
+            for (int i = 0; i < encoders.length; i++) {
+                putUninterruptibly(queue, END);
+            }
+            for (Thread encoder : encoders) {
+                joinUninterruptibly(encoder);
+            }
+        }
+
+        final Exception failure = _encodeFailure.get();
+        if (failure != null) {
+            throw (failure instanceof IOException) ? (IOException) failure : new IOException("Encoding failure", failure);
+        }
+
+        final int count = _imageCount.get() - initialCount;
+        if (logger.isInfoEnabled()) {
+            logger.info("render: {} images ({} failures) in {} ms.", count, _failureCount.get(), 1e-6d * (System.nanoTime() - start));
+        }
+        return count;
+    }
+
+    /**
+     * Compute all images of the given target and put them in the given queue
+     * @param target target name
+     * @param models target models
+     * @param queue queue of images to encode
+     */
+    private void compute(final String target, final List<Model> models, final BlockingQueue<EncodeTask> queue) {
+        final BatchSpec spec = _spec;
+        final CancellationToken token = CancellationToken.forCurrentThread();
+
+        final double uvMax = spec.getUvMax();
+        final Rectangle2D.Double uvRect = new Rectangle2D.Double();
+        uvRect.setFrameFromDiagonal(-uvMax, -uvMax, uvMax, uvMax);
+
+        final IndexColorModel[] colorModels = new IndexColorModel[spec.getColorModels().length];
+        for (int i = 0; i < colorModels.length; i++) {
+            colorModels[i] = ColorModels.getColorModel(spec.getColorModels()[i]);
+        }
+
+        // gray models do not depend on the wavelength:
+        final boolean gray = ModelManager.getInstance().isGray(models);
+
+        int count = 0;
+        try {
+            for (int size : spec.getSizes()) {
+                float[][] grayVisData = null;
+
+                for (double wavelength : spec.getWavelengths()) {
+                    // complex visibilities shared by all modes and color models:
+                    float[][] visData = grayVisData;
+
+                    for (ImageMode mode : spec.getModes()) {
+                        for (int i = 0; i < colorModels.length; i++) {
+                            final long startCompute = System.nanoTime();
+
+                            final UVMapData uvMapData = ModelUVMapService.computeUVMap(models, uvRect, null, null, visData,
+                                    mode, size, colorModels[i], spec.getColorScale(), null, wavelength, spec.isUAxisInverted(), token);
+
+                            TIMER_COMPUTE.record(System.nanoTime() - startCompute);
+                            count++;
+
+                            if (uvMapData == null || uvMapData.getUvMap() == null) {
+                                logger.warn("No image for target {} ({} {} {})", target, size, mode, spec.getColorModels()[i]);
+                                _failureCount.incrementAndGet();
+                                continue;
+                            }
+                            if (visData == null) {
+                                visData = uvMapData.getData();
+                                if (gray) {
+                                    grayVisData = visData;
+                                }
+                            }
+                            final File file = new File(_outputDir, getFileName(target, size, wavelength, mode,
+                                    spec.getColorModels()[i], spec.getFormat()));
+
+                            // blocks while encoders are busy:
+                            putUninterruptibly(queue, new EncodeTask(file, uvMapData.getUvMap()));
+                        }
+                    }
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            // invalid model parameter: skip this target
+            logger.warn("Invalid models for target {}:", target, iae);
+            _failureCount.addAndGet(spec.getImageCount() - count);
+        }
+    }
+
+    /**
+     * Encoder loop: write and recycle images until the end marker
+     * @param queue queue of images to encode
+     */
+    private void encode(final BlockingQueue<EncodeTask> queue) {
+        for (;;) {
+            final EncodeTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException ie) {
+                logger.info("encode: interrupted");
+                return;
+            }
+            if (task == END) {
+                return;
+            }
+            try {
+                // skip images once failed (recycle only):
+                if (_encodeFailure.get() == null) {
+                    final long start = System.nanoTime();
+
+                    if (!ImageIO.write(task.image, _spec.getFormat(), task.file)) {
+                        throw new IOException("No image writer for format: " + _spec.getFormat());
+                    }
+                    TIMER_ENCODE.record(System.nanoTime() - start);
+                    _imageCount.incrementAndGet();
+
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("encode: {}", task.file);
+                    }
+                } else {
+                    _failureCount.incrementAndGet();
+                }
+            } catch (IOException ioe) {
+                logger.error("encode: failure on {}", task.file, ioe);
+                _failureCount.incrementAndGet();
+                _encodeFailure.compareAndSet(null, ioe);
+            } catch (RuntimeException re) {
+                logger.error("encode: failure on {}", task.file, re);
+                _failureCount.incrementAndGet();
+                _encodeFailure.compareAndSet(null, re);
+            } finally {
+                ImageUtils.recycleImage(task.image);
+            }
+        }
+    }
+
+    /**
+     * Return the file name of the given image
+     * @param target target name
+     * @param size image size
+     * @param wavelength wavelength in meters (0 for gray models)
+     * @param mode image mode
+     * @param colorModel color model name
+     * @param format image format
+     * @return file name like target_256_AMP_Earth[_2.2um].png
+     */
+    public static String getFileName(final String target, final int size, final double wavelength,
+                                     final ImageMode mode, final String colorModel, final String format) {
+        final StringBuilder sb = new StringBuilder(64);
+        sb.append(target).append('_').append(size).append('_').append(mode.name()).append('_').append(colorModel);
+        if (wavelength > 0.0) {
+            sb.append('_').append(new DecimalFormat("0.####", DecimalFormatSymbols.getInstance(Locale.US)).format(1e6 * wavelength)).append("um");
+        }
+        return sb.toString().replaceAll("[^A-Za-z0-9._-]", "_") + '.' + format;
+    }
+
+    /**
+     * Put the given task in the given queue (wait until space is available)
+     * @param queue queue
+     * @param task task to put
+     */
+    private static void putUninterruptibly(final BlockingQueue<EncodeTask> queue, final EncodeTask task) {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                queue.put(task);
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for the given thread to die
+     * @param thread thread to join
+     */
+    private static void joinUninterruptibly(final Thread thread) {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of written images
+     */
+    public int getImageCount() {
+        return _imageCount.get();
+    }
+
+    /**
+     * @return number of failed images
+     */
+    public int getFailureCount() {
+        return _failureCount.get();
+    }
+
+    /**
+     * Image to encode
+     */
+    private static final class EncodeTask {
+
+        /** output file */
+        final File file;
+        /** image (pooled) */
+        final BufferedImage image;
+
+        EncodeTask(final File file, final BufferedImage image) {
+            this.file = file;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.model.batch;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.model.ImageMode;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Batch rendering job specification (see BatchRenderer) loaded from a properties file:
+ * <pre>
+ * # image sizes (pixels)
+ * sizes=256,512
+ * # image modes (SQUARE, AMP, PHASE)
+ * modes=AMP,PHASE
+ * # color model names (see ColorModels)
+ * colorModels=Earth,isophot
+ * # color scaling method (LINEAR, LOGARITHMIC, PERCENTILE, EQUALIZED)
+ * colorScale=LINEAR
+ * # wavelengths in meters (0 for gray models)
+ * wavelengths=0
+ * # UV frequency range [-uvMax; uvMax] in rad-1
+ * uvMax=1e8
+ * # true to revert u-axis orientation (East towards left)
+ * uAxisInverted=false
+ * # image format (ImageIO writer)
+ * format=png
+ * # number of encoder threads and capacity of the queue of images to encode
+ * encoders=1
+ * queueCapacity=8
+ * </pre>
+ * Missing keys keep their default values.
+ *
+ * @author bourgesl
+ */
+public final class BatchSpec {
+
+    /** default UV frequency range in rad-1 */
+    public final static double DEFAULT_UV_MAX = 1e8;
+
+    /* members */
+    /** image sizes */
+    private int[] sizes = new int[]{256};
+    /** image modes */
+    private ImageMode[] modes = new ImageMode[]{ImageMode.AMP};
+    /** color model names */
+    private String[] colorModels = new String[]{ColorModels.DEFAULT_COLOR_MODEL};
+    /** color scaling method */
+    private ColorScale colorScale = ColorScale.LINEAR;
+    /** wavelengths in meters (0 for gray models) */
+    private double[] wavelengths = new double[]{0.0};
+    /** UV frequency range [-uvMax; uvMax] in rad-1 */
+    private double uvMax = DEFAULT_UV_MAX;
+    /** true to revert u-axis orientation */
+    private boolean uAxisInverted = false;
+    /** image format */
+    private String format = "png";
+    /** number of encoder threads */
+    private int encoders = 1;
+    /** capacity of the queue of images to encode */
+    private int queueCapacity = 8;
+
+    /**
+     * Create a job specification with default values
+     */
+    public BatchSpec() {
+        super();
+    }
+
+    /**
+     * Load the job specification from the given properties file
+     * @param file properties file
+     * @return job specification
+     * @throws IOException if an I/O exception occurred
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    public static BatchSpec load(final File file) throws IOException, IllegalArgumentException {
+        final Properties props = new Properties();
+
+        final InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        return parse(props);
+    }
+
+    /**
+     * Parse the job specification from the given properties
+     * @param props properties
+     * @return job specification
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    public static BatchSpec parse(final Properties props) throws IllegalArgumentException {
+        final BatchSpec spec = new BatchSpec();
+        String value;
+
+        if ((value = props.getProperty("sizes")) != null) {
+            final String[] items = split(value);
+            final int[] values = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                values[i] = Integer.parseInt(items[i]);
+            }
+            spec.setSizes(values);
+        }
+        if ((value = props.getProperty("modes")) != null) {
+            final String[] items = split(value);
+            final ImageMode[] values = new ImageMode[items.length];
+            for (int i = 0; i < items.length; i++) {
+                values[i] = ImageMode.valueOf(items[i]);
+            }
+            spec.setModes(values);
+        }
+        if ((value = props.getProperty("colorModels")) != null) {
+            spec.setColorModels(split(value));
+        }
+        if ((value = props.getProperty("colorScale")) != null) {
+            spec.setColorScale(ColorScale.valueOf(value.trim()));
+        }
+        if ((value = props.getProperty("wavelengths")) != null) {
+            final String[] items = split(value);
+            final double[] values = new double[items.length];
+            for (int i = 0; i < items.length; i++) {
+                values[i] = Double.parseDouble(items[i]);
+            }
+            spec.setWavelengths(values);
+        }
+        if ((value = props.getProperty("uvMax")) != null) {
+            spec.setUvMax(Double.parseDouble(value.trim()));
+        }
+        if ((value = props.getProperty("uAxisInverted")) != null) {
+            spec.setUAxisInverted(Boolean.parseBoolean(value.trim()));
+        }
+        if ((value = props.getProperty("format")) != null) {
+            spec.setFormat(value.trim());
+        }
+        if ((value = props.getProperty("encoders")) != null) {
+            spec.setEncoders(Integer.parseInt(value.trim()));
+        }
+        if ((value = props.getProperty("queueCapacity")) != null) {
+            spec.setQueueCapacity(Integer.parseInt(value.trim()));
+        }
+        return spec;
+    }
+
+    /**
+     * Split the given comma separated list
+     * @param value comma separated list
+     * @return trimmed items
+     * @throws IllegalArgumentException if the list is empty
+     */
+    private static String[] split(final String value) throws IllegalArgumentException {
+        final String[] items = value.trim().split("\\s*,\\s*");
+        if (items.length == 0 || items[0].length() == 0) {
+            throw new IllegalArgumentException("Empty list: " + value);
+        }
+        return items;
+    }
+
+    /**
+     * @return number of images rendered per target
+     */
+    public int getImageCount() {
+        return sizes.length * modes.length * colorModels.length * wavelengths.length;
+    }
+
+    public int[] getSizes() {
+        return sizes;
+    }
+
+    public void setSizes(final int[] sizes) {
+        for (int size : sizes) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Invalid image size: " + size);
+            }
+        }
+        this.sizes = sizes;
+    }
+
+    public ImageMode[] getModes() {
+        return modes;
+    }
+
+    public void setModes(final ImageMode[] modes) {
+        this.modes = modes;
+    }
+
+    public String[] getColorModels() {
+        return colorModels;
+    }
+
+    public void setColorModels(final String[] colorModels) {
+        this.colorModels = colorModels;
+    }
+
+    public ColorScale getColorScale() {
+        return colorScale;
+    }
+
+    public void setColorScale(final ColorScale colorScale) {
+        this.colorScale = colorScale;
+    }
+
+    public double[] getWavelengths() {
+        return wavelengths;
+    }
+
+    public void setWavelengths(final double[] wavelengths) {
+        this.wavelengths = wavelengths;
+    }
+
+    public double getUvMax() {
+        return uvMax;
+    }
+
+    public void setUvMax(final double uvMax) {
+        if (!(uvMax > 0.0)) {
+            throw new IllegalArgumentException("Invalid uv max: " + uvMax);
+        }
+        this.uvMax = uvMax;
+    }
+
+    public boolean isUAxisInverted() {
+        return uAxisInverted;
+    }
+
+    public void setUAxisInverted(final boolean uAxisInverted) {
+        this.uAxisInverted = uAxisInverted;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(final String format) {
+        this.format = format;
+    }
+
+    public int getEncoders() {
+        return encoders;
+    }
+
+    public void setEncoders(final int encoders) {
+        this.encoders = Math.max(1, encoders);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(final int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSpec{sizes=" + Arrays.toString(sizes) + ", modes=" + Arrays.toString(modes)
+                + ", colorModels=" + Arrays.toString(colorModels) + ", colorScale=" + colorScale
+                + ", wavelengths=" + Arrays.toString(wavelengths) + ", uvMax=" + uvMax
+                + ", uAxisInverted=" + uAxisInverted + ", format=" + format
+                + ", encoders=" + encoders + ", queueCapacity=" + queueCapacity + '}';
+    }
+}
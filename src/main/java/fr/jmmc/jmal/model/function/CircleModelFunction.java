@@ -4,6 +4,7 @@
 package fr.jmmc.jmal.model.function;
 
 import fr.jmmc.jmal.model.AbstractModelFunction;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.WavelengthVariant;
 import fr.jmmc.jmal.model.function.math.CircleFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -23,11 +24,17 @@ public final class CircleModelFunction extends AbstractModelFunction<CircleFunct
             + "FLUX_WEIGHT is the intensity coefficient. FLUX_WEIGHT=1 means total energy is 1. \n\n"
             + "The function returns an error if DIAMETER is negative.";
 
+    /* members */
+    /** ordinal of the diameter parameter */
+    private final int ordinalDiameter;
+
     /**
      * Constructor
      */
     public CircleModelFunction() {
         super(WavelengthVariant.Const);
+        // parameter ordinals:
+        this.ordinalDiameter = getParameterOrdinal(PARAM_DIAMETER);
     }
 
     /**
@@ -65,18 +72,19 @@ public final class CircleModelFunction extends AbstractModelFunction<CircleFunct
      * Create the computation function for the given model :
      * Get model parameters to fill the function context
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
     @Override
-    protected CircleFunction createFunction(final Model model) {
+    protected CircleFunction createFunction(final Model model, final ModelSlots slots) {
         final CircleFunction function = new CircleFunction();
         function.setGray(isGray());
 
         // Get parameters to fill the context :
-        function.setX(getParameterValue(model, PARAM_X));
-        function.setY(getParameterValue(model, PARAM_Y));
+        function.setX(getParameterValue(model, slots, ordinalX));
+        function.setY(getParameterValue(model, slots, ordinalY));
 
-        function.setDiameter(getParameterValue(model, PARAM_DIAMETER));
+        function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
 
         return function;
     }
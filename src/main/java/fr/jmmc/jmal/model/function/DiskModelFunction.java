@@ -5,6 +5,7 @@ package fr.jmmc.jmal.model.function;
 
 import fr.jmmc.jmal.model.AbstractModelFunction;
 import fr.jmmc.jmal.model.ModelVariant;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.WavelengthVariant;
 import fr.jmmc.jmal.model.function.math.DiskFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -96,6 +97,12 @@ public final class DiskModelFunction extends AbstractModelFunction<DiskFunction>
     /* members */
     /** model variant */
     private final ModelVariant variant;
+    /** ordinal of the diameter parameter */
+    private final int ordinalDiameter;
+    /** ordinal of the axis ratio parameter (elongated or flattened) or -1 */
+    private final int ordinalAxisRatio;
+    /** ordinal of the position angle parameter (elongated or flattened) or -1 */
+    private final int ordinalAngle;
 
     /**
      * Constructor for the standard variant
@@ -128,6 +135,11 @@ public final class DiskModelFunction extends AbstractModelFunction<DiskFunction>
     public DiskModelFunction(final WavelengthVariant wlVariant, final ModelVariant variant) {
         super(wlVariant);
         this.variant = variant;
+        // parameter ordinals (variant specific):
+        this.ordinalDiameter = getParameterOrdinal((variant == ModelVariant.Elongated) ? PARAM_MINOR_AXIS_DIAMETER
+                : ((variant == ModelVariant.Flattened) ? PARAM_MAJOR_AXIS_DIAMETER : PARAM_DIAMETER));
+        this.ordinalAxisRatio = getParameterOrdinal((variant == ModelVariant.Flattened) ? PARAM_FLATTEN_RATIO : PARAM_ELONG_RATIO);
+        this.ordinalAngle = getParameterOrdinal((variant == ModelVariant.Flattened) ? PARAM_MINOR_AXIS_ANGLE : PARAM_MAJOR_AXIS_ANGLE);
     }
 
     /**
@@ -195,32 +207,33 @@ public final class DiskModelFunction extends AbstractModelFunction<DiskFunction>
      * Create the computation function for the given model :
      * Get model parameters to fill the function context
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
     @Override
-    protected DiskFunction createFunction(final Model model) {
+    protected DiskFunction createFunction(final Model model, final ModelSlots slots) {
         final DiskFunction function = new DiskFunction();
         function.setGray(isGray());
 
         // Get parameters to fill the context :
-        function.setX(getParameterValue(model, PARAM_X));
-        function.setY(getParameterValue(model, PARAM_Y));
+        function.setX(getParameterValue(model, slots, ordinalX));
+        function.setY(getParameterValue(model, slots, ordinalY));
 
         // Variant specific code :
         switch (this.variant) {
             default:
             case Standard:
-                function.setDiameter(getParameterValue(model, PARAM_DIAMETER));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
                 break;
             case Elongated:
-                function.setDiameter(getParameterValue(model, PARAM_MINOR_AXIS_DIAMETER));
-                function.setAxisRatio(getParameterValue(model, PARAM_ELONG_RATIO));
-                function.setPositionAngle(getParameterValue(model, PARAM_MAJOR_AXIS_ANGLE));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+                function.setAxisRatio(getParameterValue(model, slots, ordinalAxisRatio));
+                function.setPositionAngle(getParameterValue(model, slots, ordinalAngle));
                 break;
             case Flattened:
-                function.setDiameter(getParameterValue(model, PARAM_MAJOR_AXIS_DIAMETER));
-                function.setAxisRatio(1.0 / getParameterValue(model, PARAM_FLATTEN_RATIO));
-                function.setPositionAngle(getParameterValue(model, PARAM_MINOR_AXIS_ANGLE));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+                function.setAxisRatio(1.0 / getParameterValue(model, slots, ordinalAxisRatio));
+                function.setPositionAngle(getParameterValue(model, slots, ordinalAngle));
                 break;
         }
 
@@ -5,6 +5,7 @@ package fr.jmmc.jmal.model.function;
 
 import fr.jmmc.jmal.model.AbstractModelFunction;
 import fr.jmmc.jmal.model.ModelVariant;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.WavelengthVariant;
 import fr.jmmc.jmal.model.function.math.GaussianFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -108,6 +109,12 @@ public final class GaussianModelFunction extends AbstractModelFunction<GaussianF
     /* members */
     /** model variant */
     private final ModelVariant variant;
+    /** ordinal of the diameter parameter */
+    private final int ordinalDiameter;
+    /** ordinal of the axis ratio parameter (elongated or flattened) or -1 */
+    private final int ordinalAxisRatio;
+    /** ordinal of the position angle parameter (elongated or flattened) or -1 */
+    private final int ordinalAngle;
 
     /**
      * Constructor for the standard variant
@@ -140,6 +147,11 @@ public final class GaussianModelFunction extends AbstractModelFunction<GaussianF
     public GaussianModelFunction(final WavelengthVariant wlVariant, final ModelVariant variant) {
         super(wlVariant);
         this.variant = variant;
+        // parameter ordinals (variant specific):
+        this.ordinalDiameter = getParameterOrdinal((variant == ModelVariant.Elongated) ? PARAM_MINOR_AXIS_FWHM
+                : ((variant == ModelVariant.Flattened) ? PARAM_MAJOR_AXIS_FWHM : PARAM_FWHM));
+        this.ordinalAxisRatio = getParameterOrdinal((variant == ModelVariant.Flattened) ? PARAM_FLATTEN_RATIO : PARAM_ELONG_RATIO);
+        this.ordinalAngle = getParameterOrdinal((variant == ModelVariant.Flattened) ? PARAM_MINOR_AXIS_ANGLE : PARAM_MAJOR_AXIS_ANGLE);
     }
 
     /**
@@ -207,32 +219,33 @@ public final class GaussianModelFunction extends AbstractModelFunction<GaussianF
      * Create the computation function for the given model :
      * Get model parameters to fill the function context
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
     @Override
-    protected GaussianFunction createFunction(final Model model) {
+    protected GaussianFunction createFunction(final Model model, final ModelSlots slots) {
         final GaussianFunction function = new GaussianFunction();
         function.setGray(isGray());
 
         // Get parameters to fill the context :
-        function.setX(getParameterValue(model, PARAM_X));
-        function.setY(getParameterValue(model, PARAM_Y));
+        function.setX(getParameterValue(model, slots, ordinalX));
+        function.setY(getParameterValue(model, slots, ordinalY));
 
         // Variant specific code :
         switch (this.variant) {
             default:
             case Standard:
-                function.setDiameter(getParameterValue(model, PARAM_FWHM));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
                 break;
             case Elongated:
-                function.setDiameter(getParameterValue(model, PARAM_MINOR_AXIS_FWHM));
-                function.setAxisRatio(getParameterValue(model, PARAM_ELONG_RATIO));
-                function.setPositionAngle(getParameterValue(model, PARAM_MAJOR_AXIS_ANGLE));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+                function.setAxisRatio(getParameterValue(model, slots, ordinalAxisRatio));
+                function.setPositionAngle(getParameterValue(model, slots, ordinalAngle));
                 break;
             case Flattened:
-                function.setDiameter(getParameterValue(model, PARAM_MAJOR_AXIS_FWHM));
-                function.setAxisRatio(1.0 / getParameterValue(model, PARAM_FLATTEN_RATIO));
-                function.setPositionAngle(getParameterValue(model, PARAM_MINOR_AXIS_ANGLE));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+                function.setAxisRatio(1.0 / getParameterValue(model, slots, ordinalAxisRatio));
+                function.setPositionAngle(getParameterValue(model, slots, ordinalAngle));
                 break;
         }
 
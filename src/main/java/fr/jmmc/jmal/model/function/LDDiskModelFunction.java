@@ -4,6 +4,7 @@
 package fr.jmmc.jmal.model.function;
 
 import fr.jmmc.jmal.model.AbstractModelFunction;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.WavelengthVariant;
 import fr.jmmc.jmal.model.function.math.LDDiskFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -33,11 +34,23 @@ public final class LDDiskModelFunction extends AbstractModelFunction<LDDiskFunct
     /** Parameter type for the parameter a2_coeff */
     public final static String PARAM_A2 = "a2_coeff";
 
+    /* members */
+    /** ordinal of the diameter parameter */
+    private final int ordinalDiameter;
+    /** ordinal of the a1 coefficient parameter */
+    private final int ordinalA1;
+    /** ordinal of the a2 coefficient parameter */
+    private final int ordinalA2;
+
     /**
      * Constructor
      */
     public LDDiskModelFunction() {
         super(WavelengthVariant.Const);
+        // parameter ordinals:
+        this.ordinalDiameter = getParameterOrdinal(PARAM_DIAMETER);
+        this.ordinalA1 = getParameterOrdinal(PARAM_A1);
+        this.ordinalA2 = getParameterOrdinal(PARAM_A2);
     }
 
     /**
@@ -91,20 +104,21 @@ public final class LDDiskModelFunction extends AbstractModelFunction<LDDiskFunct
      * Create the computation function for the given model :
      * Get model parameters to fill the function context
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
     @Override
-    protected LDDiskFunction createFunction(final Model model) {
+    protected LDDiskFunction createFunction(final Model model, final ModelSlots slots) {
         final LDDiskFunction function = new LDDiskFunction();
         function.setGray(isGray());
 
         // Get parameters to fill the context :
-        function.setX(getParameterValue(model, PARAM_X));
-        function.setY(getParameterValue(model, PARAM_Y));
+        function.setX(getParameterValue(model, slots, ordinalX));
+        function.setY(getParameterValue(model, slots, ordinalY));
 
-        function.setDiameter(getParameterValue(model, PARAM_DIAMETER));
-        function.setA1(getParameterValue(model, PARAM_A1));
-        function.setA2(getParameterValue(model, PARAM_A2));
+        function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+        function.setA1(getParameterValue(model, slots, ordinalA1));
+        function.setA2(getParameterValue(model, slots, ordinalA2));
 
         return function;
     }
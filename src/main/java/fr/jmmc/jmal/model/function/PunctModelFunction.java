@@ -4,6 +4,7 @@
 package fr.jmmc.jmal.model.function;
 
 import fr.jmmc.jmal.model.AbstractModelFunction;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.WavelengthVariant;
 import fr.jmmc.jmal.model.function.math.PunctFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -60,16 +61,17 @@ public final class PunctModelFunction extends AbstractModelFunction<PunctFunctio
      * Create the computation function for the given model :
      * Get model parameters to fill the function context
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
     @Override
-    protected PunctFunction createFunction(final Model model) {
+    protected PunctFunction createFunction(final Model model, final ModelSlots slots) {
         final PunctFunction function = new PunctFunction();
         function.setGray(isGray());
 
         // Get parameters to fill the context :
-        function.setX(getParameterValue(model, PARAM_X));
-        function.setY(getParameterValue(model, PARAM_Y));
+        function.setX(getParameterValue(model, slots, ordinalX));
+        function.setY(getParameterValue(model, slots, ordinalY));
 
         return function;
     }
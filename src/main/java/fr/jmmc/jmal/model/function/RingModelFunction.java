@@ -5,6 +5,7 @@ package fr.jmmc.jmal.model.function;
 
 import fr.jmmc.jmal.model.AbstractModelFunction;
 import fr.jmmc.jmal.model.ModelVariant;
+import fr.jmmc.jmal.model.ParameterVector.ModelSlots;
 import fr.jmmc.jmal.model.WavelengthVariant;
 import fr.jmmc.jmal.model.function.math.RingFunction;
 import fr.jmmc.jmal.model.targetmodel.Model;
@@ -124,6 +125,14 @@ public final class RingModelFunction extends AbstractModelFunction<RingFunction>
     /* members */
     /** model variant */
     private final ModelVariant variant;
+    /** ordinal of the diameter parameter */
+    private final int ordinalDiameter;
+    /** ordinal of the axis ratio parameter (elongated or flattened) or -1 */
+    private final int ordinalAxisRatio;
+    /** ordinal of the position angle parameter (elongated or flattened) or -1 */
+    private final int ordinalAngle;
+    /** ordinal of the width parameter */
+    private final int ordinalWidth;
 
     /**
      * Constructor for the standard variant
@@ -156,6 +165,12 @@ public final class RingModelFunction extends AbstractModelFunction<RingFunction>
     public RingModelFunction(final WavelengthVariant wlVariant, final ModelVariant variant) {
         super(wlVariant);
         this.variant = variant;
+        // parameter ordinals (variant specific):
+        this.ordinalDiameter = getParameterOrdinal((variant == ModelVariant.Elongated) ? PARAM_MINOR_INTERNAL_DIAMETER
+                : ((variant == ModelVariant.Flattened) ? PARAM_MAJOR_INTERNAL_DIAMETER : PARAM_DIAMETER));
+        this.ordinalAxisRatio = getParameterOrdinal((variant == ModelVariant.Flattened) ? PARAM_FLATTEN_RATIO : PARAM_ELONG_RATIO);
+        this.ordinalAngle = getParameterOrdinal((variant == ModelVariant.Flattened) ? PARAM_MINOR_AXIS_ANGLE : PARAM_MAJOR_AXIS_ANGLE);
+        this.ordinalWidth = getParameterOrdinal(PARAM_WIDTH);
     }
 
     /**
@@ -226,35 +241,36 @@ public final class RingModelFunction extends AbstractModelFunction<RingFunction>
      * Create the computation function for the given model :
      * Get model parameters to fill the function context
      * @param model model instance
+     * @param slots prepared parameter slots or null to use model parameters directly
      * @return model function
      */
     @Override
-    protected RingFunction createFunction(final Model model) {
+    protected RingFunction createFunction(final Model model, final ModelSlots slots) {
         final RingFunction function = new RingFunction();
         function.setGray(isGray());
 
         // Get parameters to fill the context :
-        function.setX(getParameterValue(model, PARAM_X));
-        function.setY(getParameterValue(model, PARAM_Y));
+        function.setX(getParameterValue(model, slots, ordinalX));
+        function.setY(getParameterValue(model, slots, ordinalY));
 
         // Variant specific code :
         switch (this.variant) {
             default:
             case Standard:
-                function.setDiameter(getParameterValue(model, PARAM_DIAMETER));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
                 break;
             case Elongated:
-                function.setDiameter(getParameterValue(model, PARAM_MINOR_INTERNAL_DIAMETER));
-                function.setAxisRatio(getParameterValue(model, PARAM_ELONG_RATIO));
-                function.setPositionAngle(getParameterValue(model, PARAM_MAJOR_AXIS_ANGLE));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+                function.setAxisRatio(getParameterValue(model, slots, ordinalAxisRatio));
+                function.setPositionAngle(getParameterValue(model, slots, ordinalAngle));
                 break;
             case Flattened:
-                function.setDiameter(getParameterValue(model, PARAM_MAJOR_INTERNAL_DIAMETER));
-                function.setAxisRatio(1.0 / getParameterValue(model, PARAM_FLATTEN_RATIO));
-                function.setPositionAngle(getParameterValue(model, PARAM_MINOR_AXIS_ANGLE));
+                function.setDiameter(getParameterValue(model, slots, ordinalDiameter));
+                function.setAxisRatio(1.0 / getParameterValue(model, slots, ordinalAxisRatio));
+                function.setPositionAngle(getParameterValue(model, slots, ordinalAngle));
                 break;
         }
-        function.setWidth(getParameterValue(model, PARAM_WIDTH));
+        function.setWidth(getParameterValue(model, slots, ordinalWidth));
 
         return function;
     }
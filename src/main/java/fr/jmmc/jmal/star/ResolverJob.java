@@ -5,6 +5,10 @@ package fr.jmmc.jmal.star;
 
 import fr.jmmc.jmal.star.StarResolver.ServiceType;
 import static fr.jmmc.jmal.star.StarResolver.USE_CACHE_DEV;
+import fr.jmmc.jmal.util.metrics.Counter;
+import fr.jmmc.jmal.util.metrics.Histogram;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import fr.jmmc.jmal.util.metrics.Timer;
 import fr.jmmc.jmcs.data.preference.SessionSettingsPreferences;
 import fr.jmmc.jmcs.network.http.Http;
 import fr.jmmc.jmcs.network.http.HttpResult;
@@ -38,6 +42,11 @@ public abstract class ResolverJob implements Callable<Object> {
     public static final int HTTP_SOCKET_READ_TIMEOUT_LARGE = 5 * HTTP_SOCKET_READ_TIMEOUT_SMALL;
     /** threshold to consider query is large (100 ids) */
     public static final int HTTP_THREHOLD_LARGE = 100;
+    /** metrics */
+    private static final Timer TIMER_QUERY = Metrics.timer("star.resolver.query");
+    private static final Counter COUNTER_FAILURE = Metrics.counter("star.resolver.failure");
+    private static final Counter COUNTER_CACHE_HIT = Metrics.counter("star.resolver.cache.hit");
+    private static final Histogram HISTO_NAMES = Metrics.histogram("star.resolver.names");
 
     /** empty String array */
     public final static String[] EMPTY_STRING = new String[0];
@@ -190,6 +199,7 @@ public abstract class ResolverJob implements Callable<Object> {
                     cachedFile.setLastModified(System.currentTimeMillis());
 
                     _logger.info("using cached result: " + cachedFile.getAbsolutePath());
+                    COUNTER_CACHE_HIT.increment();
                     return new HttpResult(response);
                 } catch (IOException ioe) {
                     _logger.info("unable to read cached result: " + cachedFile.getAbsolutePath(), ioe);
@@ -239,7 +249,11 @@ public abstract class ResolverJob implements Callable<Object> {
                 // execute query:
                 final HttpResult httpResult = Http.execute(client, method);
 
-                _logger.info("ResolverJob.queryResolver: duration = {} ms.", 1e-6d * (System.nanoTime() - start));
+                final long duration = System.nanoTime() - start;
+                TIMER_QUERY.record(duration);
+                HISTO_NAMES.update(ids.size());
+
+                _logger.info("ResolverJob.queryResolver: duration = {} ms.", 1e-6d * duration);
 
                 if (httpResult != null) {
                     response = httpResult.getResponse();
@@ -250,6 +264,7 @@ public abstract class ResolverJob implements Callable<Object> {
             } catch (IOException ioe) {
                 final String eMsg = getExceptionMessage(ioe);
                 _logger.info("Resolver service connection failed: {}", eMsg);
+                COUNTER_FAILURE.increment();
                 if (ioMessages == null) {
                     ioMessages = new ArrayList<String>(5);
                 }
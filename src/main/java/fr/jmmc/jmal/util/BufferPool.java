@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.util;
+
+import fr.jmmc.jmal.util.metrics.Counter;
+import fr.jmmc.jmal.util.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generic pool of (dirty) buffers of <K> items sharing a global byte budget.
+ *
+ * Items are pooled by exact shape [N][M] in lock-free stacks (concurrent map of stacks: no global lock
+ * nor queue traversal). Shapes are grouped by power-of-two size classes (item bytes) and the largest
+ * classes are evicted first when the global budget is exceeded.
+ *
+ * System properties:
+ * - jmal.pool.budget (default max heap / 8): global budget in megabytes
+ * - jmal.pool.checks (default false): detect duplicates (item recycled twice) and track acquired items
+ * to report leaks (items never recycled) with their acquisition stack
+ *
+ * @author bourgesl
+ * @param <K> class type
+ */
+public abstract class BufferPool<K> {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class.getName());
+    /** global budget in bytes */
+    public static final long BUDGET;
+    /** check duplicates and leaks */
+    public static final boolean DO_CHECKS = Boolean.getBoolean("jmal.pool.checks");
+    /** pooled bytes (all pools) */
+    private static final AtomicLong pooledBytes = new AtomicLong();
+    /** all pools (eviction and statistics) */
+    private static final List<BufferPool<?>> pools = new CopyOnWriteArrayList<BufferPool<?>>();
+
+    static {
+        final long budgetMB = Long.getLong("jmal.pool.budget", -1L);
+        BUDGET = (budgetMB >= 0L) ? (budgetMB << 20) : (Runtime.getRuntime().maxMemory() / 8L);
+    }
+
+    /* members */
+    /** pool name */
+    private final String name;
+    /** stacks keyed by shape */
+    private final ConcurrentHashMap<Long, Stack<K>> stacks = new ConcurrentHashMap<Long, Stack<K>>();
+    /** pooled item identities (duplicate check) */
+    private final Set<K> pooled;
+    /** acquired items and their acquisition stack (leak check) */
+    private final Map<K, Throwable> acquired;
+    /** metrics */
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictCounter;
+
+    /**
+     * Create a new pool
+     * @param name pool name (metrics cache.<name>.hit/miss/evict)
+     */
+    protected BufferPool(final String name) {
+        this.name = name;
+        this.hitCounter = Metrics.counter("cache." + name + ".hit");
+        this.missCounter = Metrics.counter("cache." + name + ".miss");
+        this.evictCounter = Metrics.counter("cache." + name + ".evict");
+        if (DO_CHECKS) {
+            this.pooled = Collections.newSetFromMap(new IdentityHashMap<K, Boolean>());
+            // pooled types (arrays, images) use identity equals / hashCode:
+            this.acquired = new WeakHashMap<K, Throwable>();
+        } else {
+            this.pooled = null;
+            this.acquired = null;
+        }
+        pools.add(this);
+    }
+
+    /**
+     * Get (dirty) item given its exact lengths [N][M]
+     * @param length N length
+     * @param length2 M length
+     * @return dirty item or null if none available
+     */
+    public final K getItem(final int length, final int length2) {
+        final Stack<K> stack = stacks.get(getKey(length, length2));
+        if (stack != null) {
+            final K item = stack.pop();
+            if (item != null) {
+                pooledBytes.addAndGet(-stack.bytes);
+                if (DO_CHECKS) {
+                    synchronized (this) {
+                        pooled.remove(item);
+                    }
+                    track(item);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("getItem[{}]: reuse element [{}] @ {}", name, getSizes(item), item.hashCode());
+                }
+                hitCounter.increment();
+                return item;
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * Register the given new item as acquired (leak check only)
+     * @param item new item given to the caller
+     * @return given item
+     */
+    public final K track(final K item) {
+        if (DO_CHECKS && item != null) {
+            synchronized (this) {
+                acquired.put(item, new Throwable("acquired [" + getSizes(item) + "] from pool[" + name + "]"));
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Put the given item in the pool (dropped if the budget is exceeded even after eviction)
+     * @param item item to be recycled
+     */
+    public final void putItem(final K item) {
+        if (item != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("putItem[{}]: sizes[{}] @ {}", name, getSizes(item), item.hashCode());
+            }
+            if (DO_CHECKS) {
+                synchronized (this) {
+                    if (!pooled.add(item)) {
+                        logger.warn("duplicate items in pool[{}]", name, new Throwable());
+                        return;
+                    }
+                    acquired.remove(item);
+                }
+            }
+            final long bytes = getByteSize(item);
+
+            if (pooledBytes.addAndGet(bytes) > BUDGET) {
+                evict(bytes);
+                if (pooledBytes.get() > BUDGET) {
+                    // drop this item:
+                    pooledBytes.addAndGet(-bytes);
+                    if (DO_CHECKS) {
+                        synchronized (this) {
+                            pooled.remove(item);
+                        }
+                    }
+                    evictCounter.increment();
+                    return;
+                }
+            }
+            getStack(getLength(item), getLength2(item), bytes).push(item);
+        }
+    }
+
+    /**
+     * Log the items acquired and not recycled yet with their acquisition stack (checks enabled only)
+     * @return number of outstanding items
+     */
+    public final int reportLeaks() {
+        if (!DO_CHECKS) {
+            return 0;
+        }
+        final List<Throwable> stackTraces;
+        synchronized (this) {
+            stackTraces = new ArrayList<Throwable>(acquired.values());
+        }
+        for (Throwable th : stackTraces) {
+            logger.warn("outstanding item in pool[{}]:", name, th);
+        }
+        return stackTraces.size();
+    }
+
+    /**
+     * Return the number of pooled items
+     * @return number of pooled items
+     */
+    public final int getPooledCount() {
+        int n = 0;
+        for (Stack<K> stack : stacks.values()) {
+            n += stack.size.get();
+        }
+        return n;
+    }
+
+    /**
+     * Drop all pooled items
+     */
+    public final void clear() {
+        for (Stack<K> stack : stacks.values()) {
+            while (stack.pop() != null) {
+                pooledBytes.addAndGet(-stack.bytes);
+            }
+        }
+        if (DO_CHECKS) {
+            synchronized (this) {
+                pooled.clear();
+            }
+        }
+    }
+
+    /**
+     * Return the pooled bytes (all pools)
+     * @return pooled bytes
+     */
+    public static long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Return the statistics of all pools (pooled items per shape and size class)
+     * @return statistics as string
+     */
+    public static String getStatistics() {
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append("BufferPool[budget = ").append(BUDGET >> 20).append(" MB - pooled = ")
+                .append(pooledBytes.get() >> 10).append(" KB]");
+        for (BufferPool<?> pool : pools) {
+            sb.append("\n  ").append(pool.name).append(':');
+            for (Stack<?> stack : pool.stacks.values()) {
+                sb.append(' ').append(stack);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return the power-of-two size class of the given byte size
+     * @param bytes byte size
+     * @return size class (ceil(log2(bytes)))
+     */
+    public static int getSizeClass(final long bytes) {
+        return (bytes <= 1L) ? 0 : 64 - Long.numberOfLeadingZeros(bytes - 1L);
+    }
+
+    /**
+     * Evict pooled items (largest size classes first, all pools) to free at least the given bytes
+     * @param bytes bytes to free
+     */
+    private static void evict(final long bytes) {
+        long freed = 0L;
+        for (int sizeClass = 63; sizeClass >= 0 && pooledBytes.get() > BUDGET; sizeClass--) {
+            for (BufferPool<?> pool : pools) {
+                freed += pool.evict(sizeClass);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("evict: freed {} bytes for {} bytes - pooled = {} bytes", freed, bytes, pooledBytes.get());
+        }
+    }
+
+    /**
+     * Evict pooled items of the given size class while the budget is exceeded
+     * @param sizeClass size class
+     * @return freed bytes
+     */
+    private long evict(final int sizeClass) {
+        long freed = 0L;
+        for (Stack<K> stack : stacks.values()) {
+            if (stack.sizeClass == sizeClass) {
+                K item;
+                while (pooledBytes.get() > BUDGET && (item = stack.pop()) != null) {
+                    pooledBytes.addAndGet(-stack.bytes);
+                    freed += stack.bytes;
+                    evictCounter.increment();
+                    if (DO_CHECKS) {
+                        synchronized (this) {
+                            pooled.remove(item);
+                        }
+                    }
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Return the stack for the given shape (created if missing)
+     * @param length N length
+     * @param length2 M length
+     * @param bytes item byte size
+     * @return stack
+     */
+    private Stack<K> getStack(final int length, final int length2, final long bytes) {
+        final Long key = getKey(length, length2);
+
+        Stack<K> stack = stacks.get(key);
+        if (stack == null) {
+            final Stack<K> newStack = new Stack<K>(length, length2, bytes);
+            stack = stacks.putIfAbsent(key, newStack);
+            if (stack == null) {
+                stack = newStack;
+            }
+        }
+        return stack;
+    }
+
+    /**
+     * @param length N length
+     * @param length2 M length
+     * @return shape key
+     */
+    private static Long getKey(final int length, final int length2) {
+        return Long.valueOf((((long) length) << 32) | (length2 & 0xFFFFFFFFL));
+    }
+
+    /**
+     * @param item item
+     * @return N length of the given item
+     */
+    protected abstract int getLength(final K item);
+
+    /**
+     * @param item item
+     * @return M length of the given item
+     */
+    protected abstract int getLength2(final K item);
+
+    /**
+     * @param item item
+     * @return memory footprint of the given item in bytes
+     */
+    protected abstract long getByteSize(final K item);
+
+    /**
+     * @param item item
+     * @return item sizes as string
+     */
+    public String getSizes(final K item) {
+        return getLength(item) + " x " + getLength2(item);
+    }
+
+    /**
+     * Lock-free (Treiber) stack of items having the same shape
+     * @param <K> class type
+     */
+    private static final class Stack<K> {
+
+        /** N length */
+        final int length;
+        /** M length */
+        final int length2;
+        /** item byte size */
+        final long bytes;
+        /** size class */
+        final int sizeClass;
+        /** stack head */
+        final AtomicReference<Node<K>> head = new AtomicReference<Node<K>>();
+        /** stack size */
+        final AtomicInteger size = new AtomicInteger();
+
+        Stack(final int length, final int length2, final long bytes) {
+            this.length = length;
+            this.length2 = length2;
+            this.bytes = bytes;
+            this.sizeClass = getSizeClass(bytes);
+        }
+
+        void push(final K item) {
+            final Node<K> node = new Node<K>(item);
+            Node<K> top;
+            do {
+                top = head.get();
+                node.next = top;
+            } while (!head.compareAndSet(top, node));
+            size.incrementAndGet();
+        }
+
+        K pop() {
+            Node<K> top;
+            do {
+                top = head.get();
+                if (top == null) {
+                    return null;
+                }
+            } while (!head.compareAndSet(top, top.next));
+            size.decrementAndGet();
+            return top.item;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + length + " x " + length2 + " (2^" + sizeClass + " bytes) = " + size.get() + "]";
+        }
+    }
+
+    /**
+     * Stack node
+     * @param <K> class type
+     */
+    private static final class Node<K> {
+
+        /** item */
+        final K item;
+        /** next node */
+        Node<K> next;
+
+        Node(final K item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util;
+
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cooperative cancellation token shared by one computation (caller thread and its parallel jobs).
+ *
+ * Compute loops poll isCancelled() (volatile read) at row granularity and stop early; the caller then
+ * calls checkCancelled() once the jobs are joined to release its buffers and throw an InterruptedJobException.
+ * A token is cancelled when:
+ * - cancel() was called (no thread is interrupted so pool threads stay usable)
+ * - its deadline is exceeded
+ * - its owner thread (if any) or the polling thread is interrupted (legacy behaviour)
+ *
+ * To abort a superseded request as soon as a new one is submitted, use supersede(slot, token).
+ * To stop sibling jobs on failure without cancelling the caller's token, give them a child token (see createChild()).
+ *
+ * @author bourgesl
+ */
+public final class CancellationToken {
+
+    /** reason given when the token is cancelled by cancel() */
+    public static final String REASON_CANCELLED = "cancelled";
+    /** reason given when the token deadline is exceeded */
+    public static final String REASON_DEADLINE = "deadline exceeded";
+    /** reason given when the owner or current thread is interrupted */
+    public static final String REASON_INTERRUPTED = "interrupted";
+
+    /* members */
+    /** optional parent token whose cancellation cancels this token */
+    private final CancellationToken _parent;
+    /** optional owner thread (submitter) whose interruption cancels this token */
+    private final Thread _owner;
+    /** true if a deadline is defined */
+    private final boolean _hasDeadline;
+    /** deadline (System.nanoTime) */
+    private final long _deadline;
+    /** cancellation reason or null if not cancelled */
+    private volatile String _reason = null;
+
+    /**
+     * Create a new token without deadline (only cancelled by cancel() or polling thread interruption)
+     * @return new token
+     */
+    public static CancellationToken create() {
+        return new CancellationToken(null, null, false, 0L);
+    }
+
+    /**
+     * Create a new token cancelled after the given timeout
+     * @param timeout timeout value
+     * @param unit timeout unit
+     * @return new token
+     */
+    public static CancellationToken create(final long timeout, final TimeUnit unit) {
+        return new CancellationToken(null, null, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Create a new token also cancelled when the current thread is interrupted
+     * i.e. the behaviour of methods not given any token
+     * @return new token
+     */
+    public static CancellationToken forCurrentThread() {
+        return new CancellationToken(null, Thread.currentThread(), false, 0L);
+    }
+
+    /**
+     * Create a new token also cancelled when the current thread is interrupted or after the given timeout
+     * @param timeout timeout value
+     * @param unit timeout unit
+     * @return new token
+     */
+    public static CancellationToken forCurrentThread(final long timeout, final TimeUnit unit) {
+        return new CancellationToken(null, Thread.currentThread(), true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Register the given token as the current request in the given slot and cancel the previous one (superseded)
+     * @param slot slot holding the token of the current request
+     * @param token token of the new request
+     * @return given token
+     */
+    public static CancellationToken supersede(final AtomicReference<CancellationToken> slot, final CancellationToken token) {
+        final CancellationToken previous = slot.getAndSet(token);
+        if (previous != null && previous != token) {
+            previous.cancel();
+        }
+        return token;
+    }
+
+    /**
+     * Private constructor
+     * @param parent optional parent token
+     * @param owner optional owner thread
+     * @param hasDeadline true if a deadline is defined
+     * @param deadline deadline (System.nanoTime)
+     */
+    private CancellationToken(final CancellationToken parent, final Thread owner, final boolean hasDeadline, final long deadline) {
+        this._parent = parent;
+        this._owner = owner;
+        this._hasDeadline = hasDeadline;
+        this._deadline = deadline;
+    }
+
+    /**
+     * Create a new token cancelled when this token is cancelled:
+     * cancelling the child token does not cancel this token
+     * @return new child token
+     */
+    public CancellationToken createChild() {
+        return new CancellationToken(this, null, false, 0L);
+    }
+
+    /**
+     * Cancel this token: running jobs will stop at their next check
+     */
+    public void cancel() {
+        cancel(REASON_CANCELLED);
+    }
+
+    /**
+     * Cancel this token (first reason wins)
+     * @param reason cancellation reason
+     */
+    private void cancel(final String reason) {
+        if (_reason == null) {
+            _reason = reason;
+        }
+    }
+
+    /**
+     * Return true if this token is cancelled (explicitly, deadline exceeded or thread interrupted)
+     * Note: cheap enough to be called once per processed row
+     * @return true if this token is cancelled
+     */
+    public boolean isCancelled() {
+        if (_reason != null) {
+            return true;
+        }
+        if (_parent != null && _parent.isCancelled()) {
+            // do not cache: the parent gives its own reason
+            return true;
+        }
+        if (_hasDeadline && (System.nanoTime() - _deadline) >= 0L) {
+            cancel(REASON_DEADLINE);
+            return true;
+        }
+        if ((_owner != null && _owner.isInterrupted()) || Thread.currentThread().isInterrupted()) {
+            // do not cache: interruption is a thread state
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the cancellation reason
+     * @return cancellation reason or null if not cancelled
+     */
+    public String getReason() {
+        if (_reason == null && _parent != null) {
+            final String reason = _parent.getReason();
+            if (reason != null) {
+                return reason;
+            }
+        }
+        if (isCancelled()) {
+            final String reason = _reason;
+            return (reason != null) ? reason : REASON_INTERRUPTED;
+        }
+        return null;
+    }
+
+    /**
+     * Return the remaining time before the deadline
+     * @param unit time unit
+     * @return remaining time (0 if exceeded) or Long.MAX_VALUE if no deadline
+     */
+    public long getRemaining(final TimeUnit unit) {
+        if (!_hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0L, _deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Throw a new InterruptedJobException if this token is cancelled
+     * @param jobName job name used in the exception message
+     * @throws InterruptedJobException if this token is cancelled
+     */
+    public void checkCancelled(final String jobName) throws InterruptedJobException {
+        final String reason = getReason();
+        if (reason != null) {
+            throw new InterruptedJobException(jobName + ": " + reason);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CancellationToken[" + ((_reason != null) ? _reason : "active")
+                + (_hasDeadline ? ", remaining = " + getRemaining(TimeUnit.MILLISECONDS) + " ms" : "") + ']';
+    }
+}
@@ -3,6 +3,8 @@
  ******************************************************************************/
 package fr.jmmc.jmal.util;
 
+import fr.jmmc.jmal.util.metrics.Counter;
+import fr.jmmc.jmal.util.metrics.Metrics;
 import java.lang.ref.WeakReference;
 import java.util.ArrayDeque;
 import org.slf4j.Logger;
@@ -12,7 +14,9 @@ import org.slf4j.LoggerFactory;
  * Generic Weak cache for <K> items
  * @author bourgesl
  * @param <K> class type
+ * @deprecated use BufferPool (size-bucketed lock-free pool with a global byte budget)
  */
+@Deprecated
 public abstract class GenericWeakCache<K> {
 
     /** Class logger */
@@ -27,6 +31,9 @@ public abstract class GenericWeakCache<K> {
     private final boolean recycleBadElementSize;
     /** weak reference on K item queue */
     private WeakReference<ArrayDeque<K>> recycled_items_queue = new WeakReference<ArrayDeque<K>>(null);
+    /** metrics */
+    private final Counter hitCounter;
+    private final Counter missCounter;
 
     protected GenericWeakCache(final String name) {
         this(name, true);
@@ -35,6 +42,8 @@ public abstract class GenericWeakCache<K> {
     protected GenericWeakCache(final String name, final boolean recycleBadElementSize) {
         this.name = name;
         this.recycleBadElementSize = recycleBadElementSize;
+        this.hitCounter = Metrics.counter("cache." + name + ".hit");
+        this.missCounter = Metrics.counter("cache." + name + ".miss");
     }
 
     /**
@@ -58,6 +67,7 @@ public abstract class GenericWeakCache<K> {
                         if (logger.isDebugEnabled()) {
                             logger.debug("getItem[{}]: reuse element [{}] @ {}", name, getSizes(item), item.hashCode());
                         }
+                        hitCounter.increment();
                         return item;
                     } else {
                         if (logger.isDebugEnabled()) {
@@ -72,6 +82,7 @@ public abstract class GenericWeakCache<K> {
                 }
             }
         }
+        missCounter.increment();
         return null;
     }
 
@@ -6,12 +6,21 @@ package fr.jmmc.jmal.util;
 import net.jafama.FastMath;
 
 /**
- * Provides several norm functions (2D and 3D)
+ * Provides several norm functions (2D and 3D) and fast float logarithms
  * 
  * @author bourgesl
  */
 public final class MathUtils {
 
+    /** log10(2) */
+    public final static float LOG10_2 = (float) Math.log10(2.0);
+    /** log2(1 + t) minimax polynomial coefficients on [0; 1[ (degree 5, absolute error &lt; 1.5e-5) */
+    private final static float LOG2_C1 = 1.4419657f;
+    private final static float LOG2_C2 = -0.7096652f;
+    private final static float LOG2_C3 = 0.41760731f;
+    private final static float LOG2_C4 = -0.19628806f;
+    private final static float LOG2_C5 = 0.046394713f;
+
     private MathUtils() {
         // no-op
     }
@@ -40,4 +49,28 @@ public final class MathUtils {
     public static double carthesianNorm(final double x, final double y, final double z) {
         return Math.sqrt(x * x + y * y + z * z);
     }
+
+    /**
+     * Return a fast approximation of log2(x) (exponent extraction and mantissa polynomial):
+     * absolute error is less than 2e-5 (plus the float rounding of the result) for positive normal values
+     * @param x positive value (not checked: zero, negative, subnormal, infinite or NaN values give meaningless results)
+     * @return log2(x) approximation
+     */
+    public static float fastLog2(final float x) {
+        final int bits = Float.floatToRawIntBits(x);
+        // mantissa in [1; 2[ minus 1:
+        final float t = Float.intBitsToFloat((bits & 0x007fffff) | 0x3f800000) - 1f;
+        return (((bits >>> 23) & 0xff) - 127)
+                + t * (LOG2_C1 + t * (LOG2_C2 + t * (LOG2_C3 + t * (LOG2_C4 + t * LOG2_C5))));
+    }
+
+    /**
+     * Return a fast approximation of log10(x): absolute error is less than 6e-6 (plus the float rounding of the result)
+     * for positive normal values
+     * @param x positive value (see fastLog2)
+     * @return log10(x) approximation
+     */
+    public static float fastLog10(final float x) {
+        return fastLog2(x) * LOG10_2;
+    }
 }
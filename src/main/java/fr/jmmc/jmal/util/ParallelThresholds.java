@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.util;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Effective parallelism thresholds: minimal amount of work (pixels, pixels x models ...) for which
+ * a processing stage forks parallel jobs instead of using the current thread.
+ *
+ * Default values are the former hard-coded thresholds; machine-specific values are measured by
+ * ParallelThresholdCalibrator and stored in a small profile (properties) file.
+ *
+ * System properties:
+ * - jmal.thresholds.profile (default none): profile file loaded at startup (if it exists)
+ *
+ * @author bourgesl
+ */
+public final class ParallelThresholds {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(ParallelThresholds.class.getName());
+    /** profile property key prefix */
+    private static final String KEY_PREFIX = "jmal.threshold.";
+
+    /**
+     * Processing stages having a parallelism threshold
+     */
+    public enum Stage {
+
+        /** ModelUVMapService model visibilities (image size x image size x number of models) */
+        MODEL("model", 256 * 256 - 1),
+        /** ImageUtils colorization (width x height) */
+        IMAGE("image", 256 * 256 - 1),
+        /** AbstractImageJob subclasses (width x height) i.e. forked if larger than 65536 */
+        IMAGE_JOB("imageJob", 256 * 256 + 1),
+        /** Convolution direct convolution (width x height) */
+        CONVOLUTION("convolution", 256 * 256 - 1),
+        /** FloatFFT_2D / DoubleFFT_2D (rows x columns) i.e. ConcurrencyUtils.getThreadsBeginN_2D() */
+        FFT_2D("fft2D", 256 * 256);
+
+        /** profile key */
+        private final String key;
+        /** default threshold */
+        private final int defaultValue;
+
+        Stage(final String key, final int defaultValue) {
+            this.key = key;
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return profile key
+         */
+        public String getKey() {
+            return KEY_PREFIX + key;
+        }
+
+        /**
+         * @return default threshold
+         */
+        public int getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    /** stage thresholds (except FFT_2D stored in ConcurrencyUtils) */
+    private static final AtomicIntegerArray thresholds = new AtomicIntegerArray(Stage.values().length);
+
+    static {
+        for (Stage stage : Stage.values()) {
+            thresholds.set(stage.ordinal(), stage.getDefaultValue());
+        }
+
+        final File profile = getProfileFile();
+        if (profile != null && profile.isFile()) {
+            try {
+                load(profile);
+            } catch (IOException ioe) {
+                logger.warn("Unable to load the threshold profile [{}]", profile, ioe);
+            }
+        }
+    }
+
+    /**
+     * Forbidden constructor
+     */
+    private ParallelThresholds() {
+        super();
+    }
+
+    /**
+     * Return the profile file given by the system property jmal.thresholds.profile
+     * @return profile file or null if undefined
+     */
+    public static File getProfileFile() {
+        final String path = System.getProperty("jmal.thresholds.profile");
+        return (path != null && !path.isEmpty()) ? new File(path) : null;
+    }
+
+    /**
+     * Return the effective threshold of the given stage
+     * @param stage processing stage
+     * @return effective threshold
+     */
+    public static int getThreshold(final Stage stage) {
+        if (stage == Stage.FFT_2D) {
+            return ConcurrencyUtils.getThreadsBeginN_2D();
+        }
+        return thresholds.get(stage.ordinal());
+    }
+
+    /**
+     * Return true if the given amount of work should be processed by parallel jobs
+     * @param stage processing stage
+     * @param work amount of work (in stage units)
+     * @return true if work &gt;= threshold
+     */
+    public static boolean isParallel(final Stage stage, final long work) {
+        return work >= getThreshold(stage);
+    }
+
+    /**
+     * Define the threshold of the given stage
+     * Note: FFT plans decide to use threads when they are created (see FFTPlanPool.clear())
+     * @param stage processing stage
+     * @param value new threshold (positive)
+     * @throws IllegalArgumentException if the given value is negative
+     */
+    public static void setThreshold(final Stage stage, final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid threshold for " + stage + ": " + value);
+        }
+        if (stage == Stage.FFT_2D) {
+            ConcurrencyUtils.setThreadsBeginN_2D(value);
+        } else {
+            thresholds.set(stage.ordinal(), value);
+        }
+        logger.debug("setThreshold: {} = {}", stage, value);
+    }
+
+    /**
+     * Define the thresholds of the given stages
+     * @param values thresholds keyed by stage
+     */
+    public static void setThresholds(final Map<Stage, Integer> values) {
+        for (Map.Entry<Stage, Integer> e : values.entrySet()) {
+            setThreshold(e.getKey(), e.getValue().intValue());
+        }
+    }
+
+    /**
+     * Restore the default thresholds
+     */
+    public static void reset() {
+        for (Stage stage : Stage.values()) {
+            setThreshold(stage, stage.getDefaultValue());
+        }
+    }
+
+    /**
+     * Return the effective thresholds
+     * @return copy of the effective thresholds keyed by stage
+     */
+    public static Map<Stage, Integer> getThresholds() {
+        final Map<Stage, Integer> values = new EnumMap<Stage, Integer>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            values.put(stage, Integer.valueOf(getThreshold(stage)));
+        }
+        return values;
+    }
+
+    /**
+     * Load and apply the thresholds defined in the given profile file (missing stages are left unchanged)
+     * @param file profile file
+     * @throws IOException if an I/O exception occurred
+     */
+    public static void load(final File file) throws IOException {
+        final Properties props = new Properties();
+
+        final InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+
+        for (Stage stage : Stage.values()) {
+            final String value = props.getProperty(stage.getKey());
+            if (value != null) {
+                try {
+                    setThreshold(stage, Integer.parseInt(value.trim()));
+                } catch (IllegalArgumentException iae) {
+                    logger.warn("Invalid threshold [{}] for {} in profile [{}]", value, stage, file);
+                }
+            }
+        }
+        logger.info("load: {} = {}", file, getThresholds());
+    }
+
+    /**
+     * Save the effective thresholds into the given profile file
+     * @param file profile file
+     * @throws IOException if an I/O exception occurred
+     */
+    public static void save(final File file) throws IOException {
+        final Properties props = new Properties();
+        for (Map.Entry<Stage, Integer> e : getThresholds().entrySet()) {
+            props.setProperty(e.getKey().getKey(), e.getValue().toString());
+        }
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory: " + parent);
+        }
+
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            props.store(out, "jmal parallel thresholds (" + Runtime.getRuntime().availableProcessors() + " cpus)");
+        } finally {
+            out.close();
+        }
+        logger.info("save: {} = {}", file, getThresholds());
+    }
+}
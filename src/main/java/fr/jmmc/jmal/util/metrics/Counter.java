@@ -0,0 +1,23 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+/**
+ * Monotonic counter (thread-safe)
+ *
+ * @author bourgesl
+ */
+public interface Counter {
+
+    /**
+     * Increment the counter by one
+     */
+    public void increment();
+
+    /**
+     * Add the given amount to the counter
+     * @param n amount to add
+     */
+    public void add(final long n);
+}
@@ -0,0 +1,18 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+/**
+ * Distribution of positive long values (thread-safe)
+ *
+ * @author bourgesl
+ */
+public interface Histogram {
+
+    /**
+     * Record the given value
+     * @param value value to record
+     */
+    public void update(final long value);
+}
@@ -0,0 +1,217 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Default in-memory metrics registry (no dependency):
+ * counters use LongAdder and distributions use power of two buckets (approximated quantiles)
+ * so recording values is lock-free and cheap under contention.
+ *
+ * @author bourgesl
+ */
+public final class InMemoryMetricsRegistry implements MetricsRegistry {
+
+    /** number of power of two buckets (64-bit values) */
+    private static final int BUCKETS = 65;
+
+    /* members */
+    /** counters keyed by name */
+    private final ConcurrentHashMap<String, CounterImpl> counters = new ConcurrentHashMap<String, CounterImpl>(64);
+    /** timers keyed by name */
+    private final ConcurrentHashMap<String, DistributionImpl> timers = new ConcurrentHashMap<String, DistributionImpl>(64);
+    /** histograms keyed by name */
+    private final ConcurrentHashMap<String, DistributionImpl> histograms = new ConcurrentHashMap<String, DistributionImpl>(16);
+
+    /**
+     * Public constructor (ServiceLoader)
+     */
+    public InMemoryMetricsRegistry() {
+        super();
+    }
+
+    @Override
+    public Timer timer(final String name) {
+        DistributionImpl metric = timers.get(name);
+        if (metric == null) {
+            final DistributionImpl created = new DistributionImpl();
+            metric = timers.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+            }
+        }
+        return metric;
+    }
+
+    @Override
+    public Counter counter(final String name) {
+        CounterImpl metric = counters.get(name);
+        if (metric == null) {
+            final CounterImpl created = new CounterImpl();
+            metric = counters.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+            }
+        }
+        return metric;
+    }
+
+    @Override
+    public Histogram histogram(final String name) {
+        DistributionImpl metric = histograms.get(name);
+        if (metric == null) {
+            final DistributionImpl created = new DistributionImpl();
+            metric = histograms.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+            }
+        }
+        return metric;
+    }
+
+    @Override
+    public MetricsSnapshot snapshot() {
+        final TreeMap<String, Long> counterValues = new TreeMap<String, Long>();
+        for (Map.Entry<String, CounterImpl> e : counters.entrySet()) {
+            counterValues.put(e.getKey(), Long.valueOf(e.getValue().count.sum()));
+        }
+        return new MetricsSnapshot(counterValues, snapshot(timers), snapshot(histograms));
+    }
+
+    private static TreeMap<String, MetricsSnapshot.Distribution> snapshot(final Map<String, DistributionImpl> metrics) {
+        final TreeMap<String, MetricsSnapshot.Distribution> values = new TreeMap<String, MetricsSnapshot.Distribution>();
+        for (Map.Entry<String, DistributionImpl> e : metrics.entrySet()) {
+            final MetricsSnapshot.Distribution d = e.getValue().snapshot();
+            if (d.getCount() != 0L) {
+                values.put(e.getKey(), d);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        for (CounterImpl metric : counters.values()) {
+            metric.count.reset();
+        }
+        for (DistributionImpl metric : timers.values()) {
+            metric.reset();
+        }
+        for (DistributionImpl metric : histograms.values()) {
+            metric.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Counter based on LongAdder
+     */
+    private static final class CounterImpl implements Counter {
+
+        /** counter */
+        final LongAdder count = new LongAdder();
+
+        @Override
+        public void increment() {
+            count.increment();
+        }
+
+        @Override
+        public void add(final long n) {
+            count.add(n);
+        }
+    }
+
+    /**
+     * Timer or histogram based on power of two buckets
+     */
+    private static final class DistributionImpl implements Timer, Histogram {
+
+        /** value count */
+        final LongAdder count = new LongAdder();
+        /** value sum */
+        final LongAdder sum = new LongAdder();
+        /** minimum value */
+        final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        /** maximum value */
+        final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        /** bucket counts: bucket[i] holds values in [2^(i-1), 2^i[ (bucket[0] holds values <= 0) */
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        @Override
+        public void record(final long durationNanos) {
+            update(durationNanos);
+        }
+
+        @Override
+        public void update(final long value) {
+            count.increment();
+            sum.add(value);
+            min.accumulate(value);
+            max.accumulate(value);
+            buckets.incrementAndGet((value <= 0L) ? 0 : 64 - Long.numberOfLeadingZeros(value));
+        }
+
+        void reset() {
+            count.reset();
+            sum.reset();
+            min.reset();
+            max.reset();
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0L);
+            }
+        }
+
+        MetricsSnapshot.Distribution snapshot() {
+            final long[] counts = new long[BUCKETS];
+            long total = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            final long minValue = min.get();
+            final long maxValue = max.get();
+
+            return new MetricsSnapshot.Distribution(total, sum.sum(),
+                    (total != 0L) ? minValue : 0L, (total != 0L) ? maxValue : 0L,
+                    quantile(counts, total, 0.50, maxValue),
+                    quantile(counts, total, 0.90, maxValue),
+                    quantile(counts, total, 0.99, maxValue));
+        }
+
+        /**
+         * Return the approximated quantile (upper bound of the matching bucket clamped by the max value)
+         * @param counts bucket counts
+         * @param total total count
+         * @param q quantile in [0; 1]
+         * @param maxValue maximum value
+         * @return approximated quantile
+         */
+        private static long quantile(final long[] counts, final long total, final double q, final long maxValue) {
+            if (total == 0L) {
+                return 0L;
+            }
+            final long rank = (long) Math.ceil(q * total);
+            long cum = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                cum += counts[i];
+                if (cum >= rank) {
+                    final long upper = (i == 0) ? 0L : (i >= 63) ? Long.MAX_VALUE : (1L << i) - 1L;
+                    return Math.min(upper, maxValue);
+                }
+            }
+            return maxValue;
+        }
+    }
+}
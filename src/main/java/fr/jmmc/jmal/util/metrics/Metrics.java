@@ -0,0 +1,155 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics entry point used to instrument jMAL compute stages.
+ *
+ * The registry is chosen once when this class is loaded:
+ * - disabled (no-op) if the system property 'jmal.metrics' is 'false'
+ * - the first MetricsRegistry provider found by ServiceLoader
+ * - else the InMemoryMetricsRegistry (default)
+ *
+ * Metric names use the 'stage.operation' form (fft.computeFFT, job.ImageMinMaxJob, cache.FloatArrayCache.hit ...)
+ *
+ * @author bourgesl
+ */
+public final class Metrics {
+
+    /** Class logger */
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class.getName());
+    /** enable metrics (true by default) */
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("jmal.metrics", "true"));
+    /** no-op registry */
+    private static final MetricsRegistry NO_OP = new NoOpRegistry();
+    /** registry */
+    private static final MetricsRegistry registry = createRegistry();
+
+    /**
+     * Forbidden constructor
+     */
+    private Metrics() {
+        super();
+    }
+
+    /**
+     * Create the registry (service loader or in-memory)
+     * @return registry
+     */
+    private static MetricsRegistry createRegistry() {
+        if (!ENABLED) {
+            return NO_OP;
+        }
+        try {
+            final Iterator<MetricsRegistry> it = ServiceLoader.load(MetricsRegistry.class).iterator();
+            if (it.hasNext()) {
+                final MetricsRegistry provider = it.next();
+                logger.info("Metrics registry: {}", provider.getClass().getName());
+                return provider;
+            }
+        } catch (ServiceConfigurationError sce) {
+            logger.warn("Unable to load the metrics registry provider: using the in-memory registry.", sce);
+        }
+        return new InMemoryMetricsRegistry();
+    }
+
+    /**
+     * @return the metrics registry
+     */
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Return the timer of the given name
+     * @param name metric name
+     * @return timer
+     */
+    public static Timer timer(final String name) {
+        return registry.timer(name);
+    }
+
+    /**
+     * Return the counter of the given name
+     * @param name metric name
+     * @return counter
+     */
+    public static Counter counter(final String name) {
+        return registry.counter(name);
+    }
+
+    /**
+     * Return the histogram of the given name
+     * @param name metric name
+     * @return histogram
+     */
+    public static Histogram histogram(final String name) {
+        return registry.histogram(name);
+    }
+
+    /**
+     * Return a snapshot of all metrics
+     * @return snapshot of all metrics
+     */
+    public static MetricsSnapshot snapshot() {
+        return registry.snapshot();
+    }
+
+    /**
+     * No-op registry (metrics disabled)
+     */
+    private static final class NoOpRegistry implements MetricsRegistry, Timer, Counter, Histogram {
+
+        @Override
+        public Timer timer(final String name) {
+            return this;
+        }
+
+        @Override
+        public Counter counter(final String name) {
+            return this;
+        }
+
+        @Override
+        public Histogram histogram(final String name) {
+            return this;
+        }
+
+        @Override
+        public MetricsSnapshot snapshot() {
+            return MetricsSnapshot.EMPTY;
+        }
+
+        @Override
+        public void reset() {
+            // no-op
+        }
+
+        @Override
+        public void record(final long durationNanos) {
+            // no-op
+        }
+
+        @Override
+        public void increment() {
+            // no-op
+        }
+
+        @Override
+        public void add(final long n) {
+            // no-op
+        }
+
+        @Override
+        public void update(final long value) {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+/**
+ * Metrics service provider interface: implementations are discovered using java.util.ServiceLoader
+ * (META-INF/services/fr.jmmc.jmal.util.metrics.MetricsRegistry) else the InMemoryMetricsRegistry is used.
+ *
+ * Metric instances are looked up once (static fields) so implementations must return the same
+ * instance for the same name and every metric must be thread-safe.
+ *
+ * @author bourgesl
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Return the timer of the given name (created if needed)
+     * @param name metric name
+     * @return timer
+     */
+    public Timer timer(final String name);
+
+    /**
+     * Return the counter of the given name (created if needed)
+     * @param name metric name
+     * @return counter
+     */
+    public Counter counter(final String name);
+
+    /**
+     * Return the histogram of the given name (created if needed)
+     * @param name metric name
+     * @return histogram
+     */
+    public Histogram histogram(final String name);
+
+    /**
+     * Return a snapshot of all metrics
+     * @return snapshot of all metrics (empty if not supported)
+     */
+    public MetricsSnapshot snapshot();
+
+    /**
+     * Reset all metrics
+     */
+    public void reset();
+}
@@ -0,0 +1,227 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of metric values (sorted by name) with a simple text export (one 'key value' per line):
+ * <pre>
+ * counter.cache.FloatArrayCache.hit 12
+ * timer.fft.computeFFT.count 3
+ * timer.fft.computeFFT.mean_ms 12.5
+ * ...
+ * </pre>
+ *
+ * @author bourgesl
+ */
+public final class MetricsSnapshot {
+
+    /** empty snapshot */
+    public static final MetricsSnapshot EMPTY = new MetricsSnapshot(
+            new TreeMap<String, Long>(), new TreeMap<String, Distribution>(), new TreeMap<String, Distribution>());
+
+    /* members */
+    /** counter values keyed by name */
+    private final Map<String, Long> counters;
+    /** timer distributions (nanoseconds) keyed by name */
+    private final Map<String, Distribution> timers;
+    /** histogram distributions keyed by name */
+    private final Map<String, Distribution> histograms;
+
+    /**
+     * Constructor
+     * @param counters counter values keyed by name
+     * @param timers timer distributions (nanoseconds) keyed by name
+     * @param histograms histogram distributions keyed by name
+     */
+    public MetricsSnapshot(final TreeMap<String, Long> counters,
+                           final TreeMap<String, Distribution> timers,
+                           final TreeMap<String, Distribution> histograms) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.timers = Collections.unmodifiableMap(timers);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * @return counter values keyed by name
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return timer distributions (nanoseconds) keyed by name
+     */
+    public Map<String, Distribution> getTimers() {
+        return timers;
+    }
+
+    /**
+     * @return histogram distributions keyed by name
+     */
+    public Map<String, Distribution> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * Return the counter value of the given name
+     * @param name counter name
+     * @return counter value or 0 if undefined
+     */
+    public long getCounter(final String name) {
+        final Long value = counters.get(name);
+        return (value != null) ? value.longValue() : 0L;
+    }
+
+    /**
+     * Export this snapshot as text (one 'key value' per line)
+     * @param sb buffer to append into
+     * @return given buffer
+     */
+    public StringBuilder toText(final StringBuilder sb) {
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            sb.append("counter.").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Distribution> e : timers.entrySet()) {
+            e.getValue().toText(sb, "timer." + e.getKey(), 1e-6, "_ms");
+        }
+        for (Map.Entry<String, Distribution> e : histograms.entrySet()) {
+            e.getValue().toText(sb, "histogram." + e.getKey(), 1.0, "");
+        }
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return toText(new StringBuilder(1024)).toString();
+    }
+
+    /**
+     * Immutable distribution statistics (count, sum, min, max and approximated quantiles)
+     */
+    public static final class Distribution {
+
+        /* members */
+        /** number of values */
+        private final long count;
+        /** sum of values */
+        private final long sum;
+        /** minimum value */
+        private final long min;
+        /** maximum value */
+        private final long max;
+        /** approximated quantiles (50%, 90%, 99%) */
+        private final long p50, p90, p99;
+
+        /**
+         * Constructor
+         * @param count number of values
+         * @param sum sum of values
+         * @param min minimum value
+         * @param max maximum value
+         * @param p50 approximated median
+         * @param p90 approximated 90% quantile
+         * @param p99 approximated 99% quantile
+         */
+        public Distribution(final long count, final long sum, final long min, final long max,
+                            final long p50, final long p90, final long p99) {
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        /**
+         * @return number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return sum of values
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return minimum value
+         */
+        public long getMin() {
+            return min;
+        }
+
+        /**
+         * @return maximum value
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return mean value (0 if empty)
+         */
+        public double getMean() {
+            return (count != 0L) ? ((double) sum) / count : 0.0;
+        }
+
+        /**
+         * @return approximated median
+         */
+        public long getP50() {
+            return p50;
+        }
+
+        /**
+         * @return approximated 90% quantile
+         */
+        public long getP90() {
+            return p90;
+        }
+
+        /**
+         * @return approximated 99% quantile
+         */
+        public long getP99() {
+            return p99;
+        }
+
+        /**
+         * Export this distribution as text
+         * @param sb buffer to append into
+         * @param prefix key prefix
+         * @param scale scaling factor applied to values
+         * @param unit unit suffix
+         */
+        void toText(final StringBuilder sb, final String prefix, final double scale, final String unit) {
+            sb.append(prefix).append(".count ").append(count).append('\n');
+            append(sb, prefix, ".total", unit, scale * sum);
+            append(sb, prefix, ".mean", unit, scale * getMean());
+            append(sb, prefix, ".min", unit, scale * min);
+            append(sb, prefix, ".max", unit, scale * max);
+            append(sb, prefix, ".p50", unit, scale * p50);
+            append(sb, prefix, ".p90", unit, scale * p90);
+            append(sb, prefix, ".p99", unit, scale * p99);
+        }
+
+        private static void append(final StringBuilder sb, final String prefix, final String key, final String unit,
+                                   final double value) {
+            sb.append(prefix).append(key).append(unit).append(' ').append(String.format(Locale.US, "%.3f", value)).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            return "Distribution[count=" + count + ", mean=" + getMean() + ", min=" + min + ", max=" + max
+                    + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ']';
+        }
+    }
+}
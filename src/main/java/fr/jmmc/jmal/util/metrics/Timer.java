@@ -0,0 +1,25 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+/**
+ * Distribution of durations (thread-safe).
+ *
+ * Usage:
+ * <pre>
+ * final long start = System.nanoTime();
+ * ...
+ * TIMER.record(System.nanoTime() - start);
+ * </pre>
+ *
+ * @author bourgesl
+ */
+public interface Timer {
+
+    /**
+     * Record the given duration
+     * @param durationNanos duration in nanoseconds
+     */
+    public void record(final long durationNanos);
+}
@@ -0,0 +1,65 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import fr.jmmc.jmal.ALX;
+import fr.jmmc.jmal.LD2UD;
+import fr.jmmc.jmal.star.Star.Property;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark on ALX coordinate parsing / formatting and LD2UD lookups
+ *
+ * @author bourgesl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ALXBenchmark {
+
+    /* fixtures */
+    private final String raHms = "01:23:45.67";
+    private final String decDms = "-45:12:34.5";
+    private final double angle = 20.940291666666667d;
+    private final StringBuilder sb = new StringBuilder(32);
+
+    @Benchmark
+    public double parseRA() {
+        return ALX.parseRA(raHms);
+    }
+
+    @Benchmark
+    public double parseDEC() {
+        return ALX.parseDEC(decDms);
+    }
+
+    @Benchmark
+    public int toHMS() {
+        sb.setLength(0);
+        return ALX.toHMS(sb, angle).length();
+    }
+
+    @Benchmark
+    public int toDMS() {
+        sb.setLength(0);
+        return ALX.toDMS(sb, angle).length();
+    }
+
+    @Benchmark
+    public double ld2udFromSpType() throws ParseException {
+        return LD2UD.getLimbDarkenedCorrectionFactor(Property.UD_K, "G2V");
+    }
+
+    @Benchmark
+    public double ld2udFromTeffLogg() {
+        return LD2UD.getLimbDarkenedCorrectionFactor(Property.UD_K, 5800.0, 4.4);
+    }
+}
@@ -0,0 +1,276 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+
+/**
+ * Regression report: one line per benchmark and parameter set, sorted by key, so that reports of
+ * two releases can be compared with diff or with compare(baseline, current):
+ * <pre>
+ * # comment lines (jvm, date ...)
+ * key TAB mode TAB score TAB error TAB unit
+ * </pre>
+ * where key = benchmark class.method[param=value,...] (parameters sorted by name).
+ *
+ * @author bourgesl
+ */
+public final class BenchmarkReport {
+
+    /** report encoding */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** column separator */
+    private static final char SEP = '\t';
+    /** package prefix removed from benchmark names */
+    private static final String PACKAGE_PREFIX = BenchmarkReport.class.getPackage().getName() + '.';
+
+    /* members */
+    /** header comments */
+    private final StringBuilder header = new StringBuilder(256);
+    /** entries keyed by benchmark key (sorted) */
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    /**
+     * Create a report from the given JMH results
+     * @param results JMH run results
+     * @return new report
+     */
+    public static BenchmarkReport create(final Collection<RunResult> results) {
+        final BenchmarkReport report = new BenchmarkReport();
+
+        report.header.append("# jvm: ").append(System.getProperty("java.vm.name")).append(' ')
+                .append(System.getProperty("java.version")).append('\n');
+        report.header.append("# os: ").append(System.getProperty("os.name")).append(' ')
+                .append(System.getProperty("os.arch")).append(" - cpus: ")
+                .append(Runtime.getRuntime().availableProcessors()).append('\n');
+
+        for (RunResult rr : results) {
+            final BenchmarkParams params = rr.getParams();
+            final Result<?> primary = rr.getPrimaryResult();
+
+            final Entry entry = new Entry(getKey(params), params.getMode().shortLabel(),
+                    primary.getScore(), primary.getScoreError(), primary.getScoreUnit());
+
+            report.entries.put(entry.key, entry);
+        }
+        return report;
+    }
+
+    /**
+     * Return the report key of the given benchmark parameters
+     * @param params benchmark parameters
+     * @return key = benchmark class.method[param=value,...]
+     */
+    private static String getKey(final BenchmarkParams params) {
+        String name = params.getBenchmark();
+        if (name.startsWith(PACKAGE_PREFIX)) {
+            name = name.substring(PACKAGE_PREFIX.length());
+        }
+        final StringBuilder sb = new StringBuilder(64).append(name);
+
+        // sorted param keys:
+        final Map<String, String> sorted = new TreeMap<String, String>();
+        for (String key : params.getParamsKeys()) {
+            sorted.put(key, params.getParam(key));
+        }
+        if (!sorted.isEmpty()) {
+            sb.append('[');
+            for (Map.Entry<String, String> e : sorted.entrySet()) {
+                sb.append(e.getKey()).append('=').append(e.getValue()).append(',');
+            }
+            sb.setCharAt(sb.length() - 1, ']');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Private constructor
+     */
+    private BenchmarkReport() {
+        super();
+    }
+
+    /**
+     * Load a report from the given file
+     * @param file report file
+     * @return loaded report
+     * @throws IOException if an I/O error occured or the report format is invalid
+     */
+    public static BenchmarkReport load(final File file) throws IOException {
+        final BenchmarkReport report = new BenchmarkReport();
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.charAt(0) == '#') {
+                    report.header.append(line).append('\n');
+                    continue;
+                }
+                final String[] cols = line.split(String.valueOf(SEP));
+                if (cols.length != 5) {
+                    throw new IOException("Invalid report line [" + line + "] in file: " + file);
+                }
+                try {
+                    final Entry entry = new Entry(cols[0], cols[1], Double.parseDouble(cols[2]),
+                            Double.parseDouble(cols[3]), cols[4]);
+                    report.entries.put(entry.key, entry);
+                } catch (NumberFormatException nfe) {
+                    throw new IOException("Invalid report line [" + line + "] in file: " + file, nfe);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return report;
+    }
+
+    /**
+     * Save this report into the given file
+     * @param file report file
+     * @throws IOException if an I/O error occured
+     */
+    public void save(final File file) throws IOException {
+        final Writer w = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+        try {
+            write(new PrintWriter(w));
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Write this report into the given writer
+     * @param out writer
+     */
+    public void write(final PrintWriter out) {
+        out.print(header);
+        out.println("# benchmark\tmode\tscore\terror\tunit");
+        for (Entry entry : entries.values()) {
+            out.print(entry.key);
+            out.print(SEP);
+            out.print(entry.mode);
+            out.print(SEP);
+            out.print(format(entry.score));
+            out.print(SEP);
+            out.print(format(entry.error));
+            out.print(SEP);
+            out.println(entry.unit);
+        }
+        out.flush();
+    }
+
+    /**
+     * Compare the current report against the given baseline and write one line per common benchmark:
+     * key, baseline score, current score, ratio (current / baseline) and a flag (REGRESSION / IMPROVEMENT)
+     * if the ratio exceeds the given relative threshold and the confidence intervals do not overlap.
+     *
+     * Note: scores are times per operation (AverageTime / SampleTime modes) i.e. lower is better.
+     *
+     * @param baseline baseline report (previous release)
+     * @param current current report
+     * @param threshold relative threshold (0.1 means 10%)
+     * @param out writer
+     * @return number of regressions
+     */
+    public static int compare(final BenchmarkReport baseline, final BenchmarkReport current,
+                              final double threshold, final PrintWriter out) {
+        int regressions = 0;
+
+        out.println("# benchmark\tbaseline\tcurrent\tratio\tflag");
+        for (Entry cur : current.entries.values()) {
+            final Entry ref = baseline.entries.get(cur.key);
+            if (ref == null) {
+                out.println(cur.key + SEP + "-" + SEP + format(cur.score) + SEP + "-" + SEP + "NEW");
+                continue;
+            }
+            if (!ref.unit.equals(cur.unit) || !ref.mode.equals(cur.mode)) {
+                out.println(cur.key + SEP + format(ref.score) + SEP + format(cur.score) + SEP + "-" + SEP + "UNIT_CHANGED");
+                continue;
+            }
+            final double ratio = cur.score / ref.score;
+            // significant only if confidence intervals do not overlap:
+            final boolean significant = Math.abs(cur.score - ref.score) > (safe(cur.error) + safe(ref.error));
+
+            String flag = "";
+            if (significant) {
+                if (ratio > 1.0 + threshold) {
+                    flag = "REGRESSION";
+                    regressions++;
+                } else if (ratio < 1.0 - threshold) {
+                    flag = "IMPROVEMENT";
+                }
+            }
+            out.println(cur.key + SEP + format(ref.score) + SEP + format(cur.score) + SEP
+                    + String.format(Locale.US, "%.3f", ratio) + SEP + flag);
+        }
+        for (Entry ref : baseline.entries.values()) {
+            if (!current.entries.containsKey(ref.key)) {
+                out.println(ref.key + SEP + format(ref.score) + SEP + "-" + SEP + "-" + SEP + "REMOVED");
+            }
+        }
+        out.flush();
+        return regressions;
+    }
+
+    /**
+     * @param value value
+     * @return 0 if the given value is NaN
+     */
+    private static double safe(final double value) {
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    /**
+     * @param value value
+     * @return value formatted with 6 significant digits (US locale)
+     */
+    private static String format(final double value) {
+        return String.format(Locale.US, "%.6g", value);
+    }
+
+    /**
+     * Report entry
+     */
+    private static final class Entry {
+
+        /** benchmark key */
+        final String key;
+        /** benchmark mode */
+        final String mode;
+        /** score */
+        final double score;
+        /** score error (99.9% confidence) */
+        final double error;
+        /** score unit */
+        final String unit;
+
+        Entry(final String key, final String mode, final double score, final double error, final String unit) {
+            this.key = key;
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the jMAL JMH benchmarks and write the regression report.
+ *
+ * Usage (maven profile 'jmh'):
+ * <pre>
+ * mvn -Pjmh test-compile exec:java -Dexec.args="[-o report.tsv] [-b baseline.tsv] [-t 0.1] [-quick] [regexp ...]"
+ * mvn -Pjmh test-compile exec:java -Dexec.args="-compare baseline.tsv current.tsv [-t 0.1]"
+ * </pre>
+ * Exit code is the number of regressions when a baseline is given.
+ *
+ * @author bourgesl
+ */
+public final class BenchmarkRunner {
+
+    /** default relative threshold to flag regressions (10%) */
+    private static final double DEFAULT_THRESHOLD = 0.10;
+
+    /**
+     * Forbidden constructor
+     */
+    private BenchmarkRunner() {
+        super();
+    }
+
+    /**
+     * Main entry point
+     * @param args command line arguments
+     * @throws IOException if an I/O error occured
+     * @throws RunnerException if JMH failed
+     */
+    public static void main(final String[] args) throws IOException, RunnerException {
+        Locale.setDefault(Locale.US);
+
+        File output = new File("jmal-benchmark.tsv");
+        File baseline = null;
+        File current = null;
+        double threshold = DEFAULT_THRESHOLD;
+        boolean quick = false;
+        final List<String> includes = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("-o".equals(arg)) {
+                output = new File(args[++i]);
+            } else if ("-b".equals(arg)) {
+                baseline = new File(args[++i]);
+            } else if ("-t".equals(arg)) {
+                threshold = Double.parseDouble(args[++i]);
+            } else if ("-quick".equals(arg)) {
+                quick = true;
+            } else if ("-compare".equals(arg)) {
+                baseline = new File(args[++i]);
+                current = new File(args[++i]);
+            } else {
+                includes.add(arg);
+            }
+        }
+
+        final PrintWriter out = new PrintWriter(System.out);
+
+        if (current != null) {
+            // compare only:
+            System.exit(BenchmarkReport.compare(BenchmarkReport.load(baseline), BenchmarkReport.load(current), threshold, out));
+        }
+
+        final ChainedOptionsBuilder opts = new OptionsBuilder().forks(1)
+                .jvmArgsAppend("-Xms1g", "-Xmx1g", "-Djava.awt.headless=true");
+
+        if (includes.isEmpty()) {
+            opts.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+        } else {
+            for (String include : includes) {
+                opts.include(include);
+            }
+        }
+        if (quick) {
+            opts.warmupIterations(2).measurementIterations(3);
+        } else {
+            opts.warmupIterations(5).measurementIterations(10);
+        }
+
+        final Collection<RunResult> results = new Runner(opts.build()).run();
+
+        final BenchmarkReport report = BenchmarkReport.create(results);
+        report.save(output);
+        System.out.println("Benchmark report written: " + output.getAbsolutePath());
+
+        if (baseline != null) {
+            System.exit(BenchmarkReport.compare(BenchmarkReport.load(baseline), report, threshold, out));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmal.model.targetmodel.Parameter;
+import java.util.Random;
+
+/**
+ * Shared fixtures for JMH benchmarks (deterministic inputs)
+ *
+ * @author bourgesl
+ */
+final class BenchmarkUtils {
+
+    /** fixed seed to have reproducible inputs between runs */
+    static final long SEED = 20130101L;
+
+    /**
+     * Forbidden constructor
+     */
+    private BenchmarkUtils() {
+        super();
+    }
+
+    /**
+     * Create a new model of the given type with non trivial parameter values
+     * (positive sizes, ratios larger than 1 and non zero angles)
+     *
+     * @param type model type
+     * @return new model
+     */
+    static Model createModel(final String type) {
+        final Model model = ModelManager.getInstance().createModel(type);
+
+        for (Parameter param : model.getParameters()) {
+            final Double min = param.getMinValue();
+            final Double max = param.getMaxValue();
+
+            if (max != null) {
+                // angle:
+                param.setValue(0.25 * max.doubleValue());
+            } else if (min != null && min.doubleValue() == 1.0) {
+                // ratio:
+                param.setValue(1.5);
+            } else if (min != null && param.getValue() == 0.0) {
+                // size (mas):
+                param.setValue(2.0);
+            }
+        }
+        // small offset to avoid the zero shift fast path:
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_X, 1.0);
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_Y, -0.5);
+        return model;
+    }
+
+    /**
+     * Create a square image filled with a smooth gaussian blob plus uniform noise
+     *
+     * @param size image width and height
+     * @return 2D image array
+     */
+    static float[][] createImage(final int size) {
+        final Random random = new Random(SEED);
+        final float[][] data = new float[size][size];
+
+        final double half = 0.5 * size;
+        final double norm = -1.0 / (0.02 * size * size);
+
+        for (int j = 0; j < size; j++) {
+            final float[] row = data[j];
+            final double dy = j - half;
+
+            for (int i = 0; i < size; i++) {
+                final double dx = i - half;
+                row[i] = (float) (Math.exp((dx * dx + dy * dy) * norm) + 1e-3 * random.nextDouble());
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Flatten the given 2D image into a 1D array (row-major)
+     *
+     * @param data 2D image array
+     * @param width image width
+     * @param height image height
+     * @return 1D array
+     */
+    static float[] flatten(final float[][] data, final int width, final int height) {
+        final float[] array = new float[width * height];
+        for (int j = 0; j < height; j++) {
+            System.arraycopy(data[j], 0, array, j * width, width);
+        }
+        return array;
+    }
+}
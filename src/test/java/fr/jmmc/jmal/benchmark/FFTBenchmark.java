@@ -0,0 +1,125 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import fr.jmmc.jmal.image.FFTUtils;
+import fr.jmmc.jmal.image.FloatArrayCache;
+import fr.jmmc.jmal.image.FloatCube;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.util.CancellationToken;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark on FFTUtils.computeFFT() (single plane and cube), convert(), shiftQuadrants() and extractFFT()
+ *
+ * @author bourgesl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FFTBenchmark {
+
+    /** number of planes of the cube (wavelengths) */
+    private static final int CUBE_PLANES = 8;
+
+    /** input image size (width == height) */
+    @Param({"256", "512", "1024", "1100"})
+    public int inputSize;
+
+    /** FFT oversampling factor (FFT size = inputSize x factor) */
+    @Param({"1", "4"})
+    public int oversampling;
+
+    /** FFT size rounding: pow2 (getPowerOfTwo) or fast (getFastSize: 2, 3, 5, 7 factors) */
+    @Param({"pow2", "fast"})
+    public String sizing;
+
+    /* fixtures */
+    private float[][] image;
+    private int fftSize;
+    private float[][] fftData;
+    private FloatCube cube;
+
+    @Setup
+    public void setup() {
+        image = BenchmarkUtils.createImage(inputSize);
+        fftSize = ("fast".equals(sizing)) ? FFTUtils.getFastSize(inputSize * oversampling)
+                : FFTUtils.getPowerOfTwo(inputSize * oversampling);
+        fftData = FFTUtils.computeFFT(inputSize, image, fftSize, inputSize);
+
+        cube = new FloatCube(inputSize, inputSize, CUBE_PLANES);
+        for (int k = 0; k < CUBE_PLANES; k++) {
+            cube.getPlane(k).copyFrom(image);
+        }
+    }
+
+    @Benchmark
+    public void computeFFT(final Blackhole bh) {
+        final float[][] result = FFTUtils.computeFFT(inputSize, image, fftSize, inputSize);
+        bh.consume(result);
+        FloatArrayCache.recycleArray(result);
+    }
+
+    @Benchmark
+    public void computeFFTDouble(final Blackhole bh) {
+        final float[][] result = FFTUtils.computeFFT(inputSize, image, fftSize, inputSize,
+                FFTUtils.Precision.DOUBLE, CancellationToken.create());
+        bh.consume(result);
+        FloatArrayCache.recycleArray(result);
+    }
+
+    @Benchmark
+    public void computeFFTPlanes(final Blackhole bh) {
+        for (int k = 0; k < CUBE_PLANES; k++) {
+            final float[][] result = FFTUtils.computeFFT(cube.getPlane(k), fftSize, inputSize, CancellationToken.create());
+            bh.consume(result);
+            FloatArrayCache.recycleArray(result);
+        }
+    }
+
+    @Benchmark
+    public void computeFFTCube(final Blackhole bh) {
+        final FloatCube result = FFTUtils.computeFFT(cube, fftSize, inputSize, CancellationToken.create());
+        bh.consume(result);
+        FloatArrayCache.recycleCube(result);
+    }
+
+    @Benchmark
+    public void convertAmplitude(final Blackhole bh) {
+        final float[][] result = FFTUtils.convert(inputSize, fftData, ImageMode.AMP);
+        bh.consume(result);
+        FloatArrayCache.recycleArray(result);
+    }
+
+    @Benchmark
+    public void convertPhase(final Blackhole bh) {
+        final float[][] result = FFTUtils.convert(inputSize, fftData, ImageMode.PHASE);
+        bh.consume(result);
+        FloatArrayCache.recycleArray(result);
+    }
+
+    @Benchmark
+    public float[][] shiftQuadrants() {
+        // self-inverse on even sizes: the input stays identical between invocations (2 calls):
+        FFTUtils.shiftQuadrants(inputSize, image);
+        FFTUtils.shiftQuadrants(inputSize, image);
+        return image;
+    }
+
+    @Benchmark
+    public void extractFFT(final Blackhole bh) {
+        final float[][] result = FFTUtils.extractFFT(inputSize, fftData, inputSize / 2);
+        bh.consume(result);
+        FloatArrayCache.recycleArray(result);
+    }
+}
@@ -0,0 +1,124 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.image.ImageUtils;
+import fr.jmmc.jmal.image.job.ImageFlipJob;
+import fr.jmmc.jmal.image.job.ImageGaussianFilterJob;
+import fr.jmmc.jmal.image.job.ImageLowerThresholdJob;
+import fr.jmmc.jmal.image.job.ImageMinMaxJob;
+import fr.jmmc.jmal.image.job.ImageNormalizeJob;
+import fr.jmmc.jmal.image.job.ImageRegionThresholdJob;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark on ImageUtils.createImage() and image jobs (AbstractImageJob sub classes)
+ *
+ * @author bourgesl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageBenchmark {
+
+    /** image size (width == height) */
+    @Param({"256", "1024", "2048", "4096"})
+    public int size;
+
+    /** color scale */
+    @Param({"LINEAR", "LOGARITHMIC"})
+    public ColorScale colorScale;
+
+    /* fixtures */
+    private final IndexColorModel colorModel = ColorModels.getColorModel("aspro");
+    private float[][] image;
+    private float[] array;
+    private double[] freqs;
+
+    @Setup
+    public void setup() {
+        image = BenchmarkUtils.createImage(size);
+        array = BenchmarkUtils.flatten(image, size, size);
+
+        freqs = new double[size];
+        for (int i = 0; i < size; i++) {
+            freqs[i] = 1e-9 * (i - size / 2);
+        }
+    }
+
+    @Benchmark
+    public void createImage(final Blackhole bh) {
+        final BufferedImage result = ImageUtils.createImage(size, size, array, 1e-4f, 1f, colorModel, colorScale);
+        bh.consume(result);
+        ImageUtils.recycleImage(result);
+    }
+
+    @Benchmark
+    public float minMaxJob() {
+        final ImageMinMaxJob job = new ImageMinMaxJob(image, size, size);
+        job.forkAndJoin();
+        return job.getMax() - job.getMin();
+    }
+
+    @Benchmark
+    public int regionThresholdJob() {
+        final ImageRegionThresholdJob job = new ImageRegionThresholdJob(image, size, size, 0.5f);
+        job.forkAndJoin();
+        return job.getRowLowerIndex() + job.getColumnUpperIndex();
+    }
+
+    @Benchmark
+    public int regionThresholdBoundingBox() {
+        final ImageRegionThresholdJob job = new ImageRegionThresholdJob(image, size, size, 0.5f);
+        job.searchBoundingBox();
+        return job.getRowLowerIndex() + job.getColumnUpperIndex();
+    }
+
+    @Benchmark
+    public int lowerThresholdJob() {
+        // threshold below any value: the input stays identical between invocations:
+        final ImageLowerThresholdJob job = new ImageLowerThresholdJob(image, size, size, -1f, 0f);
+        job.forkAndJoin();
+        return job.getUpdateCount();
+    }
+
+    @Benchmark
+    public float[][] normalizeJob() {
+        // identity factor: the input stays identical between invocations:
+        new ImageNormalizeJob(image, size, size, 1.0).forkAndJoin();
+        return image;
+    }
+
+    @Benchmark
+    public float[][] flipJob() {
+        // flip twice: the input stays identical between invocations:
+        new ImageFlipJob(image, size, size, true).forkAndJoin();
+        new ImageFlipJob(image, size, size, true).forkAndJoin();
+        return image;
+    }
+
+    @Benchmark
+    public float[][] gaussianFilterJob() {
+        // use a copy as the filter modifies values in place:
+        final float[][] copy = new float[size][];
+        for (int j = 0; j < size; j++) {
+            copy[j] = image[j].clone();
+        }
+        new ImageGaussianFilterJob(copy, size, size, freqs, freqs, 1e-8).forkAndJoin();
+        return copy;
+    }
+}
@@ -0,0 +1,75 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import fr.jmmc.jmal.complex.MutableComplex;
+import fr.jmmc.jmal.model.ModelFunctionComputeContext;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark on ModelManager.prepareModels() and computeModels() per model type (function and variants)
+ *
+ * @author bourgesl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelBenchmark {
+
+    /** model type (standard, elongated, flattened and black body variants) */
+    @Param({"punct", "disk", "elong_disk", "flatten_disk", "circle", "ring", "elong_ring", "flatten_ring",
+            "gaussian", "elong_gaussian", "flatten_gaussian", "limb_quadratic",
+            "disk_BB", "ring_BB", "gaussian_BB"})
+    public String type;
+
+    /** number of uv points */
+    @Param({"1000", "100000"})
+    public int nVis;
+
+    /* fixtures */
+    private final ModelManager mm = ModelManager.getInstance();
+    private List<Model> models;
+    private double[] ufreq;
+    private double[] vfreq;
+    private double[] wavelengths;
+    private ModelFunctionComputeContext context;
+
+    @Setup
+    public void setup() {
+        models = Collections.singletonList(BenchmarkUtils.createModel(type));
+
+        ufreq = new double[nVis];
+        vfreq = new double[nVis];
+        wavelengths = new double[nVis];
+
+        for (int i = 0; i < nVis; i++) {
+            ufreq[i] = 1e3 * i;
+            vfreq[i] = -5e2 * i;
+            wavelengths[i] = 1.5e-6 + 1e-6 * i / nVis;
+        }
+        context = mm.prepareModels(models, nVis, wavelengths);
+    }
+
+    @Benchmark
+    public ModelFunctionComputeContext prepareModels() {
+        return mm.prepareModels(models, nVis, wavelengths);
+    }
+
+    @Benchmark
+    public MutableComplex[] computeModels() {
+        return mm.computeModels(context, ufreq, vfreq);
+    }
+}
@@ -0,0 +1,70 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.benchmark;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.image.ImageUtils;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelUVMapService;
+import fr.jmmc.jmal.model.UVMapData;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark on ModelUVMapService.computeUVMap() (models, convert, min/max and image rendering)
+ *
+ * @author bourgesl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UVMapBenchmark {
+
+    /** image size (width == height) */
+    @Param({"256", "512", "1024", "2048", "4096"})
+    public int imageSize;
+
+    /** image mode */
+    @Param({"AMP", "PHASE"})
+    public ImageMode mode;
+
+    /** color scale */
+    @Param({"LINEAR", "LOGARITHMIC"})
+    public ColorScale colorScale;
+
+    /* fixtures */
+    private final IndexColorModel colorModel = ColorModels.getColorModel("isophot");
+    private final Rectangle2D.Double uvRect = new Rectangle2D.Double(-1e7, -1e7, 2e7, 2e7);
+    private List<Model> models;
+
+    @Setup
+    public void setup() {
+        models = Arrays.asList(
+                BenchmarkUtils.createModel(ModelDefinition.MODEL_EDISK),
+                BenchmarkUtils.createModel(ModelDefinition.MODEL_RING),
+                BenchmarkUtils.createModel(ModelDefinition.MODEL_PUNCT));
+    }
+
+    @Benchmark
+    public UVMapData computeUVMap() {
+        final UVMapData data = ModelUVMapService.computeUVMap(models, uvRect, mode, imageSize, colorModel, colorScale);
+        // give back the image to the image cache (steady state):
+        ImageUtils.recycleImage(data.getUvMap());
+        return data;
+    }
+}
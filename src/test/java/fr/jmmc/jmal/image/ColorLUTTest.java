@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.MathUtils;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare ColorLUT colors against the interpolated ImageUtils.getRGB() and the exact logarithmic scale
+ *
+ * @author bourgesl
+ */
+public class ColorLUTTest {
+
+    private static final int ALPHA = 0xff << 24;
+
+    @Test
+    public void testColors() {
+        final IndexColorModel colorModel = ColorModels.getColorModel("isophot");
+        final int iMaxColor = colorModel.getMapSize() - 1;
+
+        final ColorLUT lut = ColorLUT.getInstance(colorModel, ALPHA);
+        Assert.assertSame(lut, ColorLUT.getInstance(colorModel, ALPHA));
+        Assert.assertNotSame(lut, ColorLUT.getInstance(colorModel, 0x80 << 24));
+        Assert.assertEquals(iMaxColor * ColorLUT.SUB_STEPS + 1, lut.getSize());
+
+        // exact at color indexes and sub-steps:
+        for (int i = 0; i <= iMaxColor * ColorLUT.SUB_STEPS; i++) {
+            final float value = ((float) i) / ColorLUT.SUB_STEPS;
+            Assert.assertEquals(ImageUtils.getRGB(colorModel, iMaxColor, value, ALPHA), lut.getRGB(value));
+        }
+
+        // close elsewhere (half sub-step):
+        final Random random = new Random(3L);
+        for (int n = 0; n < 10000; n++) {
+            final float value = random.nextFloat() * iMaxColor;
+            final int expected = ImageUtils.getRGB(colorModel, iMaxColor, value, ALPHA);
+            final int rgb = lut.getRGB(value);
+
+            Assert.assertEquals(expected >>> 24, rgb >>> 24);
+            for (int shift = 0; shift <= 16; shift += 8) {
+                final int delta = Math.abs(((expected >> shift) & 0xff) - ((rgb >> shift) & 0xff));
+                Assert.assertTrue("value = " + value + " delta = " + delta, delta <= 8);
+            }
+        }
+
+        // clamped:
+        Assert.assertEquals(ImageUtils.getRGB(colorModel, iMaxColor, 0f, ALPHA), lut.getRGB(-10f));
+        Assert.assertEquals(ImageUtils.getRGB(colorModel, iMaxColor, iMaxColor, ALPHA), lut.getRGB(1e9f));
+    }
+
+    @Test
+    public void testLog() {
+        final IndexColorModel colorModel = ColorModels.getColorModel("isophot");
+        final ColorLUT lut = ColorLUT.getInstance(colorModel, ALPHA);
+
+        // 4 decades:
+        final float[] scaledMinMax = ImageUtils.scaleMinMax(1e-4f, 1f, ColorScale.LOGARITHMIC);
+        final float scalingFactor = ImageUtils.computeScalingFactor(scaledMinMax[0], scaledMinMax[1], colorModel.getMapSize());
+
+        final float lutFactor = scalingFactor * ColorLUT.SUB_STEPS;
+        final float log2Factor = MathUtils.LOG10_2 * lutFactor;
+        final float offset = scaledMinMax[0] * lutFactor;
+
+        final Random random = new Random(11L);
+        int same = 0;
+        for (int n = 0; n < 10000; n++) {
+            final float value = (float) Math.pow(10.0, -4.5 + 5.0 * random.nextDouble());
+
+            // table position error is much smaller than one sub-step:
+            final double position = ImageUtils.getScaledValue(true, scaledMinMax[0], scalingFactor, value) * ColorLUT.SUB_STEPS;
+            final double fastPosition = MathUtils.fastLog2(value) * log2Factor - offset;
+            Assert.assertEquals("value = " + value, position, fastPosition, 0.01);
+
+            if (lut.getRGB(ImageUtils.getScaledValue(true, scaledMinMax[0], scalingFactor, value)) == lut.getRGBLog(value, log2Factor, offset)) {
+                same++;
+            }
+        }
+        Assert.assertTrue("same colors = " + same, same > 9900);
+
+        // lowest color for zero, negative and NaN values:
+        Assert.assertEquals(lut.getRGB(0f), lut.getRGBLog(0f, log2Factor, offset));
+        Assert.assertEquals(lut.getRGB(0f), lut.getRGBLog(-1f, log2Factor, offset));
+        Assert.assertEquals(lut.getRGB(0f), lut.getRGBLog(Float.NaN, log2Factor, offset));
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.CancellationToken;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare the FFT convolution (single tile and overlap-save tiles) against the direct convolution
+ *
+ * @author bourgesl
+ */
+public class ConvolutionTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+
+    @Test
+    public void testDirect() {
+        final float[][] image = new float[HEIGHT][WIDTH];
+        image[10][20] = 1f;
+
+        // asymmetric kernel (origin not centered):
+        final float[][] data = new float[][]{{1f, 2f, 3f}, {4f, 5f, 6f}};
+        final ConvolutionKernel kernel = new ConvolutionKernel(data, 3, 2, 0, 1);
+
+        final float[][] output = Convolution.convolveDirect(image, WIDTH, HEIGHT, kernel, CancellationToken.create());
+
+        // impulse response = kernel shifted by its origin:
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(data[j][i], output[10 + j - 1][20 + i], 0f);
+            }
+        }
+        Assert.assertEquals(0f, output[10][19], 0f);
+        FloatArrayCache.recycleArray(output);
+    }
+
+    @Test
+    public void testFFT() {
+        final Random random = new Random(7L);
+        final float[][] image = new float[HEIGHT][WIDTH];
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                image[j][i] = random.nextFloat();
+            }
+        }
+        final float[][] data = new float[9][7];
+        for (int j = 0; j < 9; j++) {
+            for (int i = 0; i < 7; i++) {
+                data[j][i] = random.nextFloat() - 0.3f;
+            }
+        }
+        final ConvolutionKernel kernel = new ConvolutionKernel(data, 7, 9, 2, 5);
+
+        final float[][] expected = Convolution.convolveDirect(image, WIDTH, HEIGHT, kernel, CancellationToken.create());
+
+        // overlap-save tiles (16, 32) and single tile (256):
+        for (int tileSize : new int[]{16, 32, Convolution.getTileSize(WIDTH, HEIGHT, kernel), 256}) {
+            final float[][] output = Convolution.convolveFFT(image, WIDTH, HEIGHT, kernel, tileSize, CancellationToken.create());
+
+            for (int j = 0; j < HEIGHT; j++) {
+                for (int i = 0; i < WIDTH; i++) {
+                    Assert.assertEquals("[" + i + ", " + j + "] (tile size = " + tileSize + ")", expected[j][i], output[j][i], 1e-4f);
+                }
+            }
+            FloatArrayCache.recycleArray(output);
+        }
+        FloatArrayCache.recycleArray(expected);
+    }
+
+    @Test
+    public void testCostModel() {
+        // small kernel: direct convolution is cheaper
+        final ConvolutionKernel small = ConvolutionKernel.gaussian(0.5, 0.5);
+        Assert.assertTrue(Convolution.getDirectCost(512, 512, small)
+                < Convolution.getFFTCost(512, 512, small, Convolution.getTileSize(512, 512, small)));
+
+        // large kernel: FFT convolution is cheaper
+        final ConvolutionKernel large = ConvolutionKernel.gaussian(8.0, 8.0);
+        Assert.assertTrue(Convolution.getDirectCost(512, 512, large)
+                > Convolution.getFFTCost(512, 512, large, Convolution.getTileSize(512, 512, large)));
+
+        // too small tile:
+        Assert.assertTrue(Double.isInfinite(Convolution.getFFTCost(512, 512, large, 32)));
+
+        // normalized gaussian preserves the flux:
+        final float[][] image = new float[64][64];
+        image[32][32] = 1f;
+        final float[][] output = Convolution.convolve(image, 64, 64, large);
+        double sum = 0.0;
+        for (int j = 0; j < 64; j++) {
+            for (int i = 0; i < 64; i++) {
+                sum += output[j][i];
+            }
+        }
+        Assert.assertEquals(1.0, sum, 1e-4);
+        FloatArrayCache.recycleArray(output);
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_2D;
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Simple tests on FFTPlanPool
+ *
+ * @author bourgesl
+ */
+public class FFTPlanPoolTest {
+
+    @Test
+    public void testAcquireRelease() {
+        final FFTPlanPool pool = new FFTPlanPool(1);
+
+        final FloatFFT_2D plan = pool.acquire(64, 64, true);
+        Assert.assertEquals(0L, pool.getHitCount());
+        Assert.assertEquals(1L, pool.getMissCount());
+
+        pool.release(plan, true);
+        Assert.assertEquals(1, pool.getStrongCount());
+
+        // same size but other subset flag:
+        final FloatFFT_2D other = pool.acquire(64, 64, false);
+        Assert.assertNotSame(plan, other);
+        Assert.assertEquals(2L, pool.getMissCount());
+
+        Assert.assertSame(plan, pool.acquire(64, 64, true));
+        Assert.assertEquals(1L, pool.getHitCount());
+        Assert.assertEquals(0, pool.getStrongCount());
+
+        // overflow goes to soft references:
+        pool.release(plan, true);
+        pool.release(pool.acquire(64, 64, true), true);
+        final FloatFFT_2D extra = new FloatFFT_2D(64, 64, true);
+        pool.release(extra, true);
+        Assert.assertEquals(1, pool.getStrongCount());
+
+        Assert.assertSame(plan, pool.acquire(64, 64, true));
+        Assert.assertSame(extra, pool.acquire(64, 64, true));
+        Assert.assertEquals(1L, pool.getSoftHitCount());
+    }
+
+    @Test
+    public void testDoublePrecision() {
+        final FFTPlanPool pool = new FFTPlanPool(1);
+
+        final DoubleFFT_2D plan = pool.acquireDouble(64, 64, true);
+        pool.release(plan, true);
+
+        // single and double precision plans are pooled separately:
+        final FloatFFT_2D single = pool.acquire(64, 64, true);
+        Assert.assertEquals(2L, pool.getMissCount());
+        pool.release(single, true);
+        Assert.assertEquals(2, pool.getStrongCount());
+
+        Assert.assertSame(plan, pool.acquireDouble(64, 64, true));
+        Assert.assertEquals(1L, pool.getHitCount());
+    }
+
+    @Test
+    public void testPrewarm() {
+        final FFTPlanPool pool = new FFTPlanPool(2);
+
+        pool.prewarm(128, 128, true, 3);
+        Assert.assertEquals(2, pool.getStrongCount());
+
+        pool.prewarm(128, 128, true, 2);
+        Assert.assertEquals(2, pool.getStrongCount());
+
+        pool.acquire(128, 128, true);
+        pool.acquire(128, 128, true);
+        Assert.assertEquals(2L, pool.getHitCount());
+        Assert.assertEquals(0L, pool.getMissCount());
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_2D;
+import edu.emory.mathcs.jtransforms.fft.RealFFTUtils_2D;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.VisConverter;
+import fr.jmmc.jmal.util.CancellationToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare FloatFFT_2D.realForwardSubset() against a direct DFT for power of two, mixed radix and bluestein sizes
+ * and the batched cube transform against the single plane transform
+ * and the fused convert against the generic unpack and quadrant shift
+ * and the double precision path against the direct DFT
+ *
+ * @author bourgesl
+ */
+public class FFTSubsetTest {
+
+    /** input image size */
+    private static final int INPUT_SIZE = 16;
+    /** output (subset) size */
+    private static final int SUB_SIZE = 20;
+
+    @Test
+    public void testFastSize() {
+        Assert.assertEquals(2, FFTUtils.getFastSize(1));
+        Assert.assertEquals(1120, FFTUtils.getFastSize(1100));
+        Assert.assertEquals(1024, FFTUtils.getFastSize(1024));
+        Assert.assertTrue(FFTUtils.isFastSize(2 * 3 * 5 * 7));
+        Assert.assertFalse(FFTUtils.isFastSize(2 * 11));
+        Assert.assertFalse(FFTUtils.isFastSize(15));
+    }
+
+    @Test
+    public void testSubsetSizes() {
+        // power of two, mixed radix (2, 3, 5), generic factor (2 x 53) and bluestein (2 x 223):
+        for (int fftSize : new int[]{64, 60, 106, 446}) {
+            checkSubset(fftSize);
+        }
+    }
+
+    @Test
+    public void testCube() {
+        final int planes = 3;
+        final FloatCube cube = new FloatCube(INPUT_SIZE, INPUT_SIZE, planes);
+        for (int k = 0; k < planes; k++) {
+            cube.getPlane(k).copyFrom(createInput(k));
+        }
+        Assert.assertEquals(createInput(1)[5][3], cube.get(3, 5, 1), 0f);
+
+        // output smaller, equal and larger than the input:
+        for (int fftSize : new int[]{64, 60}) {
+            for (int outputSize : new int[]{12, INPUT_SIZE, SUB_SIZE}) {
+                final FloatCube output = FFTUtils.computeFFT(cube, fftSize, outputSize, CancellationToken.create());
+                Assert.assertEquals(planes, output.getDepth());
+                Assert.assertEquals(outputSize, output.getWidth());
+
+                for (int k = 0; k < planes; k++) {
+                    final float[][] expected = FFTUtils.computeFFT(INPUT_SIZE, createInput(k), fftSize, outputSize);
+                    final FloatImage plane = output.getPlane(k);
+
+                    for (int r = 0; r < outputSize; r++) {
+                        for (int c = 0; c < outputSize; c++) {
+                            Assert.assertEquals("plane[" + k + "][" + r + "][" + c + "] (fft = " + fftSize + " output = " + outputSize + ")",
+                                    expected[r][c], plane.get(c, r), 1e-6f);
+                        }
+                    }
+                    FloatArrayCache.recycleArray(expected);
+                }
+                FloatArrayCache.recycleCube(output);
+            }
+        }
+    }
+
+    @Test
+    public void testConvert() {
+        final int fftSize = 32;
+        final float[][] packed = new FloatFFT_2D(fftSize, fftSize, true).realForwardSubset(fftSize, INPUT_SIZE, createInput(2));
+        final RealFFTUtils_2D unpacker = new RealFFTUtils_2D(fftSize, fftSize);
+
+        for (ImageMode mode : new ImageMode[]{ImageMode.AMP, ImageMode.PHASE}) {
+            final VisConverter converter = VisConverter.create(mode, null);
+
+            for (int outputSize : new int[]{fftSize, 20, 2}) {
+                final float[][] output = FFTUtils.convert(fftSize, packed, mode, outputSize);
+
+                // reference: generic unpack then quadrant shift:
+                final int ro2 = outputSize / 2;
+                final float[][] expected = new float[outputSize][outputSize];
+                for (int r = 0; r < outputSize; r++) {
+                    final int fr = (r < ro2) ? r : fftSize - outputSize + r;
+                    for (int i = 0; i < outputSize; i++) {
+                        final int c = 2 * ((i < ro2) ? i : fftSize - outputSize + i);
+                        expected[r][i] = converter.convert(unpacker.unpack(fr, c, packed), unpacker.unpack(fr, c + 1, packed), null);
+                    }
+                }
+                FFTUtils.shiftQuadrants(outputSize, expected);
+
+                for (int r = 0; r < outputSize; r++) {
+                    for (int i = 0; i < outputSize; i++) {
+                        Assert.assertEquals(mode + "[" + r + "][" + i + "] (output = " + outputSize + ")", expected[r][i], output[r][i], 1e-6f);
+                    }
+                }
+                FloatArrayCache.recycleArray(output);
+            }
+        }
+    }
+
+    @Test
+    public void testDoublePrecision() {
+        // high dynamic range: faint structure on a strong pedestal:
+        final float[][] input = createInput(0);
+        for (int j = 0; j < INPUT_SIZE; j++) {
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                input[j][i] = 1e4f + 1e-2f * input[j][i];
+            }
+        }
+        final int half = SUB_SIZE / 2;
+
+        // power of two and bluestein sizes:
+        for (int fftSize : new int[]{64, 446}) {
+            final float[][] single = FFTUtils.computeFFT(INPUT_SIZE, input, fftSize, SUB_SIZE,
+                    FFTUtils.Precision.SINGLE, CancellationToken.create());
+            final float[][] output = FFTUtils.computeFFT(INPUT_SIZE, input, fftSize, SUB_SIZE,
+                    FFTUtils.Precision.DOUBLE, CancellationToken.create());
+
+            final double norm = directDFT(fftSize, input, 0, 0)[0];
+            double maxSingle = 0.0, maxDouble = 0.0;
+
+            for (int r = 1; r < SUB_SIZE; r++) {
+                final int k1 = (r < half) ? r : fftSize - SUB_SIZE + r;
+                for (int k2 = 1; k2 < half; k2++) {
+                    final double[] expected = directDFT(fftSize, input, k1, k2);
+
+                    maxSingle = Math.max(maxSingle, Math.abs(expected[0] - single[r][2 * k2]));
+                    maxSingle = Math.max(maxSingle, Math.abs(expected[1] - single[r][2 * k2 + 1]));
+                    maxDouble = Math.max(maxDouble, Math.abs(expected[0] - output[r][2 * k2]));
+                    maxDouble = Math.max(maxDouble, Math.abs(expected[1] - output[r][2 * k2 + 1]));
+                }
+            }
+            // only the float rounding of the output values remains:
+            Assert.assertTrue("double error = " + maxDouble + " (fft = " + fftSize + ")", maxDouble < 1e-7 * norm);
+            Assert.assertTrue("double error = " + maxDouble + " single error = " + maxSingle + " (fft = " + fftSize + ")",
+                    maxDouble < maxSingle);
+
+            FloatArrayCache.recycleArray(single);
+            FloatArrayCache.recycleArray(output);
+        }
+    }
+
+    private static float[][] createInput(final int plane) {
+        final float[][] input = new float[INPUT_SIZE][INPUT_SIZE];
+        for (int j = 0; j < INPUT_SIZE; j++) {
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                input[j][i] = (float) Math.exp(-0.05 * (1 + plane) * ((i - 7.5) * (i - 7.5) + 2.0 * (j - 8) * (j - 8))) + 0.01f * ((i * 7 + j * 3) % 5);
+            }
+        }
+        return input;
+    }
+
+    private static void checkSubset(final int fftSize) {
+        final float[][] input = createInput(0);
+
+        final float[][] output = new FloatFFT_2D(fftSize, fftSize, true).realForwardSubset(SUB_SIZE, INPUT_SIZE, input);
+
+        final int half = SUB_SIZE / 2;
+        final double norm = directDFT(fftSize, input, 0, 0)[0];
+
+        // check inner frequencies (rows 0..half-1 => k1 = r, rows half.. => negative k1):
+        for (int r = 1; r < SUB_SIZE; r += 3) {
+            final int k1 = (r < half) ? r : fftSize - SUB_SIZE + r;
+            for (int k2 = 1; k2 < half; k2 += 2) {
+                final double[] expected = directDFT(fftSize, input, k1, k2);
+
+                Assert.assertEquals("re[" + fftSize + "][" + r + "][" + k2 + "]", expected[0], output[r][2 * k2], 1e-4 * norm);
+                Assert.assertEquals("im[" + fftSize + "][" + r + "][" + k2 + "]", expected[1], output[r][2 * k2 + 1], 1e-4 * norm);
+            }
+        }
+    }
+
+    /**
+     * Direct DFT of the input image centered at (0, 0) i.e. quadrants swapped like realForwardSubset()
+     */
+    private static double[] directDFT(final int n, final float[][] input, final int k1, final int k2) {
+        final int h = INPUT_SIZE / 2;
+        double re = 0.0, im = 0.0;
+        for (int j = 0; j < INPUT_SIZE; j++) {
+            final int y = (j < h) ? n - h + j : j - h;
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                final int x = (i < h) ? n - h + i : i - h;
+                final double phi = -2.0 * Math.PI * (((long) k1 * y + (long) k2 * x) % n) / n;
+                re += input[j][i] * Math.cos(phi);
+                im += input[j][i] * Math.sin(phi);
+            }
+        }
+        return new double[]{re, im};
+    }
+}
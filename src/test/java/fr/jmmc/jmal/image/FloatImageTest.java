@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.image.job.ImageFlipJob;
+import fr.jmmc.jmal.image.job.ImageMinMaxJob;
+import fr.jmmc.jmal.image.job.ImageNormalizeJob;
+import fr.jmmc.jmal.util.CancellationToken;
+import java.awt.image.BufferedImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests on FloatImage and the flat image overloads (same results as float[][])
+ *
+ * @author bourgesl
+ */
+public class FloatImageTest {
+
+    private static float[][] createArray(final int rows, final int cols) {
+        final float[][] array = new float[rows][cols];
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < cols; i++) {
+                array[j][i] = (float) Math.sin(0.1 * i + 0.37 * j);
+            }
+        }
+        return array;
+    }
+
+    @Test
+    public void testViews() {
+        final float[][] array = createArray(6, 8);
+        final FloatImage image = FloatImage.copyOf(6, 8, array);
+
+        Assert.assertEquals(8, image.getWidth());
+        Assert.assertEquals(6, image.getHeight());
+        Assert.assertTrue(image.isContiguous());
+
+        final FloatImage view = ImageArrayUtils.extract(image, 2, 4);
+        Assert.assertFalse(view.isContiguous());
+        Assert.assertSame(image.getData(), view.getData());
+
+        final float[][] expected = ImageArrayUtils.extract(6, 8, array, 2, 4);
+        final float[][] actual = view.toArray2D();
+        for (int j = 0; j < 2; j++) {
+            Assert.assertArrayEquals(expected[j], actual[j], 0f);
+        }
+        // copy is contiguous:
+        Assert.assertArrayEquals(actual[1], view.copy().toArray2D()[1], 0f);
+
+        final FloatImage large = ImageArrayUtils.enlarge(view, 6, 8);
+        Assert.assertEquals(view.get(1, 1), large.get(3, 3), 0f);
+        Assert.assertEquals(0f, large.get(0, 0), 0f);
+    }
+
+    @Test
+    public void testJobs() {
+        final float[][] array = createArray(300, 300);
+        final FloatImage image = FloatImage.copyOf(300, 300, array);
+
+        final ImageMinMaxJob job2D = new ImageMinMaxJob(array, 300, 300, false);
+        job2D.forkAndJoin();
+        final ImageMinMaxJob jobFlat = new ImageMinMaxJob(image, false);
+        jobFlat.forkAndJoin();
+        Assert.assertEquals(job2D.getMin(), jobFlat.getMin(), 0f);
+        Assert.assertEquals(job2D.getMax(), jobFlat.getMax(), 0f);
+
+        new ImageNormalizeJob(array, 300, 300, 0.5).forkAndJoin();
+        new ImageNormalizeJob(image, 0.5).forkAndJoin();
+        new ImageFlipJob(array, 300, 300, true).forkAndJoin();
+        new ImageFlipJob(image, true).forkAndJoin();
+
+        final float[][] actual = image.toArray2D();
+        for (int j = 0; j < 300; j++) {
+            Assert.assertArrayEquals(array[j], actual[j], 0f);
+        }
+    }
+
+    @Test
+    public void testCreateImage() {
+        final float[][] array = createArray(64, 32);
+        final FloatImage image = FloatImage.copyOf(64, 32, array);
+
+        final BufferedImage expected = ImageUtils.createImage(32, 64, array, -1f, 1f,
+                ColorModels.getDefaultColorModel(), ColorScale.LINEAR);
+        final BufferedImage actual = ImageUtils.createImage(image, -1f, 1f,
+                ColorModels.getDefaultColorModel(), ColorScale.LINEAR, CancellationToken.create());
+
+        // 1D array in raster row order (top row first):
+        final float[] array1D = new float[64 * 32];
+        for (int j = 0; j < 64; j++) {
+            System.arraycopy(array[63 - j], 0, array1D, 32 * j, 32);
+        }
+        final BufferedImage actual1D = ImageUtils.createImage(32, 64, array1D, -1f, 1f,
+                ColorModels.getDefaultColorModel(), ColorScale.LINEAR);
+
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 32; x++) {
+                Assert.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+                Assert.assertEquals(expected.getRGB(x, y), actual1D.getRGB(x, y));
+            }
+        }
+    }
+}
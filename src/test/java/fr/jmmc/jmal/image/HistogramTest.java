@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.image.job.ImageHistogramJob;
+import fr.jmmc.jmal.image.job.ImageMinMaxJob;
+import fr.jmmc.jmal.util.CancellationToken;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare histogram percentiles against sorted values and check the histogram based color scales
+ *
+ * @author bourgesl
+ */
+public class HistogramTest {
+
+    private static FloatImage createImage(final int size, final long seed) {
+        final FloatImage image = new FloatImage(size, size);
+        final Random random = new Random(seed);
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                image.set(i, j, (float) random.nextGaussian());
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void testPercentiles() {
+        // large enough to fork jobs:
+        final FloatImage image = createImage(300, 7L);
+
+        final ImageMinMaxJob minMaxJob = new ImageMinMaxJob(image, false);
+        minMaxJob.forkAndJoin();
+
+        final ImageHistogramJob job = new ImageHistogramJob(image, minMaxJob.getMin(), minMaxJob.getMax(), ImageHistogramJob.DEFAULT_BINS);
+        Assert.assertTrue(job.shouldForkJobs());
+        final Histogram histogram = job.forkAndJoin();
+
+        Assert.assertEquals(300 * 300, histogram.getCount());
+
+        // same as a single histogram:
+        final Histogram expected = new Histogram(minMaxJob.getMin(), minMaxJob.getMax(), ImageHistogramJob.DEFAULT_BINS);
+        final float[] values = image.getData().clone();
+        for (float value : values) {
+            expected.add(value);
+        }
+        for (int i = 0; i < histogram.getBinCount(); i++) {
+            Assert.assertEquals(expected.getCount(i), histogram.getCount(i));
+        }
+
+        // percentiles within one bin of the sorted values:
+        Arrays.sort(values);
+        final float binWidth = (minMaxJob.getMax() - minMaxJob.getMin()) / ImageHistogramJob.DEFAULT_BINS;
+
+        for (double percent : new double[]{0.5, 1.0, 25.0, 50.0, 75.0, 99.0, 99.5}) {
+            final float sorted = values[(int) Math.round(0.01 * percent * (values.length - 1))];
+            Assert.assertEquals("percentile " + percent, sorted, histogram.getPercentile(percent), binWidth);
+        }
+        Assert.assertEquals(minMaxJob.getMin(), histogram.getPercentile(0.0), binWidth);
+        Assert.assertEquals(minMaxJob.getMax(), histogram.getPercentile(100.0), binWidth);
+
+        // cumulative fraction:
+        Assert.assertEquals(0f, histogram.getCumulativeFraction(minMaxJob.getMin() - 1f), 0f);
+        Assert.assertEquals(1f, histogram.getCumulativeFraction(minMaxJob.getMax()), 0f);
+        Assert.assertEquals(0.5f, histogram.getCumulativeFraction(values[values.length / 2]), 1e-3f);
+    }
+
+    @Test
+    public void testColorScales() {
+        final int size = 64;
+        final FloatImage image = createImage(size, 13L);
+        // hot pixel:
+        image.set(3, 5, 1e6f);
+
+        final ImageMinMaxJob minMaxJob = new ImageMinMaxJob(image, false);
+        minMaxJob.forkAndJoin();
+
+        final IndexColorModel colorModel = ColorModels.getColorModel("Gray");
+        final CancellationToken token = CancellationToken.create();
+
+        final BufferedImage linear = ImageUtils.createImage(image, minMaxJob.getMin(), minMaxJob.getMax(),
+                colorModel, ColorScale.LINEAR, token);
+        final BufferedImage percentile = ImageUtils.createImage(image, minMaxJob.getMin(), minMaxJob.getMax(),
+                colorModel, ColorScale.PERCENTILE, token);
+        final BufferedImage equalized = ImageUtils.createImage(image, minMaxJob.getMin(), minMaxJob.getMax(),
+                colorModel, ColorScale.EQUALIZED, token);
+
+        // the hot pixel crushes the linear scale but not the histogram based ones:
+        Assert.assertTrue(countColors(linear) <= 2);
+        Assert.assertTrue(countColors(percentile) > 100);
+        Assert.assertTrue(countColors(equalized) > 100);
+
+        // equalized colors are evenly spread: mean gray ~ 0.5
+        Assert.assertEquals(127.5, meanGray(equalized), 5.0);
+    }
+
+    @Test
+    public void testScaledMinUnsupported() {
+        final IndexColorModel colorModel = ColorModels.getColorModel("Gray");
+        final float[][] array = new float[4][4];
+        final float[] flat = new float[4 * 4];
+
+        for (ColorScale colorScale : new ColorScale[]{ColorScale.PERCENTILE, ColorScale.EQUALIZED}) {
+            try {
+                ImageUtils.scaleMinMax(0f, 1f, colorScale);
+                Assert.fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException iae) {
+                // histogram based scales need data:
+            }
+            try {
+                ImageUtils.createImage(4, 4, array, 0f, colorModel, 1f, colorScale, CancellationToken.create());
+                Assert.fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException iae) {
+                // histogram based scales need data:
+            }
+            try {
+                ImageUtils.createImage(4, 4, flat, 0f, colorModel, 1f, colorScale, CancellationToken.create());
+                Assert.fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException iae) {
+                // histogram based scales need data:
+            }
+        }
+    }
+
+    private static int countColors(final BufferedImage image) {
+        final boolean[] used = new boolean[256];
+        int n = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int gray = image.getRGB(x, y) & 0xff;
+                if (!used[gray]) {
+                    used[gray] = true;
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static double meanGray(final BufferedImage image) {
+        double sum = 0.0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                sum += image.getRGB(x, y) & 0xff;
+            }
+        }
+        return sum / (image.getWidth() * image.getHeight());
+    }
+}
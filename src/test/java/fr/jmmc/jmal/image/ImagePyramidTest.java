@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check ImagePyramid levels (2x2 mean ignoring NaN) and tiles against ImageUtils.createImage()
+ *
+ * @author bourgesl
+ */
+public class ImagePyramidTest {
+
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 301;
+
+    private static float[][] createArray() {
+        final float[][] array = new float[HEIGHT][WIDTH];
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                array[j][i] = (float) Math.sin(0.03 * i + 0.07 * j);
+            }
+        }
+        array[10][20] = Float.NaN;
+        return array;
+    }
+
+    @Test
+    public void testLevels() {
+        final float[][] array = createArray();
+        final ImagePyramid pyramid = new ImagePyramid(WIDTH, HEIGHT, null, array, -1f, 1f,
+                ColorModels.getDefaultColorModel(), null);
+
+        Assert.assertEquals(3, pyramid.getLevelCount());
+        Assert.assertEquals(300, pyramid.getLevelWidth(1));
+        Assert.assertEquals(151, pyramid.getLevelHeight(1));
+        Assert.assertEquals(76, pyramid.getLevelHeight(2));
+        Assert.assertFalse(pyramid.isLevelReady(1));
+
+        pyramid.buildLevels();
+        Assert.assertTrue(pyramid.isLevelReady(2));
+
+        // image coordinates (top row first):
+        for (int y = 0; y < HEIGHT; y++) {
+            Assert.assertEquals(array[HEIGHT - 1 - y][7], pyramid.getValue(7, y), 0f);
+        }
+
+        for (int y = 0; y < 150; y++) {
+            for (int x = 0; x < 300; x++) {
+                float sum = 0f;
+                int n = 0;
+                for (int k = 0; k < 4; k++) {
+                    final float value = pyramid.getValue(2 * x + (k & 1), 2 * y + (k >> 1));
+                    if (!Float.isNaN(value)) {
+                        sum += value;
+                        n++;
+                    }
+                }
+                Assert.assertEquals(sum / n, pyramid.getValue(1, x, y), 1e-6f);
+            }
+        }
+        // last row duplicated (odd height):
+        Assert.assertEquals(0.5f * (pyramid.getValue(2, HEIGHT - 1) + pyramid.getValue(3, HEIGHT - 1)), pyramid.getValue(1, 1, 150), 1e-6f);
+        Assert.assertFalse(Float.isNaN(pyramid.getValue(1, 10, (HEIGHT - 1 - 10) / 2)));
+    }
+
+    @Test
+    public void testTiles() {
+        final float[][] array = createArray();
+        final IndexColorModel colorModel = ColorModels.getDefaultColorModel();
+        final float scalingFactor = ImageUtils.computeScalingFactor(-1f, 1f, colorModel.getMapSize());
+
+        final BufferedImage expected = ImageUtils.createImage(WIDTH, HEIGHT, array, -1f, colorModel, scalingFactor);
+
+        final float[] array1D = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(array[HEIGHT - 1 - y], 0, array1D, y * WIDTH, WIDTH);
+        }
+
+        for (ImagePyramid pyramid : new ImagePyramid[]{
+            new ImagePyramid(WIDTH, HEIGHT, null, array, -1f, scalingFactor, colorModel, null),
+            new ImagePyramid(WIDTH, HEIGHT, array1D, null, -1f, scalingFactor, colorModel, null)}) {
+
+            // last tile (partial):
+            final BufferedImage tile = pyramid.createTile(0, 2, 1, colorModel);
+            Assert.assertEquals(WIDTH - 512, tile.getWidth());
+            Assert.assertEquals(HEIGHT - 256, tile.getHeight());
+
+            for (int y = 0; y < tile.getHeight(); y++) {
+                for (int x = 0; x < tile.getWidth(); x++) {
+                    Assert.assertEquals(expected.getRGB(512 + x, 256 + y), tile.getRGB(x, y));
+                }
+            }
+            ImageUtils.recycleImage(tile);
+        }
+        ImageUtils.recycleImage(expected);
+    }
+
+    @Test
+    public void testColorModel() throws InterruptedException {
+        final float[][] array = createArray();
+        final IndexColorModel colorModel = ColorModels.getColorModel("Gray");
+        final IndexColorModel otherModel = ColorModels.getDefaultColorModel();
+
+        final ImagePyramid pyramid = new ImagePyramid(WIDTH, HEIGHT, null, array, -1f, 100f, colorModel, null);
+        pyramid.buildLevels();
+
+        // colorized in the background:
+        BufferedImage tile = waitForTile(pyramid, null);
+        final int rgb = tile.getRGB(5, 5);
+
+        pyramid.setColorModel(otherModel);
+
+        // previous tile until replaced:
+        tile = waitForTile(pyramid, tile);
+        Assert.assertEquals(pyramid.createTile(2, 0, 0, otherModel).getRGB(5, 5), tile.getRGB(5, 5));
+        Assert.assertTrue(rgb != tile.getRGB(5, 5));
+
+        pyramid.trim(0);
+        pyramid.dispose();
+    }
+
+    private static BufferedImage waitForTile(final ImagePyramid pyramid, final BufferedImage previous) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            final BufferedImage tile = pyramid.getTile(2, 0, 0);
+            if (tile != null && tile != previous) {
+                return tile;
+            }
+            Thread.sleep(10l);
+        }
+        Assert.fail("tile not ready");
+        return null;
+    }
+
+    @Test
+    public void testLevel() {
+        Assert.assertEquals(0, ImagePyramid.getLevel(2.0, 5));
+        Assert.assertEquals(0, ImagePyramid.getLevel(0.6, 5));
+        Assert.assertEquals(1, ImagePyramid.getLevel(0.5, 5));
+        Assert.assertEquals(3, ImagePyramid.getLevel(0.073, 5));
+        Assert.assertEquals(4, ImagePyramid.getLevel(0.001, 5));
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.image.ImageResampler.Kernel;
+import fr.jmmc.jmal.util.CancellationToken;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check ImageResampler kernels (identity, accuracy on a smooth function) and its geometry against transformImage()
+ *
+ * @author bourgesl
+ */
+public class ImageResamplerTest {
+
+    /** smooth asymmetric function sampled at pixel centers */
+    private static double function(final double x, final double y) {
+        return 0.5 + 0.3 * Math.sin(0.11 * x + 0.05 * y) + 0.2 * Math.cos(0.07 * y);
+    }
+
+    private static float[][] createArray(final int size) {
+        final float[][] array = new float[size][size];
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                array[j][i] = (float) function(i + 0.5, j + 0.5);
+            }
+        }
+        return array;
+    }
+
+    @Test
+    public void testIdentity() {
+        final float[][] array = createArray(40);
+
+        for (Kernel kernel : Kernel.values()) {
+            final float[][] output = ImageResampler.transform(40, 40, array, new AffineTransform(), 40, 40,
+                    kernel, Float.NaN, CancellationToken.create());
+            for (int j = 0; j < 40; j++) {
+                Assert.assertArrayEquals(array[j], output[j], 1e-6f);
+            }
+            FloatArrayCache.recycleArray(output);
+        }
+    }
+
+    @Test
+    public void testRotation() {
+        final int size = 300;
+        final float[][] array = createArray(size);
+
+        // rotate by 30 degrees around the center:
+        final AffineTransform at = AffineTransform.getRotateInstance(Math.toRadians(30.0), size / 2.0, size / 2.0);
+        final AffineTransform inverse = AffineTransform.getRotateInstance(Math.toRadians(-30.0), size / 2.0, size / 2.0);
+
+        double lastError = Double.POSITIVE_INFINITY;
+
+        for (Kernel kernel : new Kernel[]{Kernel.NEAREST, Kernel.BILINEAR, Kernel.BICUBIC}) {
+            final float[][] output = ImageResampler.transform(size, size, array, at, size, size,
+                    kernel, Float.NaN, CancellationToken.create());
+
+            double error = 0.0;
+            int n = 0, nBackground = 0;
+            final double[] pt = new double[2];
+
+            for (int j = 0; j < size; j++) {
+                for (int i = 0; i < size; i++) {
+                    pt[0] = i + 0.5;
+                    pt[1] = j + 0.5;
+                    inverse.transform(pt, 0, pt, 0, 1);
+
+                    if (pt[0] < 0.0 || pt[1] < 0.0 || pt[0] >= size || pt[1] >= size) {
+                        Assert.assertTrue(Float.isNaN(output[j][i]));
+                        nBackground++;
+                    } else if (pt[0] > 2.0 && pt[1] > 2.0 && pt[0] < size - 2.0 && pt[1] < size - 2.0) {
+                        // away from edges:
+                        error = Math.max(error, Math.abs(output[j][i] - function(pt[0], pt[1])));
+                        n++;
+                    }
+                }
+            }
+            Assert.assertTrue(n > 0 && nBackground > 0);
+            // higher order kernels are more accurate:
+            Assert.assertTrue(kernel + " error = " + error, error < lastError);
+            lastError = error;
+
+            FloatArrayCache.recycleArray(output);
+        }
+        Assert.assertTrue("bicubic error = " + lastError, lastError < 1e-3);
+    }
+
+    @Test
+    public void testImageGeometry() {
+        final int size = 64;
+        final int outSize = 90;
+        final float[][] array = createArray(size);
+        final IndexColorModel colorModel = ColorModels.getColorModel("Gray");
+
+        // rotation by 20 degrees then horizontal flip as ModelUVMapService:
+        final AffineTransform rotate = AffineTransform.getRotateInstance(Math.toRadians(20.0), size / 2.0, size / 2.0);
+        final AffineTransform flip = AffineTransform.getScaleInstance(-1.0, 1.0);
+        flip.translate(-outSize, 0.0);
+
+        BufferedImage expected = ImageUtils.createImage(size, size, array, 0f, 1f, colorModel);
+        expected = ImageUtils.transformImage(expected, colorModel, rotate, outSize, outSize);
+        expected = ImageUtils.transformImage(expected, colorModel, flip, outSize, outSize);
+
+        final AffineTransform at = new AffineTransform(flip);
+        at.translate((outSize - size) / 2.0, (outSize - size) / 2.0);
+        at.concatenate(rotate);
+
+        final float[][] output = ImageResampler.transform(size, size, array,
+                ImageResampler.getDataTransform(at, size, size, outSize, outSize), outSize, outSize,
+                Kernel.BICUBIC, Float.NaN, CancellationToken.create());
+        final BufferedImage actual = ImageUtils.createImage(outSize, outSize, output, 0f, 1f, colorModel);
+        FloatArrayCache.recycleArray(output);
+
+        // same geometry (colors differ on edges only):
+        int same = 0;
+        for (int y = 0; y < outSize; y++) {
+            for (int x = 0; x < outSize; x++) {
+                if (Math.abs((expected.getRGB(x, y) & 0xff) - (actual.getRGB(x, y) & 0xff)) <= 4) {
+                    same++;
+                }
+            }
+        }
+        Assert.assertTrue("same = " + same, same > 0.95 * outSize * outSize);
+    }
+}
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image;
+
+import fr.jmmc.jmal.util.ParallelThresholds;
+import fr.jmmc.jmal.util.ParallelThresholds.Stage;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Run the calibration of every stage on small sizes (values depend on the machine)
+ *
+ * @author bourgesl
+ */
+public class ParallelThresholdCalibratorTest {
+
+    @Test
+    public void testCalibrate() {
+        final int[] sizes = new int[]{16, 32, 64};
+
+        for (Stage stage : Stage.values()) {
+            final int current = ParallelThresholds.getThreshold(stage);
+
+            final int threshold = ParallelThresholdCalibrator.calibrate(stage, sizes);
+            Assert.assertTrue(stage + ": " + threshold, threshold >= 16 * 16);
+
+            // measured threshold is not applied:
+            Assert.assertEquals(current, ParallelThresholds.getThreshold(stage));
+        }
+    }
+}
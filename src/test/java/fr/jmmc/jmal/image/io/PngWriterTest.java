@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.io;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.image.ImageUtils;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check streaming PNG (serial and parallel deflate) and FITS writers
+ *
+ * @author bourgesl
+ */
+public class PngWriterTest {
+
+    /** image width */
+    private final static int W = 300;
+    /** image height (several bands) */
+    private final static int H = 1100;
+
+    private static float[][] createData() {
+        final Random random = new Random(7L);
+        final float[][] data = new float[H][W];
+        for (int j = 0; j < H; j++) {
+            for (int i = 0; i < W; i++) {
+                data[j][i] = (i < 10) ? 0.5f : (float) Math.sin(0.01 * i * j) + 0.1f * random.nextFloat();
+            }
+        }
+        data[3][4] = Float.NaN;
+        return data;
+    }
+
+    @Test
+    public void testCombineAdler32() {
+        final byte[] data = new byte[100000];
+        new Random(1L).nextBytes(data);
+
+        final Adler32 all = new Adler32();
+        all.update(data);
+
+        final Adler32 a1 = new Adler32();
+        a1.update(data, 0, 33333);
+        final Adler32 a2 = new Adler32();
+        a2.update(data, 33333, data.length - 33333);
+
+        Assert.assertEquals(all.getValue(), PngWriter.combineAdler32(a1.getValue(), a2.getValue(), data.length - 33333));
+        Assert.assertEquals(a1.getValue(), PngWriter.combineAdler32(a1.getValue(), 1L, 0L));
+    }
+
+    @Test
+    public void testPng() throws IOException {
+        final float[][] data = createData();
+        final IndexColorModel cm = ColorModels.getColorModel("Earth");
+
+        for (ColorScale scale : new ColorScale[]{ColorScale.LINEAR, ColorScale.LOGARITHMIC}) {
+            final float min = (scale == ColorScale.LINEAR) ? -1.1f : 0.01f;
+            final BufferedImage expected = ImageUtils.createImage(W, H, data, min, 1.1f, cm, scale);
+
+            for (int nJobs = 1; nJobs <= 3; nJobs++) {
+                for (int flip = 0; flip < 2; flip++) {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    PngWriter.write(out, FloatRows.wrap(data, W, H), min, 1.1f, cm, scale, flip == 1, nJobs);
+
+                    final BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+                    Assert.assertEquals(W, image.getWidth());
+                    Assert.assertEquals(H, image.getHeight());
+
+                    for (int j = 0; j < H; j++) {
+                        for (int i = 0; i < W; i++) {
+                            Assert.assertEquals((expected.getRGB((flip == 1) ? W - 1 - i : i, j) | 0xff000000), image.getRGB(i, j));
+                        }
+                    }
+                }
+            }
+        }
+
+        try {
+            PngWriter.write(new ByteArrayOutputStream(), FloatRows.wrap(data, W, H), 0f, 1f, cm, ColorScale.EQUALIZED, false, false);
+            Assert.fail("histogram scale");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFits() throws IOException {
+        final float[][] data = createData();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FitsWriter.write(out, FloatRows.wrap(data, W, H), new int[]{W, H}, null);
+
+        final byte[] bytes = out.toByteArray();
+        Assert.assertEquals(0, bytes.length % FitsWriter.BLOCK_SIZE);
+        Assert.assertEquals(FitsWriter.BLOCK_SIZE + 4 * W * H + (FitsWriter.BLOCK_SIZE - (4 * W * H) % FitsWriter.BLOCK_SIZE), bytes.length);
+
+        final String header = new String(bytes, 0, FitsWriter.BLOCK_SIZE, "US-ASCII");
+        Assert.assertEquals("SIMPLE  =                    T", header.substring(0, 30));
+        Assert.assertEquals("BITPIX  =                  -32", header.substring(80, 110));
+        Assert.assertEquals("NAXIS1  =                  " + W, header.substring(240, 270));
+        Assert.assertTrue(header.substring(400, 480).startsWith("END "));
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, FitsWriter.BLOCK_SIZE, 4 * W * H));
+        for (int j = 0; j < H; j++) {
+            for (int i = 0; i < W; i++) {
+                Assert.assertEquals(Float.floatToIntBits(data[j][i]), Float.floatToIntBits(in.readFloat()));
+            }
+        }
+
+        Assert.assertEquals("CTYPE1  = 'UU      '           / u", FitsWriter.card("CTYPE1", "UU", "u").substring(0, 34));
+        Assert.assertEquals(80, FitsWriter.card("CDELT1", 1.5e-3, null).length());
+
+        try {
+            FitsWriter.write(new ByteArrayOutputStream(), FloatRows.wrap(data, W, H), new int[]{2, W, H}, null);
+            Assert.fail("invalid axes");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
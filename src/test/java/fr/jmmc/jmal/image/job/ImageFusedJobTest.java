@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.job;
+
+import fr.jmmc.jmal.image.FloatImage;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare fused jobs (single traversal) against the same jobs run one after the other
+ *
+ * @author bourgesl
+ */
+public class ImageFusedJobTest {
+
+    private static float[][] createArray(final int size) {
+        final float[][] array = new float[size][size];
+        final int half = size / 2;
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                // centered blob (zero outside):
+                final int r2 = (i - half) * (i - half) + (j - half) * (j - half);
+                array[j][i] = (r2 < size * size / 16) ? (float) Math.exp(-r2 / (0.01 * size * size)) : 0f;
+            }
+        }
+        return array;
+    }
+
+    @Test
+    public void testFusion() {
+        // serial and parallel:
+        for (int size : new int[]{64, 300}) {
+            final float[][] expected = createArray(size);
+            final float[][] actual = createArray(size);
+
+            final ImageMinMaxJob minMax = new ImageMinMaxJob(expected, size, size, true);
+            minMax.forkAndJoin();
+            final ImageRegionThresholdJob region = new ImageRegionThresholdJob(expected, size, size, 0.5f);
+            region.forkAndJoin();
+            new ImageNormalizeJob(expected, size, size, 2.0).forkAndJoin();
+            final ImageLowerThresholdJob lower = new ImageLowerThresholdJob(expected, size, size, 0.2f, 0.1f);
+            lower.forkAndJoin();
+
+            final ImageMinMaxJob fusedMinMax = new ImageMinMaxJob(actual, size, size, true);
+            final ImageRegionThresholdJob fusedRegion = new ImageRegionThresholdJob(actual, size, size, 0.5f);
+            final ImageLowerThresholdJob fusedLower = new ImageLowerThresholdJob(actual, size, size, 0.2f, 0.1f);
+
+            final ImageFusedJob fused = new ImageFusedJob(fusedMinMax, fusedRegion,
+                    new ImageNormalizeJob(actual, size, size, 2.0), fusedLower);
+            Assert.assertEquals(size > 256, fused.shouldForkJobs());
+            fused.forkAndJoin();
+
+            Assert.assertEquals(minMax.getNData(), fusedMinMax.getNData());
+            Assert.assertEquals(minMax.getMin(), fusedMinMax.getMin(), 0f);
+            Assert.assertEquals(minMax.getMax(), fusedMinMax.getMax(), 0f);
+            Assert.assertEquals(minMax.getSum(), fusedMinMax.getSum(), 1e-9 * Math.abs(minMax.getSum()));
+
+            Assert.assertEquals(region.getColumnLowerIndex(), fusedRegion.getColumnLowerIndex());
+            Assert.assertEquals(region.getColumnUpperIndex(), fusedRegion.getColumnUpperIndex());
+            Assert.assertEquals(region.getRowLowerIndex(), fusedRegion.getRowLowerIndex());
+            Assert.assertEquals(region.getRowUpperIndex(), fusedRegion.getRowUpperIndex());
+
+            Assert.assertTrue(lower.getUpdateCount() > 0);
+            Assert.assertEquals(lower.getUpdateCount(), fusedLower.getUpdateCount());
+
+            for (int j = 0; j < size; j++) {
+                Assert.assertArrayEquals(expected[j], actual[j], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testProcessValue() {
+        final int size = 64;
+        final float[][] expected = createArray(size);
+        final float[][] actual = createArray(size);
+
+        new ImageNormalizeJob(expected, size, size, 2.0).forkAndJoin();
+        final ImageLowerThresholdJob lower = new ImageLowerThresholdJob(expected, size, size, 0.2f, 0.1f);
+        lower.forkAndJoin();
+
+        final ImageLowerThresholdJob fusedLower = new ImageLowerThresholdJob(actual, size, size, 0.2f, 0.1f);
+        final ImageFusedJob fused = new ImageFusedJob(new ImageNormalizeJob(actual, size, size, 2.0), fusedLower);
+
+        // value by value (default processRow() behaviour):
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                fused.processValue(i, j, actual[j][i]);
+            }
+        }
+        Assert.assertEquals(lower.getUpdateCount(), fusedLower.getUpdateCount());
+
+        for (int j = 0; j < size; j++) {
+            Assert.assertArrayEquals(expected[j], actual[j], 0f);
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        final FloatImage image = new FloatImage(8, 8);
+        final FloatImage other = new FloatImage(8, 8);
+
+        try {
+            new ImageFusedJob(new ImageMinMaxJob(image, false), new ImageFlipJob(image, true));
+            Assert.fail("flip job is not row local");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            new ImageFusedJob(new ImageMinMaxJob(image, false), new ImageMinMaxJob(other, false));
+            Assert.fail("jobs do not process the same data");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.image.job;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare the bounding box search (edge scans) against the full scan
+ *
+ * @author bourgesl
+ */
+public class ImageRegionThresholdJobTest {
+
+    private static void check(final float[][] array, final int width, final int height, final float threshold) {
+        final ImageRegionThresholdJob expected = new ImageRegionThresholdJob(array, width, height, threshold);
+        expected.forkAndJoin();
+
+        final ImageRegionThresholdJob actual = new ImageRegionThresholdJob(array, width, height, threshold);
+        actual.searchBoundingBox();
+
+        Assert.assertEquals(expected.getColumnLowerIndex(), actual.getColumnLowerIndex());
+        Assert.assertEquals(expected.getColumnUpperIndex(), actual.getColumnUpperIndex());
+        Assert.assertEquals(expected.getRowLowerIndex(), actual.getRowLowerIndex());
+        Assert.assertEquals(expected.getRowUpperIndex(), actual.getRowUpperIndex());
+    }
+
+    @Test
+    public void testBoundingBox() {
+        final Random random = new Random(3L);
+
+        for (int size : new int[]{1, 7, 64, 300}) {
+            final float[][] array = new float[size][size + 3];
+
+            // empty:
+            check(array, size, size, 0.5f);
+
+            for (int n = 0; n < 20; n++) {
+                // compact source (and a few isolated points):
+                final int x = random.nextInt(size);
+                final int y = random.nextInt(size);
+                final int w = 1 + random.nextInt(Math.max(1, size / 8));
+                for (int j = y; j < Math.min(size, y + w); j++) {
+                    for (int i = x; i < Math.min(size, x + w); i++) {
+                        array[j][i] = random.nextFloat();
+                    }
+                }
+                if ((n & 3) == 0) {
+                    array[random.nextInt(size)][random.nextInt(size)] = 1f;
+                }
+                // values beyond the processed width are ignored:
+                array[random.nextInt(size)][size] = 1f;
+
+                check(array, size, size, 0.5f);
+                check(array, size, size, -1f);
+                // processed height smaller than the array:
+                check(array, size, Math.max(1, size / 2), 0.5f);
+            }
+
+            // NaN and full:
+            for (int j = 0; j < size; j++) {
+                for (int i = 0; i < size; i++) {
+                    array[j][i] = ((i + j) % 5 == 0) ? Float.NaN : 1f;
+                }
+            }
+            check(array, size, size, 0.5f);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.model;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compare the fused conversion (amplitude / phase, range and colors in one pass) of computeUVMap()
+ * against the two-pass computeImage() on the same data
+ *
+ * @author bourgesl
+ */
+public class ModelUVMapServiceTest {
+
+    private static final int SIZE = 128;
+
+    private static final IndexColorModel colorModel = ColorModels.getColorModel("isophot");
+
+    @Test
+    public void testPhase() {
+        check(ImageMode.PHASE, ColorScale.LINEAR, null, null, false);
+        check(ImageMode.PHASE, ColorScale.LINEAR, null, null, true);
+    }
+
+    @Test
+    public void testAmplitude() {
+        check(ImageMode.AMP, ColorScale.LINEAR, null, null, false);
+        check(ImageMode.AMP, ColorScale.LINEAR, null, null, true);
+        check(ImageMode.AMP, ColorScale.LOGARITHMIC, null, null, false);
+        check(ImageMode.SQUARE, ColorScale.LOGARITHMIC, Float.valueOf(1e-3f), Float.valueOf(0.5f), false);
+        check(ImageMode.SQUARE, ColorScale.LOGARITHMIC, Float.valueOf(1e-3f), Float.valueOf(0.5f), true);
+    }
+
+    private static void check(final ImageMode mode, final ColorScale colorScale, final Float refMin, final Float refMax,
+                              final boolean uAxisInverted) {
+        final Random random = new Random(13L);
+        final float[][] visData = new float[SIZE][2 * SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < 2 * SIZE; i++) {
+                visData[j][i] = (random.nextFloat() - 0.5f) * 1.2f;
+            }
+        }
+        final Rectangle2D.Double uvRect = new Rectangle2D.Double(-100.0, -100.0, 200.0, 200.0);
+
+        final UVMapData fused = ModelUVMapService.computeUVMap(null, uvRect, refMin, refMax, visData,
+                mode, SIZE, colorModel, colorScale, null, 0.0, uAxisInverted);
+
+        // reference conversion:
+        final VisConverter converter = VisConverter.create(mode, null);
+        final float[][] imgData = new float[SIZE][SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; i++) {
+                imgData[j][i] = converter.convert(visData[j][2 * i], visData[j][2 * i + 1], random);
+            }
+        }
+
+        final UVMapData twoPass = ModelUVMapService.computeImage(uvRect, refMin, refMax, mode, SIZE, colorModel, colorScale,
+                SIZE, visData, imgData, uvRect, null, 0.0, 0, false);
+
+        final String msg = mode + " " + colorScale + " " + uAxisInverted + ": ";
+        Assert.assertEquals(msg + "min", twoPass.getMin(), fused.getMin());
+        Assert.assertEquals(msg + "max", twoPass.getMax(), fused.getMax());
+        Assert.assertEquals(msg + "data min", twoPass.getDataMin(), fused.getDataMin());
+        Assert.assertEquals(msg + "data max", twoPass.getDataMax(), fused.getDataMax());
+
+        final BufferedImage expected = twoPass.getUvMap();
+        final BufferedImage image = fused.getUvMap();
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; i++) {
+                // flipped image = mirrored columns of the reference image:
+                Assert.assertEquals(msg + "[" + i + ", " + j + "]", expected.getRGB(uAxisInverted ? SIZE - 1 - i : i, j),
+                        image.getRGB(i, j));
+            }
+        }
+    }
+}
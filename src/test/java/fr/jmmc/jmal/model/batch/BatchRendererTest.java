@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.model.batch;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.ModelUVMapService;
+import fr.jmmc.jmal.model.UVMapData;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import javax.imageio.ImageIO;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check BatchSpec parsing and BatchRenderer images against ModelUVMapService.computeUVMap()
+ *
+ * @author bourgesl
+ */
+public class BatchRendererTest {
+
+    @Test
+    public void testSpec() {
+        final Properties props = new Properties();
+        props.setProperty("sizes", "64, 128");
+        props.setProperty("modes", "AMP,PHASE");
+        props.setProperty("colorModels", "Earth, isophot");
+        props.setProperty("wavelengths", "2.2e-6");
+        props.setProperty("colorScale", "LOGARITHMIC");
+        props.setProperty("encoders", "0");
+
+        final BatchSpec spec = BatchSpec.parse(props);
+        Assert.assertArrayEquals(new int[]{64, 128}, spec.getSizes());
+        Assert.assertArrayEquals(new ImageMode[]{ImageMode.AMP, ImageMode.PHASE}, spec.getModes());
+        Assert.assertArrayEquals(new String[]{"Earth", "isophot"}, spec.getColorModels());
+        Assert.assertEquals(ColorScale.LOGARITHMIC, spec.getColorScale());
+        Assert.assertEquals(1, spec.getEncoders());
+        Assert.assertEquals(8, spec.getImageCount());
+        Assert.assertEquals(BatchSpec.DEFAULT_UV_MAX, spec.getUvMax(), 0.0);
+
+        Assert.assertEquals("my_target_64_AMP_Earth_2.2um.png",
+                BatchRenderer.getFileName("my target", 64, 2.2e-6, ImageMode.AMP, "Earth", "png"));
+
+        props.setProperty("sizes", "-1");
+        try {
+            BatchSpec.parse(props);
+            Assert.fail("invalid size");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRender() throws IOException {
+        final ModelManager mm = ModelManager.getInstance();
+
+        final Model disk = mm.createModel(ModelDefinition.MODEL_DISK);
+        ModelManager.setParameterValue(disk, ModelDefinition.PARAM_DIAMETER, 2.0);
+        final Model punct = mm.createModel(ModelDefinition.MODEL_PUNCT);
+        ModelManager.setParameterValue(punct, ModelDefinition.PARAM_FLUX_WEIGHT, 0.3);
+        ModelManager.setParameterValue(punct, ModelDefinition.PARAM_X, 3.0);
+
+        final List<Model> models = new ArrayList<Model>(2);
+        models.add(disk);
+        models.add(punct);
+
+        final Map<String, List<Model>> targets = new LinkedHashMap<String, List<Model>>();
+        targets.put("binary", models);
+
+        final BatchSpec spec = new BatchSpec();
+        spec.setSizes(new int[]{64, 96});
+        spec.setModes(new ImageMode[]{ImageMode.AMP, ImageMode.PHASE});
+        spec.setColorModels(new String[]{"Earth", "isophot"});
+        spec.setUvMax(1e8);
+        spec.setEncoders(2);
+        spec.setQueueCapacity(1);
+
+        final File dir = File.createTempFile("jmal-batch", "");
+        Assert.assertTrue(dir.delete());
+
+        final BatchRenderer renderer = new BatchRenderer(spec, dir);
+        Assert.assertEquals(8, renderer.render(targets));
+        Assert.assertEquals(0, renderer.getFailureCount());
+
+        // phase image computed from shared visibilities:
+        final File file = new File(dir, BatchRenderer.getFileName("binary", 96, 0.0, ImageMode.PHASE, "isophot", "png"));
+        final BufferedImage image = ImageIO.read(file);
+        Assert.assertEquals(96, image.getWidth());
+
+        final Rectangle2D.Double uvRect = new Rectangle2D.Double();
+        uvRect.setFrameFromDiagonal(-1e8, -1e8, 1e8, 1e8);
+        final UVMapData expected = ModelUVMapService.computeUVMap(models, uvRect, ImageMode.PHASE, 96,
+                ColorModels.getColorModel("isophot"), ColorScale.LINEAR);
+
+        for (int j = 0; j < 96; j++) {
+            for (int i = 0; i < 96; i++) {
+                Assert.assertEquals(expected.getUvMap().getRGB(i, j), image.getRGB(i, j));
+            }
+        }
+
+        for (File f : dir.listFiles()) {
+            Assert.assertTrue(f.delete());
+        }
+        Assert.assertTrue(dir.delete());
+    }
+}
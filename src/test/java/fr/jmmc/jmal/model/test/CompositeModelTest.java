@@ -0,0 +1,104 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.model.test;
+
+import fr.jmmc.jmal.complex.MutableComplex;
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check that composite models (hierarchy) give the same complex visibilities than their flattened equivalent
+ *
+ * @author bourgesl
+ */
+public class CompositeModelTest {
+
+    private final static int N = 64;
+    private final static double EPSILON = 1e-12;
+
+    @Test
+    public void testCompositeVsFlattened() {
+        final ModelManager mm = ModelManager.getInstance();
+
+        final double[] ufreq = new double[N];
+        final double[] vfreq = new double[N];
+        final double[] wavelengths = new double[N];
+
+        for (int i = 0; i < N; i++) {
+            ufreq[i] = 1e6 * i;
+            vfreq[i] = -3e5 * i;
+            wavelengths[i] = 1e-6;
+        }
+
+        // disk at (5,3) + punct at (2,0) + [disk at (0,1) + punct at (1,1)] (relative positions):
+        final Model parent = createModel(ModelDefinition.MODEL_DISK, 1.0, 5.0, 3.0, 2.0);
+        parent.getModels().add(createModel(ModelDefinition.MODEL_PUNCT, 0.5, 2.0, 0.0, 0.0));
+
+        final Model subGroup = createModel(ModelDefinition.MODEL_DISK, 0.3, 0.0, 1.0, 1.0);
+        subGroup.getModels().add(createModel(ModelDefinition.MODEL_PUNCT, 0.2, 1.0, 1.0, 0.0));
+        parent.getModels().add(subGroup);
+
+        final List<Model> composite = Arrays.asList(parent,
+                createModel(ModelDefinition.MODEL_PUNCT, 0.4, -4.0, 0.0, 0.0));
+
+        final List<Model> flattened = Arrays.asList(
+                createModel(ModelDefinition.MODEL_DISK, 1.0, 5.0, 3.0, 2.0),
+                createModel(ModelDefinition.MODEL_PUNCT, 0.5, 7.0, 3.0, 0.0),
+                createModel(ModelDefinition.MODEL_DISK, 0.3, 5.0, 4.0, 1.0),
+                createModel(ModelDefinition.MODEL_PUNCT, 0.2, 6.0, 5.0, 0.0),
+                createModel(ModelDefinition.MODEL_PUNCT, 0.4, -4.0, 0.0, 0.0));
+
+        final MutableComplex[] visComposite = mm.computeModels(mm.prepareModels(composite, N, wavelengths), ufreq, vfreq);
+        final MutableComplex[] visFlattened = mm.computeModels(mm.prepareModels(flattened, N, wavelengths), ufreq, vfreq);
+
+        // zero frequency = total normalized flux:
+        Assert.assertEquals(1.0, visComposite[0].getReal(), EPSILON);
+
+        for (int i = 0; i < N; i++) {
+            Assert.assertEquals(visFlattened[i].getReal(), visComposite[i].getReal(), EPSILON);
+            Assert.assertEquals(visFlattened[i].getImaginary(), visComposite[i].getImaginary(), EPSILON);
+        }
+    }
+
+    @Test
+    public void testCheckHierarchy() {
+        final ModelManager mm = ModelManager.getInstance();
+
+        // disk at (5,3) + [punct at (2,0) + punct at (4,0)] (relative positions):
+        final Model parent = createModel(ModelDefinition.MODEL_DISK, 1.0, 5.0, 3.0, 2.0);
+        final Model child = createModel(ModelDefinition.MODEL_PUNCT, 0.5, 2.0, 0.0, 0.0);
+        final Model grandChild = createModel(ModelDefinition.MODEL_PUNCT, 0.5, 4.0, 0.0, 0.0);
+        child.getModels().add(grandChild);
+        parent.getModels().add(child);
+
+        final List<Model> models = Arrays.asList(parent);
+
+        // grand child at (11,3) i.e. 6 mas from the disk:
+        Assert.assertTrue(mm.checkModels(models, 7.0));
+        Assert.assertFalse(mm.checkModels(models, 5.0));
+
+        // grand child at (11,7) i.e. 7.2 mas from the disk (only 5.7 mas from its parent):
+        ModelManager.setParameterValue(grandChild, ModelDefinition.PARAM_X, 4.0);
+        ModelManager.setParameterValue(grandChild, ModelDefinition.PARAM_Y, 4.0);
+        Assert.assertFalse(mm.checkModels(models, 7.0));
+        Assert.assertTrue(mm.checkModels(models, 10.0));
+    }
+
+    private static Model createModel(final String type, final double flux, final double x, final double y, final double diameter) {
+        final Model model = ModelManager.getInstance().createModel(type);
+
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_FLUX_WEIGHT, flux);
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_X, x);
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_Y, y);
+        if (diameter > 0.0) {
+            ModelManager.setParameterValue(model, ModelDefinition.PARAM_DIAMETER, diameter);
+        }
+        return model;
+    }
+}
@@ -0,0 +1,159 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.model.test;
+
+import fr.jmmc.jmal.complex.MutableComplex;
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.ParameterVector;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmal.model.targetmodel.ParameterLink;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check that the parameter vector gives the same complex visibilities than the model parameters
+ * and resolves shared parameters (parameter links)
+ *
+ * @author bourgesl
+ */
+public class ParameterVectorTest {
+
+    private final static int N = 32;
+    private final static double EPSILON = 1e-12;
+
+    @Test
+    public void testVectorVsModels() {
+        final ModelManager mm = ModelManager.getInstance();
+
+        final double[] ufreq = new double[N];
+        final double[] vfreq = new double[N];
+        final double[] wavelengths = new double[N];
+
+        for (int i = 0; i < N; i++) {
+            ufreq[i] = 1e6 * i;
+            vfreq[i] = 2e5 * i;
+            wavelengths[i] = 1e-6;
+        }
+
+        final Model disk = createModel(ModelDefinition.MODEL_DISK, 1.0, 1.0, 2.0);
+        disk.getModels().add(createModel(ModelDefinition.MODEL_PUNCT, 0.5, 2.0, -1.0));
+
+        final Model punct = createModel(ModelDefinition.MODEL_PUNCT, 0.4, -3.0, 0.0);
+
+        final List<Model> models = Arrays.asList(disk, punct);
+
+        final ParameterVector vector = ParameterVector.create(models);
+        Assert.assertEquals(4 + 3 + 3, vector.getSize());
+
+        final MutableComplex[] visModels = mm.computeModels(mm.prepareModels(models, N, wavelengths), ufreq, vfreq);
+        final MutableComplex[] visVector = mm.computeModels(mm.prepareModels(models, N, wavelengths, null, null, vector), ufreq, vfreq);
+
+        assertEquals(visModels, visVector);
+
+        // update slots (fitter) then apply them to models:
+        final double[] values = vector.getValues().clone();
+        values[vector.getSlots(punct).getSlot(ModelDefinition.PARAM_X)] = 5.0;
+        vector.setValues(values);
+
+        final MutableComplex[] visUpdated = mm.computeModels(mm.prepareModels(models, N, wavelengths, null, null, vector), ufreq, vfreq);
+
+        vector.apply();
+        Assert.assertEquals(5.0, punct.getParameter(ModelDefinition.PARAM_X).getValue(), 0.0);
+
+        assertEquals(mm.computeModels(mm.prepareModels(models, N, wavelengths), ufreq, vfreq), visUpdated);
+    }
+
+    @Test
+    public void testParameterLink() {
+        final Model disk = createModel(ModelDefinition.MODEL_DISK, 1.0, 0.0, 2.0);
+        final Model companion = ModelManager.getInstance().createModel(ModelDefinition.MODEL_PUNCT);
+
+        // share the disk flux weight:
+        final ParameterLink link = new ParameterLink();
+        link.setParameterRef(disk.getParameter(ModelDefinition.PARAM_FLUX_WEIGHT));
+        companion.getParameterLinks().add(link);
+        companion.getParameters().remove(companion.getParameter(ModelDefinition.PARAM_FLUX_WEIGHT));
+
+        final ParameterVector vector = ParameterVector.create(Arrays.asList(disk, companion));
+
+        final int slot = vector.getSlots(disk).getSlot(ModelDefinition.PARAM_FLUX_WEIGHT);
+        Assert.assertEquals(slot, vector.getSlots(companion).getSlot(ModelDefinition.PARAM_FLUX_WEIGHT));
+        Assert.assertEquals(1.0, vector.getValues()[slot], 0.0);
+    }
+
+    @Test
+    public void testLinkResolution() {
+        final ModelManager mm = ModelManager.getInstance();
+
+        final double[] ufreq = new double[N];
+        final double[] vfreq = new double[N];
+        final double[] wavelengths = new double[N];
+
+        for (int i = 0; i < N; i++) {
+            ufreq[i] = 1e6 * i;
+            vfreq[i] = -3e5 * i;
+            wavelengths[i] = 1e-6;
+        }
+
+        final Model disk = createModel(ModelDefinition.MODEL_DISK, 1.0, 0.0, 2.0);
+        final Model companion = createModel(ModelDefinition.MODEL_DISK, 0.5, 4.0, 1.0);
+
+        // share the disk diameter (overriding the companion diameter):
+        final ParameterLink link = new ParameterLink();
+        link.setParameterRef(disk.getParameter(ModelDefinition.PARAM_DIAMETER));
+        companion.getParameterLinks().add(link);
+
+        final List<Model> models = Arrays.asList(disk, companion);
+        final ParameterVector vector = ParameterVector.create(models);
+
+        // same link resolution with or without the parameter vector:
+        final MutableComplex[] visModels = mm.computeModels(mm.prepareModels(models, N, wavelengths), ufreq, vfreq);
+        final MutableComplex[] visVector = mm.computeModels(mm.prepareModels(models, N, wavelengths, null, null, vector), ufreq, vfreq);
+        assertEquals(visModels, visVector);
+
+        final Model twin = createModel(ModelDefinition.MODEL_DISK, 0.5, 4.0, 2.0);
+        assertEquals(mm.computeModels(mm.prepareModels(Arrays.asList(disk, twin), N, wavelengths), ufreq, vfreq), visModels);
+
+        // linked values are checked against the bounds of the referenced parameter:
+        companion.getParameter(ModelDefinition.PARAM_DIAMETER).setValue(-1.0);
+        mm.prepareModels(models, N, wavelengths);
+        vector.update();
+        mm.prepareModels(models, N, wavelengths, null, null, vector);
+
+        disk.getParameter(ModelDefinition.PARAM_DIAMETER).setMinValue(3.0);
+        vector.update();
+        assertInvalid(models, wavelengths, null);
+        assertInvalid(models, wavelengths, vector);
+    }
+
+    private static void assertInvalid(final List<Model> models, final double[] wavelengths, final ParameterVector vector) {
+        try {
+            ModelManager.getInstance().prepareModels(models, N, wavelengths, null, null, vector);
+            Assert.fail("invalid linked value");
+        } catch (IllegalArgumentException iae) {
+            Assert.assertTrue(iae.getMessage(), iae.getMessage().contains("[" + models.get(0).getName() + "]"));
+        }
+    }
+
+    private static void assertEquals(final MutableComplex[] expected, final MutableComplex[] actual) {
+        for (int i = 0; i < N; i++) {
+            Assert.assertEquals(expected[i].getReal(), actual[i].getReal(), EPSILON);
+            Assert.assertEquals(expected[i].getImaginary(), actual[i].getImaginary(), EPSILON);
+        }
+    }
+
+    private static Model createModel(final String type, final double flux, final double x, final double diameter) {
+        final Model model = ModelManager.getInstance().createModel(type);
+
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_FLUX_WEIGHT, flux);
+        ModelManager.setParameterValue(model, ModelDefinition.PARAM_X, x);
+        if (diameter > 0.0) {
+            ModelManager.setParameterValue(model, ModelDefinition.PARAM_DIAMETER, diameter);
+        }
+        return model;
+    }
+}
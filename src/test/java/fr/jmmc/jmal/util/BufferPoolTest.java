@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Simple tests on BufferPool
+ *
+ * @author bourgesl
+ */
+public class BufferPoolTest {
+
+    /** float[][] test pool */
+    private static final class ArrayPool extends BufferPool<float[][]> {
+
+        ArrayPool() {
+            super("test");
+        }
+
+        @Override
+        protected int getLength(final float[][] array2D) {
+            return array2D.length;
+        }
+
+        @Override
+        protected int getLength2(final float[][] array2D) {
+            return array2D[0].length;
+        }
+
+        @Override
+        protected long getByteSize(final float[][] array2D) {
+            return 4L * array2D.length * array2D[0].length;
+        }
+    }
+
+    @Test
+    public void testExactShape() {
+        final ArrayPool pool = new ArrayPool();
+        final long bytes = BufferPool.getPooledBytes();
+
+        Assert.assertNull(pool.getItem(16, 32));
+
+        final float[][] array = new float[16][32];
+        pool.putItem(array);
+        Assert.assertEquals(1, pool.getPooledCount());
+        Assert.assertEquals(bytes + 4L * 16 * 32, BufferPool.getPooledBytes());
+
+        // transposed shape is not reused:
+        Assert.assertNull(pool.getItem(32, 16));
+        Assert.assertSame(array, pool.getItem(16, 32));
+        Assert.assertNull(pool.getItem(16, 32));
+        Assert.assertEquals(0, pool.getPooledCount());
+        Assert.assertEquals(bytes, BufferPool.getPooledBytes());
+    }
+
+    @Test
+    public void testSizeClass() {
+        Assert.assertEquals(0, BufferPool.getSizeClass(1L));
+        Assert.assertEquals(10, BufferPool.getSizeClass(1024L));
+        Assert.assertEquals(11, BufferPool.getSizeClass(1025L));
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final ArrayPool pool = new ArrayPool();
+        final int nThreads = 4;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        for (int t = 0; t < nThreads; t++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        float[][] array = pool.getItem(4, 4);
+                        if (array == null) {
+                            array = new float[4][4];
+                        }
+                        pool.putItem(array);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1L, TimeUnit.MINUTES));
+
+        // at most one array per thread:
+        Assert.assertTrue(pool.getPooledCount() <= nThreads);
+        pool.clear();
+        Assert.assertEquals(0, pool.getPooledCount());
+    }
+}
@@ -0,0 +1,115 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util;
+
+import fr.jmmc.jmal.image.ColorModels;
+import fr.jmmc.jmal.image.ColorScale;
+import fr.jmmc.jmal.model.ImageMode;
+import fr.jmmc.jmal.model.ModelDefinition;
+import fr.jmmc.jmal.model.ModelManager;
+import fr.jmmc.jmal.model.ModelUVMapService;
+import fr.jmmc.jmal.model.targetmodel.Model;
+import fr.jmmc.jmcs.util.concurrent.InterruptedJobException;
+import java.awt.geom.Rectangle2D;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Simple tests on CancellationToken
+ *
+ * @author bourgesl
+ */
+public class CancellationTokenTest {
+
+    @Test
+    public void testCancel() {
+        final CancellationToken token = CancellationToken.create();
+        Assert.assertFalse(token.isCancelled());
+        Assert.assertNull(token.getReason());
+        token.checkCancelled("test");
+
+        token.cancel();
+        Assert.assertTrue(token.isCancelled());
+        Assert.assertEquals(CancellationToken.REASON_CANCELLED, token.getReason());
+
+        try {
+            token.checkCancelled("test");
+            Assert.fail("InterruptedJobException expected");
+        } catch (InterruptedJobException ije) {
+            Assert.assertEquals("test: cancelled", ije.getMessage());
+        }
+    }
+
+    @Test
+    public void testDeadline() throws InterruptedException {
+        Assert.assertEquals(Long.MAX_VALUE, CancellationToken.create().getRemaining(TimeUnit.MILLISECONDS));
+
+        final CancellationToken token = CancellationToken.create(1L, TimeUnit.MILLISECONDS);
+        Thread.sleep(5L);
+        Assert.assertTrue(token.isCancelled());
+        Assert.assertEquals(CancellationToken.REASON_DEADLINE, token.getReason());
+        Assert.assertEquals(0L, token.getRemaining(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testChild() throws InterruptedException {
+        final CancellationToken parent = CancellationToken.create();
+        final CancellationToken child = parent.createChild();
+        Assert.assertFalse(child.isCancelled());
+
+        // cancelling the child does not cancel its parent:
+        child.cancel();
+        Assert.assertTrue(child.isCancelled());
+        Assert.assertFalse(parent.isCancelled());
+        Assert.assertNull(parent.getReason());
+
+        // cancelling the parent cancels its children (with the parent reason):
+        final CancellationToken timed = CancellationToken.create(1L, TimeUnit.MILLISECONDS);
+        final CancellationToken other = timed.createChild();
+        Thread.sleep(5L);
+        Assert.assertTrue(other.isCancelled());
+        Assert.assertEquals(CancellationToken.REASON_DEADLINE, other.getReason());
+
+        final CancellationToken last = parent.createChild();
+        parent.cancel();
+        Assert.assertTrue(last.isCancelled());
+        Assert.assertEquals(CancellationToken.REASON_CANCELLED, last.getReason());
+    }
+
+    @Test
+    public void testSupersede() {
+        final AtomicReference<CancellationToken> slot = new AtomicReference<CancellationToken>();
+
+        final CancellationToken first = CancellationToken.supersede(slot, CancellationToken.create());
+        Assert.assertFalse(first.isCancelled());
+
+        final CancellationToken second = CancellationToken.supersede(slot, CancellationToken.create());
+        Assert.assertTrue(first.isCancelled());
+        Assert.assertFalse(second.isCancelled());
+        Assert.assertSame(second, slot.get());
+    }
+
+    @Test
+    public void testCancelledUVMap() {
+        final Model model = ModelManager.getInstance().createModel(ModelDefinition.MODEL_DISK);
+        model.setNameAndType(ModelDefinition.MODEL_DISK);
+
+        final CancellationToken token = CancellationToken.create();
+        token.cancel();
+
+        try {
+            ModelUVMapService.computeUVMap(Collections.singletonList(model), new Rectangle2D.Double(-1e8, -1e8, 2e8, 2e8),
+                    null, null, null, ImageMode.AMP, 256, ColorModels.getDefaultColorModel(), ColorScale.LINEAR,
+                    null, 0.0, false, token);
+            Assert.fail("InterruptedJobException expected");
+        } catch (InterruptedJobException ije) {
+            Assert.assertEquals("ModelUVMapService.computeUVMap: cancelled", ije.getMessage());
+        }
+        // thread is not interrupted:
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.util;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Check the fast logarithm error bounds
+ *
+ * @author bourgesl
+ */
+public class MathUtilsTest {
+
+    @Test
+    public void testFastLog() {
+        // exact on powers of two:
+        for (int e = -126; e <= 127; e++) {
+            Assert.assertEquals(e, MathUtils.fastLog2((float) Math.pow(2.0, e)), 0f);
+        }
+
+        final Random random = new Random(5L);
+        for (int n = 0; n < 100000; n++) {
+            // values over 60 decades:
+            final float x = (float) Math.pow(10.0, 60.0 * random.nextDouble() - 30.0);
+
+            final float log2 = MathUtils.fastLog2(x);
+            final float log10 = MathUtils.fastLog10(x);
+
+            // polynomial error + float rounding:
+            Assert.assertEquals("log2(" + x + ")", Math.log(x) / Math.log(2.0), log2, 2e-5 + Math.ulp(log2));
+            Assert.assertEquals("log10(" + x + ")", Math.log10(x), log10, 6e-6 + 2.0 * Math.ulp(log10));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ******************************************************************************/
+package fr.jmmc.jmal.util;
+
+import edu.emory.mathcs.utils.ConcurrencyUtils;
+import fr.jmmc.jmal.util.ParallelThresholds.Stage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Simple tests on ParallelThresholds (read back, FFT thresholds and profile file)
+ *
+ * @author bourgesl
+ */
+public class ParallelThresholdsTest {
+
+    @Test
+    public void testDefaults() {
+        ParallelThresholds.reset();
+
+        // former hard-coded thresholds:
+        Assert.assertFalse(ParallelThresholds.isParallel(Stage.IMAGE, 256 * 256 - 2));
+        Assert.assertTrue(ParallelThresholds.isParallel(Stage.IMAGE, 256 * 256 - 1));
+        Assert.assertFalse(ParallelThresholds.isParallel(Stage.IMAGE_JOB, 256 * 256));
+        Assert.assertTrue(ParallelThresholds.isParallel(Stage.IMAGE_JOB, 256 * 256 + 1));
+
+        // FFT threshold is the JTransforms one:
+        ParallelThresholds.setThreshold(Stage.FFT_2D, 4096);
+        Assert.assertEquals(4096, ConcurrencyUtils.getThreadsBeginN_2D());
+
+        final Map<Stage, Integer> values = ParallelThresholds.getThresholds();
+        Assert.assertEquals(Stage.values().length, values.size());
+        Assert.assertEquals(Integer.valueOf(4096), values.get(Stage.FFT_2D));
+
+        ParallelThresholds.reset();
+        Assert.assertEquals(256 * 256, ConcurrencyUtils.getThreadsBeginN_2D());
+    }
+
+    @Test
+    public void testProfile() throws IOException {
+        final File file = File.createTempFile("jmal-thresholds", ".properties");
+        try {
+            ParallelThresholds.setThreshold(Stage.MODEL, 1000);
+            ParallelThresholds.setThreshold(Stage.FFT_2D, 2048);
+            ParallelThresholds.save(file);
+
+            ParallelThresholds.reset();
+            Assert.assertEquals(Stage.MODEL.getDefaultValue(), ParallelThresholds.getThreshold(Stage.MODEL));
+
+            ParallelThresholds.load(file);
+            Assert.assertEquals(1000, ParallelThresholds.getThreshold(Stage.MODEL));
+            Assert.assertEquals(2048, ParallelThresholds.getThreshold(Stage.FFT_2D));
+            Assert.assertEquals(Stage.IMAGE.getDefaultValue(), ParallelThresholds.getThreshold(Stage.IMAGE));
+        } finally {
+            ParallelThresholds.reset();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/** *****************************************************************************
+ * JMMC project ( http://www.jmmc.fr ) - Copyright (C) CNRS.
+ ***************************************************************************** */
+package fr.jmmc.jmal.util.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Simple tests on InMemoryMetricsRegistry
+ *
+ * @author bourgesl
+ */
+public class InMemoryMetricsRegistryTest {
+
+    @Test
+    public void testCounterAndTimer() {
+        final InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+
+        final Counter counter = registry.counter("test.counter");
+        Assert.assertSame(counter, registry.counter("test.counter"));
+        counter.increment();
+        counter.add(4L);
+
+        final Timer timer = registry.timer("test.timer");
+        for (int i = 1; i <= 100; i++) {
+            timer.record(i * 1000L);
+        }
+
+        final MetricsSnapshot snapshot = registry.snapshot();
+        Assert.assertEquals(5L, snapshot.getCounter("test.counter"));
+
+        final MetricsSnapshot.Distribution d = snapshot.getTimers().get("test.timer");
+        Assert.assertEquals(100L, d.getCount());
+        Assert.assertEquals(1000L, d.getMin());
+        Assert.assertEquals(100000L, d.getMax());
+        Assert.assertEquals(50500.0, d.getMean(), 0.0);
+        // power of two buckets: quantiles are upper bounds within a factor 2:
+        Assert.assertTrue(d.getP50() >= 50000L && d.getP50() < 2 * 50000L);
+        Assert.assertTrue(d.getP99() >= 99000L && d.getP99() <= 100000L);
+
+        Assert.assertTrue(snapshot.toString().contains("counter.test.counter 5\n"));
+
+        registry.reset();
+        Assert.assertEquals(0L, registry.snapshot().getCounter("test.counter"));
+        Assert.assertNull(registry.snapshot().getTimers().get("test.timer"));
+    }
+}